@@ -0,0 +1,71 @@
+package com.dev2cloud.ddb_demo.jmh;
+
+import com.dev2cloud.ddb_demo.bench.LocalDynamoDb;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.net.URI;
+
+/**
+ * Builds the clients used by the benchmarks. Every benchmark takes the endpoint as a parameter,
+ * DynamoDB Local on port 8000 by default:
+ * <pre>
+ *     java -jar target/benchmarks.jar -p endpoint=http://localhost:8000
+ * </pre>
+ */
+final class BenchmarkClients {
+    static final String DEFAULT_ENDPOINT = LocalDynamoDb.DEFAULT_ENDPOINT;
+
+    // The URLConnection and CRT clients are only on the classpath with the http-clients profile
+    private static final String URL_CONNECTION_CLIENT = "software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient";
+    private static final String CRT_CLIENT = "software.amazon.awssdk.http.crt.AwsCrtHttpClient";
+
+    private BenchmarkClients() {
+    }
+
+    static DynamoDbClient dynamoDb(String endpoint) {
+        return dynamoDb(endpoint, "apache");
+    }
+
+    /**
+     * @param httpClient apache, urlconnection or crt
+     */
+    static DynamoDbClient dynamoDb(String endpoint, String httpClient) {
+        DynamoDbClient client = DynamoDbClient.builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .httpClient(httpClient(httpClient))
+                .build();
+        LocalDynamoDb.createNotesTable(client);
+        return client;
+    }
+
+    static SdkHttpClient httpClient(String name) {
+        switch (name) {
+            case "apache":
+                return ApacheHttpClient.builder().build();
+            case "urlconnection":
+                return build(URL_CONNECTION_CLIENT);
+            case "crt":
+                return build(CRT_CLIENT);
+            default:
+                throw new IllegalArgumentException("Unknown HTTP client " + name);
+        }
+    }
+
+    private static SdkHttpClient build(String className) {
+        try {
+            Object builder = Class.forName(className).getMethod("builder").invoke(null);
+            return (SdkHttpClient) builder.getClass().getMethod("build").invoke(builder);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(className + " is not on the classpath, build with -Phttp-clients", ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create " + className, ex);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dev2cloud.ddb_demo.jmh;
+
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same get and put through NotesRepository with each synchronous HTTP client of the SDK, from
+ * several threads so connection pooling matters. Only the Apache client is packaged by default;
+ * the URLConnection and CRT clients need the http-clients profile and have to be selected:
+ * <pre>
+ *     mvn package -Phttp-clients
+ *     java -jar target/benchmarks.jar HttpClientBenchmark -p httpClient=apache,urlconnection,crt
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class HttpClientBenchmark {
+    private static final String USER_ID = "jmh-http";
+    private static final String NOTE = "Remember to bring the DynamoDB Local jar to the lecture on Tuesday";
+
+    @Param({BenchmarkClients.DEFAULT_ENDPOINT})
+    public String endpoint;
+
+    // Clients outside the default build are only run when selected with -p httpClient=...
+    @Param({"apache"})
+    public String httpClient;
+
+    private DynamoDbClient client;
+    private NotesRepository repository;
+
+    @Setup
+    public void setUp() {
+        client = BenchmarkClients.dynamoDb(endpoint, httpClient);
+        repository = new NotesRepository(client);
+        repository.putItem(USER_ID, 1, NOTE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public NotesItem get() {
+        return repository.getItem(USER_ID, 1);
+    }
+
+    @Benchmark
+    public void put() {
+        repository.putItem(USER_ID, 2 + (int) (Thread.currentThread().getId() & 63), NOTE);
+    }
+}
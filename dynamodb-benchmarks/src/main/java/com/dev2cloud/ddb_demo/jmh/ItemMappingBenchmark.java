@@ -0,0 +1,75 @@
+package com.dev2cloud.ddb_demo.jmh;
+
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesItemCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting a NotesItem to and from its attribute map, without any I/O: the codec used by
+ * NotesRepository, the static schema used by NotesEnhancedRepository and the bean schema it
+ * replaced. Needs no endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemMappingBenchmark {
+    private TableSchema<NotesItem> beanSchema;
+    private TableSchema<NotesItem> staticSchema;
+    private NotesItem item;
+    private Map<String, AttributeValue> attributes;
+
+    @Setup
+    public void setUp() {
+        beanSchema = TableSchema.fromBean(NotesItem.class);
+        staticSchema = NotesItemCodec.TABLE_SCHEMA;
+        item = new NotesItem("student1", 42, "Remember to bring the DynamoDB Local jar to the lecture on Tuesday");
+        attributes = NotesItemCodec.toItem(item);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> codecToItem() {
+        return NotesItemCodec.toItem(item);
+    }
+
+    @Benchmark
+    public NotesItem codecFromItem() {
+        return NotesItemCodec.fromItem(attributes);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> staticSchemaToItem() {
+        return staticSchema.itemToMap(item, true);
+    }
+
+    @Benchmark
+    public NotesItem staticSchemaFromItem() {
+        return staticSchema.mapToItem(attributes);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> beanSchemaToItem() {
+        return beanSchema.itemToMap(item, true);
+    }
+
+    @Benchmark
+    public NotesItem beanSchemaFromItem() {
+        return beanSchema.mapToItem(attributes);
+    }
+}
@@ -0,0 +1,97 @@
+package com.dev2cloud.ddb_demo.jmh;
+
+import com.dev2cloud.ddb_demo.NotesEnhancedRepository;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesQuery;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading every note of a user with 10, 1,000 and 100,000 notes: the standard query that
+ * collects all pages, the enhanced client query, and the streaming query which prefetches the
+ * next page while the current one is consumed. The notes are loaded once and reused by later runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({BenchmarkClients.DEFAULT_ENDPOINT})
+    public String endpoint;
+
+    @Param({"10", "1000", "100000"})
+    public int notesPerUser;
+
+    private DynamoDbClient client;
+    private NotesRepository standard;
+    private NotesEnhancedRepository enhanced;
+    private String userId;
+
+    @Setup
+    public void setUp() {
+        client = BenchmarkClients.dynamoDb(endpoint);
+        standard = new NotesRepository(client);
+        enhanced = new NotesEnhancedRepository(client);
+        userId = "jmh-query-" + notesPerUser;
+        if (standard.getItem(userId, notesPerUser - 1) == null) {
+            standard.putItems(notes(), 8);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public int standardQuery() {
+        return standard.getNotesByUserid(userId).size();
+    }
+
+    @Benchmark
+    public int enhancedQuery() {
+        return enhanced.findNotesForUser(userId).size();
+    }
+
+    @Benchmark
+    public long streamingQuery() {
+        try (Stream<NotesItem> notes = standard.queryNotes(NotesQuery.forUser(userId))) {
+            return notes.count();
+        }
+    }
+
+    private Iterator<NotesItem> notes() {
+        return new Iterator<NotesItem>() {
+            private int noteId;
+
+            @Override
+            public boolean hasNext() {
+                return noteId < notesPerUser;
+            }
+
+            @Override
+            public NotesItem next() {
+                return new NotesItem(userId, noteId, "Query benchmark note " + noteId++);
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package com.dev2cloud.ddb_demo.jmh;
+
+import com.dev2cloud.ddb_demo.NotesEnhancedRepository;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single item get and put through the standard and the enhanced repository, sharing one client,
+ * so the difference is the mapping and request building of each path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final String USER_ID = "jmh-user";
+    private static final String NOTE = "Remember to bring the DynamoDB Local jar to the lecture on Tuesday";
+
+    @Param({BenchmarkClients.DEFAULT_ENDPOINT})
+    public String endpoint;
+
+    private DynamoDbClient client;
+    private NotesRepository standard;
+    private NotesEnhancedRepository enhanced;
+    private int nextNoteId;
+
+    @Setup
+    public void setUp() {
+        client = BenchmarkClients.dynamoDb(endpoint);
+        standard = new NotesRepository(client);
+        enhanced = new NotesEnhancedRepository(client);
+        standard.putItem(USER_ID, 1, NOTE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public NotesItem standardGet() {
+        return standard.getItem(USER_ID, 1);
+    }
+
+    @Benchmark
+    public NotesItem enhancedGet() {
+        return enhanced.getItem(USER_ID, 1);
+    }
+
+    @Benchmark
+    public void standardPut() {
+        // Cycle over a fixed set of notes so the table does not grow with the run time
+        standard.putItem(USER_ID, 2 + (nextNoteId++ & 1023), NOTE);
+    }
+
+    @Benchmark
+    public void enhancedPut() {
+        enhanced.putItem(new NotesItem(USER_ID, 2 + (nextNoteId++ & 1023), NOTE));
+    }
+}
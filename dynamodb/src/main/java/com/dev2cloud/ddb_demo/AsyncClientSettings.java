@@ -0,0 +1,83 @@
+package com.dev2cloud.ddb_demo;
+
+import java.time.Duration;
+
+/**
+ * Tuning knobs for {@link NotesAsyncRepository}: the Netty event loop and connection pool used by
+ * the async client, and the number of requests the repository allows in flight at once.
+ */
+public class AsyncClientSettings {
+    private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+    private int maxConcurrency = 100;
+    private int maxPendingConnectionAcquires = 10_000;
+    private Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+    private int maxInFlight = 256;
+    private int maxQueued = 10_000;
+
+    /**
+     * Number of Netty event loop threads performing the network I/O
+     */
+    public AsyncClientSettings eventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+        return this;
+    }
+
+    /**
+     * Maximum number of open HTTP connections to DynamoDB
+     */
+    public AsyncClientSettings maxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    public AsyncClientSettings maxPendingConnectionAcquires(int maxPendingConnectionAcquires) {
+        this.maxPendingConnectionAcquires = maxPendingConnectionAcquires;
+        return this;
+    }
+
+    public AsyncClientSettings connectionAcquisitionTimeout(Duration connectionAcquisitionTimeout) {
+        this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+        return this;
+    }
+
+    /**
+     * Requests beyond this number are queued by the repository rather than handed to the client
+     */
+    public AsyncClientSettings maxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Requests beyond this number waiting for the in-flight limit fail with a
+     * RejectedExecutionException instead of being queued
+     */
+    public AsyncClientSettings maxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxPendingConnectionAcquires() {
+        return maxPendingConnectionAcquires;
+    }
+
+    public Duration getConnectionAcquisitionTimeout() {
+        return connectionAcquisitionTimeout;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+}
@@ -0,0 +1,60 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a bulk lookup performed by one of the repositories. A key which was not found has a
+ * null item; a key which DynamoDB still reported as unprocessed after the last retry has a null
+ * item too, but is also listed among the unresolved keys, so the two cases can be told apart.
+ */
+public class BatchGetReport {
+    private final List<NotesItem> items;
+    private final Set<NotesKey> unresolvedKeys;
+    private final Map<NotesKey, String> errors;
+
+    BatchGetReport(List<NotesItem> items, Set<NotesKey> unresolvedKeys) {
+        this(items, unresolvedKeys, Collections.emptyMap());
+    }
+
+    BatchGetReport(List<NotesItem> items, Set<NotesKey> unresolvedKeys, Map<NotesKey, String> errors) {
+        this.items = Collections.unmodifiableList(items);
+        this.unresolvedKeys = Collections.unmodifiableSet(unresolvedKeys);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * The items in the same order as the requested keys, with null for each key that was not
+     * found or could not be read
+     */
+    public List<NotesItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Keys which could not be read, as opposed to keys which do not exist
+     */
+    public Set<NotesKey> getUnresolvedKeys() {
+        return unresolvedKeys;
+    }
+
+    /**
+     * The error of each key whose lookup failed outright, e.g. a failed PartiQL statement; keys
+     * which were merely left unprocessed have no entry
+     */
+    public Map<NotesKey, String> getErrors() {
+        return errors;
+    }
+
+    public boolean isComplete() {
+        return unresolvedKeys.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        long found = items.stream().filter(item -> item != null).count();
+        return String.format("BatchGet [Keys=%d, Found=%d, Unresolved=%d]", items.size(), found, unresolvedKeys.size());
+    }
+}
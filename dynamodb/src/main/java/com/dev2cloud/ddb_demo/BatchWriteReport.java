@@ -0,0 +1,100 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Summary of a bulk write performed by one of the repositories. Batches are written
+ * from several threads, so the counters are updated atomically while the write is in
+ * progress and read once it completes.
+ */
+public class BatchWriteReport {
+    private final AtomicLong itemsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final List<NotesItem> failedItems = Collections.synchronizedList(new ArrayList<>());
+    private final List<RuntimeException> errors = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean interrupted;
+    private volatile long elapsedNanos;
+
+    void recordBatch(int written, int batchRetries) {
+        itemsWritten.addAndGet(written);
+        batches.incrementAndGet();
+        retries.addAndGet(batchRetries);
+    }
+
+    void recordFailed(Collection<NotesItem> items) {
+        failedItems.addAll(items);
+    }
+
+    void recordError(RuntimeException error) {
+        errors.add(error);
+    }
+
+    void interrupted() {
+        this.interrupted = true;
+    }
+
+    void complete(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getItemsWritten() {
+        return itemsWritten.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Number of times a batch had to be resubmitted because DynamoDB returned UnprocessedItems
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Items that were not written: still unprocessed after the last retry attempt, in a batch
+     * whose call failed, or never sent because the write was interrupted
+     */
+    public List<NotesItem> getFailedItems() {
+        synchronized (failedItems) {
+            return new ArrayList<>(failedItems);
+        }
+    }
+
+    /**
+     * Exceptions which failed a batch; the items of those batches are among the failed items
+     */
+    public List<RuntimeException> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    /**
+     * True if the calling thread was interrupted before every batch was sent
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getItemsPerSecond() {
+        return elapsedNanos == 0 ? 0 : itemsWritten.get() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchWrite [Items=%d, Batches=%d, Retries=%d, Failed=%d, Errors=%d, Elapsed=%d ms, Throughput=%.1f items/sec]",
+                getItemsWritten(), getBatches(), getRetries(), failedItems.size(), errors.size(), getElapsedMillis(), getItemsPerSecond());
+    }
+}
@@ -0,0 +1,50 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the cache and search index of a repository in step with the notes its batch writes
+ * wrote or deleted. Shared by both repositories; either may be null when not attached.
+ */
+final class BatchWrites {
+    private BatchWrites() {
+    }
+
+    /**
+     * Indexes the items of a batch which were written, i.e. all but the unprocessed ones
+     */
+    static void indexWritten(NotesIndex searchIndex, List<NotesItem> batch, List<NotesItem> unprocessed,
+                             boolean deleted) {
+        if (searchIndex == null) {
+            return;
+        }
+        Set<NotesKey> pending = new HashSet<>();
+        for (NotesItem item : unprocessed) {
+            pending.add(NotesKey.of(item));
+        }
+        for (NotesItem item : batch) {
+            NotesKey key = NotesKey.of(item);
+            if (pending.contains(key)) {
+                continue;
+            }
+            if (deleted) {
+                searchIndex.remove(key);
+            } else {
+                searchIndex.index(item);
+            }
+        }
+    }
+
+    /**
+     * Drops the items from the cache, whether or not the write reached the table
+     */
+    static void invalidateCached(NotesCache cache, List<NotesItem> items) {
+        if (cache != null) {
+            for (NotesItem item : items) {
+                cache.invalidate(NotesKey.of(item));
+            }
+        }
+    }
+}
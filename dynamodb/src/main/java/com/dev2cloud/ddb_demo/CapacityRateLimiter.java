@@ -0,0 +1,145 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side token bucket shared by every operation of a repository, with separate buckets for
+ * read and write capacity units. Each call reserves its estimated capacity before it is sent and
+ * the bucket is corrected with the ConsumedCapacity DynamoDB reports back.
+ * <p>
+ * The rate adapts to the table: it is halved every time DynamoDB throttles a request and then
+ * creeps back up towards the configured maximum while requests succeed, so the client settles
+ * just below the capacity actually available instead of oscillating between bursts and throttling.
+ */
+public class CapacityRateLimiter {
+
+    public enum Capacity {READ, WRITE}
+
+    private final Bucket reads;
+    private final Bucket writes;
+
+    /**
+     * @param readUnitsPerSecond  maximum read capacity units per second, e.g. the provisioned RCU
+     * @param writeUnitsPerSecond maximum write capacity units per second, e.g. the provisioned WCU
+     */
+    public CapacityRateLimiter(double readUnitsPerSecond, double writeUnitsPerSecond) {
+        this.reads = new Bucket(readUnitsPerSecond);
+        this.writes = new Bucket(writeUnitsPerSecond);
+    }
+
+    /**
+     * Blocks until the estimated capacity is available
+     */
+    public void acquire(Capacity capacity, double estimatedUnits) throws InterruptedException {
+        long waitNanos = bucket(capacity).reserve(estimatedUnits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Corrects the reservation with the capacity reported by DynamoDB (NaN if it was not reported)
+     * and lets the rate recover
+     */
+    public void onSuccess(Capacity capacity, double estimatedUnits, double consumedUnits) {
+        bucket(capacity).onSuccess(estimatedUnits, consumedUnits);
+    }
+
+    /**
+     * Backs the rate off after DynamoDB throttled a request
+     */
+    public void onThrottle(Capacity capacity) {
+        bucket(capacity).onThrottle();
+    }
+
+    public double getRate(Capacity capacity) {
+        return bucket(capacity).rate();
+    }
+
+    public long getThrottleEvents(Capacity capacity) {
+        return bucket(capacity).throttles.sum();
+    }
+
+    public double getConsumedUnits(Capacity capacity) {
+        return bucket(capacity).consumed();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RateLimiter [Read=%.1f/s (throttled %d, consumed %.1f), Write=%.1f/s (throttled %d, consumed %.1f)]",
+                reads.rate(), reads.throttles.sum(), reads.consumed(),
+                writes.rate(), writes.throttles.sum(), writes.consumed());
+    }
+
+    private Bucket bucket(Capacity capacity) {
+        return capacity == Capacity.READ ? reads : writes;
+    }
+
+    private static final class Bucket {
+        private static final double BACKOFF_FACTOR = 0.5;
+        // Fraction of the maximum rate regained per successful request
+        private static final double RECOVERY_STEP = 0.01;
+        private static final double MIN_RATE_FRACTION = 0.05;
+
+        private final double maxRate;
+        private final double minRate;
+        private final LongAdder throttles = new LongAdder();
+        private double rate;
+        private double tokens;
+        private double consumedTotal;
+        private long lastRefill = System.nanoTime();
+
+        Bucket(double maxRate) {
+            if (maxRate <= 0) {
+                throw new IllegalArgumentException("Capacity units per second must be positive");
+            }
+            this.maxRate = maxRate;
+            this.minRate = maxRate * MIN_RATE_FRACTION;
+            this.rate = maxRate;
+            this.tokens = maxRate;
+        }
+
+        /**
+         * Takes the units from the bucket, letting it go into debt, and returns how long the caller
+         * must wait for the debt to be repaid
+         */
+        synchronized long reserve(double units) {
+            refill();
+            tokens -= units;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        synchronized void onSuccess(double estimated, double consumed) {
+            if (Double.isNaN(consumed)) {
+                // The response did not report its consumed capacity; keep the estimate
+                consumed = estimated;
+            }
+            tokens -= consumed - estimated;
+            consumedTotal += consumed;
+            rate = Math.min(maxRate, rate + maxRate * RECOVERY_STEP);
+        }
+
+        synchronized void onThrottle() {
+            throttles.increment();
+            refill();
+            rate = Math.max(minRate, rate * BACKOFF_FACTOR);
+            tokens = Math.min(tokens, 0);
+        }
+
+        synchronized double rate() {
+            return rate;
+        }
+
+        synchronized double consumed() {
+            return consumedTotal;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            // At most one second worth of capacity can be accumulated as burst
+            tokens = Math.min(rate, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+    }
+}
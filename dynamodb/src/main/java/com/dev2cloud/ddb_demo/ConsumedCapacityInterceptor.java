@@ -0,0 +1,92 @@
+package com.dev2cloud.ddb_demo;
+
+import com.dev2cloud.ddb_demo.CapacityRateLimiter.Capacity;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.List;
+
+/**
+ * Asks DynamoDB for the ConsumedCapacity of every item and batch request a client sends and adds
+ * it to the metrics. Used where the repository cannot see the responses itself: the enhanced
+ * client does not return the capacity of gets, queries or batches.
+ * <p>
+ * A request which already selects its ReturnConsumedCapacity is left as it is.
+ */
+class ConsumedCapacityInterceptor implements ExecutionInterceptor {
+    private final NotesMetrics metrics;
+
+    ConsumedCapacityInterceptor(NotesMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        SdkRequest request = context.request();
+        if (request instanceof GetItemRequest && ((GetItemRequest) request).returnConsumedCapacity() == null) {
+            return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof PutItemRequest && ((PutItemRequest) request).returnConsumedCapacity() == null) {
+            return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof UpdateItemRequest && ((UpdateItemRequest) request).returnConsumedCapacity() == null) {
+            return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof DeleteItemRequest && ((DeleteItemRequest) request).returnConsumedCapacity() == null) {
+            return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof QueryRequest && ((QueryRequest) request).returnConsumedCapacity() == null) {
+            return ((QueryRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof ScanRequest && ((ScanRequest) request).returnConsumedCapacity() == null) {
+            return ((ScanRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof BatchGetItemRequest && ((BatchGetItemRequest) request).returnConsumedCapacity() == null) {
+            return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof BatchWriteItemRequest && ((BatchWriteItemRequest) request).returnConsumedCapacity() == null) {
+            return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        return request;
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        SdkResponse response = context.response();
+        if (response instanceof GetItemResponse) {
+            record(Capacity.READ, ((GetItemResponse) response).consumedCapacity());
+        } else if (response instanceof QueryResponse) {
+            record(Capacity.READ, ((QueryResponse) response).consumedCapacity());
+        } else if (response instanceof ScanResponse) {
+            record(Capacity.READ, ((ScanResponse) response).consumedCapacity());
+        } else if (response instanceof BatchGetItemResponse) {
+            record(Capacity.READ, ((BatchGetItemResponse) response).consumedCapacity());
+        } else if (response instanceof PutItemResponse) {
+            record(Capacity.WRITE, ((PutItemResponse) response).consumedCapacity());
+        } else if (response instanceof UpdateItemResponse) {
+            record(Capacity.WRITE, ((UpdateItemResponse) response).consumedCapacity());
+        } else if (response instanceof DeleteItemResponse) {
+            record(Capacity.WRITE, ((DeleteItemResponse) response).consumedCapacity());
+        } else if (response instanceof BatchWriteItemResponse) {
+            record(Capacity.WRITE, ((BatchWriteItemResponse) response).consumedCapacity());
+        }
+    }
+
+    private void record(Capacity capacity, ConsumedCapacity consumedCapacity) {
+        if (consumedCapacity != null && consumedCapacity.capacityUnits() != null) {
+            metrics.recordConsumedCapacity(capacity, consumedCapacity.capacityUnits());
+        }
+    }
+
+    private void record(Capacity capacity, List<ConsumedCapacity> consumedCapacity) {
+        if (consumedCapacity != null) {
+            for (ConsumedCapacity tableCapacity : consumedCapacity) {
+                record(capacity, tableCapacity);
+            }
+        }
+    }
+}
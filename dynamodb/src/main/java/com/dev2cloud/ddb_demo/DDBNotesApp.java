@@ -1,5 +1,6 @@
 package com.dev2cloud.ddb_demo;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,5 +28,13 @@ public class DDBNotesApp {
         System.out.println("Results from PartiQL query");
         List<NotesItem> results2 = notesItemRepository.getNotesByUseridPartiQL(item.getUserId());
         System.out.println(results2);
+
+        // Bulk load a set of notes using BatchWriteItem
+        List<NotesItem> bulkItems = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            bulkItems.add(new NotesItem("student2", i, "Bulk note " + i));
+        }
+        BatchWriteReport report = notesItemRepository.putItems(bulkItems);
+        System.out.println(report);
     }
 }
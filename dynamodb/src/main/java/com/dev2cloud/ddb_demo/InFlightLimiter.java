@@ -0,0 +1,93 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of asynchronous requests in flight without blocking the caller. Requests
+ * submitted while the limit is reached are queued and started as earlier ones complete; once the
+ * queue is full as well, further requests fail straight away with a RejectedExecutionException.
+ */
+class InFlightLimiter {
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final BlockingQueue<Runnable> waiting;
+    // Number of drain() calls made while one was running; only one thread drains at a time
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    InFlightLimiter(int maxInFlight, int maxQueued) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("maxQueued must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.waiting = new ArrayBlockingQueue<>(maxQueued);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean queued = waiting.offer(() -> {
+            CompletableFuture<T> started;
+            try {
+                started = request.get();
+            } catch (RuntimeException ex) {
+                started = new CompletableFuture<>();
+                started.completeExceptionally(ex);
+            }
+            started.whenComplete((value, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        if (!queued) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    "Too many requests: " + inFlight.get() + " in flight and " + waiting.size() + " queued"));
+            return result;
+        }
+        drain();
+        return result;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    int queued() {
+        return waiting.size();
+    }
+
+    /**
+     * Starts queued requests while there is room. A request whose future is already complete
+     * calls back into drain() from within next.run(); that call only records that another pass
+     * is needed, so the loop below picks it up instead of the stack growing with every request.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            // Only the draining thread increments inFlight, so the check cannot be overtaken
+            while (inFlight.get() < maxInFlight) {
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    break;
+                }
+                inFlight.incrementAndGet();
+                next.run();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
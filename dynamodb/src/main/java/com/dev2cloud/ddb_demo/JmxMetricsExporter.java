@@ -0,0 +1,63 @@
+package com.dev2cloud.ddb_demo;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Registers the metrics as an MXBean named {@code com.dev2cloud.ddb_demo:type=NotesMetrics,name=<name>}
+ * in the platform MBean server. Figures are computed when an attribute is read, so nothing runs in
+ * the background.
+ */
+public class JmxMetricsExporter implements NotesMetricsExporter {
+    private final ObjectName objectName;
+
+    public JmxMetricsExporter(NotesMetrics metrics, String name) {
+        try {
+            objectName = new ObjectName("com.dev2cloud.ddb_demo:type=NotesMetrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new View(metrics), objectName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Cannot register metrics " + name, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    private static final class View implements NotesMetricsMXBean {
+        private final NotesMetrics metrics;
+
+        View(NotesMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public List<OperationMetrics> getOperations() {
+            return metrics.snapshot();
+        }
+
+        @Override
+        public double getReadCapacityUnits() {
+            return metrics.getReadCapacityUnits();
+        }
+
+        @Override
+        public double getWriteCapacityUnits() {
+            return metrics.getWriteCapacityUnits();
+        }
+
+        @Override
+        public String getReport() {
+            return metrics.toText();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of loading the notes of several users at once. The query of each user succeeds or fails
+ * on its own, so the notes of the users that could be read are returned even when others failed
+ * or timed out.
+ */
+public class MultiUserNotes {
+    private final Map<String, List<NotesItem>> notes;
+    private final Map<String, Throwable> failures;
+    private final long elapsedNanos;
+
+    MultiUserNotes(Map<String, List<NotesItem>> notes, Map<String, Throwable> failures, long elapsedNanos) {
+        this.notes = Collections.unmodifiableMap(notes);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Notes of every user whose query succeeded, in the order the users were given
+     */
+    public Map<String, List<NotesItem>> getNotes() {
+        return notes;
+    }
+
+    /**
+     * Notes of a single user, or null if the user's query failed
+     */
+    public List<NotesItem> getNotes(String userId) {
+        return notes.get(userId);
+    }
+
+    /**
+     * Why the query of a user failed; a {@link java.util.concurrent.TimeoutException} when it did
+     * not finish in time
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        int total = 0;
+        for (List<NotesItem> userNotes : notes.values()) {
+            total += userNotes.size();
+        }
+        return String.format("MultiUserNotes [Users=%d, Notes=%d, Failed=%d, Elapsed=%d ms]",
+                notes.size(), total, failures.size(), getElapsedMillis());
+    }
+}
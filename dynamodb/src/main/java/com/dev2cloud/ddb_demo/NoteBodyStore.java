@@ -0,0 +1,311 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decides how the body of a note is stored. Short bodies stay in the Notes string attribute,
+ * bodies above the compression threshold are deflated into the NotesZ binary attribute and bodies
+ * above the offload threshold are written to S3, with only the object key kept in NotesRef.
+ * <p>
+ * The repositories pass items through {@link #prepare(NotesItem)} before writing them and through
+ * {@link #restore(List)} after reading them, so callers always see the plain text in Notes; the
+ * asynchronous repository uses {@link #prepareAsync(NotesItem)} and {@link #restoreAsync(List)},
+ * which upload and download on the store's own threads instead of blocking the caller. Bodies
+ * kept in S3 are only downloaded for the items a read actually returns, and the downloads for a
+ * page of results run in parallel.
+ * <p>
+ * Objects are keyed by UserId and NoteId, so rewriting a large note replaces its object. Objects
+ * of notes that were deleted or shrunk below the offload threshold are left behind and are best
+ * removed with a lifecycle rule on the key prefix.
+ */
+public class NoteBodyStore {
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+    public static final int DEFAULT_OFFLOAD_THRESHOLD = 64 * 1024;
+    private static final int FETCH_THREADS = 8;
+
+    private final int compressThreshold;
+    private final int offloadThreshold;
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String keyPrefix;
+    private final ExecutorService fetchExecutor;
+
+    private final LongAdder bodyBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressedBodies = new LongAdder();
+    private final LongAdder offloadedBodies = new LongAdder();
+    private final LongAdder offloadedBytes = new LongAdder();
+    private final LongAdder objectsFetched = new LongAdder();
+
+    /**
+     * Compression only; no body is ever offloaded to S3
+     *
+     * @param compressThreshold size in bytes above which a body is compressed
+     */
+    public NoteBodyStore(int compressThreshold) {
+        this(compressThreshold, Integer.MAX_VALUE, null, null, null);
+    }
+
+    /**
+     * @param compressThreshold size in bytes above which a body is compressed
+     * @param offloadThreshold  size in bytes above which a body is stored in S3 instead
+     * @param s3Client          client used to store and fetch offloaded bodies
+     * @param bucket            bucket holding the offloaded bodies
+     * @param keyPrefix         prefix of the object keys, e.g. "notes/"
+     */
+    public NoteBodyStore(int compressThreshold, int offloadThreshold, S3Client s3Client, String bucket, String keyPrefix) {
+        if (offloadThreshold < compressThreshold) {
+            throw new IllegalArgumentException("offloadThreshold must not be below compressThreshold");
+        }
+        this.compressThreshold = compressThreshold;
+        this.offloadThreshold = offloadThreshold;
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+        this.fetchExecutor = s3Client == null ? null : Executors.newFixedThreadPool(FETCH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "note-body-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the item as it should be written to the table. Large bodies are compressed or
+     * uploaded to S3 and a copy of the item referring to them is returned; items with a short body
+     * are returned unchanged.
+     *
+     * @throws software.amazon.awssdk.services.s3.model.S3Exception if the body cannot be uploaded
+     */
+    public NotesItem prepare(NotesItem item) {
+        if (item == null || item.getNotes() == null) {
+            return item;
+        }
+        byte[] body = item.getNotes().getBytes(StandardCharsets.UTF_8);
+        bodyBytes.add(body.length);
+
+        if (body.length > offloadThreshold && s3Client != null) {
+            String objectKey = objectKey(item);
+            s3Client.putObject(request -> request.bucket(bucket).key(objectKey).contentType("text/plain; charset=utf-8"),
+                    RequestBody.fromBytes(body));
+            NotesItem stored = new NotesItem(item.getUserId(), item.getNoteId(), null);
+            stored.setNotesRef(objectKey);
+            storedBytes.add(objectKey.length());
+            offloadedBodies.increment();
+            offloadedBytes.add(body.length);
+            return stored;
+        }
+        if (body.length > compressThreshold) {
+            byte[] compressed = deflate(body);
+            // Text which does not compress is left as it is
+            if (compressed.length < body.length) {
+                NotesItem stored = new NotesItem(item.getUserId(), item.getNoteId(), null);
+                stored.setCompressedNotes(SdkBytes.fromByteArrayUnsafe(compressed));
+                storedBytes.add(compressed.length);
+                compressedBodies.increment();
+                return stored;
+            }
+        }
+        storedBytes.add(body.length);
+        return item;
+    }
+
+    /**
+     * Non-blocking variant of {@link #prepare(NotesItem)}. A body which has to be uploaded to S3 is
+     * uploaded on the store's own threads; any other item is prepared on the calling thread.
+     */
+    public CompletableFuture<NotesItem> prepareAsync(NotesItem item) {
+        if (s3Client != null && item != null && item.getNotes() != null
+                && item.getNotes().getBytes(StandardCharsets.UTF_8).length > offloadThreshold) {
+            return CompletableFuture.supplyAsync(() -> prepare(item), fetchExecutor);
+        }
+        try {
+            return CompletableFuture.completedFuture(prepare(item));
+        } catch (RuntimeException ex) {
+            CompletableFuture<NotesItem> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    /**
+     * Restores the Notes text of a single item read from the table
+     */
+    public NotesItem restore(NotesItem item) {
+        if (item != null) {
+            restore(Collections.singletonList(item));
+        }
+        return item;
+    }
+
+    /**
+     * Restores the Notes text of the items in place. Compressed bodies are inflated on the calling
+     * thread while bodies kept in S3 are downloaded in parallel. Null entries, as returned by
+     * getItems for missing keys, are skipped.
+     *
+     * @return the same list
+     * @throws software.amazon.awssdk.services.s3.model.S3Exception if an offloaded body cannot be read
+     */
+    public List<NotesItem> restore(List<NotesItem> items) {
+        try {
+            startRestore(items).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        return items;
+    }
+
+    /**
+     * Non-blocking variant of {@link #restore(List)}, completing once every offloaded body has been
+     * downloaded
+     */
+    public CompletableFuture<List<NotesItem>> restoreAsync(List<NotesItem> items) {
+        try {
+            return startRestore(items).thenApply(done -> items);
+        } catch (RuntimeException ex) {
+            CompletableFuture<List<NotesItem>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    /**
+     * Inflates compressed bodies in place and starts the downloads of offloaded ones
+     */
+    private CompletableFuture<Void> startRestore(List<NotesItem> items) {
+        List<CompletableFuture<Void>> fetches = new ArrayList<>();
+        for (NotesItem item : items) {
+            if (item == null) {
+                continue;
+            }
+            if (item.getCompressedNotes() != null) {
+                item.setNotes(new String(inflate(item.getCompressedNotes().asByteArrayUnsafe()), StandardCharsets.UTF_8));
+                item.setCompressedNotes(null);
+                NotesItemCodec.foldAppended(item);
+            } else if (item.getNotesRef() != null && s3Client != null) {
+                fetches.add(CompletableFuture.runAsync(() -> fetch(item), fetchExecutor));
+            }
+        }
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private void fetch(NotesItem item) {
+        ResponseBytes<GetObjectResponse> object = s3Client.getObjectAsBytes(
+                request -> request.bucket(bucket).key(item.getNotesRef()));
+        item.setNotes(object.asUtf8String());
+        item.setNotesRef(null);
+        NotesItemCodec.foldAppended(item);
+        objectsFetched.increment();
+    }
+
+    private String objectKey(NotesItem item) {
+        try {
+            return keyPrefix + URLEncoder.encode(item.getUserId(), StandardCharsets.UTF_8.name()) + "/" + item.getNoteId();
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated compressed note body");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt compressed note body", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Size of the note bodies passed to prepare, in UTF-8 bytes
+     */
+    public long getBodyBytes() {
+        return bodyBytes.sum();
+    }
+
+    /**
+     * Bytes written to the table for those bodies, counting the object key of offloaded bodies
+     */
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * Bytes kept out of the table by compression and offloading
+     */
+    public long getBytesSaved() {
+        return bodyBytes.sum() - storedBytes.sum();
+    }
+
+    public long getCompressedBodies() {
+        return compressedBodies.sum();
+    }
+
+    public long getOffloadedBodies() {
+        return offloadedBodies.sum();
+    }
+
+    public long getOffloadedBytes() {
+        return offloadedBytes.sum();
+    }
+
+    public long getObjectsFetched() {
+        return objectsFetched.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NoteBodyStore [Body=%d bytes, Stored=%d bytes, Saved=%d bytes, Compressed=%d, Offloaded=%d (%d bytes), Fetched=%d]",
+                getBodyBytes(), getStoredBytes(), getBytesSaved(), getCompressedBodies(), getOffloadedBodies(),
+                getOffloadedBytes(), getObjectsFetched());
+    }
+}
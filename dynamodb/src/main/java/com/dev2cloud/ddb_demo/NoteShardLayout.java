@@ -0,0 +1,172 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Opt-in key layout that spreads the notes of a single user over several partition keys so a
+ * prolific user is not limited by the throughput of one partition. A note is stored under the
+ * partition key {@code userId#k}, where k is derived from the NoteId, so a note can still be read
+ * directly while a query for the user has to gather the results of every shard.
+ * <p>
+ * The '#' separator may not appear in a user ID: "a#1" could otherwise be both shard 1 of user
+ * "a" and the unsharded key of user "a#1".
+ * <p>
+ * Shards are queried on a small shared pool; when it is busy the calling thread runs the query
+ * itself, so the number of shard queries in flight stays bounded however many callers there are.
+ */
+public class NoteShardLayout {
+    private static final char SEPARATOR = '#';
+    private static final int SCATTER_THREADS = 16;
+    private static final ThreadPoolExecutor SCATTER_EXECUTOR = new ThreadPoolExecutor(
+            SCATTER_THREADS, SCATTER_THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(SCATTER_THREADS * 4),
+            runnable -> {
+                Thread thread = new Thread(runnable, "notes-shard-query");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    static {
+        SCATTER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final int shards;
+
+    public NoteShardLayout(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        this.shards = shards;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * The partition key the note is stored under
+     *
+     * @throws IllegalArgumentException if the user ID contains the separator
+     */
+    public String shardKey(String userId, int noteId) {
+        return checked(userId) + SEPARATOR + Math.floorMod(noteId, shards);
+    }
+
+    /**
+     * Every partition key holding notes of the user
+     *
+     * @throws IllegalArgumentException if the user ID contains the separator
+     */
+    public List<String> shardKeys(String userId) {
+        checked(userId);
+        List<String> keys = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            keys.add(userId + SEPARATOR + shard);
+        }
+        return keys;
+    }
+
+    private static String checked(String userId) {
+        if (userId.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("User ID " + userId + " contains '" + SEPARATOR + "' and cannot be sharded");
+        }
+        return userId;
+    }
+
+    /**
+     * Strips the shard suffix from a stored partition key
+     */
+    public static String logicalUserId(String shardKey) {
+        int separator = shardKey.lastIndexOf(SEPARATOR);
+        return separator < 0 ? shardKey : shardKey.substring(0, separator);
+    }
+
+    /**
+     * A copy of the note stored under its sharded partition key
+     */
+    public NotesItem toSharded(NotesItem item) {
+        NotesItem sharded = new NotesItem(shardKey(item.getUserId(), item.getNoteId()), item.getNoteId(), item.getNotes());
+        sharded.setCompressedNotes(item.getCompressedNotes());
+        sharded.setNotesRef(item.getNotesRef());
+        sharded.setAppendedNotes(item.getAppendedNotes());
+        return sharded;
+    }
+
+    public static NotesItem toLogical(NotesItem item) {
+        if (item != null && item.getUserId() != null) {
+            item.setUserId(logicalUserId(item.getUserId()));
+        }
+        return item;
+    }
+
+    /**
+     * Runs the query for every shard of the user in parallel and merges the results, each of which
+     * is already ordered by NoteId, into a single list ordered by NoteId.
+     *
+     * @param shardQuery query returning the notes stored under one partition key, which must throw
+     *                   rather than return a partial result when a shard cannot be read
+     * @throws RuntimeException the failure of the first shard that could not be read
+     */
+    public List<NotesItem> scatterGather(String userId, Function<String, List<NotesItem>> shardQuery) {
+        List<Future<List<NotesItem>>> futures = new ArrayList<>(shards);
+        for (String shardKey : shardKeys(userId)) {
+            futures.add(SCATTER_EXECUTOR.submit(() -> shardQuery.apply(shardKey)));
+        }
+        List<List<NotesItem>> shardResults = new ArrayList<>(shards);
+        try {
+            for (Future<List<NotesItem>> future : futures) {
+                shardResults.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the shards of " + userId, ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            for (Future<List<NotesItem>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return merge(shardResults);
+    }
+
+    /**
+     * K-way merge of lists that are each sorted by NoteId
+     */
+    static List<NotesItem> merge(List<List<NotesItem>> sortedLists) {
+        int total = 0;
+        for (List<NotesItem> list : sortedLists) {
+            total += list.size();
+        }
+        List<NotesItem> merged = new ArrayList<>(total);
+        // Each queue entry is {list index, position within that list}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                Comparator.comparingInt(head -> sortedLists.get(head[0]).get(head[1]).getNoteId()));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<NotesItem> list = sortedLists.get(head[0]);
+            merged.add(toLogical(list.get(head[1])));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
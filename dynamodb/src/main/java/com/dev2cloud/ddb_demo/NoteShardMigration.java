@@ -0,0 +1,85 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves the notes of a user from the single UserId partition key to the sharded layout. Notes are
+ * read page by page, copied to their sharded partition keys with batched writes, and only the
+ * originals whose copy was written are deleted. Running the migration again picks up anything left
+ * behind by an earlier, failed run.
+ * <p>
+ * Items are copied as raw attribute maps with only the UserId rewritten, so every attribute is
+ * kept as it is stored, including compressed or offloaded bodies and the attributes maintained by
+ * partial updates.
+ * <p>
+ * Usage: NoteShardMigration shards userId [userId...]
+ */
+public class NoteShardMigration {
+    private final NotesRepository repository;
+    private final NoteShardLayout layout;
+
+    public NoteShardMigration(NotesRepository repository, NoteShardLayout layout) {
+        this.repository = repository;
+        this.layout = layout;
+    }
+
+    /**
+     * @return the number of notes moved
+     * @throws IllegalArgumentException if the user ID cannot be sharded
+     */
+    public long migrateUser(String userId) {
+        layout.shardKey(userId, 0);
+        AtomicLong moved = new AtomicLong();
+        repository.forEachRawPage(userId, page -> moved.addAndGet(migratePage(page)));
+        return moved.get();
+    }
+
+    private long migratePage(List<Map<String, AttributeValue>> originals) {
+        List<Map<String, AttributeValue>> copies = new ArrayList<>(originals.size());
+        for (Map<String, AttributeValue> original : originals) {
+            NotesKey key = NotesItemCodec.keyOf(original);
+            Map<String, AttributeValue> copy = new HashMap<>(original);
+            copy.put(NotesItemCodec.USER_ID, AttributeValue.fromS(layout.shardKey(key.getUserId(), key.getNoteId())));
+            copies.add(copy);
+        }
+        BatchWriteReport copied = repository.putRawItems(copies.iterator());
+        Set<Integer> failed = new HashSet<>();
+        for (NotesItem item : copied.getFailedItems()) {
+            failed.add(item.getNoteId());
+        }
+
+        List<NotesKey> toDelete = new ArrayList<>(originals.size());
+        for (Map<String, AttributeValue> original : originals) {
+            NotesKey key = NotesItemCodec.keyOf(original);
+            if (!failed.contains(key.getNoteId())) {
+                toDelete.add(key);
+            }
+        }
+        BatchWriteReport deleted = repository.deleteItems(toDelete);
+        if (!failed.isEmpty() || !deleted.getFailedItems().isEmpty()) {
+            System.err.println("Migration incomplete: " + failed.size() + " notes not copied, "
+                    + deleted.getFailedItems().size() + " originals not deleted; run the migration again");
+        }
+        return toDelete.size() - deleted.getFailedItems().size();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: NoteShardMigration shards userId [userId...]");
+            System.exit(1);
+        }
+        NoteShardMigration migration = new NoteShardMigration(new NotesRepository(),
+                new NoteShardLayout(Integer.parseInt(args[0])));
+        for (int i = 1; i < args.length; i++) {
+            System.out.println("Moved " + migration.migrateUser(args[i]) + " notes of " + args[i]);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.dev2cloud.ddb_demo;
+
+import org.reactivestreams.Publisher;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link NotesRepository} built on the DynamoDbAsyncClient. Every
+ * operation returns immediately with a CompletableFuture (or a Publisher for queries) and the
+ * network I/O is performed on the Netty event loop, so no caller thread is parked waiting on DynamoDB.
+ * <p>
+ * The number of requests handed to the client at once is capped; requests beyond the cap are
+ * queued by the repository instead of piling up in the connection pool, and fail with a
+ * RejectedExecutionException once the queue is full too.
+ * <p>
+ * With a {@link NoteBodyStore} attached, large bodies are compressed or offloaded exactly as the
+ * synchronous repositories store them, and S3 transfers run on the body store's threads rather
+ * than on the event loop.
+ */
+public class NotesAsyncRepository {
+    private static final String TABLE_NAME = "Notes";
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final InFlightLimiter limiter;
+    private NoteBodyStore bodyStore;
+
+    /**
+     * Constructor - Creates an async client using the default settings
+     */
+    public NotesAsyncRepository() {
+        this(new AsyncClientSettings());
+    }
+
+    /**
+     * Constructor - Creates an async client whose Netty event loop and connection pool are sized
+     * from the settings
+     */
+    public NotesAsyncRepository(AsyncClientSettings settings) {
+        this(DynamoDbAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .eventLoopGroupBuilder(SdkEventLoopGroup.builder()
+                                .numberOfThreads(settings.getEventLoopThreads()))
+                        .maxConcurrency(settings.getMaxConcurrency())
+                        .maxPendingConnectionAcquires(settings.getMaxPendingConnectionAcquires())
+                        .connectionAcquisitionTimeout(settings.getConnectionAcquisitionTimeout()))
+                .build(), settings.getMaxInFlight(), settings.getMaxQueued());
+    }
+
+    /**
+     * Constructor - Uses an async client configured by the caller, e.g. one pointing at DynamoDB Local
+     */
+    public NotesAsyncRepository(DynamoDbAsyncClient dynamoDbAsyncClient, int maxInFlight) {
+        this(dynamoDbAsyncClient, maxInFlight, new AsyncClientSettings().getMaxQueued());
+    }
+
+    /**
+     * Constructor - Uses an async client configured by the caller, with the number of requests
+     * that may wait for the in-flight limit
+     */
+    public NotesAsyncRepository(DynamoDbAsyncClient dynamoDbAsyncClient, int maxInFlight, int maxQueued) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.limiter = new InFlightLimiter(maxInFlight, maxQueued);
+    }
+
+    /**
+     * Store large note bodies compressed or in S3; pass null to always store the plain text
+     */
+    public void setBodyStore(NoteBodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+    }
+
+    public NoteBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    /**
+     * Put an item into the DynamoDb table
+     */
+    public CompletableFuture<Void> putItem(NotesItem item) {
+        return stored(item).thenCompose(storedItem -> {
+            PutItemRequest request = PutItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .item(NotesItemCodec.toItem(storedItem))
+                    .build();
+            return limiter.submit(() -> dynamoDbAsyncClient.putItem(request));
+        }).thenApply(response -> null);
+    }
+
+    /**
+     * Get an item given the userId and NoteId values
+     *
+     * @return a future completing with the item, or with null if it does not exist
+     */
+    public CompletableFuture<NotesItem> getItem(String userId, Integer noteId) {
+        GetItemRequest request = GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(NotesItemCodec.toKey(userId, noteId))
+                .build();
+        return limiter.submit(() -> dynamoDbAsyncClient.getItem(request))
+                .thenCompose(response -> response.hasItem()
+                        ? decode(Collections.singletonList(response.item())).thenApply(items -> items.get(0))
+                        : CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Update the notes of an existing or new item. The whole body is replaced: text appended with
+     * a partial update and any compressed or offloaded body are removed along with the old text.
+     */
+    public CompletableFuture<Void> updateItem(NotesItem item) {
+        return stored(item).thenCompose(storedItem -> {
+            UpdateItemRequest request = NotesUpdate.of(item.getUserId(), item.getNoteId())
+                    .replaceBody(storedItem)
+                    .toRequest(TABLE_NAME);
+            return limiter.submit(() -> dynamoDbAsyncClient.updateItem(request));
+        }).thenApply(response -> null);
+    }
+
+    /**
+     * Query all the notes for a user. Pages are only requested as the subscriber signals demand,
+     * so a slow subscriber applies backpressure all the way to DynamoDB, and each page request
+     * counts against the in-flight limit like any other request.
+     */
+    public Publisher<NotesItem> queryNotes(String userId) {
+        Map<String, AttributeValue> attrValues = new HashMap<>();
+        attrValues.put(":v_UserId", AttributeValue.builder().s(userId).build());
+        QueryRequest request = QueryRequest.builder()
+                .tableName(TABLE_NAME)
+                .keyConditionExpression("UserId = :v_UserId")
+                .expressionAttributeValues(attrValues)
+                .build();
+        return new NotesQueryPublisher(page -> limiter.submit(() -> dynamoDbAsyncClient.query(page)), request,
+                this::decode);
+    }
+
+    private CompletableFuture<NotesItem> stored(NotesItem item) {
+        return bodyStore == null ? CompletableFuture.completedFuture(item) : bodyStore.prepareAsync(item);
+    }
+
+    /**
+     * Maps a page of items, restoring bodies held elsewhere without blocking the event loop
+     */
+    private CompletableFuture<List<NotesItem>> decode(List<Map<String, AttributeValue>> items) {
+        List<NotesItem> notes = NotesQueryIterator.decode(items);
+        return bodyStore == null ? CompletableFuture.completedFuture(notes) : bodyStore.restoreAsync(notes);
+    }
+
+    /**
+     * Number of requests currently executing and queued behind the in-flight limit
+     */
+    public int pendingRequests() {
+        return limiter.inFlight() + limiter.queued();
+    }
+
+    public void close() {
+        dynamoDbAsyncClient.close();
+    }
+}
@@ -0,0 +1,230 @@
+package com.dev2cloud.ddb_demo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of notes, keyed by {@link NotesKey}, which can be attached to either
+ * repository. Entries are evicted least-recently-used once the cache is full and expire after a
+ * fixed time to live. Keys that were not found in the table are remembered as well (with their own,
+ * usually shorter, time to live) so repeated lookups of missing notes do not reach DynamoDB.
+ * <p>
+ * The cache is split into independently locked segments to reduce contention between threads.
+ * The loader runs outside the lock, so a write made while a note is being loaded wins over the
+ * value the loader returns: {@link #put} and {@link #invalidate} cancel the pending load of their
+ * key and its result is then returned but not cached. Notes are copied on the way in and out, so
+ * callers cannot change what other callers are served.
+ */
+public class NotesCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxEntries  upper bound on the number of cached notes and misses
+     * @param ttl         how long a cached note stays valid
+     * @param negativeTtl how long a miss is remembered, or zero to disable negative caching
+     */
+    public NotesCache(int maxEntries, Duration ttl, Duration negativeTtl) {
+        int perSegment = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+    }
+
+    /**
+     * Returns the cached note for the key, calling the loader on a miss. A null result from the
+     * loader is cached as a miss; an exception is propagated and nothing is cached.
+     */
+    public NotesItem get(NotesKey key, Function<NotesKey, NotesItem> loader) {
+        Segment segment = segmentFor(key);
+        long now = System.nanoTime();
+        Object load = new Object();
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - now > 0) {
+                    if (entry.value == null) {
+                        negativeHits.increment();
+                    } else {
+                        hits.increment();
+                    }
+                    return copy(entry.value);
+                }
+                segment.remove(key);
+                expirations.increment();
+            }
+            segment.loads.put(key, load);
+        }
+        misses.increment();
+        NotesItem loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException ex) {
+            synchronized (segment) {
+                segment.loads.remove(key, load);
+            }
+            throw ex;
+        }
+        synchronized (segment) {
+            // Only cache the result if no write or invalidation of the key happened meanwhile
+            if (segment.loads.remove(key, load)) {
+                if (loaded != null) {
+                    segment.put(key, new Entry(copy(loaded), System.nanoTime() + ttlNanos));
+                } else if (negativeTtlNanos > 0) {
+                    segment.put(key, new Entry(null, System.nanoTime() + negativeTtlNanos));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Write-through of a note that has just been stored in the table
+     */
+    public void put(NotesItem item) {
+        NotesKey key = NotesKey.of(item);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.loads.remove(key);
+            segment.put(key, new Entry(copy(item), System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public void invalidate(NotesKey key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.loads.remove(key);
+            segment.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.loads.clear();
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Lookups answered by a remembered miss
+     */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Entries removed to make room for new ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public double getHitRatio() {
+        long found = hits.sum() + negativeHits.sum();
+        long total = found + misses.sum();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NotesCache [Size=%d, Hits=%d, NegativeHits=%d, Misses=%d, Evictions=%d, Expirations=%d, HitRatio=%.3f]",
+                size(), getHits(), getNegativeHits(), getMisses(), getEvictions(), getExpirations(), getHitRatio());
+    }
+
+    private static NotesItem copy(NotesItem item) {
+        if (item == null) {
+            return null;
+        }
+        NotesItem copy = new NotesItem(item.getUserId(), item.getNoteId(), item.getNotes());
+        copy.setCompressedNotes(item.getCompressedNotes());
+        copy.setNotesRef(item.getNotesRef());
+        if (item.getAppendedNotes() != null) {
+            copy.setAppendedNotes(new ArrayList<>(item.getAppendedNotes()));
+        }
+        return copy;
+    }
+
+    private Segment segmentFor(NotesKey key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+        final NotesItem value;
+        final long expiresAt;
+
+        Entry(NotesItem value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Access ordered map evicting the least recently used entry once full, together with the
+     * loads of its keys which are in progress
+     */
+    private final class Segment extends LinkedHashMap<NotesKey, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        final Map<NotesKey, Object> loads = new HashMap<>();
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<NotesKey, Entry> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            if (eldest.getValue().expiresAt - System.nanoTime() <= 0) {
+                expirations.increment();
+            } else {
+                evictions.increment();
+            }
+            return true;
+        }
+    }
+}
@@ -1,62 +1,446 @@
 package com.dev2cloud.ddb_demo;
 
+import com.dev2cloud.ddb_demo.CapacityRateLimiter.Capacity;
+import software.amazon.awssdk.core.retry.RetryPolicy;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public class NotesEnhancedRepository {
     private static final String TABLE_NAME = "Notes";
+    private static final int DEFAULT_BATCH_WRITERS = 4;
+    private static final int DEFAULT_BATCH_READERS = 4;
+    // The enhanced client does not report consumed capacity here, so the estimates are used as is
+    private static final double WRITE_UNITS_PER_ITEM = 1;
+    private static final double READ_UNITS_PER_ITEM = 0.5;
+    // Kept below the 50 connections of the default HTTP client pool
+    private static final int DEFAULT_FAN_OUT_CONCURRENCY = 32;
+    private static final Duration DEFAULT_FAN_OUT_TIMEOUT = Duration.ofSeconds(5);
 
+    private final DynamoDbClient dynamoDbClient;
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<NotesItem> notesTable ;
+    private NotesCache cache;
+    private NoteBodyStore bodyStore;
+    private NotesIndex searchIndex;
+    private CapacityRateLimiter rateLimiter;
+    private ThrottleRetryPolicy retryPolicy = ThrottleRetryPolicy.standard();
+    private final AtomicReference<UserFanOut> fanOut = new AtomicReference<>();
+    // Pages are reserved at what recent pages returned, starting from a full page
+    private final PageCapacityEstimate queryPages = new PageCapacityEstimate(PageCapacityEstimate.MAX_PAGE_READ_UNITS);
 
     public NotesEnhancedRepository() {
-        enhancedClient = DynamoDbEnhancedClient.create();
-        notesTable = enhancedClient.table("Notes", TableSchema.fromBean(NotesItem.class));
+        // The standard client is kept for partial updates, which the enhanced client cannot express.
+        // SDK retries are disabled as the retry policy replaces them.
+        dynamoDbClient = DynamoDbClient.builder()
+                .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none()))
+                .build();
+        enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamoDbClient).build();
+        notesTable = enhancedClient.table("Notes", NotesItemCodec.TABLE_SCHEMA);
+    }
+
+    /**
+     * Constructor - Creates a client which reports to the metrics: call latencies through the SDK
+     * metrics API and, as the enhanced client does not return it for most operations, the
+     * ConsumedCapacity of every call through {@link NotesMetrics#consumedCapacityInterceptor()}
+     */
+    public NotesEnhancedRepository(NotesMetrics metrics) {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none())
+                        .addMetricPublisher(metrics)
+                        .addExecutionInterceptor(metrics.consumedCapacityInterceptor()))
+                .build());
+    }
+
+    /**
+     * Constructor - Wraps a standard client configured by the caller, e.g. one pointing at DynamoDB Local.
+     * The client should have SDK retries disabled, see {@link ThrottleRetryPolicy}.
+     */
+    public NotesEnhancedRepository(DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamoDbClient).build();
+        notesTable = enhancedClient.table(TABLE_NAME, NotesItemCodec.TABLE_SCHEMA);
+    }
+
+    /**
+     * Attach a read-through cache for getItem. Writes made through this repository update or
+     * invalidate the cached entries; pass null to disable caching.
+     */
+    public void setCache(NotesCache cache) {
+        this.cache = cache;
+    }
+
+    public NotesCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Store large note bodies compressed or in S3; pass null to always store the plain text
+     */
+    public void setBodyStore(NoteBodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+    }
+
+    public NoteBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    /**
+     * Keep a search index up to date with every note written through this repository; pass null
+     * to stop updating it
+     */
+    public void setSearchIndex(NotesIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public NotesIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Attach a rate limiter shared by every operation of this repository; pass null to disable it
+     */
+    public void setRateLimiter(CapacityRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public CapacityRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Replace the policy used to retry throttled and failed calls
+     */
+    public void setRetryPolicy(ThrottleRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
     }
 
     /**
      * Put a NotesItem into the DynamoDb table using the enhanced client
      */
     public void putItem(NotesItem notesItem) {
-        notesTable.putItem(notesItem);
+        try {
+            NotesItem storedItem = stored(notesItem);
+            call(Capacity.WRITE, WRITE_UNITS_PER_ITEM, () -> {
+                notesTable.putItem(storedItem);
+                return storedItem;
+            });
+        } catch (RuntimeException ex) {
+            BatchWrites.invalidateCached(cache, Collections.singletonList(notesItem));
+            throw ex;
+        }
+        if (cache != null) {
+            cache.put(notesItem);
+        }
+        if (searchIndex != null) {
+            searchIndex.index(notesItem);
+        }
+    }
+
+    /**
+     * Bulk load notes using the enhanced client batchWriteItem, 25 items per request, spread
+     * across the default number of concurrent writers.
+     */
+    public BatchWriteReport putItems(Collection<NotesItem> items) {
+        return putItems(items.iterator(), DEFAULT_BATCH_WRITERS);
+    }
+
+    /**
+     * Streaming variant of {@link #putItems(Collection)} which only holds a bounded number of
+     * batches in memory.
+     */
+    public BatchWriteReport putItems(Iterator<NotesItem> items, int writers) {
+        return ParallelBatchWriter.write(PreparedNote.wrap(items), writers, retryPolicy, PreparedNote::key,
+                PreparedNote::original, this::writeBatch);
+    }
+
+    private List<PreparedNote> writeBatch(List<PreparedNote> notes) {
+        List<NotesItem> batch = PreparedNote.originals(notes);
+        WriteBatch.Builder<NotesItem> writeBatch = WriteBatch.builder(NotesItem.class)
+                .mappedTableResource(notesTable);
+        for (PreparedNote note : notes) {
+            writeBatch.addPutItem(note.stored(this::stored));
+        }
+        BatchWriteResult result;
+        try {
+            BatchWriteItemEnhancedRequest request = BatchWriteItemEnhancedRequest.builder()
+                    .addWriteBatch(writeBatch.build())
+                    .build();
+            result = callOnce(Capacity.WRITE, batch.size() * WRITE_UNITS_PER_ITEM, () -> enhancedClient.batchWriteItem(request));
+        } finally {
+            BatchWrites.invalidateCached(cache, batch);
+        }
+        List<NotesItem> unprocessed = result.unprocessedPutItemsForTable(notesTable);
+        if (!unprocessed.isEmpty()) {
+            onPartialBatch(Capacity.WRITE);
+        }
+        BatchWrites.indexWritten(searchIndex, batch, unprocessed, false);
+        return PreparedNote.unprocessed(notes, unprocessed);
+    }
+
+    /**
+     * Creates a write-behind buffer which coalesces repeated writes to the same note and flushes
+     * them through {@link #putItems(Collection)}. The buffer must be closed to flush the last writes.
+     *
+     * @param window      maximum time a write is held before being flushed
+     * @param maxBuffered number of distinct notes that triggers an early flush
+     */
+    public NotesWriteBehindBuffer writeBehind(Duration window, int maxBuffered) {
+        return new NotesWriteBehindBuffer(this::putItems, window, maxBuffered);
     }
 
     /**
      * Update a NotesItem in the DynamoDb table
      */
     public void updateItem(NotesItem notesItem) {
-        notesTable.updateItem(notesItem);
+        NotesItem updated;
+        try {
+            NotesItem storedItem = stored(notesItem);
+            updated = restored(call(Capacity.WRITE, WRITE_UNITS_PER_ITEM, () -> notesTable.updateItem(storedItem)));
+        } catch (RuntimeException ex) {
+            BatchWrites.invalidateCached(cache, Collections.singletonList(notesItem));
+            throw ex;
+        }
+        if (cache != null) {
+            cache.put(updated);
+        }
+        if (searchIndex != null) {
+            searchIndex.index(updated);
+        }
+    }
 
+    /**
+     * Apply a partial update to a note. Unlike {@link #updateItem(NotesItem)}, which sends the whole
+     * bean, only the attributes changed by the update expression are sent.
+     *
+     * @return the attributes selected with {@link NotesUpdate#returnValues}, empty when none were requested
+     * @throws software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException if a
+     * condition of the update does not hold
+     */
+    public Map<String, AttributeValue> updateItem(NotesUpdate update) {
+        UpdateItemRequest request = update.toRequest(TABLE_NAME);
+        try {
+            Map<String, AttributeValue> attributes = call(Capacity.WRITE, WRITE_UNITS_PER_ITEM,
+                    () -> dynamoDbClient.updateItem(request), update.isIdempotent()).attributes();
+            if (searchIndex != null) {
+                update.applyTo(searchIndex);
+            }
+            return attributes;
+        } finally {
+            if (cache != null) {
+                cache.invalidate(new NotesKey(update.getUserId(), update.getNoteId()));
+            }
+        }
     }
 
     /**
      * Get a notesItem from the DynamoDb table using the enhanced client.
      */
     public NotesItem getItem(String userId, Integer noteId) {
+        if (cache != null) {
+            return cache.get(new NotesKey(userId, noteId), notesKey -> fetchItem(notesKey.getUserId(), notesKey.getNoteId()));
+        }
+        return fetchItem(userId, noteId);
+    }
+
+    private NotesItem fetchItem(String userId, Integer noteId) {
         Key key = Key.builder().partitionValue(userId).sortValue(noteId).build();
-        return notesTable.getItem(key);
+        return restored(call(Capacity.READ, READ_UNITS_PER_ITEM, () -> notesTable.getItem(key)));
     }
 
     /**
-     * Find a list of notes for userId using the enhanced client.
+     * Get many notesItems at once using the enhanced client batchGetItem, issuing the 100-key
+     * requests in parallel.
      *
+     * @return the items in the same order as the keys, with null for each key that was not found,
+     * and the keys still unprocessed after the last retry
+     */
+    public BatchGetReport getItems(List<NotesKey> keys) {
+        return ParallelBatchReader.read(keys, DEFAULT_BATCH_READERS, retryPolicy, this::readBatch);
+    }
+
+    private List<NotesKey> readBatch(List<NotesKey> batch, Map<NotesKey, NotesItem> results) {
+        ReadBatch.Builder<NotesItem> readBatch = ReadBatch.builder(NotesItem.class)
+                .mappedTableResource(notesTable);
+        for (NotesKey key : batch) {
+            readBatch.addGetItem(Key.builder().partitionValue(key.getUserId()).sortValue(key.getNoteId()).build());
+        }
+        // Only the first page is read; the remaining keys are resubmitted by the caller with backoff
+        // rather than immediately by the page iterator
+        BatchGetItemEnhancedRequest request = BatchGetItemEnhancedRequest.builder()
+                .addReadBatch(readBatch.build())
+                .build();
+        BatchGetResultPage page = callOnce(Capacity.READ, batch.size() * READ_UNITS_PER_ITEM,
+                () -> enhancedClient.batchGetItem(request).iterator().next());
+
+        for (NotesItem item : restored(page.resultsForTable(notesTable))) {
+            results.put(NotesKey.of(item), item);
+        }
+        List<Key> unprocessed = page.unprocessedKeysForTable(notesTable);
+        if (!unprocessed.isEmpty()) {
+            onPartialBatch(Capacity.READ);
+        }
+        List<NotesKey> remaining = new ArrayList<>(unprocessed.size());
+        for (Key key : unprocessed) {
+            remaining.add(new NotesKey(key.partitionKeyValue().s(),
+                    Integer.parseInt(key.sortKeyValue().get().n())));
+        }
+        return remaining;
+    }
+
+    /**
+     * Find a list of notes for userId using the enhanced client, one page at a time
      */
     public List<NotesItem> findNotesForUser(String userId) {
-        //List<NotesItem> resultList = new ArrayList<>();
         QueryConditional keyEqual = QueryConditional.keyEqualTo(b -> b.partitionValue(userId));
-        QueryEnhancedRequest tableQuery = QueryEnhancedRequest.builder()
-                .queryConditional(keyEqual).build();
+        List<NotesItem> resultList = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryEnhancedRequest tableQuery = QueryEnhancedRequest.builder()
+                    .queryConditional(keyEqual)
+                    .exclusiveStartKey(startKey)
+                    .build();
+            Page<NotesItem> page = call(Capacity.READ, queryPages.get(),
+                    () -> notesTable.query(tableQuery).iterator().next());
+            // Pages do not carry their ConsumedCapacity, so the estimate follows the items returned
+            queryPages.record(Math.max(READ_UNITS_PER_ITEM, page.items().size() * READ_UNITS_PER_ITEM));
+            resultList.addAll(page.items());
+            startKey = page.lastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return restored(resultList);
+    }
+
+    /**
+     * Find the notes of many users at once, e.g. for a dashboard, with the default per-user timeout
+     * of 5 seconds
+     *
+     * @see #findNotesForUsers(Collection, Duration)
+     */
+    public MultiUserNotes findNotesForUsers(Collection<String> userIds) {
+        return findNotesForUsers(userIds, DEFAULT_FAN_OUT_TIMEOUT);
+    }
+
+    /**
+     * Find the notes of many users at once. The per-user queries run concurrently, at most
+     * {@link #setFanOutConcurrency(int)} at a time across all callers of this repository, so loading
+     * N users takes about N / concurrency round-trips instead of N. A user whose query fails or
+     * takes longer than the timeout is reported in {@link MultiUserNotes#getFailures()} while the
+     * notes of the other users are still returned.
+     *
+     * @param perUserTimeout how long the query of a single user may run once it has started
+     */
+    public MultiUserNotes findNotesForUsers(Collection<String> userIds, Duration perUserTimeout) {
+        while (true) {
+            UserFanOut current = fanOut();
+            // Fails only when the pool was just replaced, in which case the new one is used
+            if (current.tryAcquire()) {
+                try {
+                    return current.run(userIds, this::findNotesForUser, perUserTimeout);
+                } finally {
+                    current.release();
+                }
+            }
+        }
+    }
 
-        PageIterable<NotesItem> results =notesTable.query(tableQuery);
-        return results.items().stream().collect(Collectors.toList());
+    /**
+     * Maximum number of user queries run at the same time by {@link #findNotesForUsers}. Values
+     * above the connection pool size of the HTTP client only make queries wait for a connection.
+     * Fan-outs already running finish on the previous pool.
+     */
+    public void setFanOutConcurrency(int maxConcurrency) {
+        UserFanOut previous = fanOut.getAndSet(new UserFanOut(maxConcurrency));
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    private UserFanOut fanOut() {
+        UserFanOut current = fanOut.get();
+        if (current != null) {
+            return current;
+        }
+        UserFanOut created = new UserFanOut(DEFAULT_FAN_OUT_CONCURRENCY);
+        if (fanOut.compareAndSet(null, created)) {
+            return created;
+        }
+        created.retire();
+        return fanOut.get();
     }
 
+    /**
+     * Find the notes of a user whose notes are stored using a {@link NoteShardLayout}. Every shard
+     * is queried in parallel and the results are merged in NoteId order.
+     */
+    public List<NotesItem> findNotesForUser(String userId, NoteShardLayout layout) {
+        return layout.scatterGather(userId, this::findNotesForUser);
+    }
+
+    private NotesItem stored(NotesItem item) {
+        return bodyStore == null ? item : bodyStore.prepare(item);
+    }
+
+    private NotesItem restored(NotesItem item) {
+        if (bodyStore != null) {
+            return bodyStore.restore(item);
+        }
+        return item == null ? null : NotesItemCodec.foldAppended(item);
+    }
+
+    private List<NotesItem> restored(List<NotesItem> items) {
+        if (bodyStore != null) {
+            return bodyStore.restore(items);
+        }
+        for (NotesItem item : items) {
+            NotesItemCodec.foldAppended(item);
+        }
+        return items;
+    }
+
+    /**
+     * Sends a request through the rate limiter and retry policy
+     */
+    private <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request) {
+        return call(capacity, estimatedUnits, request, true);
+    }
+
+    private <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, boolean idempotent) {
+        return retryPolicy.execute(rateLimiter, capacity, estimatedUnits, request, response -> Double.NaN, idempotent);
+    }
+
+    /**
+     * Sends a single attempt of a batch request; the batch loop retries it along with its
+     * unprocessed items
+     */
+    private <T> T callOnce(Capacity capacity, double estimatedUnits, Supplier<T> request) {
+        return retryPolicy.executeOnce(rateLimiter, capacity, estimatedUnits, request, response -> Double.NaN);
+    }
+
+    private void onPartialBatch(Capacity capacity) {
+        if (rateLimiter != null) {
+            rateLimiter.onThrottle(capacity);
+        }
+    }
 }
@@ -0,0 +1,388 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the text of the notes, answering "which notes of this user
+ * contain this word" without reading from DynamoDB.
+ * <p>
+ * Notes are split into lower-cased words of letters and digits. For every word the index keeps,
+ * per user, the sorted NoteIds of the notes containing it, delta and variable-length encoded into
+ * a byte array. A search therefore matches whole words: "dynamodb" finds "DynamoDB is fast" but,
+ * unlike {@code like '%DynamoDB%'}, not "DynamoDBLocal".
+ * <p>
+ * The index is filled with {@link #load(NotesRepository, int, int)} and kept up to date by
+ * attaching it to a repository, which indexes every note it writes. It is safe to use from
+ * several threads.
+ * <p>
+ * The words of every note are kept, so re-indexing a note only touches the postings of words it
+ * gained or lost; the postings of the words it still contains are left as they are.
+ */
+public class NotesIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // word -> userId -> NoteIds
+    private final Map<String, Term> terms = new HashMap<>();
+    // The words of every indexed note, needed to remove them when the note changes
+    private final Map<NotesKey, String[]> noteTerms = new HashMap<>();
+
+    /**
+     * Fills the index from a parallel scan of the whole table
+     *
+     * @return the number of notes indexed
+     */
+    public long load(NotesRepository repository, int totalSegments, int workers) {
+        return repository.scanAll(totalSegments, workers, this::index, null);
+    }
+
+    /**
+     * Adds a note to the index, replacing what was indexed for it before
+     */
+    public void index(NotesItem item) {
+        NotesKey key = NotesKey.of(item);
+        Set<String> words = tokenize(item.getNotes());
+        lock.writeLock().lock();
+        try {
+            String[] previous = noteTerms.get(key);
+            // Words of the previous text which the new text no longer contains
+            Map<String, String> dropped = new HashMap<>();
+            if (previous != null) {
+                for (String term : previous) {
+                    dropped.put(term, term);
+                }
+            }
+            String[] stored = new String[words.size()];
+            int i = 0;
+            for (String term : words) {
+                String kept = dropped.remove(term);
+                stored[i++] = kept != null ? kept : addLocked(term, key);
+            }
+            removeLocked(key, dropped.keySet());
+            noteTerms.put(key, stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the words of text appended to a note which is already indexed
+     */
+    public void append(NotesKey key, String text) {
+        Set<String> words = tokenize(text);
+        lock.writeLock().lock();
+        try {
+            String[] existing = noteTerms.get(key);
+            Set<String> merged = existing == null ? new LinkedHashSet<>() : new LinkedHashSet<>(Arrays.asList(existing));
+            for (String term : words) {
+                if (!merged.contains(term)) {
+                    merged.add(addLocked(term, key));
+                }
+            }
+            noteTerms.put(key, merged.toArray(new String[0]));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(NotesKey key) {
+        lock.writeLock().lock();
+        try {
+            String[] noteWords = noteTerms.remove(key);
+            if (noteWords != null) {
+                removeLocked(key, Arrays.asList(noteWords));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * NoteIds, in ascending order, of the notes of a user containing the word
+     */
+    public int[] search(String userId, String term) {
+        String normalized = term.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Term entry = terms.get(normalized);
+            Postings notes = entry == null ? null : entry.users.get(userId);
+            return notes == null ? new int[0] : notes.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * NoteIds of the notes containing the word, for every user, ordered by UserId
+     */
+    public Map<String, int[]> search(String term) {
+        String normalized = term.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Term entry = terms.get(normalized);
+            if (entry == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, int[]> results = new TreeMap<>();
+            for (Map.Entry<String, Postings> user : entry.users.entrySet()) {
+                results.put(user.getKey(), user.getValue().toArray());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNoteCount() {
+        lock.readLock().lock();
+        try {
+            return noteTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes used by the encoded postings, excluding the maps holding them
+     */
+    public long getPostingsBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Term entry : terms.values()) {
+                for (Postings notes : entry.users.values()) {
+                    bytes += notes.data.length;
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NotesIndex [Notes=%d, Terms=%d, Postings=%d bytes]",
+                getNoteCount(), getTermCount(), getPostingsBytes());
+    }
+
+    /**
+     * Adds the note to the postings of the word and returns the instance of the word held by the
+     * index, so every note refers to the same String
+     */
+    private String addLocked(String term, NotesKey key) {
+        Term entry = terms.computeIfAbsent(term, Term::new);
+        entry.users.computeIfAbsent(key.getUserId(), userId -> new Postings()).add(key.getNoteId());
+        return entry.term;
+    }
+
+    /**
+     * Removes the note from the postings of the words
+     */
+    private void removeLocked(NotesKey key, Collection<String> noteWords) {
+        for (String term : noteWords) {
+            Term entry = terms.get(term);
+            if (entry == null) {
+                continue;
+            }
+            Postings notes = entry.users.get(key.getUserId());
+            if (notes != null && notes.remove(key.getNoteId()) && notes.size == 0) {
+                entry.users.remove(key.getUserId());
+                if (entry.users.isEmpty()) {
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * The users whose notes contain a word, keyed by UserId
+     */
+    private static final class Term {
+        final String term;
+        final Map<String, Postings> users = new HashMap<>();
+
+        Term(String term) {
+            this.term = term;
+        }
+    }
+
+    /**
+     * Sorted NoteIds stored as variable-length encoded gaps. Appending a NoteId larger than the
+     * last one, the usual case when notes are numbered in order, only writes its gap, and removing
+     * a NoteId merges its gap into the next one in place; inserting anywhere else re-encodes the
+     * list.
+     */
+    static final class Postings {
+        private byte[] data = new byte[4];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int noteId) {
+            if (size == 0 || noteId > last) {
+                append(size == 0 ? noteId : noteId - last);
+                last = noteId;
+                size++;
+                return;
+            }
+            int[] noteIds = toArray();
+            int position = Arrays.binarySearch(noteIds, noteId);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            int[] updated = new int[noteIds.length + 1];
+            System.arraycopy(noteIds, 0, updated, 0, insertAt);
+            updated[insertAt] = noteId;
+            System.arraycopy(noteIds, insertAt, updated, insertAt + 1, noteIds.length - insertAt);
+            encode(updated, updated.length);
+        }
+
+        boolean remove(int noteId) {
+            int offset = 0;
+            int value = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int start = offset;
+                int gap = readVarint(offset);
+                offset = varintEnd(offset);
+                value = i == 0 ? gap : value + gap;
+                if (value > noteId) {
+                    return false;
+                }
+                if (value != noteId) {
+                    previous = value;
+                    continue;
+                }
+                if (i == size - 1) {
+                    length = start;
+                    last = previous;
+                } else {
+                    // The next entry now follows the previous one: its gap absorbs the removed one
+                    int nextEnd = varintEnd(offset);
+                    int merged = readVarint(offset) + (i == 0 ? noteId : gap);
+                    byte[] encoded = varint(merged);
+                    int tail = length - nextEnd;
+                    System.arraycopy(data, nextEnd, data, start + encoded.length, tail);
+                    System.arraycopy(encoded, 0, data, start, encoded.length);
+                    length = start + encoded.length + tail;
+                }
+                size--;
+                if (size == 0) {
+                    last = 0;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private int readVarint(int offset) {
+            int result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                result |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return result;
+        }
+
+        private int varintEnd(int offset) {
+            while (data[offset++] < 0) {
+                // continuation byte
+            }
+            return offset;
+        }
+
+        private static byte[] varint(int value) {
+            byte[] encoded = new byte[5];
+            int length = 0;
+            while ((value & ~0x7F) != 0) {
+                encoded[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            encoded[length++] = (byte) value;
+            return Arrays.copyOf(encoded, length);
+        }
+
+        int[] toArray() {
+            int[] noteIds = new int[size];
+            int offset = 0;
+            int value = 0;
+            for (int i = 0; i < size; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value = i == 0 ? gap : value + gap;
+                noteIds[i] = value;
+            }
+            return noteIds;
+        }
+
+        private void encode(int[] noteIds, int count) {
+            data = new byte[Math.max(4, count * 2)];
+            length = 0;
+            size = 0;
+            for (int i = 0; i < count; i++) {
+                append(i == 0 ? noteIds[i] : noteIds[i] - noteIds[i - 1]);
+                size++;
+            }
+            last = count == 0 ? 0 : noteIds[count - 1];
+            data = Arrays.copyOf(data, Math.max(length, 1));
+        }
+
+        private void append(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            // NoteIds may be negative; the first value is then written as a full five byte varint
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.dev2cloud.ddb_demo;
 
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
+import java.util.List;
+
 // Annotate as a DynamoDB Bean
 @DynamoDbBean
 public class NotesItem {
@@ -12,6 +15,11 @@ public class NotesItem {
     private String userId;
     private Integer noteId;
     private String note;
+    // Alternative storage of large note bodies, see NoteBodyStore
+    private SdkBytes compressedNotes;
+    private String notesRef;
+    // Text appended by NotesUpdate.appendToNotes since the note was last written in full
+    private List<String> appendedNotes;
 
     public NotesItem() {
     }
@@ -56,6 +64,33 @@ public class NotesItem {
         this.note = Note;
     }
 
+    @DynamoDbAttribute("NotesZ")
+    public SdkBytes getCompressedNotes() {
+        return this.compressedNotes;
+    }
+
+    public void setCompressedNotes(SdkBytes compressedNotes) {
+        this.compressedNotes = compressedNotes;
+    }
+
+    @DynamoDbAttribute("NotesRef")
+    public String getNotesRef() {
+        return this.notesRef;
+    }
+
+    public void setNotesRef(String notesRef) {
+        this.notesRef = notesRef;
+    }
+
+    @DynamoDbAttribute("NotesAppended")
+    public List<String> getAppendedNotes() {
+        return this.appendedNotes;
+    }
+
+    public void setAppendedNotes(List<String> appendedNotes) {
+        this.appendedNotes = appendedNotes;
+    }
+
     @Override
     public String toString() {
         return "Notes [User=" + userId + ", Note Id=" + noteId + ", Notes=" + note + "]";
@@ -0,0 +1,165 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primarySortKey;
+
+/**
+ * The single place where a {@link NotesItem} is translated to and from DynamoDB attributes.
+ * <p>
+ * The enhanced client uses {@link #TABLE_SCHEMA}, a static schema that avoids the bean
+ * introspection performed by {@code TableSchema.fromBean()} at startup. The standard client uses
+ * {@link #toItem(NotesItem)} and {@link #fromItem(Map)}, which build the attribute map directly
+ * instead of going through a schema.
+ * <p>
+ * Text appended with {@link NotesUpdate#appendToNotes(String)} is kept in a separate list
+ * attribute so an append only sends the new text; it is folded back into Notes when the item is
+ * read, and disappears the next time the note is written in full.
+ */
+public final class NotesItemCodec {
+    public static final String USER_ID = "UserId";
+    public static final String NOTE_ID = "NoteId";
+    public static final String NOTES = "Notes";
+    public static final String COMPRESSED_NOTES = "NotesZ";
+    public static final String NOTES_REF = "NotesRef";
+    public static final String APPENDED_NOTES = "NotesAppended";
+
+    public static final TableSchema<NotesItem> TABLE_SCHEMA = newTableSchema();
+
+    // Sized so the usual three attributes fit without the map resizing
+    private static final int ITEM_MAP_CAPACITY = 4;
+
+    private NotesItemCodec() {
+    }
+
+    /**
+     * Builds the static schema for the Notes table; exposed separately from {@link #TABLE_SCHEMA}
+     * so the cost of building it can be measured
+     */
+    public static TableSchema<NotesItem> newTableSchema() {
+        return StaticTableSchema.builder(NotesItem.class)
+                .newItemSupplier(NotesItem::new)
+                .addAttribute(String.class, a -> a.name(USER_ID)
+                        .getter(NotesItem::getUserId)
+                        .setter(NotesItem::setUserId)
+                        .tags(primaryPartitionKey()))
+                .addAttribute(Integer.class, a -> a.name(NOTE_ID)
+                        .getter(NotesItem::getNoteId)
+                        .setter(NotesItem::setNoteId)
+                        .tags(primarySortKey()))
+                .addAttribute(String.class, a -> a.name(NOTES)
+                        .getter(NotesItem::getNotes)
+                        .setter(NotesItem::setNotes))
+                .addAttribute(SdkBytes.class, a -> a.name(COMPRESSED_NOTES)
+                        .getter(NotesItem::getCompressedNotes)
+                        .setter(NotesItem::setCompressedNotes))
+                .addAttribute(String.class, a -> a.name(NOTES_REF)
+                        .getter(NotesItem::getNotesRef)
+                        .setter(NotesItem::setNotesRef))
+                .addAttribute(EnhancedType.listOf(String.class), a -> a.name(APPENDED_NOTES)
+                        .getter(NotesItem::getAppendedNotes)
+                        .setter(NotesItem::setAppendedNotes))
+                .build();
+    }
+
+    public static Map<String, AttributeValue> toItem(NotesItem item) {
+        Map<String, AttributeValue> values = new HashMap<>(ITEM_MAP_CAPACITY);
+        values.put(USER_ID, AttributeValue.fromS(item.getUserId()));
+        values.put(NOTE_ID, AttributeValue.fromN(item.getNoteId().toString()));
+        if (item.getNotes() != null) {
+            values.put(NOTES, AttributeValue.fromS(item.getNotes()));
+        }
+        if (item.getCompressedNotes() != null) {
+            values.put(COMPRESSED_NOTES, AttributeValue.fromB(item.getCompressedNotes()));
+        }
+        if (item.getNotesRef() != null) {
+            values.put(NOTES_REF, AttributeValue.fromS(item.getNotesRef()));
+        }
+        if (item.getAppendedNotes() != null) {
+            List<AttributeValue> appended = new ArrayList<>(item.getAppendedNotes().size());
+            for (String text : item.getAppendedNotes()) {
+                appended.add(AttributeValue.fromS(text));
+            }
+            values.put(APPENDED_NOTES, AttributeValue.fromL(appended));
+        }
+        return values;
+    }
+
+    public static Map<String, AttributeValue> toKey(String userId, int noteId) {
+        Map<String, AttributeValue> key = new HashMap<>(ITEM_MAP_CAPACITY);
+        key.put(USER_ID, AttributeValue.fromS(userId));
+        key.put(NOTE_ID, AttributeValue.fromN(Integer.toString(noteId)));
+        return key;
+    }
+
+    public static Map<String, AttributeValue> toKey(NotesKey key) {
+        return toKey(key.getUserId(), key.getNoteId());
+    }
+
+    /**
+     * Converts an item returned by DynamoDB, tolerating attributes left out by a projection
+     */
+    public static NotesItem fromItem(Map<String, AttributeValue> item) {
+        NotesItem notesItem = new NotesItem();
+        AttributeValue userId = item.get(USER_ID);
+        if (userId != null) {
+            notesItem.setUserId(userId.s());
+        }
+        AttributeValue noteId = item.get(NOTE_ID);
+        if (noteId != null) {
+            notesItem.setNoteId(Integer.parseInt(noteId.n()));
+        }
+        AttributeValue notes = item.get(NOTES);
+        if (notes != null) {
+            notesItem.setNotes(notes.s());
+        }
+        AttributeValue compressedNotes = item.get(COMPRESSED_NOTES);
+        if (compressedNotes != null) {
+            notesItem.setCompressedNotes(compressedNotes.b());
+        }
+        AttributeValue notesRef = item.get(NOTES_REF);
+        if (notesRef != null) {
+            notesItem.setNotesRef(notesRef.s());
+        }
+        AttributeValue appendedNotes = item.get(APPENDED_NOTES);
+        if (appendedNotes != null) {
+            List<String> appended = new ArrayList<>(appendedNotes.l().size());
+            for (AttributeValue text : appendedNotes.l()) {
+                appended.add(text.s());
+            }
+            notesItem.setAppendedNotes(appended);
+        }
+        return foldAppended(notesItem);
+    }
+
+    /**
+     * Appends the text added by partial updates to Notes. Bodies which are still compressed or
+     * held in S3 are left alone; {@link NoteBodyStore} folds them once the body is restored.
+     */
+    static NotesItem foldAppended(NotesItem item) {
+        if (item.getAppendedNotes() == null || item.getCompressedNotes() != null || item.getNotesRef() != null) {
+            return item;
+        }
+        StringBuilder notes = new StringBuilder(item.getNotes() == null ? "" : item.getNotes());
+        for (String text : item.getAppendedNotes()) {
+            notes.append(text);
+        }
+        item.setNotes(notes.toString());
+        item.setAppendedNotes(null);
+        return item;
+    }
+
+    public static NotesKey keyOf(Map<String, AttributeValue> item) {
+        return new NotesKey(item.get(USER_ID).s(), Integer.parseInt(item.get(NOTE_ID).n()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.dev2cloud.ddb_demo;
+
+/**
+ * Primary key of an item in the Notes table: the UserId partition key and the NoteId sort key.
+ * Immutable so it can be used as a map key when batching lookups.
+ */
+public final class NotesKey {
+    private final String userId;
+    private final int noteId;
+
+    public NotesKey(String userId, int noteId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId must not be null");
+        }
+        this.userId = userId;
+        this.noteId = noteId;
+    }
+
+    public static NotesKey of(NotesItem item) {
+        return new NotesKey(item.getUserId(), item.getNoteId());
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getNoteId() {
+        return noteId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NotesKey)) {
+            return false;
+        }
+        NotesKey other = (NotesKey) o;
+        return noteId == other.noteId && userId.equals(other.userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * userId.hashCode() + noteId;
+    }
+
+    @Override
+    public String toString() {
+        return "NotesKey [User=" + userId + ", Note Id=" + noteId + "]";
+    }
+}
@@ -0,0 +1,190 @@
+package com.dev2cloud.ddb_demo;
+
+import com.dev2cloud.ddb_demo.CapacityRateLimiter.Capacity;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation timing of the calls made to DynamoDB, collected through the SDK metrics API, plus
+ * the capacity consumed by the repositories. Register it on the client and attach it to the
+ * repository:
+ * <pre>
+ *     NotesMetrics metrics = new NotesMetrics();
+ *     DynamoDbClient client = DynamoDbClient.builder()
+ *             .overrideConfiguration(c -> c.addMetricPublisher(metrics))
+ *             .build();
+ *     NotesRepository repository = new NotesRepository(client);
+ *     repository.setMetrics(metrics);
+ * </pre>
+ * For every operation (PutItem, GetItem, Query, Scan, ...) it keeps a histogram of the total call
+ * latency and one of the time spent waiting for DynamoDB, so slow calls can be told apart from
+ * time lost in retries, backoff or marshalling. Recording only increments counters, so the metrics
+ * can stay enabled in production. They are read with {@link #snapshot()} or exported by a
+ * {@link NotesMetricsExporter}.
+ * <p>
+ * {@link NotesEnhancedRepository} cannot see the ConsumedCapacity of most of its responses, so its
+ * client adds it through {@link #consumedCapacityInterceptor()} instead, see
+ * {@link NotesEnhancedRepository#NotesEnhancedRepository(NotesMetrics)}.
+ */
+public class NotesMetrics implements MetricPublisher {
+    private static final String THROTTLING = "Throttling";
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final DoubleAdder readUnits = new DoubleAdder();
+    private final DoubleAdder writeUnits = new DoubleAdder();
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        List<String> names = metricCollection.metricValues(CoreMetric.OPERATION_NAME);
+        if (names.isEmpty()) {
+            return;
+        }
+        Operation operation = operations.computeIfAbsent(names.get(0), name -> new Operation());
+        operation.calls.increment();
+        for (Duration duration : metricCollection.metricValues(CoreMetric.API_CALL_DURATION)) {
+            operation.latency.record(micros(duration));
+        }
+        for (Boolean successful : metricCollection.metricValues(CoreMetric.API_CALL_SUCCESSFUL)) {
+            if (!successful) {
+                operation.failures.increment();
+            }
+        }
+        for (Integer retries : metricCollection.metricValues(CoreMetric.RETRY_COUNT)) {
+            operation.retries.add(retries);
+        }
+
+        long serviceMicros = 0;
+        boolean attempted = false;
+        for (MetricCollection attempt : metricCollection.children()) {
+            for (Duration duration : attempt.metricValues(CoreMetric.SERVICE_CALL_DURATION)) {
+                serviceMicros += micros(duration);
+                attempted = true;
+            }
+            if (attempt.metricValues(CoreMetric.ERROR_TYPE).contains(THROTTLING)) {
+                operation.throttles.increment();
+            }
+        }
+        if (attempted) {
+            operation.serviceLatency.record(serviceMicros);
+        }
+    }
+
+    /**
+     * Adds the ConsumedCapacity reported by a response; NaN, for a response without it, is ignored
+     */
+    public void recordConsumedCapacity(Capacity capacity, double units) {
+        if (Double.isNaN(units)) {
+            return;
+        }
+        if (capacity == Capacity.READ) {
+            readUnits.add(units);
+        } else {
+            writeUnits.add(units);
+        }
+    }
+
+    /**
+     * Interceptor which requests and records the ConsumedCapacity of every call of the client it
+     * is registered on. Not to be combined with a repository which records its responses itself.
+     */
+    public ExecutionInterceptor consumedCapacityInterceptor() {
+        return new ConsumedCapacityInterceptor(this);
+    }
+
+    public double getReadCapacityUnits() {
+        return readUnits.sum();
+    }
+
+    public double getWriteCapacityUnits() {
+        return writeUnits.sum();
+    }
+
+    /**
+     * Current figures of every operation seen so far, ordered by operation name
+     */
+    public List<OperationMetrics> snapshot() {
+        Map<String, Operation> sorted = new TreeMap<>(operations);
+        List<OperationMetrics> snapshot = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, Operation> entry : sorted.entrySet()) {
+            Operation operation = entry.getValue();
+            snapshot.add(new OperationMetrics(entry.getKey(), operation.calls.sum(), operation.failures.sum(),
+                    operation.retries.sum(), operation.throttles.sum(), operation.latency, operation.serviceLatency));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Human readable table of the current figures
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-16s %8s %6s %7s %9s %9s %9s %9s %9s %11s%n", "Operation", "Calls", "Failed",
+                "Retries", "Throttled", "p50 ms", "p99 ms", "p999 ms", "Max ms", "Service p99"));
+        for (OperationMetrics operation : snapshot()) {
+            text.append(String.format("%-16s %8d %6d %7d %9d %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    operation.getOperation(), operation.getCalls(), operation.getFailures(), operation.getRetries(),
+                    operation.getThrottles(), operation.getP50Millis(), operation.getP99Millis(),
+                    operation.getP999Millis(), operation.getMaxMillis(), operation.getServiceP99Millis()));
+        }
+        text.append(String.format("Consumed capacity: %.1f RCU, %.1f WCU%n", getReadCapacityUnits(), getWriteCapacityUnits()));
+        return text.toString();
+    }
+
+    /**
+     * The current figures as a single line of JSON, e.g. for a log shipper
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"operations\":[");
+        List<OperationMetrics> snapshot = snapshot();
+        for (int i = 0; i < snapshot.size(); i++) {
+            OperationMetrics operation = snapshot.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"operation\":\"").append(operation.getOperation()).append('"')
+                    .append(",\"calls\":").append(operation.getCalls())
+                    .append(",\"failures\":").append(operation.getFailures())
+                    .append(",\"retries\":").append(operation.getRetries())
+                    .append(",\"throttles\":").append(operation.getThrottles())
+                    .append(",\"p50Millis\":").append(operation.getP50Millis())
+                    .append(",\"p99Millis\":").append(operation.getP99Millis())
+                    .append(",\"p999Millis\":").append(operation.getP999Millis())
+                    .append(",\"maxMillis\":").append(operation.getMaxMillis())
+                    .append(",\"serviceP50Millis\":").append(operation.getServiceP50Millis())
+                    .append(",\"serviceP99Millis\":").append(operation.getServiceP99Millis())
+                    .append('}');
+        }
+        json.append("],\"readCapacityUnits\":").append(getReadCapacityUnits())
+                .append(",\"writeCapacityUnits\":").append(getWriteCapacityUnits())
+                .append('}');
+        return json.toString();
+    }
+
+    @Override
+    public void close() {
+        // Nothing is buffered
+    }
+
+    private static long micros(Duration duration) {
+        return duration.toNanos() / 1000;
+    }
+
+    private static final class Operation {
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder throttles = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceLatency = new LatencyHistogram();
+    }
+}
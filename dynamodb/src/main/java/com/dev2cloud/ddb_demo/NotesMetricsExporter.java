@@ -0,0 +1,11 @@
+package com.dev2cloud.ddb_demo;
+
+/**
+ * Publishes {@link NotesMetrics} somewhere outside the application, e.g. JMX or a log. An exporter
+ * starts publishing when it is created and stops when it is closed.
+ */
+public interface NotesMetricsExporter extends AutoCloseable {
+
+    @Override
+    void close();
+}
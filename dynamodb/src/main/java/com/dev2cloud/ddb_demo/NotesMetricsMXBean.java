@@ -0,0 +1,18 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.List;
+
+/**
+ * Management interface through which {@link JmxMetricsExporter} exposes the metrics, so they can
+ * be inspected with jconsole or collected by any JMX agent
+ */
+public interface NotesMetricsMXBean {
+
+    List<OperationMetrics> getOperations();
+
+    double getReadCapacityUnits();
+
+    double getWriteCapacityUnits();
+
+    String getReport();
+}
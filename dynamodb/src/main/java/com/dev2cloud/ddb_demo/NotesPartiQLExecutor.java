@@ -0,0 +1,264 @@
+package com.dev2cloud.ddb_demo;
+
+import com.dev2cloud.ddb_demo.CapacityRateLimiter.Capacity;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Runs PartiQL statements against the Notes table. Single statements go through ExecuteStatement,
+ * following NextToken until every page has been read; groups of statements go through
+ * BatchExecuteStatement, 25 statements per call.
+ * <p>
+ * When created by a repository, every request goes through that repository's rate limiter, retry
+ * policy and metrics, and notes are stored and restored through its body store, exactly like the
+ * requests of its other operations.
+ */
+public class NotesPartiQLExecutor {
+    /**
+     * BatchExecuteStatement accepts at most 25 statements per call
+     */
+    static final int MAX_BATCH_SIZE = 25;
+
+    static final String SELECT_BY_USER = "SELECT * FROM \"Notes\" WHERE UserId = ?";
+    static final String SELECT_BY_KEY = "SELECT * FROM \"Notes\" WHERE UserId = ? AND NoteId = ?";
+
+    private static final double READ_UNITS_PER_STATEMENT = 0.5;
+    private static final double WRITE_UNITS_PER_STATEMENT = 1;
+
+    /**
+     * What the owning repository does around each request
+     */
+    interface Hooks {
+        /**
+         * Sends a request through the rate limiter, retry policy and metrics
+         */
+        <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits);
+
+        /**
+         * The item as it is written to the table, e.g. with a large body compressed
+         */
+        NotesItem stored(NotesItem item);
+
+        /**
+         * Maps a page of items, restoring bodies held elsewhere
+         */
+        List<NotesItem> decode(List<Map<String, AttributeValue>> items);
+
+        /**
+         * Called with the notes a batch of statements has written
+         */
+        void written(List<NotesItem> items);
+    }
+
+    private static final Hooks DIRECT = new Hooks() {
+        @Override
+        public <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits) {
+            return request.get();
+        }
+
+        @Override
+        public NotesItem stored(NotesItem item) {
+            return item;
+        }
+
+        @Override
+        public List<NotesItem> decode(List<Map<String, AttributeValue>> items) {
+            return NotesQueryIterator.decode(items);
+        }
+
+        @Override
+        public void written(List<NotesItem> items) {
+        }
+    };
+
+    private final DynamoDbClient dynamoDbClient;
+    private final Hooks hooks;
+    private final PageCapacityEstimate pages = new PageCapacityEstimate(PageCapacityEstimate.MAX_PAGE_READ_UNITS);
+
+    /**
+     * Runs statements straight on the client, without any of a repository's rate limiting,
+     * retries or body store
+     */
+    public NotesPartiQLExecutor(DynamoDbClient dynamoDbClient) {
+        this(dynamoDbClient, DIRECT);
+    }
+
+    NotesPartiQLExecutor(DynamoDbClient dynamoDbClient, Hooks hooks) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.hooks = hooks;
+    }
+
+    /**
+     * Execute a single statement, reading every page of the result
+     */
+    public List<Map<String, AttributeValue>> execute(String statement, AttributeValue... parameters) {
+        Capacity capacity = isRead(statement) ? Capacity.READ : Capacity.WRITE;
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        String nextToken = null;
+        do {
+            ExecuteStatementRequest.Builder builder = ExecuteStatementRequest.builder()
+                    .statement(statement)
+                    .nextToken(nextToken)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            if (parameters.length > 0) {
+                builder.parameters(parameters);
+            }
+            ExecuteStatementRequest request = builder.build();
+            double estimate = capacity == Capacity.READ ? pages.get() : WRITE_UNITS_PER_STATEMENT;
+            ExecuteStatementResponse response = hooks.call(capacity, estimate,
+                    () -> dynamoDbClient.executeStatement(request), result -> units(result.consumedCapacity()));
+            if (capacity == Capacity.READ) {
+                pages.record(units(response.consumedCapacity()));
+            }
+            items.addAll(response.items());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return items;
+    }
+
+    /**
+     * Execute a group of statements with BatchExecuteStatement. The statements must either all be
+     * reads or all be writes.
+     *
+     * @return one response per statement, in the same order; failed statements carry an error
+     */
+    public List<BatchStatementResponse> executeBatch(List<BatchStatementRequest> statements) {
+        List<BatchStatementResponse> responses = new ArrayList<>(statements.size());
+        for (int from = 0; from < statements.size(); from += MAX_BATCH_SIZE) {
+            List<BatchStatementRequest> chunk = statements.subList(from, Math.min(from + MAX_BATCH_SIZE, statements.size()));
+            boolean reads = isRead(chunk.get(0).statement());
+            BatchExecuteStatementRequest request = BatchExecuteStatementRequest.builder()
+                    .statements(chunk)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            BatchExecuteStatementResponse response = hooks.call(reads ? Capacity.READ : Capacity.WRITE,
+                    chunk.size() * (reads ? READ_UNITS_PER_STATEMENT : WRITE_UNITS_PER_STATEMENT),
+                    () -> dynamoDbClient.batchExecuteStatement(request), result -> units(result.consumedCapacity()));
+            responses.addAll(response.responses());
+        }
+        return responses;
+    }
+
+    /**
+     * Build one statement of a batch, binding the values of its '?' parameters
+     */
+    public BatchStatementRequest batchStatement(String statement, AttributeValue... parameters) {
+        return BatchStatementRequest.builder()
+                .statement(statement)
+                .parameters(Arrays.asList(parameters))
+                .build();
+    }
+
+    public List<NotesItem> getNotesByUserid(String userId) {
+        return hooks.decode(execute(SELECT_BY_USER, AttributeValue.fromS(userId)));
+    }
+
+    /**
+     * Look up several notes with batched SELECT statements
+     *
+     * @return the items in the same order as the keys, with null for each key that was not found;
+     * keys whose statement failed are reported as unresolved, with the error of each statement
+     */
+    public BatchGetReport getItems(List<NotesKey> keys) {
+        List<BatchStatementRequest> statements = new ArrayList<>(keys.size());
+        for (NotesKey key : keys) {
+            statements.add(batchStatement(SELECT_BY_KEY,
+                    AttributeValue.fromS(key.getUserId()),
+                    AttributeValue.fromN(Integer.toString(key.getNoteId()))));
+        }
+        List<BatchStatementResponse> responses = executeBatch(statements);
+
+        List<Map<String, AttributeValue>> found = new ArrayList<>(keys.size());
+        Map<NotesKey, String> errors = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            BatchStatementResponse response = responses.get(i);
+            if (response.error() != null) {
+                errors.put(keys.get(i), response.error().codeAsString() + ": " + response.error().message());
+            } else if (response.hasItem() && !response.item().isEmpty()) {
+                found.add(response.item());
+            }
+        }
+        Map<NotesKey, NotesItem> byKey = new LinkedHashMap<>();
+        for (NotesItem item : hooks.decode(found)) {
+            byKey.put(NotesKey.of(item), item);
+        }
+        List<NotesItem> results = new ArrayList<>(keys.size());
+        for (NotesKey key : keys) {
+            results.add(byKey.get(key));
+        }
+        return new BatchGetReport(results, new HashSet<>(errors.keySet()), errors);
+    }
+
+    /**
+     * Insert new notes with batched INSERT statements. Unlike PutItem, INSERT does not overwrite
+     * an existing note; such notes are returned with a DuplicateItem error.
+     *
+     * @return one response per note, in the same order
+     */
+    public List<BatchStatementResponse> insertItems(Collection<NotesItem> items) {
+        List<NotesItem> notes = new ArrayList<>(items);
+        List<BatchStatementRequest> statements = new ArrayList<>(notes.size());
+        for (NotesItem item : notes) {
+            statements.add(insertStatement(NotesItemCodec.toItem(hooks.stored(item))));
+        }
+        List<BatchStatementResponse> responses = executeBatch(statements);
+
+        List<NotesItem> inserted = new ArrayList<>(notes.size());
+        for (int i = 0; i < notes.size(); i++) {
+            if (responses.get(i).error() == null) {
+                inserted.add(notes.get(i));
+            }
+        }
+        hooks.written(inserted);
+        return responses;
+    }
+
+    /**
+     * An INSERT of exactly the attributes the item has, so a note without plain text, or with its
+     * body stored elsewhere, is written the same way PutItem would write it
+     */
+    private BatchStatementRequest insertStatement(Map<String, AttributeValue> item) {
+        StringBuilder statement = new StringBuilder("INSERT INTO \"Notes\" VALUE {");
+        List<AttributeValue> parameters = new ArrayList<>(item.size());
+        for (Map.Entry<String, AttributeValue> attribute : new TreeMap<>(item).entrySet()) {
+            statement.append(parameters.isEmpty() ? "" : ", ").append('\'').append(attribute.getKey()).append("' : ?");
+            parameters.add(attribute.getValue());
+        }
+        statement.append('}');
+        return batchStatement(statement.toString(), parameters.toArray(new AttributeValue[0]));
+    }
+
+    private static boolean isRead(String statement) {
+        return statement.trim().toUpperCase(Locale.ROOT).startsWith("SELECT");
+    }
+
+    private static double units(ConsumedCapacity consumedCapacity) {
+        return consumedCapacity == null || consumedCapacity.capacityUnits() == null
+                ? Double.NaN
+                : consumedCapacity.capacityUnits();
+    }
+
+    private static double units(List<ConsumedCapacity> consumedCapacity) {
+        if (consumedCapacity == null || consumedCapacity.isEmpty()) {
+            return Double.NaN;
+        }
+        double total = 0;
+        for (ConsumedCapacity capacity : consumedCapacity) {
+            total += capacity.capacityUnits() == null ? 0 : capacity.capacityUnits();
+        }
+        return total;
+    }
+}
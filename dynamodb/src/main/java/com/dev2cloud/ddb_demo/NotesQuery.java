@@ -0,0 +1,96 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a query over the notes of a single user: an optional NoteId range, the attributes to
+ * return, the number of items to request per page and an overall limit on the number of results.
+ * <pre>
+ *     NotesQuery.forUser("student1").noteIdBetween(100, 200).pageSize(50).project("NoteId", "Notes")
+ * </pre>
+ */
+public class NotesQuery {
+    private final String userId;
+    private Integer noteIdFrom;
+    private Integer noteIdTo;
+    private Integer pageSize;
+    private long limit = Long.MAX_VALUE;
+    private List<String> projection = Collections.emptyList();
+
+    private NotesQuery(String userId) {
+        this.userId = userId;
+    }
+
+    public static NotesQuery forUser(String userId) {
+        return new NotesQuery(userId);
+    }
+
+    /**
+     * Only return notes with a NoteId in the (inclusive) range
+     */
+    public NotesQuery noteIdBetween(int from, int to) {
+        this.noteIdFrom = from;
+        this.noteIdTo = to;
+        return this;
+    }
+
+    public NotesQuery noteIdFrom(int from) {
+        this.noteIdFrom = from;
+        return this;
+    }
+
+    public NotesQuery noteIdTo(int to) {
+        this.noteIdTo = to;
+        return this;
+    }
+
+    /**
+     * Hint for the number of items DynamoDB evaluates per page
+     */
+    public NotesQuery pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Maximum number of notes returned across all pages
+     */
+    public NotesQuery limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Restrict the attributes returned, e.g. to skip large note bodies
+     */
+    public NotesQuery project(String... attributes) {
+        this.projection = Arrays.asList(attributes);
+        return this;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Integer getNoteIdFrom() {
+        return noteIdFrom;
+    }
+
+    public Integer getNoteIdTo() {
+        return noteIdTo;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public List<String> getProjection() {
+        return projection;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Lazily walks the pages of a query by following LastEvaluatedKey. While the caller consumes one
+ * page the next one is already being fetched, so at most two pages are held in memory regardless
+ * of how many notes the user has. Each page is decoded as a whole so work such as fetching note
+ * bodies from S3 can be done for the page at once.
+ * <p>
+ * Prefetching runs on a small shared pool. When the pool and its queue are full the page is
+ * fetched by the consuming thread instead, so the number of queries in flight stays bounded
+ * however many iterators are open.
+ */
+class NotesQueryIterator implements Iterator<NotesItem>, AutoCloseable {
+    private static final int PREFETCH_THREADS = 8;
+    private static final ThreadPoolExecutor PREFETCH_EXECUTOR = new ThreadPoolExecutor(
+            PREFETCH_THREADS, PREFETCH_THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(PREFETCH_THREADS * 4),
+            runnable -> {
+                Thread thread = new Thread(runnable, "notes-query-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    static {
+        PREFETCH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Function<QueryRequest, QueryResponse> query;
+    private final QueryRequest baseRequest;
+    private final Function<List<Map<String, AttributeValue>>, List<NotesItem>> decoder;
+    // Items the caller may still take, and items which may still be requested from DynamoDB
+    private long remaining;
+    private long unfetched;
+
+    private Iterator<NotesItem> currentPage = Collections.emptyIterator();
+    private Future<QueryResponse> nextPage;
+
+    NotesQueryIterator(Function<QueryRequest, QueryResponse> query, QueryRequest baseRequest, long limit) {
+        this(query, baseRequest, limit, NotesQueryIterator::decode);
+    }
+
+    NotesQueryIterator(Function<QueryRequest, QueryResponse> query, QueryRequest baseRequest, long limit,
+                       Function<List<Map<String, AttributeValue>>, List<NotesItem>> decoder) {
+        this.query = query;
+        this.baseRequest = baseRequest;
+        this.decoder = decoder;
+        this.remaining = limit;
+        this.unfetched = limit;
+        this.nextPage = limit > 0 ? fetch(null) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (remaining <= 0) {
+            return false;
+        }
+        while (!currentPage.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            QueryResponse response = join(nextPage);
+            unfetched -= response.items().size();
+            // Start fetching the following page before handing this one to the caller, unless
+            // the pages already fetched cover the limit
+            nextPage = unfetched > 0 && response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? fetch(response.lastEvaluatedKey())
+                    : null;
+            List<Map<String, AttributeValue>> items = response.items();
+            // Only decode what the limit lets through
+            if (items.size() > remaining) {
+                items = items.subList(0, (int) remaining);
+            }
+            currentPage = decoder.apply(items).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public NotesItem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return currentPage.next();
+    }
+
+    /**
+     * Abandons any page still being prefetched, interrupting its query if it is running
+     */
+    @Override
+    public void close() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+        remaining = 0;
+    }
+
+    static List<NotesItem> decode(List<Map<String, AttributeValue>> items) {
+        List<NotesItem> notes = new ArrayList<>(items.size());
+        for (Map<String, AttributeValue> item : items) {
+            notes.add(NotesItemCodec.fromItem(item));
+        }
+        return notes;
+    }
+
+    private Future<QueryResponse> fetch(Map<String, AttributeValue> exclusiveStartKey) {
+        QueryRequest.Builder request = baseRequest.toBuilder();
+        if (exclusiveStartKey != null) {
+            request.exclusiveStartKey(exclusiveStartKey);
+        }
+        // Never ask for more items than the limit still lets through
+        Integer pageSize = baseRequest.limit();
+        if (unfetched < (pageSize == null ? Integer.MAX_VALUE : pageSize)) {
+            request.limit((int) unfetched);
+        }
+        QueryRequest pageRequest = request.build();
+        return PREFETCH_EXECUTOR.submit(() -> query.apply(pageRequest));
+    }
+
+    private static QueryResponse join(Future<QueryResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a page of notes", ex);
+        } catch (ExecutionException ex) {
+            // Surface the DynamoDbException thrown by the query itself
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
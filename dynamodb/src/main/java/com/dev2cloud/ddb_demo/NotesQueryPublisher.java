@@ -0,0 +1,140 @@
+package com.dev2cloud.ddb_demo;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes the notes of a query page by page. A page is only requested once the previous one
+ * has been delivered and the subscriber still has demand, and every page goes through the
+ * caller's query function, so the requests of a query count against the same in-flight limit as
+ * any other request of the repository.
+ */
+class NotesQueryPublisher implements Publisher<NotesItem> {
+    private final Function<QueryRequest, CompletableFuture<QueryResponse>> query;
+    private final QueryRequest baseRequest;
+    private final Function<List<Map<String, AttributeValue>>, CompletableFuture<List<NotesItem>>> decoder;
+
+    NotesQueryPublisher(Function<QueryRequest, CompletableFuture<QueryResponse>> query, QueryRequest baseRequest,
+                        Function<List<Map<String, AttributeValue>>, CompletableFuture<List<NotesItem>>> decoder) {
+        this.query = query;
+        this.baseRequest = baseRequest;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super NotesItem> subscriber) {
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private final class PageSubscription implements Subscription {
+        private final Subscriber<? super NotesItem> subscriber;
+        private final Queue<NotesItem> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicLong demand = new AtomicLong();
+        // Same serialization as InFlightLimiter.drain(): one thread delivers at a time
+        private final AtomicInteger drainRequests = new AtomicInteger();
+        private volatile boolean fetching;
+        private volatile boolean lastPage;
+        private volatile Map<String, AttributeValue> lastEvaluatedKey;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private boolean terminated;
+
+        PageSubscription(Subscriber<? super NotesItem> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Demand must be positive, was " + n);
+                lastPage = true;
+                buffer.clear();
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            buffer.clear();
+        }
+
+        void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                deliver();
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            while (!terminated && !cancelled) {
+                if (demand.get() > 0 && !buffer.isEmpty()) {
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffer.poll());
+                    continue;
+                }
+                if (fetching || !buffer.isEmpty()) {
+                    return;
+                }
+                if (error != null) {
+                    terminated = true;
+                    subscriber.onError(error);
+                } else if (lastPage) {
+                    terminated = true;
+                    subscriber.onComplete();
+                } else if (demand.get() > 0) {
+                    fetch();
+                }
+                return;
+            }
+        }
+
+        private void fetch() {
+            fetching = true;
+            QueryRequest request = lastEvaluatedKey == null
+                    ? baseRequest
+                    : baseRequest.toBuilder().exclusiveStartKey(lastEvaluatedKey).build();
+            query.apply(request)
+                    .thenCompose(response -> decoder.apply(response.items()).thenApply(items -> {
+                        buffer.addAll(items);
+                        if (response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()) {
+                            lastEvaluatedKey = response.lastEvaluatedKey();
+                        } else {
+                            lastPage = true;
+                        }
+                        return items;
+                    }))
+                    .whenComplete((items, failure) -> {
+                        if (failure != null) {
+                            error = failure instanceof CompletionException && failure.getCause() != null
+                                    ? failure.getCause()
+                                    : failure;
+                        }
+                        fetching = false;
+                        drain();
+                    });
+        }
+    }
+}
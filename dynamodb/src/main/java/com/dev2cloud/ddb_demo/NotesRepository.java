@@ -1,26 +1,66 @@
 package com.dev2cloud.ddb_demo;
 
+import com.dev2cloud.ddb_demo.CapacityRateLimiter.Capacity;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.retry.RetryPolicy;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Typical SDK calls to DynamoDB using the DynamoDB Standard Client SDK
  */
 public class NotesRepository {
     private static final String TABLE_NAME = "Notes";
+    private static final int DEFAULT_BATCH_WRITERS = 4;
+    private static final int DEFAULT_BATCH_READERS = 4;
+    // Capacity reserved before a call; corrected with the ConsumedCapacity of the response
+    private static final double WRITE_UNITS_PER_ITEM = 1;
+    private static final double READ_UNITS_PER_ITEM = 0.5;
     private final DynamoDbClient dynamoDbClient;
+    private final NotesPartiQLExecutor partiQL;
+    private NotesCache cache;
+    private NoteBodyStore bodyStore;
+    private NotesIndex searchIndex;
+    private NotesMetrics metrics;
+    private CapacityRateLimiter rateLimiter;
+    private ThrottleRetryPolicy retryPolicy = ThrottleRetryPolicy.standard();
+    // Pages are reserved at what recent pages consumed, starting from a full page
+    private final PageCapacityEstimate queryPages = new PageCapacityEstimate(PageCapacityEstimate.MAX_PAGE_READ_UNITS);
+    private final PageCapacityEstimate scanPages = new PageCapacityEstimate(PageCapacityEstimate.MAX_PAGE_READ_UNITS);
 
     /**
      * Constructor - Creates and maintains a dynamoDB client connection
      */
     public NotesRepository() {
-        // Simplistic client creation
-        dynamoDbClient = DynamoDbClient.create();
+        // Simplistic client creation; SDK retries are disabled as the retry policy replaces them
+        dynamoDbClient = DynamoDbClient.builder()
+                .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none()))
+                .build();
         /* Alternative approach using a profile
         dynamoDbClient = DynamoDbClient.builder()
                 .region(Region.US_WEST_2)
@@ -31,6 +71,77 @@ public class NotesRepository {
                 )
                 .build();
          */
+        partiQL = new NotesPartiQLExecutor(dynamoDbClient, new PartiQLHooks());
+    }
+
+    /**
+     * Constructor - Uses a client configured by the caller, e.g. one pointing at DynamoDB Local.
+     * The client should have SDK retries disabled, see {@link ThrottleRetryPolicy}.
+     */
+    public NotesRepository(DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.partiQL = new NotesPartiQLExecutor(dynamoDbClient, new PartiQLHooks());
+    }
+
+    /**
+     * Attach a read-through cache for getItem. Writes made through this repository update or
+     * invalidate the cached entries; pass null to disable caching.
+     */
+    public void setCache(NotesCache cache) {
+        this.cache = cache;
+    }
+
+    public NotesCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Store large note bodies compressed or in S3; pass null to always store the plain text
+     */
+    public void setBodyStore(NoteBodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+    }
+
+    public NoteBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    /**
+     * Keep a search index up to date with every note written through this repository; pass null
+     * to stop updating it
+     */
+    public void setSearchIndex(NotesIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public NotesIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Add the ConsumedCapacity of every response to the metrics. Call latencies are collected by
+     * registering the same metrics as a publisher on the client, see {@link NotesMetrics}.
+     */
+    public void setMetrics(NotesMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Attach a rate limiter shared by every operation of this repository; pass null to disable it
+     */
+    public void setRateLimiter(CapacityRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public CapacityRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Replace the policy used to retry throttled and failed calls
+     */
+    public void setRetryPolicy(ThrottleRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
     }
 
     /**
@@ -39,48 +150,317 @@ public class NotesRepository {
      * @param userId
      * @param noteId
      * @param note
+     * @throws DynamoDbException if the note could not be written after the last retry
+     * @throws S3Exception       if a body offloaded to S3 could not be uploaded
      */
     public void putItem(String userId, Integer noteId, String note) {
-        HashMap<String,AttributeValue> itemValues = new HashMap<>();
-        itemValues.put("UserId", AttributeValue.builder().s(userId).build());
-        itemValues.put("NoteId", AttributeValue.builder().n(noteId.toString()).build());
-        itemValues.put("Notes", AttributeValue.builder().s(note).build());
-        PutItemRequest request = PutItemRequest.builder()
+        NotesItem notesItem = new NotesItem(userId, noteId, note);
+        try {
+            PutItemRequest request = PutItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .item(NotesItemCodec.toItem(stored(notesItem)))
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            call(Capacity.WRITE, WRITE_UNITS_PER_ITEM, () -> dynamoDbClient.putItem(request),
+                    response -> units(response.consumedCapacity()));
+            if (cache != null) {
+                cache.put(notesItem);
+            }
+            if (searchIndex != null) {
+                searchIndex.index(notesItem);
+            }
+        } catch (RuntimeException ex) {
+            if (cache != null) {
+                cache.invalidate(new NotesKey(userId, noteId));
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Bulk load notes using BatchWriteItem, 25 items per request, spread across the default
+     * number of concurrent writers.
+     *
+     * @param items notes to write
+     * @return throughput and retry statistics, including any items that could not be written
+     */
+    public BatchWriteReport putItems(Collection<NotesItem> items) {
+        return putItems(items.iterator(), DEFAULT_BATCH_WRITERS);
+    }
+
+    /**
+     * Streaming variant of {@link #putItems(Collection)}. Items are pulled from the iterator as
+     * batches are formed, so only a bounded number of batches is held in memory at any time.
+     *
+     * @param items   notes to write
+     * @param writers number of batches written concurrently
+     */
+    public BatchWriteReport putItems(Iterator<NotesItem> items, int writers) {
+        return ParallelBatchWriter.write(PreparedNote.wrap(items), writers, retryPolicy, PreparedNote::key,
+                PreparedNote::original, this::writeBatch);
+    }
+
+    private List<PreparedNote> writeBatch(List<PreparedNote> notes) {
+        List<NotesItem> batch = PreparedNote.originals(notes);
+        List<WriteRequest> writeRequests = new ArrayList<>(notes.size());
+        for (PreparedNote note : notes) {
+            writeRequests.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(NotesItemCodec.toItem(note.stored(this::stored))).build())
+                    .build());
+        }
+        BatchWriteItemRequest request = BatchWriteItemRequest.builder()
+                .requestItems(Collections.singletonMap(TABLE_NAME, writeRequests))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        BatchWriteItemResponse response;
+        try {
+            response = callOnce(Capacity.WRITE, batch.size() * WRITE_UNITS_PER_ITEM, () -> dynamoDbClient.batchWriteItem(request),
+                    result -> units(result.consumedCapacity()));
+        } finally {
+            BatchWrites.invalidateCached(cache, batch);
+        }
+
+        List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
+        if (unprocessed == null || unprocessed.isEmpty()) {
+            BatchWrites.indexWritten(searchIndex, batch, Collections.emptyList(), false);
+            return Collections.emptyList();
+        }
+        onPartialBatch(Capacity.WRITE);
+        List<NotesItem> remaining = new ArrayList<>(unprocessed.size());
+        for (WriteRequest writeRequest : unprocessed) {
+            remaining.add(NotesItemCodec.fromItem(writeRequest.putRequest().item()));
+        }
+        BatchWrites.indexWritten(searchIndex, batch, remaining, false);
+        return PreparedNote.unprocessed(notes, remaining);
+    }
+
+    /**
+     * Writes items exactly as given, with every attribute they hold, including attributes
+     * NotesItem does not model. Used to copy items whose body is already in its stored form.
+     *
+     * @return statistics of the write; failed items are reported decoded, without their body restored
+     */
+    BatchWriteReport putRawItems(Iterator<Map<String, AttributeValue>> items) {
+        return ParallelBatchWriter.write(items, DEFAULT_BATCH_WRITERS, retryPolicy, NotesItemCodec::keyOf,
+                NotesItemCodec::fromItem, this::writeRawBatch);
+    }
+
+    private List<Map<String, AttributeValue>> writeRawBatch(List<Map<String, AttributeValue>> batch) {
+        List<WriteRequest> writeRequests = new ArrayList<>(batch.size());
+        List<NotesItem> keys = new ArrayList<>(batch.size());
+        for (Map<String, AttributeValue> item : batch) {
+            writeRequests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+            NotesKey key = NotesItemCodec.keyOf(item);
+            keys.add(new NotesItem(key.getUserId(), key.getNoteId(), null));
+        }
+        BatchWriteItemRequest request = BatchWriteItemRequest.builder()
+                .requestItems(Collections.singletonMap(TABLE_NAME, writeRequests))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        BatchWriteItemResponse response;
+        try {
+            response = callOnce(Capacity.WRITE, batch.size() * WRITE_UNITS_PER_ITEM, () -> dynamoDbClient.batchWriteItem(request),
+                    result -> units(result.consumedCapacity()));
+        } finally {
+            BatchWrites.invalidateCached(cache, keys);
+        }
+
+        List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
+        List<Map<String, AttributeValue>> remaining = new ArrayList<>();
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+            onPartialBatch(Capacity.WRITE);
+            for (WriteRequest writeRequest : unprocessed) {
+                remaining.add(writeRequest.putRequest().item());
+            }
+        }
+        if (searchIndex != null) {
+            // The index needs the text, which may have to be restored from its stored form
+            List<Map<String, AttributeValue>> written = new ArrayList<>(batch);
+            written.removeAll(remaining);
+            BatchWrites.indexWritten(searchIndex, decode(written), Collections.emptyList(), false);
+        }
+        return remaining;
+    }
+
+    /**
+     * Hands the items stored under the partition key to the consumer one page at a time, with
+     * every attribute exactly as it is stored
+     */
+    void forEachRawPage(String partitionKey, Consumer<List<Map<String, AttributeValue>>> pages) {
+        QueryRequest.Builder request = QueryRequest.builder()
                 .tableName(TABLE_NAME)
-                .item(itemValues)
+                .keyConditionExpression("UserId = :v_UserId")
+                .expressionAttributeValues(Collections.singletonMap(":v_UserId", AttributeValue.fromS(partitionKey)))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        Map<String, AttributeValue> startKey = null;
+        do {
+            if (startKey != null) {
+                request.exclusiveStartKey(startKey);
+            }
+            QueryResponse response = query(request.build());
+            if (!response.items().isEmpty()) {
+                pages.accept(response.items());
+            }
+            startKey = response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null;
+        } while (startKey != null && !startKey.isEmpty());
+    }
+
+    /**
+     * Bulk delete notes using BatchWriteItem delete requests, 25 keys per request, spread across
+     * the default number of concurrent writers.
+     *
+     * @return statistics of the delete; failed items only carry the key attributes
+     */
+    public BatchWriteReport deleteItems(Collection<NotesKey> keys) {
+        List<NotesItem> items = new ArrayList<>(keys.size());
+        for (NotesKey key : keys) {
+            items.add(new NotesItem(key.getUserId(), key.getNoteId(), null));
+        }
+        return ParallelBatchWriter.write(items.iterator(), DEFAULT_BATCH_WRITERS, retryPolicy, this::deleteBatch);
+    }
+
+    private List<NotesItem> deleteBatch(List<NotesItem> batch) {
+        List<WriteRequest> writeRequests = new ArrayList<>(batch.size());
+        for (NotesItem item : batch) {
+            writeRequests.add(WriteRequest.builder()
+                    .deleteRequest(DeleteRequest.builder()
+                            .key(NotesItemCodec.toKey(item.getUserId(), item.getNoteId()))
+                            .build())
+                    .build());
+        }
+        BatchWriteItemRequest request = BatchWriteItemRequest.builder()
+                .requestItems(Collections.singletonMap(TABLE_NAME, writeRequests))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
+        BatchWriteItemResponse response;
         try {
-            dynamoDbClient.putItem(request);
-        } catch (DynamoDbException ex) {
-            System.err.println(ex.getMessage());
+            response = callOnce(Capacity.WRITE, batch.size() * WRITE_UNITS_PER_ITEM, () -> dynamoDbClient.batchWriteItem(request),
+                    result -> units(result.consumedCapacity()));
+        } finally {
+            BatchWrites.invalidateCached(cache, batch);
+        }
+
+        List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
+        if (unprocessed == null || unprocessed.isEmpty()) {
+            BatchWrites.indexWritten(searchIndex, batch, Collections.emptyList(), true);
+            return Collections.emptyList();
+        }
+        onPartialBatch(Capacity.WRITE);
+        List<NotesItem> remaining = new ArrayList<>(unprocessed.size());
+        for (WriteRequest writeRequest : unprocessed) {
+            remaining.add(NotesItemCodec.fromItem(writeRequest.deleteRequest().key()));
+        }
+        BatchWrites.indexWritten(searchIndex, batch, remaining, true);
+        return remaining;
+    }
+
+    /**
+     * Creates a write-behind buffer which coalesces repeated writes to the same note and flushes
+     * them through {@link #putItems(Collection)}. The buffer must be closed to flush the last writes.
+     *
+     * @param window      maximum time a write is held before being flushed
+     * @param maxBuffered number of distinct notes that triggers an early flush
+     */
+    public NotesWriteBehindBuffer writeBehind(Duration window, int maxBuffered) {
+        return new NotesWriteBehindBuffer(this::putItems, window, maxBuffered);
+    }
+
+    /**
+     * Apply a partial update to a note using an UpdateItem expression, so only the changed
+     * attributes are sent instead of the whole item
+     *
+     * @return the attributes selected with {@link NotesUpdate#returnValues}, empty when none were
+     * requested
+     * @throws ConditionalCheckFailedException if a condition of the update does not hold
+     * @throws DynamoDbException               if the update failed; an update which is not
+     *                                         idempotent is only retried when throttled
+     */
+    public Map<String, AttributeValue> updateItem(NotesUpdate update) {
+        UpdateItemRequest request = update.toRequest(TABLE_NAME);
+        try {
+            UpdateItemResponse response = call(Capacity.WRITE, WRITE_UNITS_PER_ITEM, () -> dynamoDbClient.updateItem(request),
+                    result -> units(result.consumedCapacity()), update.isIdempotent());
+            if (searchIndex != null) {
+                update.applyTo(searchIndex);
+            }
+            return response.attributes();
+        } finally {
+            if (cache != null) {
+                cache.invalidate(new NotesKey(update.getUserId(), update.getNoteId()));
+            }
         }
     }
 
     /**
      * Get an item given the userId and NoteId values
+     *
+     * @return the note, or null if there is none
+     * @throws DynamoDbException if the note could not be read after the last retry
+     * @throws S3Exception       if a body offloaded to S3 could not be downloaded
      */
     public NotesItem getItem(String userId, Integer noteId) {
-        HashMap<String, AttributeValue> key = new HashMap<>();
-        key.put("UserId", AttributeValue.builder().s(userId).build());
-        key.put("NoteId", AttributeValue.builder().n(noteId.toString()).build());
+        if (cache != null) {
+            return cache.get(new NotesKey(userId, noteId), key -> fetchItem(key.getUserId(), key.getNoteId()));
+        }
+        return fetchItem(userId, noteId);
+    }
 
+    private NotesItem fetchItem(String userId, Integer noteId) {
         GetItemRequest request = GetItemRequest.builder()
-                .key(key)
+                .key(NotesItemCodec.toKey(userId, noteId))
                 .tableName(TABLE_NAME)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
-        try {
-            NotesItem item = new NotesItem();
-            Map<String, AttributeValue> result = dynamoDbClient.getItem(request).item();
-            item.setUserId(result.get("UserId").s());
-            item.setNoteId(Integer.parseInt(result.get("NoteId").n()));
-            item.setNotes(result.get("Notes").s());
-            return item;
-
-        } catch (DynamoDbException ex) {
-            System.err.println(ex.getMessage());
+        GetItemResponse response = call(Capacity.READ, READ_UNITS_PER_ITEM, () -> dynamoDbClient.getItem(request),
+                result -> units(result.consumedCapacity()));
+        if (!response.hasItem()) {
             return null;
         }
+        return restored(NotesItemCodec.fromItem(response.item()));
+    }
+
+    /**
+     * Get many items at once using BatchGetItem. Keys are split into 100-key requests which are
+     * issued in parallel, so resolving N keys costs one round-trip per 100 keys instead of one per key.
+     *
+     * @param keys keys to look up, duplicates allowed
+     * @return the items in the same order as the keys, with null for each key that was not found,
+     * and the keys still unprocessed after the last retry
+     * @throws DynamoDbException if a batch fails with an error other than a retried throttle
+     */
+    public BatchGetReport getItems(List<NotesKey> keys) {
+        return ParallelBatchReader.read(keys, DEFAULT_BATCH_READERS, retryPolicy, this::readBatch);
+    }
+
+    private List<NotesKey> readBatch(List<NotesKey> batch, Map<NotesKey, NotesItem> results) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(batch.size());
+        for (NotesKey key : batch) {
+            keys.add(NotesItemCodec.toKey(key));
+        }
+        BatchGetItemRequest request = BatchGetItemRequest.builder()
+                .requestItems(Collections.singletonMap(TABLE_NAME, KeysAndAttributes.builder().keys(keys).build()))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        BatchGetItemResponse response = callOnce(Capacity.READ, batch.size() * READ_UNITS_PER_ITEM,
+                () -> dynamoDbClient.batchGetItem(request), result -> units(result.consumedCapacity()));
+
+        List<Map<String, AttributeValue>> items = response.responses().get(TABLE_NAME);
+        if (items != null) {
+            for (NotesItem notesItem : decode(items)) {
+                results.put(NotesKey.of(notesItem), notesItem);
+            }
+        }
 
+        KeysAndAttributes unprocessed = response.unprocessedKeys().get(TABLE_NAME);
+        if (unprocessed == null || !unprocessed.hasKeys()) {
+            return Collections.emptyList();
+        }
+        onPartialBatch(Capacity.READ);
+        List<NotesKey> remaining = new ArrayList<>(unprocessed.keys().size());
+        for (Map<String, AttributeValue> key : unprocessed.keys()) {
+            remaining.add(NotesItemCodec.keyOf(key));
+        }
+        return remaining;
     }
 
     /**
@@ -88,6 +468,7 @@ public class NotesRepository {
      *
      * @param userId
      * @return
+     * @throws DynamoDbException if a page could not be read, rather than returning the notes read so far
      */
     public List<NotesItem> getNotesByUserid(String userId) {
         List<NotesItem> resultList = new ArrayList<>();
@@ -99,52 +480,325 @@ public class NotesRepository {
                 .tableName(TABLE_NAME)
                 .keyConditionExpression("UserId = :v_UserId")
                 .expressionAttributeValues(attrValues)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
 
-        try {
-            QueryResponse response = dynamoDbClient.query(queryRequest);
-            response.items().forEach(item -> {
-                NotesItem notesItem = new NotesItem();
-                notesItem.setUserId(item.get("UserId").s());
-                notesItem.setNoteId(Integer.parseInt(item.get("NoteId").n()));
-                notesItem.setNotes(item.get("Notes").s());
-                resultList.add(notesItem);
-            });
-        } catch (DynamoDbException ex) {
-            System.err.println(ex.getMessage());
-        }
+        // Follow LastEvaluatedKey so users with more than one page of notes are not truncated
+        new NotesQueryIterator(this::query, queryRequest, Long.MAX_VALUE, this::decode).forEachRemaining(resultList::add);
 
         return resultList;
     }
 
-    public List<NotesItem> getNotesByUseridPartiQL(String userId) {
-        List<NotesItem> resultList = new ArrayList<>();
+    /**
+     * Lazily evaluated query over the notes of a user. Pages are fetched on demand, with the next
+     * page prefetched while the current one is consumed, so arbitrarily many notes can be processed
+     * in constant memory. The stream should be closed if it is not fully consumed.
+     * <pre>
+     *     try (Stream&lt;NotesItem&gt; notes = repository.queryNotes(NotesQuery.forUser(userId).pageSize(500))) {
+     *         notes.forEach(...);
+     *     }
+     * </pre>
+     *
+     * @throws DynamoDbException from the terminal operation if a page cannot be read
+     */
+    public Stream<NotesItem> queryNotes(NotesQuery query) {
+        Map<String, String> attrNames = new HashMap<>();
+        Map<String, AttributeValue> attrValues = new HashMap<>();
+        attrValues.put(":v_UserId", AttributeValue.builder().s(query.getUserId()).build());
 
-        String sql = "SELECT * FROM Notes WHERE UserId = :v_UserId";
+        String keyCondition = "UserId = :v_UserId";
+        if (query.getNoteIdFrom() != null && query.getNoteIdTo() != null) {
+            keyCondition += " AND NoteId BETWEEN :v_From AND :v_To";
+        } else if (query.getNoteIdFrom() != null) {
+            keyCondition += " AND NoteId >= :v_From";
+        } else if (query.getNoteIdTo() != null) {
+            keyCondition += " AND NoteId <= :v_To";
+        }
+        if (query.getNoteIdFrom() != null) {
+            attrValues.put(":v_From", AttributeValue.builder().n(query.getNoteIdFrom().toString()).build());
+        }
+        if (query.getNoteIdTo() != null) {
+            attrValues.put(":v_To", AttributeValue.builder().n(query.getNoteIdTo().toString()).build());
+        }
 
-        Map<String, AttributeValue> attrValues = new HashMap<>();
-        attrValues.put(":v_UserId", AttributeValue.builder().s(userId).build());
+        QueryRequest.Builder request = QueryRequest.builder()
+                .tableName(TABLE_NAME)
+                .keyConditionExpression(keyCondition)
+                .expressionAttributeValues(attrValues)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .limit(query.getPageSize());
+        if (!query.getProjection().isEmpty()) {
+            StringBuilder projection = new StringBuilder();
+            List<String> attributes = new ArrayList<>(query.getProjection());
+            if (attributes.contains(NotesItemCodec.NOTES)) {
+                // The text may continue in appended attributes, or the body be held in an alternative one
+                for (String body : Arrays.asList(NotesItemCodec.APPENDED_NOTES, NotesItemCodec.COMPRESSED_NOTES,
+                        NotesItemCodec.NOTES_REF)) {
+                    if (!attributes.contains(body)) {
+                        attributes.add(body);
+                    }
+                }
+            }
+            for (String attribute : attributes) {
+                String placeholder = "#p" + attrNames.size();
+                attrNames.put(placeholder, attribute);
+                projection.append(projection.length() == 0 ? "" : ", ").append(placeholder);
+            }
+            request.projectionExpression(projection.toString()).expressionAttributeNames(attrNames);
+        }
 
-        try {
-            QueryRequest request = QueryRequest.builder()
+        NotesQueryIterator iterator = new NotesQueryIterator(this::query, request.build(), query.getLimit(), this::decode);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Export the whole table using a parallel Scan. The table is divided into totalSegments
+     * segments which are scanned concurrently by a pool of workers, and every item is handed to the
+     * consumer as soon as its page arrives. The consumer is called from several threads at once and
+     * must be thread-safe.
+     * <p>
+     * When a checkpoint file is given, the LastEvaluatedKey of every segment is saved every few
+     * seconds, when a segment finishes and when the scan ends. Running the scan again with the same
+     * file resumes each segment where it was last saved; items read after that save are delivered
+     * again.
+     * <p>
+     * When a segment fails, the other segments are stopped and the failure is thrown.
+     *
+     * @param totalSegments  number of segments the table is divided into
+     * @param workers        number of segments scanned at the same time
+     * @param consumer       thread-safe callback receiving every item
+     * @param checkpointFile file used to save and resume progress, or null
+     * @return the number of items delivered to the consumer
+     * @throws AbortedException if the calling thread is interrupted before the scan is complete;
+     *                          the checkpoint is saved first, so the scan can be resumed
+     */
+    public long scanAll(int totalSegments, int workers, Consumer<NotesItem> consumer, Path checkpointFile) {
+        ScanCheckpoint checkpoint = checkpointFile == null
+                ? new ScanCheckpoint(totalSegments)
+                : ScanCheckpoint.loadOrCreate(checkpointFile, totalSegments);
+        AtomicLong delivered = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>> futures = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (checkpoint.isDone(segment)) {
+                continue;
+            }
+            int current = segment;
+            futures.add(executor.submit(() -> scanSegment(current, checkpoint, checkpointFile, consumer, delivered)));
+        }
+        executor.shutdown();
+
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                break;
+            } catch (ExecutionException ex) {
+                failure = ex.getCause() instanceof RuntimeException
+                        ? (RuntimeException) ex.getCause()
+                        : new IllegalStateException(ex.getCause());
+                break;
+            }
+        }
+        if (interrupted || failure != null) {
+            // Stop the other segments at their next page, and wait for them so the checkpoint
+            // records where each one stopped
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            interrupted |= awaitTermination(executor);
+        }
+        if (checkpointFile != null) {
+            // Segments save on an interval; record wherever they stopped
+            checkpoint.save(checkpointFile);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (interrupted) {
+            throw AbortedException.create("Scan interrupted after " + delivered.get() + " items");
+        }
+        return delivered.get();
+    }
+
+    /**
+     * @return whether the calling thread was interrupted while waiting
+     */
+    private static boolean awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    return interrupted;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private void scanSegment(int segment, ScanCheckpoint checkpoint, Path checkpointFile,
+                             Consumer<NotesItem> consumer, AtomicLong delivered) {
+        Map<String, AttributeValue> startKey = checkpoint.lastKey(segment);
+        do {
+            ScanRequest.Builder request = ScanRequest.builder()
                     .tableName(TABLE_NAME)
-                    .keyConditionExpression("UserId = :v_UserId")
-                    .expressionAttributeValues(attrValues)
-                    .build();
+                    .segment(segment)
+                    .totalSegments(checkpoint.getTotalSegments())
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            if (startKey != null) {
+                request.exclusiveStartKey(startKey);
+            }
+            ScanRequest scanRequest = request.build();
+            ScanResponse response = call(Capacity.READ, scanPages.get(), () -> dynamoDbClient.scan(scanRequest),
+                    result -> units(result.consumedCapacity()));
+            scanPages.record(units(response.consumedCapacity()));
+            for (NotesItem item : decode(response.items())) {
+                consumer.accept(item);
+            }
+            delivered.addAndGet(response.count());
 
-            QueryResponse response = dynamoDbClient.query(request);
-            response.items().forEach(item -> {
-                        NotesItem notesItem = new NotesItem();
-                        notesItem.setUserId(item.get("UserId").s());
-                        notesItem.setNoteId(Integer.parseInt(item.get("NoteId").n()));
-                        notesItem.setNotes(item.get("Notes").s());
-                        resultList.add(notesItem);
-                    }
-            );
-        } catch (DynamoDbException ex) {
-            System.err.println(ex.getMessage());
+            startKey = response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null;
+            checkpoint.advance(segment, startKey);
+            if (checkpointFile != null) {
+                checkpoint.saveIfDue(checkpointFile);
+            }
+        } while (startKey != null && !startKey.isEmpty() && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Same query as {@link #getNotesByUserid(String)} expressed in PartiQL and run through
+     * ExecuteStatement
+     */
+    public List<NotesItem> getNotesByUseridPartiQL(String userId) {
+        return partiQL.getNotesByUserid(userId);
+    }
+
+    /**
+     * Access to the PartiQL statements for batched reads and writes. They share this repository's
+     * rate limiter, retry policy, metrics and body store, and notes they insert are dropped from the
+     * cache and added to the search index.
+     */
+    public NotesPartiQLExecutor partiQL() {
+        return partiQL;
+    }
+
+    private QueryResponse query(QueryRequest request) {
+        double estimate = queryPages.get();
+        if (request.limit() != null) {
+            // A page cannot hold more than Limit items
+            estimate = Math.min(estimate, Math.max(READ_UNITS_PER_ITEM, request.limit() * READ_UNITS_PER_ITEM));
+        }
+        QueryResponse response = call(Capacity.READ, estimate, () -> dynamoDbClient.query(request),
+                result -> units(result.consumedCapacity()));
+        queryPages.record(units(response.consumedCapacity()));
+        return response;
+    }
+
+    private NotesItem stored(NotesItem item) {
+        return bodyStore == null ? item : bodyStore.prepare(item);
+    }
+
+    private NotesItem restored(NotesItem item) {
+        return bodyStore == null ? item : bodyStore.restore(item);
+    }
+
+    /**
+     * Maps a page of items, fetching any bodies held in S3 for the whole page at once
+     */
+    private List<NotesItem> decode(List<Map<String, AttributeValue>> items) {
+        List<NotesItem> notes = NotesQueryIterator.decode(items);
+        return bodyStore == null ? notes : bodyStore.restore(notes);
+    }
+
+    /**
+     * Sends a request through the rate limiter and retry policy
+     */
+    private <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits) {
+        return call(capacity, estimatedUnits, request, consumedUnits, true);
+    }
+
+    private <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits,
+                       boolean idempotent) {
+        return recorded(capacity, consumedUnits,
+                retryPolicy.execute(rateLimiter, capacity, estimatedUnits, request, consumedUnits, idempotent));
+    }
+
+    /**
+     * Sends a single attempt of a batch request; the batch loop retries it along with its
+     * unprocessed items
+     */
+    private <T> T callOnce(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits) {
+        return recorded(capacity, consumedUnits,
+                retryPolicy.executeOnce(rateLimiter, capacity, estimatedUnits, request, consumedUnits));
+    }
+
+    private <T> T recorded(Capacity capacity, ToDoubleFunction<T> consumedUnits, T response) {
+        if (metrics != null) {
+            metrics.recordConsumedCapacity(capacity, consumedUnits.applyAsDouble(response));
+        }
+        return response;
+    }
+
+    /**
+     * Unprocessed items in a batch response are DynamoDB's way of throttling part of the batch
+     */
+    private void onPartialBatch(Capacity capacity) {
+        if (rateLimiter != null) {
+            rateLimiter.onThrottle(capacity);
         }
-        return resultList;
     }
 
+    private static double units(ConsumedCapacity consumedCapacity) {
+        return consumedCapacity == null || consumedCapacity.capacityUnits() == null
+                ? Double.NaN
+                : consumedCapacity.capacityUnits();
+    }
+
+    private static double units(List<ConsumedCapacity> consumedCapacity) {
+        if (consumedCapacity == null || consumedCapacity.isEmpty()) {
+            return Double.NaN;
+        }
+        double total = 0;
+        for (ConsumedCapacity capacity : consumedCapacity) {
+            total += capacity.capacityUnits() == null ? 0 : capacity.capacityUnits();
+        }
+        return total;
+    }
+
+    /**
+     * Runs the PartiQL statements through the same path as every other request
+     */
+    private final class PartiQLHooks implements NotesPartiQLExecutor.Hooks {
+        @Override
+        public <T> T call(Capacity capacity, double estimatedUnits, Supplier<T> request, ToDoubleFunction<T> consumedUnits) {
+            return NotesRepository.this.call(capacity, estimatedUnits, request, consumedUnits);
+        }
+
+        @Override
+        public NotesItem stored(NotesItem item) {
+            return NotesRepository.this.stored(item);
+        }
+
+        @Override
+        public List<NotesItem> decode(List<Map<String, AttributeValue>> items) {
+            return NotesRepository.this.decode(items);
+        }
+
+        @Override
+        public void written(List<NotesItem> items) {
+            BatchWrites.invalidateCached(cache, items);
+            BatchWrites.indexWritten(searchIndex, items, Collections.emptyList(), false);
+        }
+    }
 }
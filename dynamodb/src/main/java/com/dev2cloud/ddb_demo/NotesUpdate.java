@@ -0,0 +1,269 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes a partial update of a single note which is sent as an UpdateItem expression, so only
+ * the changed attributes travel over the wire instead of the whole item.
+ * <pre>
+ *     NotesUpdate.of("student1", 42).appendToNotes("\nAlso bring a calculator").countEdit().touch()
+ *             .onlyIfExists().returnValues(ReturnValue.UPDATED_NEW)
+ * </pre>
+ * Every attribute name and value is passed through a placeholder, so reserved words can be used
+ * as attribute names.
+ */
+public class NotesUpdate {
+    public static final String EDIT_COUNT = "EditCount";
+    public static final String LAST_MODIFIED = "LastModified";
+
+    private final String userId;
+    private final int noteId;
+    private final List<String> setClauses = new ArrayList<>();
+    private final List<String> removeClauses = new ArrayList<>();
+    private final List<String> addClauses = new ArrayList<>();
+    private final List<String> conditions = new ArrayList<>();
+    private final Map<String, String> names = new HashMap<>();
+    private final Map<String, AttributeValue> values = new HashMap<>();
+    private ReturnValue returnValue = ReturnValue.NONE;
+    // Kept so a search index can follow changes to the text
+    private String replacedNotes;
+    // Appended since the body was last replaced; the NotesAppended clause is built from it in toRequest
+    private final List<String> appendedText = new ArrayList<>();
+    private boolean bodyReplaced;
+
+    private NotesUpdate(String userId, int noteId) {
+        this.userId = userId;
+        this.noteId = noteId;
+    }
+
+    public static NotesUpdate of(String userId, int noteId) {
+        return new NotesUpdate(userId, noteId);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getNoteId() {
+        return noteId;
+    }
+
+    /**
+     * Appends text to the note without sending the existing text. The text is stored in a
+     * separate list attribute and folded into Notes when the note is read. Text appended after
+     * the body was replaced in the same update becomes the whole list.
+     */
+    public NotesUpdate appendToNotes(String text) {
+        appendedText.add(text);
+        return this;
+    }
+
+    /**
+     * Replaces the note with plain text. Text previously appended with
+     * {@link #appendToNotes(String)} and any compressed or offloaded body are dropped; large notes
+     * are better written in full so a {@link NoteBodyStore} can compress them.
+     */
+    public NotesUpdate setNotes(String notes) {
+        replacedNotes = notes;
+        dropAppended();
+        remove(NotesItemCodec.COMPRESSED_NOTES);
+        remove(NotesItemCodec.NOTES_REF);
+        return set(NotesItemCodec.NOTES, AttributeValue.fromS(notes));
+    }
+
+    /**
+     * Replaces the body of the note with the body of an item as prepared for storage, whether plain,
+     * compressed or offloaded. The attributes the item does not use, including any appended text,
+     * are removed so they cannot take precedence over the new body when the note is read.
+     */
+    NotesUpdate replaceBody(NotesItem stored) {
+        if (stored.getCompressedNotes() != null) {
+            set(NotesItemCodec.COMPRESSED_NOTES, AttributeValue.fromB(stored.getCompressedNotes()));
+            remove(NotesItemCodec.NOTES_REF);
+        } else if (stored.getNotesRef() != null) {
+            set(NotesItemCodec.NOTES_REF, AttributeValue.fromS(stored.getNotesRef()));
+            remove(NotesItemCodec.COMPRESSED_NOTES);
+        } else if (stored.getNotes() != null) {
+            return setNotes(stored.getNotes());
+        } else {
+            remove(NotesItemCodec.COMPRESSED_NOTES);
+            remove(NotesItemCodec.NOTES_REF);
+        }
+        dropAppended();
+        return remove(NotesItemCodec.NOTES);
+    }
+
+    /**
+     * Text appended before the body is replaced is lost with the old body
+     */
+    private void dropAppended() {
+        appendedText.clear();
+        bodyReplaced = true;
+    }
+
+    public NotesUpdate set(String attribute, String value) {
+        return set(attribute, AttributeValue.fromS(value));
+    }
+
+    public NotesUpdate set(String attribute, long value) {
+        return set(attribute, AttributeValue.fromN(Long.toString(value)));
+    }
+
+    public NotesUpdate set(String attribute, AttributeValue value) {
+        setClauses.add(name(attribute) + " = " + value(value));
+        return this;
+    }
+
+    public NotesUpdate remove(String attribute) {
+        removeClauses.add(name(attribute));
+        return this;
+    }
+
+    /**
+     * Atomically adds delta to a numeric attribute, starting from zero if it does not exist yet
+     */
+    public NotesUpdate increment(String attribute, long delta) {
+        addClauses.add(name(attribute) + " " + value(AttributeValue.fromN(Long.toString(delta))));
+        return this;
+    }
+
+    /**
+     * Increments the EditCount attribute
+     */
+    public NotesUpdate countEdit() {
+        return increment(EDIT_COUNT, 1);
+    }
+
+    /**
+     * Sets the LastModified attribute to the current time in epoch milliseconds
+     */
+    public NotesUpdate touch() {
+        return set(LAST_MODIFIED, System.currentTimeMillis());
+    }
+
+    /**
+     * Only update a note which already exists, instead of creating it
+     */
+    public NotesUpdate onlyIfExists() {
+        conditions.add("attribute_exists(" + name(NotesItemCodec.USER_ID) + ")");
+        return this;
+    }
+
+    /**
+     * Only update the note if the attribute currently has the expected value, e.g. an EditCount
+     * read earlier for optimistic locking
+     */
+    public NotesUpdate onlyIfEquals(String attribute, AttributeValue expected) {
+        conditions.add(name(attribute) + " = " + value(expected));
+        return this;
+    }
+
+    /**
+     * Which attributes the update returns; NONE by default
+     */
+    public NotesUpdate returnValues(ReturnValue returnValue) {
+        this.returnValue = returnValue;
+        return this;
+    }
+
+    /**
+     * Whether applying the update twice leaves the note as applying it once. Appends and
+     * increments do not, so they must not be sent again after an error which may have been
+     * returned after the update was applied.
+     */
+    public boolean isIdempotent() {
+        return (bodyReplaced || appendedText.isEmpty()) && addClauses.isEmpty();
+    }
+
+    /**
+     * Applies the changes this update makes to the text of the note to the index
+     */
+    void applyTo(NotesIndex index) {
+        NotesKey key = new NotesKey(userId, noteId);
+        if (replacedNotes != null) {
+            index.index(new NotesItem(userId, noteId, replacedNotes));
+        }
+        for (String text : appendedText) {
+            index.append(key, text);
+        }
+    }
+
+    UpdateItemRequest toRequest(String tableName) {
+        // DynamoDB rejects an expression which names NotesAppended twice, so all the changes to it
+        // go into a single clause
+        List<String> sets = new ArrayList<>(setClauses);
+        List<String> removes = new ArrayList<>(removeClauses);
+        Map<String, AttributeValue> requestValues = new HashMap<>(values);
+        if (!appendedText.isEmpty()) {
+            String attribute = name(NotesItemCodec.APPENDED_NOTES);
+            List<AttributeValue> texts = new ArrayList<>(appendedText.size());
+            for (String text : appendedText) {
+                texts.add(AttributeValue.fromS(text));
+            }
+            String appended = value(requestValues, AttributeValue.fromL(texts));
+            sets.add(bodyReplaced ? attribute + " = " + appended
+                    : attribute + " = list_append(if_not_exists(" + attribute + ", "
+                    + value(requestValues, AttributeValue.fromL(Collections.emptyList())) + "), " + appended + ")");
+        } else if (bodyReplaced) {
+            removes.add(name(NotesItemCodec.APPENDED_NOTES));
+        }
+        if (sets.isEmpty() && removes.isEmpty() && addClauses.isEmpty()) {
+            throw new IllegalStateException("Update of note " + userId + "/" + noteId + " does not change anything");
+        }
+        StringBuilder expression = new StringBuilder();
+        appendClause(expression, "SET", sets);
+        appendClause(expression, "REMOVE", removes);
+        appendClause(expression, "ADD", addClauses);
+
+        UpdateItemRequest.Builder request = UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(NotesItemCodec.toKey(userId, noteId))
+                .updateExpression(expression.toString())
+                .expressionAttributeNames(names)
+                .returnValues(returnValue)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        if (!requestValues.isEmpty()) {
+            request.expressionAttributeValues(requestValues);
+        }
+        if (!conditions.isEmpty()) {
+            request.conditionExpression(String.join(" AND ", conditions));
+        }
+        return request.build();
+    }
+
+    private static void appendClause(StringBuilder expression, String action, List<String> clauses) {
+        if (!clauses.isEmpty()) {
+            expression.append(expression.length() == 0 ? "" : " ").append(action).append(' ').append(String.join(", ", clauses));
+        }
+    }
+
+    private String name(String attribute) {
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            if (entry.getValue().equals(attribute)) {
+                return entry.getKey();
+            }
+        }
+        String placeholder = "#a" + names.size();
+        names.put(placeholder, attribute);
+        return placeholder;
+    }
+
+    private String value(AttributeValue value) {
+        return value(values, value);
+    }
+
+    private static String value(Map<String, AttributeValue> values, AttributeValue value) {
+        String placeholder = ":v" + values.size();
+        values.put(placeholder, value);
+        return placeholder;
+    }
+}
@@ -0,0 +1,223 @@
+package com.dev2cloud.ddb_demo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for notes that are rewritten many times in quick succession. Writes are held
+ * for up to the configured window; a later write to the same note replaces the earlier one, so only
+ * the latest version reaches DynamoDB. Buffered notes are flushed through the repository's batched
+ * {@code putItems}, either when the window elapses or as soon as the buffer fills up.
+ * <p>
+ * Every caller receives a future that completes once its write (or a later write that replaced it)
+ * is durable in the table. {@link #close()} flushes whatever is still buffered. A buffer which is
+ * still open when the JVM shuts down is closed by a shutdown hook, so an application that exits
+ * normally without closing it does not lose buffered writes; a JVM that is killed still does.
+ * <pre>
+ *     NotesWriteBehindBuffer buffer = new NotesWriteBehindBuffer(repository::putItems, Duration.ofMillis(200), 1000);
+ * </pre>
+ */
+public class NotesWriteBehindBuffer implements AutoCloseable {
+
+    /**
+     * The bulk write used to flush the buffer, e.g. {@code NotesRepository::putItems}
+     */
+    public interface BulkWriter {
+        BatchWriteReport putItems(Collection<NotesItem> items);
+    }
+
+    private final BulkWriter writer;
+    private final int maxBuffered;
+    // A single thread runs every flush so two versions of a note can never be written out of order
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook = new Thread(this::close, "notes-write-behind-shutdown");
+
+    private Map<NotesKey, PendingWrite> buffer = new LinkedHashMap<>();
+    private boolean closed;
+
+    private final LongAdder writesReceived = new LongAdder();
+    private final LongAdder writesCoalesced = new LongAdder();
+    private final LongAdder itemsFlushed = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    /**
+     * @param writer      bulk write used to flush buffered notes
+     * @param window      maximum time a write is held before being flushed
+     * @param maxBuffered number of distinct notes that triggers an early flush
+     */
+    public NotesWriteBehindBuffer(BulkWriter writer, Duration window, int maxBuffered) {
+        this.writer = writer;
+        this.maxBuffered = maxBuffered;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "notes-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.flusher = executor;
+        long windowMillis = Math.max(1, window.toMillis());
+        flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Buffer a write of the note
+     *
+     * @return a future completing once the note is durable, or exceptionally if it could not be written
+     */
+    public CompletableFuture<Void> put(NotesItem item) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Write-behind buffer is closed");
+            }
+            writesReceived.increment();
+            NotesKey key = NotesKey.of(item);
+            PendingWrite pending = buffer.get(key);
+            if (pending == null) {
+                buffer.put(key, new PendingWrite(item, durable));
+            } else {
+                pending.item = item;
+                pending.waiting.add(durable);
+                writesCoalesced.increment();
+            }
+            full = buffer.size() >= maxBuffered;
+        }
+        if (full) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException ex) {
+                // Closed concurrently; the final flush in close() picks this write up
+            }
+        }
+        return durable;
+    }
+
+    /**
+     * Stops accepting writes and blocks until everything buffered has been flushed
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ex) {
+                // The JVM is already shutting down; the hook will find the buffer closed
+            }
+        }
+        flusher.execute(this::flush);
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWritesReceived() {
+        return writesReceived.sum();
+    }
+
+    /**
+     * Writes that were replaced by a later write to the same note before being flushed, i.e. the
+     * number of writes saved
+     */
+    public long getWritesCoalesced() {
+        return writesCoalesced.sum();
+    }
+
+    public long getItemsFlushed() {
+        return itemsFlushed.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehind [Received=%d, Coalesced=%d, Flushed=%d, Flushes=%d, Failed=%d]",
+                getWritesReceived(), getWritesCoalesced(), getItemsFlushed(), getFlushes(), getFailedWrites());
+    }
+
+    private void flush() {
+        Map<NotesKey, PendingWrite> toFlush;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            toFlush = buffer;
+            buffer = new LinkedHashMap<>();
+        }
+        List<NotesItem> items = new ArrayList<>(toFlush.size());
+        for (PendingWrite pending : toFlush.values()) {
+            items.add(pending.item);
+        }
+        flushes.increment();
+        try {
+            BatchWriteReport report = writer.putItems(items);
+            Set<NotesKey> failed = new HashSet<>();
+            for (NotesItem item : report.getFailedItems()) {
+                failed.add(NotesKey.of(item));
+            }
+            RuntimeException failure = new IllegalStateException("Note could not be written after retries");
+            for (Map.Entry<NotesKey, PendingWrite> entry : toFlush.entrySet()) {
+                if (failed.contains(entry.getKey())) {
+                    entry.getValue().fail(failure);
+                } else {
+                    entry.getValue().complete();
+                }
+            }
+            itemsFlushed.add(items.size() - failed.size());
+            failedWrites.add(failed.size());
+        } catch (RuntimeException ex) {
+            System.err.println(ex.getMessage());
+            failedWrites.add(items.size());
+            for (PendingWrite pending : toFlush.values()) {
+                pending.fail(ex);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        NotesItem item;
+        final List<CompletableFuture<Void>> waiting = new ArrayList<>(1);
+
+        PendingWrite(NotesItem item, CompletableFuture<Void> durable) {
+            this.item = item;
+            this.waiting.add(durable);
+        }
+
+        void complete() {
+            waiting.forEach(future -> future.complete(null));
+        }
+
+        void fail(Throwable error) {
+            waiting.forEach(future -> future.completeExceptionally(error));
+        }
+    }
+}
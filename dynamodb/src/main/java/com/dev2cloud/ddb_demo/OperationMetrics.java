@@ -0,0 +1,95 @@
+package com.dev2cloud.ddb_demo;
+
+/**
+ * Figures of a single DynamoDB operation at the time {@link NotesMetrics#snapshot()} was taken.
+ * Latencies are in milliseconds: the total latency covers the whole API call including SDK retries
+ * and backoff, the service latency only the time spent waiting for DynamoDB to respond.
+ */
+public class OperationMetrics {
+    private final String operation;
+    private final long calls;
+    private final long failures;
+    private final long retries;
+    private final long throttles;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final double serviceP50Millis;
+    private final double serviceP99Millis;
+
+    OperationMetrics(String operation, long calls, long failures, long retries, long throttles,
+                     LatencyHistogram latency, LatencyHistogram serviceLatency) {
+        this.operation = operation;
+        this.calls = calls;
+        this.failures = failures;
+        this.retries = retries;
+        this.throttles = throttles;
+        this.p50Millis = millis(latency.getPercentileMicros(0.5));
+        this.p99Millis = millis(latency.getPercentileMicros(0.99));
+        this.p999Millis = millis(latency.getPercentileMicros(0.999));
+        this.maxMillis = millis(latency.getMaxMicros());
+        this.serviceP50Millis = millis(serviceLatency.getPercentileMicros(0.5));
+        this.serviceP99Millis = millis(serviceLatency.getPercentileMicros(0.99));
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Retries made by the SDK; retries of the repositories' own retry policy show up as separate calls
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Attempts rejected by DynamoDB with a throttling error
+     */
+    public long getThrottles() {
+        return throttles;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public double getServiceP50Millis() {
+        return serviceP50Millis;
+    }
+
+    public double getServiceP99Millis() {
+        return serviceP99Millis;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [Calls=%d, Failed=%d, Retries=%d, Throttled=%d, p50=%.2f ms, p99=%.2f ms, p999=%.2f ms]",
+                operation, calls, failures, retries, throttles, p50Millis, p99Millis, p999Millis);
+    }
+}
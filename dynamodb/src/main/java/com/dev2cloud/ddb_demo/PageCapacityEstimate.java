@@ -0,0 +1,33 @@
+package com.dev2cloud.ddb_demo;
+
+/**
+ * Running estimate of the read capacity a Query or Scan page consumes, used as the reservation
+ * for the next page. The limiter corrects each reservation with the ConsumedCapacity of its
+ * response anyway; a close estimate keeps those corrections, and the bursts they allow, small.
+ */
+class PageCapacityEstimate {
+    /**
+     * A full 1 MB page read with eventual consistency: 256 blocks of 4 KB at half a unit each
+     */
+    static final double MAX_PAGE_READ_UNITS = 128;
+    private static final double WEIGHT = 0.2;
+
+    private double estimate;
+
+    PageCapacityEstimate(double initial) {
+        this.estimate = initial;
+    }
+
+    synchronized double get() {
+        return estimate;
+    }
+
+    /**
+     * Moves the estimate towards the units a page consumed; NaN, i.e. not reported, is ignored
+     */
+    synchronized void record(double consumedUnits) {
+        if (!Double.isNaN(consumedUnits)) {
+            estimate += WEIGHT * (consumedUnits - estimate);
+        }
+    }
+}
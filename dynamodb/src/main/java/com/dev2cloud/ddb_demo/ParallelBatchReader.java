@@ -0,0 +1,104 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a list of keys into BatchGetItem sized chunks and fetches those chunks concurrently.
+ * Each repository supplies the call that reads a single chunk; keys reported back as
+ * UnprocessedKeys are resubmitted with the repository's retry backoff. The call should send each
+ * attempt once: a chunk failing with a retryable error is resubmitted by the same loop.
+ */
+class ParallelBatchReader {
+    /**
+     * BatchGetItem accepts at most 100 keys per call
+     */
+    static final int MAX_BATCH_SIZE = 100;
+    static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * Reads a single chunk, adding every item found to results and returning the unprocessed keys
+     */
+    interface BatchCall {
+        List<NotesKey> read(List<NotesKey> batch, Map<NotesKey, NotesItem> results);
+    }
+
+    private ParallelBatchReader() {
+    }
+
+    /**
+     * @return the items in the same order as the requested keys, with the keys which could not be
+     * read after the last retry reported separately from those which were not found
+     */
+    static BatchGetReport read(List<NotesKey> keys, int readers, ThrottleRetryPolicy retryPolicy, BatchCall call) {
+        // BatchGetItem rejects requests containing the same key twice
+        List<NotesKey> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<NotesKey, NotesItem> results = new ConcurrentHashMap<>(distinct.size() * 2);
+        Set<NotesKey> unresolved = new HashSet<>();
+
+        int batchCount = (distinct.size() + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(readers, batchCount)));
+        try {
+            List<Future<List<NotesKey>>> futures = new ArrayList<>(batchCount);
+            for (int from = 0; from < distinct.size(); from += MAX_BATCH_SIZE) {
+                List<NotesKey> batch = distinct.subList(from, Math.min(from + MAX_BATCH_SIZE, distinct.size()));
+                futures.add(executor.submit(() -> readWithRetry(batch, retryPolicy, call, results)));
+            }
+            for (Future<List<NotesKey>> future : futures) {
+                unresolved.addAll(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            // Whatever was not read before the interrupt is unresolved
+            for (NotesKey key : distinct) {
+                if (!results.containsKey(key)) {
+                    unresolved.add(key);
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<NotesItem> ordered = new ArrayList<>(keys.size());
+        for (NotesKey key : keys) {
+            ordered.add(results.get(key));
+        }
+        return new BatchGetReport(ordered, unresolved);
+    }
+
+    private static List<NotesKey> readWithRetry(List<NotesKey> batch, ThrottleRetryPolicy retryPolicy, BatchCall call,
+                                                Map<NotesKey, NotesItem> results) throws InterruptedException {
+        List<NotesKey> pending = batch;
+        int attempt = 0;
+        while (!pending.isEmpty() && attempt < MAX_ATTEMPTS) {
+            if (attempt > 0) {
+                retryPolicy.backoff(attempt);
+            }
+            try {
+                pending = call.read(pending, results);
+                attempt++;
+            } catch (SdkException ex) {
+                if (!retryPolicy.tryRetry(ex, ++attempt)) {
+                    throw ex;
+                }
+            }
+        }
+        return pending;
+    }
+}
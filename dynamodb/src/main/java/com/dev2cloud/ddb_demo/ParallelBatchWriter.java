@@ -0,0 +1,226 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Groups a stream of items into BatchWriteItem sized chunks and writes them using a pool of
+ * concurrent writers. Each repository supplies the call that writes a single batch, which
+ * returns whatever DynamoDB reported back as unprocessed so it can be resubmitted with backoff.
+ * The call should send each attempt once: a batch failing with a retryable error is resubmitted
+ * by the same loop, under the same attempt limit, as one with unprocessed items.
+ * <p>
+ * Every key belongs to one writer, picked by its hash, and each writer sends its batches one
+ * after the other, so when the stream holds the same key more than once the last write is the
+ * one that stays. BatchWriteItem rejects a request holding the same key twice, so writes to one
+ * key waiting for the same batch are coalesced and only the last of them is sent.
+ * <p>
+ * Items are usually notes, but may be anything the batch call can write, such as the raw
+ * attributes of an item, as long as their key and a note to report them by can be derived.
+ */
+class ParallelBatchWriter {
+    /**
+     * BatchWriteItem accepts at most 25 put or delete requests per call
+     */
+    static final int MAX_BATCH_SIZE = 25;
+    static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * Writes a single batch and returns the items DynamoDB did not process
+     */
+    interface BatchCall<T> {
+        List<T> write(List<T> batch);
+    }
+
+    private ParallelBatchWriter() {
+    }
+
+    static BatchWriteReport write(Iterator<NotesItem> items, int writers, ThrottleRetryPolicy retryPolicy,
+                                  BatchCall<NotesItem> call) {
+        return write(items, writers, retryPolicy, NotesKey::of, Function.identity(), call);
+    }
+
+    /**
+     * @param keyOf    primary key of an item, used to coalesce writes to the same key
+     * @param reported the note an item that could not be written is reported as
+     */
+    static <T> BatchWriteReport write(Iterator<T> items, int writers, ThrottleRetryPolicy retryPolicy,
+                                      Function<T, NotesKey> keyOf, Function<T, NotesItem> reported, BatchCall<T> call) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("writers must be at least 1");
+        }
+        BatchWriteReport report = new BatchWriteReport();
+        long start = System.nanoTime();
+        List<Lane<T>> lanes = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            lanes.add(new Lane<>());
+        }
+        // Bound the number of batches held in memory so a large stream can be ingested
+        // without materializing it first
+        Semaphore inFlight = new Semaphore(writers * 2);
+        List<T> batch = null;
+        try {
+            while (items.hasNext()) {
+                T item = items.next();
+                NotesKey key = keyOf.apply(item);
+                Lane<T> lane = lanes.get(Math.floorMod(key.hashCode(), writers));
+                lane.pending.put(key, item);
+                if (lane.pending.size() == MAX_BATCH_SIZE) {
+                    batch = lane.take();
+                    inFlight.acquire();
+                    lane.executor.execute(new BatchTask<>(batch, retryPolicy, call, reported, report, inFlight));
+                    batch = null;
+                }
+            }
+            for (Lane<T> lane : lanes) {
+                if (!lane.pending.isEmpty()) {
+                    batch = lane.take();
+                    inFlight.acquire();
+                    lane.executor.execute(new BatchTask<>(batch, retryPolicy, call, reported, report, inFlight));
+                    batch = null;
+                }
+            }
+            for (Lane<T> lane : lanes) {
+                lane.executor.shutdown();
+            }
+            for (Lane<T> lane : lanes) {
+                lane.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException ex) {
+            // Batches already being written stop at their next backoff and report what is left;
+            // those still queued, the one waiting to be queued and the items still being
+            // gathered into batches were never sent
+            for (Lane<T> lane : lanes) {
+                for (Runnable queued : lane.executor.shutdownNow()) {
+                    ((BatchTask<?>) queued).reportFailed();
+                }
+                if (!lane.pending.isEmpty()) {
+                    recordFailed(lane.take(), reported, report);
+                }
+            }
+            if (batch != null) {
+                recordFailed(batch, reported, report);
+            }
+            report.interrupted();
+            for (Lane<T> lane : lanes) {
+                awaitUninterruptibly(lane.executor);
+            }
+            Thread.currentThread().interrupt();
+        }
+        report.complete(System.nanoTime() - start);
+        return report;
+    }
+
+    private static void awaitUninterruptibly(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> void writeWithRetry(List<T> batch, ThrottleRetryPolicy retryPolicy, BatchCall<T> call,
+                                           Function<T, NotesItem> reported, BatchWriteReport report) {
+        List<T> pending = batch;
+        int attempt = 0;
+        try {
+            while (!pending.isEmpty() && attempt < MAX_ATTEMPTS) {
+                if (attempt > 0) {
+                    retryPolicy.backoff(attempt);
+                }
+                try {
+                    pending = call.write(pending);
+                    attempt++;
+                } catch (SdkException ex) {
+                    if (!retryPolicy.tryRetry(ex, ++attempt)) {
+                        throw ex;
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            report.recordError(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        report.recordBatch(batch.size() - pending.size(), Math.max(0, attempt - 1));
+        if (!pending.isEmpty()) {
+            recordFailed(pending, reported, report);
+        }
+    }
+
+    private static <T> void recordFailed(List<T> items, Function<T, NotesItem> reported, BatchWriteReport report) {
+        List<NotesItem> failed = new ArrayList<>(items.size());
+        for (T item : items) {
+            failed.add(reported.apply(item));
+        }
+        report.recordFailed(failed);
+    }
+
+    /**
+     * The keys of one writer: the batch being gathered for it, keeping the last write of each
+     * key, and the thread sending its batches in order
+     */
+    private static final class Lane<T> {
+        final Map<NotesKey, T> pending = new LinkedHashMap<>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        List<T> take() {
+            List<T> batch = new ArrayList<>(pending.values());
+            pending.clear();
+            return batch;
+        }
+    }
+
+    /**
+     * A batch queued on the pool, kept reachable so it can be reported if it never runs
+     */
+    private static final class BatchTask<T> implements Runnable {
+        private final List<T> batch;
+        private final ThrottleRetryPolicy retryPolicy;
+        private final BatchCall<T> call;
+        private final Function<T, NotesItem> reported;
+        private final BatchWriteReport report;
+        private final Semaphore inFlight;
+
+        BatchTask(List<T> batch, ThrottleRetryPolicy retryPolicy, BatchCall<T> call, Function<T, NotesItem> reported,
+                  BatchWriteReport report, Semaphore inFlight) {
+            this.batch = batch;
+            this.retryPolicy = retryPolicy;
+            this.call = call;
+            this.reported = reported;
+            this.report = report;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public void run() {
+            try {
+                writeWithRetry(batch, retryPolicy, call, reported, report);
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        void reportFailed() {
+            recordFailed(batch, reported, report);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dev2cloud.ddb_demo;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes the metrics at a fixed interval, as a text table or a line of JSON, to a sink such as
+ * standard output or a logger. A final dump is written when the exporter is closed.
+ */
+public class PeriodicMetricsDump implements NotesMetricsExporter {
+
+    public enum Format {TEXT, JSON}
+
+    private final NotesMetrics metrics;
+    private final Format format;
+    private final Consumer<String> sink;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Dumps to standard output
+     */
+    public PeriodicMetricsDump(NotesMetrics metrics, Duration interval, Format format) {
+        this(metrics, interval, format, System.out::println);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the interval is shorter than a millisecond
+     */
+    public PeriodicMetricsDump(NotesMetrics metrics, Duration interval, Format format, Consumer<String> sink) {
+        if (interval.toMillis() < 1) {
+            throw new IllegalArgumentException("interval must be at least 1 ms, was " + interval);
+        }
+        this.metrics = metrics;
+        this.format = format;
+        this.sink = sink;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notes-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleAtFixedRate(this::dump, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void dump() {
+        try {
+            sink.accept(format == Format.JSON ? metrics.toJson() : metrics.toText());
+        } catch (RuntimeException ex) {
+            // Keep the schedule running if the sink fails once
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        dump();
+    }
+}
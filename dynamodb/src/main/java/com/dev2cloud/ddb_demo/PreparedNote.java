@@ -0,0 +1,87 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A note queued for a batch write together with the form it is written in. The body is prepared
+ * the first time the note is sent and reused by every retry, so a large body is compressed or
+ * uploaded to S3 once however many attempts its batch takes.
+ */
+final class PreparedNote {
+    private final NotesItem original;
+    private NotesItem stored;
+
+    private PreparedNote(NotesItem original) {
+        this.original = original;
+    }
+
+    /**
+     * Wraps the notes as they are pulled from the iterator
+     */
+    static Iterator<PreparedNote> wrap(Iterator<NotesItem> items) {
+        return new Iterator<PreparedNote>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public PreparedNote next() {
+                return new PreparedNote(items.next());
+            }
+        };
+    }
+
+    NotesKey key() {
+        return NotesKey.of(original);
+    }
+
+    /**
+     * The note as the caller passed it, with the plain text
+     */
+    NotesItem original() {
+        return original;
+    }
+
+    /**
+     * The note as it is written to the table, prepared on the first call
+     */
+    NotesItem stored(UnaryOperator<NotesItem> prepare) {
+        if (stored == null) {
+            stored = prepare.apply(original);
+        }
+        return stored;
+    }
+
+    static List<NotesItem> originals(List<PreparedNote> notes) {
+        List<NotesItem> originals = new ArrayList<>(notes.size());
+        for (PreparedNote note : notes) {
+            originals.add(note.original);
+        }
+        return originals;
+    }
+
+    /**
+     * Maps the unprocessed items of a batch response, which hold the stored form of each note,
+     * back to the notes of the batch
+     */
+    static List<PreparedNote> unprocessed(List<PreparedNote> batch, List<NotesItem> unprocessed) {
+        if (unprocessed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<NotesKey, PreparedNote> byKey = new HashMap<>();
+        for (PreparedNote note : batch) {
+            byKey.put(note.key(), note);
+        }
+        List<PreparedNote> remaining = new ArrayList<>(unprocessed.size());
+        for (NotesItem item : unprocessed) {
+            remaining.add(byKey.get(NotesKey.of(item)));
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,186 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a parallel scan: for every segment, the LastEvaluatedKey of the last page that was
+ * fully processed, or whether the segment is finished. Saved as a properties file so an interrupted
+ * export can be resumed from where each segment left off.
+ * <p>
+ * While a scan runs the file is rewritten at most once per save interval, and whenever a segment
+ * finishes, rather than after every page. A resumed scan may therefore repeat the pages read
+ * during the last interval.
+ */
+public class ScanCheckpoint {
+    static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final int totalSegments;
+    private final List<Map<String, AttributeValue>> lastKeys;
+    private final boolean[] done;
+    // Progress changes since the last save, and whether one of them finished a segment
+    private long version;
+    private long savedVersion;
+    private boolean segmentFinished;
+    private long savedAt = System.nanoTime();
+    // Serializes writes of the file, which happen outside the lock on the progress
+    private final Object fileLock = new Object();
+    private long writtenVersion = -1;
+
+    public ScanCheckpoint(int totalSegments) {
+        this.totalSegments = totalSegments;
+        this.lastKeys = new ArrayList<>(Collections.nCopies(totalSegments, null));
+        this.done = new boolean[totalSegments];
+    }
+
+    /**
+     * Load a checkpoint written by {@link #save(Path)}, or start a new one if the file does not exist
+     */
+    public static ScanCheckpoint loadOrCreate(Path file, int totalSegments) {
+        if (!Files.exists(file)) {
+            return new ScanCheckpoint(totalSegments);
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        int savedSegments = Integer.parseInt(properties.getProperty("totalSegments"));
+        if (savedSegments != totalSegments) {
+            throw new IllegalArgumentException("Checkpoint " + file + " was written for " + savedSegments
+                    + " segments, not " + totalSegments);
+        }
+        ScanCheckpoint checkpoint = new ScanCheckpoint(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            String prefix = "segment." + segment + ".";
+            checkpoint.done[segment] = Boolean.parseBoolean(properties.getProperty(prefix + "done"));
+            String userId = properties.getProperty(prefix + "UserId");
+            if (userId != null) {
+                int noteId = Integer.parseInt(properties.getProperty(prefix + "NoteId"));
+                checkpoint.lastKeys.set(segment, NotesItemCodec.toKey(userId, noteId));
+            }
+        }
+        return checkpoint;
+    }
+
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    synchronized Map<String, AttributeValue> lastKey(int segment) {
+        return lastKeys.get(segment);
+    }
+
+    synchronized boolean isDone(int segment) {
+        return done[segment];
+    }
+
+    public synchronized boolean isComplete() {
+        for (boolean segmentDone : done) {
+            if (!segmentDone) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record that a page of the segment has been processed
+     *
+     * @param lastEvaluatedKey key to resume from, or null/empty if this was the last page
+     */
+    synchronized void advance(int segment, Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            done[segment] = true;
+            lastKeys.set(segment, null);
+            segmentFinished = true;
+        } else {
+            lastKeys.set(segment, lastEvaluatedKey);
+        }
+        version++;
+    }
+
+    /**
+     * Save the progress if a segment finished or the save interval elapsed since the last save
+     */
+    void saveIfDue(Path file) {
+        Properties snapshot;
+        long snapshotVersion;
+        synchronized (this) {
+            if (version == savedVersion || (!segmentFinished && System.nanoTime() - savedAt < SAVE_INTERVAL_NANOS)) {
+                return;
+            }
+            snapshot = snapshot();
+            snapshotVersion = markSaved();
+        }
+        write(file, snapshot, snapshotVersion);
+    }
+
+    /**
+     * Atomically replace the checkpoint file with the current progress
+     */
+    public void save(Path file) {
+        Properties snapshot;
+        long snapshotVersion;
+        synchronized (this) {
+            snapshot = snapshot();
+            snapshotVersion = markSaved();
+        }
+        write(file, snapshot, snapshotVersion);
+    }
+
+    private Properties snapshot() {
+        Properties properties = new Properties();
+        properties.setProperty("totalSegments", Integer.toString(totalSegments));
+        for (int segment = 0; segment < totalSegments; segment++) {
+            String prefix = "segment." + segment + ".";
+            properties.setProperty(prefix + "done", Boolean.toString(done[segment]));
+            Map<String, AttributeValue> lastKey = lastKeys.get(segment);
+            if (lastKey != null) {
+                properties.setProperty(prefix + "UserId", lastKey.get(NotesItemCodec.USER_ID).s());
+                properties.setProperty(prefix + "NoteId", lastKey.get(NotesItemCodec.NOTE_ID).n());
+            }
+        }
+        return properties;
+    }
+
+    private long markSaved() {
+        savedVersion = version;
+        segmentFinished = false;
+        savedAt = System.nanoTime();
+        return version;
+    }
+
+    private void write(Path file, Properties snapshot, long snapshotVersion) {
+        synchronized (fileLock) {
+            // A later snapshot may have been written while this one waited for the file
+            if (snapshotVersion <= writtenVersion) {
+                return;
+            }
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    snapshot.store(out, "Notes table scan checkpoint");
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            writtenVersion = snapshotVersion;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.dev2cloud.ddb_demo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Wraps a {@link NotesRepository} so that notes are written using a {@link NoteShardLayout}. Callers
+ * keep using the logical UserId; the shard suffix is added on the way in and removed on the way out.
+ */
+public class ShardedNotesRepository {
+    private final NotesRepository delegate;
+    private final NoteShardLayout layout;
+
+    public ShardedNotesRepository(NotesRepository delegate, NoteShardLayout layout) {
+        this.delegate = delegate;
+        this.layout = layout;
+    }
+
+    public NoteShardLayout getLayout() {
+        return layout;
+    }
+
+    public void putItem(String userId, Integer noteId, String note) {
+        delegate.putItem(layout.shardKey(userId, noteId), noteId, note);
+    }
+
+    /**
+     * Bulk load notes; items reported as failed carry the sharded partition key
+     */
+    public BatchWriteReport putItems(Collection<NotesItem> items) {
+        List<NotesItem> sharded = new ArrayList<>(items.size());
+        for (NotesItem item : items) {
+            sharded.add(layout.toSharded(item));
+        }
+        return delegate.putItems(sharded);
+    }
+
+    public NotesItem getItem(String userId, Integer noteId) {
+        return NoteShardLayout.toLogical(delegate.getItem(layout.shardKey(userId, noteId), noteId));
+    }
+
+    /**
+     * Query every shard of the user in parallel and merge the results ordered by NoteId
+     *
+     * @throws software.amazon.awssdk.services.dynamodb.model.DynamoDbException if a shard cannot be
+     *                                                                           read, rather than returning the notes of the other shards
+     */
+    public List<NotesItem> getNotesByUserid(String userId) {
+        return layout.scatterGather(userId, this::queryShard);
+    }
+
+    private List<NotesItem> queryShard(String shardKey) {
+        try (Stream<NotesItem> notes = delegate.queryNotes(NotesQuery.forUser(shardKey))) {
+            return notes.collect(Collectors.toList());
+        }
+    }
+}
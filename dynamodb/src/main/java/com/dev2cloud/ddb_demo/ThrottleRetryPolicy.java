@@ -0,0 +1,204 @@
+package com.dev2cloud.ddb_demo;
+
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Retry policy for throttled or failed DynamoDB calls: exponential backoff with full jitter, a
+ * maximum number of attempts per operation, and a retry budget shared by all operations. Every
+ * retry spends a token from the budget and every successful call earns back a fraction of one, so
+ * when most calls are failing the retries stop instead of multiplying the load on the table.
+ * <p>
+ * The policy replaces the SDK's own retries, so it must be the only retry layer: the repositories
+ * build their default clients with SDK retries disabled, and a client passed in should be built
+ * the same way, e.g. {@code .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none()))}.
+ * Batch operations, which already resubmit unprocessed items in their own loop, send each attempt
+ * once with {@link #executeOnce} and use the same loop for errors, so a throttled batch is not
+ * retried both inside and outside the call.
+ * <p>
+ * Besides throttling and 5xx errors, transport failures the SDK would have retried are retried
+ * too: a connection reset, a socket or call timeout, or no connection free in the pool. An
+ * {@link AbortedException}, which means the calling thread was interrupted, never is.
+ * <p>
+ * Requests which are not idempotent, such as a {@code list_append} or {@code ADD} update, are only
+ * retried when throttled: a 5xx error or a lost connection does not tell whether the update was
+ * applied.
+ */
+public class ThrottleRetryPolicy {
+    private static final double BUDGET_REFILL_PER_SUCCESS = 0.1;
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double maxBudget;
+    private double budget;
+
+    /**
+     * @param maxAttempts       attempts per operation, including the first
+     * @param baseBackoffMillis backoff ceiling of the first retry, doubled for each following one
+     * @param maxBackoffMillis  upper bound of the backoff ceiling
+     * @param retryBudget       retries that may be spent before successful calls replenish the budget
+     */
+    public ThrottleRetryPolicy(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis, int retryBudget) {
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxBudget = retryBudget;
+        this.budget = retryBudget;
+    }
+
+    public static ThrottleRetryPolicy standard() {
+        return new ThrottleRetryPolicy(8, 50, 5_000, 100);
+    }
+
+    public static boolean isThrottle(DynamoDbException ex) {
+        return ex instanceof ProvisionedThroughputExceededException
+                || ex instanceof RequestLimitExceededException
+                || (ex.awsErrorDetails() != null && "ThrottlingException".equals(ex.awsErrorDetails().errorCode()));
+    }
+
+    static boolean isRetryable(SdkException ex) {
+        if (ex instanceof DynamoDbException) {
+            return isThrottle((DynamoDbException) ex) || ((DynamoDbException) ex).statusCode() >= 500;
+        }
+        return isTransportFailure(ex);
+    }
+
+    /**
+     * Whether the request failed on its way to or from DynamoDB, the failures the SDK's own retry
+     * policy retries
+     */
+    static boolean isTransportFailure(SdkException ex) {
+        if (!(ex instanceof SdkClientException) || ex instanceof AbortedException) {
+            return false;
+        }
+        if (ex.retryable() || ex instanceof ApiCallAttemptTimeoutException || ex instanceof ApiCallTimeoutException) {
+            return true;
+        }
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof UncheckedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isThrottle(SdkException ex) {
+        return ex instanceof DynamoDbException && isThrottle((DynamoDbException) ex);
+    }
+
+    /**
+     * Sleeps for a random interval between zero and the exponentially growing ceiling
+     */
+    public void backoff(int attempt) throws InterruptedException {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    public synchronized double getRemainingBudget() {
+        return budget;
+    }
+
+    synchronized void onSuccess() {
+        budget = Math.min(maxBudget, budget + BUDGET_REFILL_PER_SUCCESS);
+    }
+
+    synchronized boolean tryRetry(SdkException ex, int attempt) {
+        return tryRetry(ex, attempt, true);
+    }
+
+    synchronized boolean tryRetry(SdkException ex, int attempt, boolean idempotent) {
+        boolean retryable = idempotent ? isRetryable(ex) : isThrottle(ex);
+        if (attempt >= maxAttempts || !retryable || budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Runs a call through the rate limiter (if any) and this policy
+     *
+     * @param limiter        shared rate limiter, or null
+     * @param capacity       which capacity the call consumes
+     * @param estimatedUnits capacity reserved before the call is sent
+     * @param call           the DynamoDB request
+     * @param consumedUnits  extracts the ConsumedCapacity from the response
+     */
+    <T> T execute(CapacityRateLimiter limiter, CapacityRateLimiter.Capacity capacity, double estimatedUnits,
+                  Supplier<T> call, ToDoubleFunction<T> consumedUnits) {
+        return execute(limiter, capacity, estimatedUnits, call, consumedUnits, true);
+    }
+
+    /**
+     * @param idempotent whether the request may be sent again after a 5xx error or a transport
+     *                   failure; when false only throttled attempts are retried
+     */
+    <T> T execute(CapacityRateLimiter limiter, CapacityRateLimiter.Capacity capacity, double estimatedUnits,
+                  Supplier<T> call, ToDoubleFunction<T> consumedUnits, boolean idempotent) {
+        int attempt = 0;
+        while (true) {
+            try {
+                try {
+                    return attempt(limiter, capacity, estimatedUnits, call, consumedUnits);
+                } catch (SdkException ex) {
+                    if (!tryRetry(ex, ++attempt, idempotent)) {
+                        throw ex;
+                    }
+                    backoff(attempt);
+                }
+            } catch (InterruptedException ex) {
+                throw interrupted(ex);
+            }
+        }
+    }
+
+    /**
+     * Sends a call once through the rate limiter, leaving any retry to the caller
+     */
+    <T> T executeOnce(CapacityRateLimiter limiter, CapacityRateLimiter.Capacity capacity, double estimatedUnits,
+                      Supplier<T> call, ToDoubleFunction<T> consumedUnits) {
+        try {
+            return attempt(limiter, capacity, estimatedUnits, call, consumedUnits);
+        } catch (InterruptedException ex) {
+            throw interrupted(ex);
+        }
+    }
+
+    private <T> T attempt(CapacityRateLimiter limiter, CapacityRateLimiter.Capacity capacity, double estimatedUnits,
+                          Supplier<T> call, ToDoubleFunction<T> consumedUnits) throws InterruptedException {
+        if (limiter != null) {
+            limiter.acquire(capacity, estimatedUnits);
+        }
+        try {
+            T response = call.get();
+            if (limiter != null) {
+                limiter.onSuccess(capacity, estimatedUnits, consumedUnits.applyAsDouble(response));
+            }
+            onSuccess();
+            return response;
+        } catch (DynamoDbException ex) {
+            if (limiter != null && isThrottle(ex)) {
+                limiter.onThrottle(capacity);
+            }
+            throw ex;
+        }
+    }
+
+    private static AbortedException interrupted(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return AbortedException.create("Interrupted while waiting to call DynamoDB", ex);
+    }
+}
@@ -0,0 +1,146 @@
+package com.dev2cloud.ddb_demo;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs a blocking per-user query for many users concurrently. A fixed pool of threads, shared by
+ * every fan-out of the repository that owns it, is the global cap on the number of queries in
+ * flight; users beyond the cap wait for a free thread.
+ * <p>
+ * Each query gets its own timeout, counted from the moment it starts running rather than from
+ * when it was queued. A query which runs over is reported as timed out and its thread is
+ * interrupted, which makes the SDK abandon the call, so the slot is freed for the next user.
+ * <p>
+ * A pool replaced by a new one is retired rather than shut down: fan-outs already using it run to
+ * completion, and it is shut down once the last of them has finished. A caller which finds the
+ * pool retired before it could start should use the current one instead.
+ */
+class UserFanOut {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notes-fan-out-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final int maxConcurrency;
+    // Fan-outs using the pool, plus one held by the owner until the pool is retired
+    private final AtomicInteger users = new AtomicInteger(1);
+    private volatile boolean retired;
+
+    UserFanOut(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        String name = "notes-fan-out-" + POOL_NUMBER.incrementAndGet();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    MultiUserNotes run(Collection<String> userIds, Function<String, List<NotesItem>> query, Duration perUserTimeout) {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<List<NotesItem>>> results = new LinkedHashMap<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            CompletableFuture<List<NotesItem>> result = new CompletableFuture<>();
+            results.put(userId, result);
+            executor.execute(() -> runQuery(userId, query, perUserTimeout, result));
+        }
+
+        Map<String, List<NotesItem>> notes = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<NotesItem>>> entry : results.entrySet()) {
+            try {
+                notes.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException ex) {
+                failures.put(entry.getKey(), ex.getCause());
+            }
+        }
+        return new MultiUserNotes(notes, failures, System.nanoTime() - start);
+    }
+
+    private static void runQuery(String userId, Function<String, List<NotesItem>> query, Duration timeout,
+                                 CompletableFuture<List<NotesItem>> result) {
+        Thread worker = Thread.currentThread();
+        // Guards against interrupting the thread once it has moved on to the next user
+        Object interruptLock = new Object();
+        boolean[] finished = {false};
+        ScheduledFuture<?> timer = TIMER.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Notes of " + userId + " not read within " + timeout))) {
+                synchronized (interruptLock) {
+                    if (!finished[0]) {
+                        worker.interrupt();
+                    }
+                }
+            }
+        }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            result.complete(query.apply(userId));
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        } finally {
+            timer.cancel(false);
+            synchronized (interruptLock) {
+                finished[0] = true;
+            }
+            // Clear an interrupt delivered by the timer so it does not affect the next user
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Registers a fan-out about to use the pool
+     *
+     * @return false if the pool has been retired, in which case it must not be used
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = users.get();
+            if (current == 0 || retired) {
+                return false;
+            }
+            if (users.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (users.decrementAndGet() == 0) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Shuts the pool down once the fan-outs using it have finished
+     */
+    synchronized void retire() {
+        if (!retired) {
+            retired = true;
+            release();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NotesAsyncRepository;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getItem throughput at increasing levels of concurrency, comparing the blocking
+ * repository (one thread per concurrent request) with the async repository (one event loop,
+ * concurrency bounded by the in-flight limit).
+ * Usage: AsyncLoadTest [endpoint] [requestsPerLevel]
+ */
+public class AsyncLoadTest {
+    private static final int[] CONCURRENCY_LEVELS = {1, 8, 32, 128, 512};
+    private static final int DISTINCT_NOTES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String endpoint = LocalDynamoDb.endpoint(args);
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        try (DynamoDbClient client = LocalDynamoDb.client(endpoint)) {
+            LocalDynamoDb.createNotesTable(client);
+            NotesRepository syncRepository = new NotesRepository(client);
+            List<NotesItem> items = new ArrayList<>(DISTINCT_NOTES);
+            for (int i = 0; i < DISTINCT_NOTES; i++) {
+                items.add(new NotesItem("load-user" + (i % 50), i, "Load test note " + i));
+            }
+            System.out.println(syncRepository.putItems(items));
+
+            System.out.printf("%-12s %15s %15s%n", "Concurrency", "Sync ops/sec", "Async ops/sec");
+            for (int concurrency : CONCURRENCY_LEVELS) {
+                double syncRate = runSync(syncRepository, concurrency, requests);
+                double asyncRate;
+                try (DynamoDbAsyncClient asyncClient = LocalDynamoDb.asyncClient(endpoint, concurrency)) {
+                    asyncRate = runAsync(new NotesAsyncRepository(asyncClient, concurrency), requests);
+                }
+                System.out.printf("%-12d %15.0f %15.0f%n", concurrency, syncRate, asyncRate);
+            }
+        }
+    }
+
+    private static double runSync(NotesRepository repository, int threads, int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<NotesItem>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            int noteId = i % DISTINCT_NOTES;
+            futures.add(executor.submit(() -> repository.getItem("load-user" + (noteId % 50), noteId)));
+        }
+        for (Future<NotesItem> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private static double runAsync(NotesAsyncRepository repository, int requests) {
+        long start = System.nanoTime();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            int noteId = i % DISTINCT_NOTES;
+            futures[i] = repository.getItem("load-user" + (noteId % 50), noteId);
+        }
+        CompletableFuture.allOf(futures).join();
+        long elapsed = System.nanoTime() - start;
+        return requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
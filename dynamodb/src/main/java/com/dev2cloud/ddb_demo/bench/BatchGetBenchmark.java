@@ -0,0 +1,63 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesKey;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving a list of keys with a getItem() loop against a single getItems() call.
+ * Usage: BatchGetBenchmark [endpoint] [keyCount]
+ */
+public class BatchGetBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String endpoint = LocalDynamoDb.endpoint(args);
+        int keyCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        try (DynamoDbClient client = LocalDynamoDb.client(endpoint)) {
+            LocalDynamoDb.createNotesTable(client);
+            NotesRepository repository = new NotesRepository(client);
+
+            List<NotesItem> items = new ArrayList<>(keyCount);
+            List<NotesKey> keys = new ArrayList<>(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                // Spread the keys over a handful of users and leave every tenth key missing
+                NotesItem item = new NotesItem("bench-user" + (i % 20), i, "Benchmark note " + i);
+                if (i % 10 != 0) {
+                    items.add(item);
+                }
+                keys.add(new NotesKey(item.getUserId(), item.getNoteId()));
+            }
+            System.out.println(repository.putItems(items));
+
+            for (int round = 1; round <= ROUNDS; round++) {
+                long start = System.nanoTime();
+                int loopHits = 0;
+                for (NotesKey key : keys) {
+                    if (repository.getItem(key.getUserId(), key.getNoteId()) != null) {
+                        loopHits++;
+                    }
+                }
+                long loopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                int batchHits = 0;
+                for (NotesItem item : repository.getItems(keys).getItems()) {
+                    if (item != null) {
+                        batchHits++;
+                    }
+                }
+                long batchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                System.out.printf("Round %d: %d keys, getItem loop %d ms (%d hits), getItems %d ms (%d hits)%n",
+                        round, keyCount, loopMillis, loopHits, batchMillis, batchHits);
+            }
+        }
+    }
+}
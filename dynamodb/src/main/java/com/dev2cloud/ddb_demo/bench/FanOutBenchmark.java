@@ -0,0 +1,59 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.MultiUserNotes;
+import com.dev2cloud.ddb_demo.NotesEnhancedRepository;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares loading the notes of many users one after the other with findNotesForUser against a
+ * single findNotesForUsers call, for increasing concurrency caps.
+ * Usage: FanOutBenchmark [endpoint] [users] [notesPerUser]
+ */
+public class FanOutBenchmark {
+    private static final int[] CONCURRENCY = {1, 4, 16, 32};
+
+    public static void main(String[] args) {
+        String endpoint = LocalDynamoDb.endpoint(args);
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int notesPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        try (DynamoDbClient client = LocalDynamoDb.client(endpoint)) {
+            if (!LocalDynamoDb.AWS.equals(endpoint)) {
+                LocalDynamoDb.createNotesTable(client);
+            }
+            List<String> userIds = new ArrayList<>(users);
+            List<NotesItem> items = new ArrayList<>(users * notesPerUser);
+            for (int user = 0; user < users; user++) {
+                userIds.add("dashboard-user" + user);
+                for (int noteId = 0; noteId < notesPerUser; noteId++) {
+                    items.add(new NotesItem("dashboard-user" + user, noteId, "Dashboard note " + noteId));
+                }
+            }
+            System.out.println("Loaded: " + new NotesRepository(client).putItems(items));
+
+            NotesEnhancedRepository repository = new NotesEnhancedRepository(client);
+            // Warm up connections and the JIT
+            repository.findNotesForUsers(userIds);
+
+            long start = System.nanoTime();
+            int notes = 0;
+            for (String userId : userIds) {
+                notes += repository.findNotesForUser(userId).size();
+            }
+            long sequentialMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("Sequential loop:          %d notes in %d ms%n", notes, sequentialMillis);
+
+            for (int concurrency : CONCURRENCY) {
+                repository.setFanOutConcurrency(concurrency);
+                MultiUserNotes result = repository.findNotesForUsers(userIds);
+                System.out.printf("Fan-out, concurrency %2d: %s, %.1fx faster%n", concurrency, result,
+                        sequentialMillis / (double) Math.max(1, result.getElapsedMillis()));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.net.URI;
+
+/**
+ * Helpers for running the benchmarks against DynamoDB Local (or any other stand-in exposing
+ * the DynamoDB API), e.g.
+ * <pre>
+ *     docker run -p 8000:8000 amazon/dynamodb-local
+ * </pre>
+ */
+public final class LocalDynamoDb {
+    public static final String DEFAULT_ENDPOINT = "http://localhost:8000";
+    public static final String AWS = "aws";
+    static final String TABLE_NAME = "Notes";
+
+    private LocalDynamoDb() {
+    }
+
+    /**
+     * The endpoint is taken from the first program argument, falling back to DynamoDB Local on port 8000
+     */
+    public static String endpoint(String[] args) {
+        return args.length > 0 ? args[0] : DEFAULT_ENDPOINT;
+    }
+
+    /**
+     * Passing "aws" as the endpoint uses the default client configuration instead, for benchmarks
+     * whose effect (such as partition throttling) only shows up against the real service
+     */
+    public static DynamoDbClient client(String endpoint) {
+        if (AWS.equals(endpoint)) {
+            return DynamoDbClient.create();
+        }
+        return DynamoDbClient.builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                // DynamoDB Local accepts any credentials
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+    }
+
+    public static DynamoDbAsyncClient asyncClient(String endpoint, int maxConcurrency) {
+        return DynamoDbAsyncClient.builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConcurrency))
+                .build();
+    }
+
+    /**
+     * Creates the Notes table with the same key schema as documented in the README if it does not exist yet
+     */
+    public static void createNotesTable(DynamoDbClient client) {
+        try {
+            client.describeTable(DescribeTableRequest.builder().tableName(TABLE_NAME).build());
+            return;
+        } catch (ResourceNotFoundException ex) {
+            // Create it below
+        }
+        client.createTable(CreateTableRequest.builder()
+                .tableName(TABLE_NAME)
+                .attributeDefinitions(
+                        AttributeDefinition.builder().attributeName("UserId").attributeType(ScalarAttributeType.S).build(),
+                        AttributeDefinition.builder().attributeName("NoteId").attributeType(ScalarAttributeType.N).build())
+                .keySchema(
+                        KeySchemaElement.builder().attributeName("UserId").keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("NoteId").keyType(KeyType.RANGE).build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+        client.waiter().waitUntilTableExists(DescribeTableRequest.builder().tableName(TABLE_NAME).build());
+    }
+}
@@ -0,0 +1,85 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesItemCodec;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Measures the cost of building the table schema and of converting a NotesItem to and from its
+ * attribute map, comparing the bean schema, the static schema, the original hand-written builder
+ * mapping and NotesItemCodec. Runs entirely in memory; no DynamoDB endpoint is needed.
+ * Usage: MappingBenchmark [iterations]
+ */
+public class MappingBenchmark {
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        // Startup: the first schema built pays for class loading and, for the bean schema, introspection
+        long start = System.nanoTime();
+        TableSchema<NotesItem> beanSchema = TableSchema.fromBean(NotesItem.class);
+        long beanMicros = (System.nanoTime() - start) / 1000;
+        start = System.nanoTime();
+        TableSchema<NotesItem> staticSchema = NotesItemCodec.newTableSchema();
+        long staticMicros = (System.nanoTime() - start) / 1000;
+        System.out.printf("Schema creation: fromBean %d us, static %d us%n", beanMicros, staticMicros);
+
+        NotesItem item = new NotesItem("student1", 42, "I love DDB");
+        Map<String, AttributeValue> attributes = NotesItemCodec.toItem(item);
+
+        System.out.printf("%-28s %12s %12s%n", "Mapping", "ns/op", "bytes/op");
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up the JIT, the second is reported
+            boolean report = round == 1;
+            measure(report, "builder toItem", iterations, i -> legacyToItem(item));
+            measure(report, "bean schema toItem", iterations, i -> beanSchema.itemToMap(item, false));
+            measure(report, "static schema toItem", iterations, i -> staticSchema.itemToMap(item, false));
+            measure(report, "codec toItem", iterations, i -> NotesItemCodec.toItem(item));
+            measure(report, "builder fromItem", iterations, i -> legacyFromItem(attributes));
+            measure(report, "bean schema fromItem", iterations, i -> beanSchema.mapToItem(attributes));
+            measure(report, "static schema fromItem", iterations, i -> staticSchema.mapToItem(attributes));
+            measure(report, "codec fromItem", iterations, i -> NotesItemCodec.fromItem(attributes));
+        }
+    }
+
+    private static void measure(boolean report, String name, int iterations, Function<Integer, Object> mapping) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = mapping.apply(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (report) {
+            System.out.printf("%-28s %12.1f %12d%n", name, (double) elapsed / iterations, allocated / iterations);
+        }
+    }
+
+    /**
+     * The mapping NotesRepository used before NotesItemCodec was introduced
+     */
+    private static Map<String, AttributeValue> legacyToItem(NotesItem item) {
+        HashMap<String, AttributeValue> itemValues = new HashMap<>();
+        itemValues.put("UserId", AttributeValue.builder().s(item.getUserId()).build());
+        itemValues.put("NoteId", AttributeValue.builder().n(item.getNoteId().toString()).build());
+        itemValues.put("Notes", AttributeValue.builder().s(item.getNotes()).build());
+        return itemValues;
+    }
+
+    private static NotesItem legacyFromItem(Map<String, AttributeValue> item) {
+        NotesItem notesItem = new NotesItem();
+        notesItem.setUserId(item.get("UserId").s());
+        notesItem.setNoteId(Integer.parseInt(item.get("NoteId").n()));
+        notesItem.setNotes(item.get("Notes").s());
+        return notesItem;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NoteBodyStore;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesItemCodec;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the item size and the read and write capacity units of notes stored as plain text with
+ * the same notes passed through a {@link NoteBodyStore}. Item sizes follow the DynamoDB rules:
+ * attribute names plus values, one WCU per started 1 KB written and one RCU per started 4 KB read
+ * with strong consistency (half of that when eventually consistent).
+ * <p>
+ * Without arguments only compression is measured and nothing leaves the process. Given a bucket,
+ * bodies above 64 KB are uploaded to it with the default S3 client and read back once.
+ * Usage: NoteCompressionBenchmark [bucket]
+ */
+public class NoteCompressionBenchmark {
+    private static final int[] NOTE_SIZES = {200, 1_000, 2_000, 8_000, 32_000, 128_000, 350_000};
+    private static final String[] WORDS = {
+            "dynamodb", "partition", "key", "item", "capacity", "the", "a", "of", "to", "and", "note", "student",
+            "read", "write", "table", "index", "query", "scan", "throughput", "latency", "is", "for", "with",
+            "remember", "exam", "lecture", "chapter", "review", "homework", "on", "tuesday", "bring"};
+
+    public static void main(String[] args) {
+        NoteBodyStore store = args.length > 0
+                ? new NoteBodyStore(NoteBodyStore.DEFAULT_COMPRESS_THRESHOLD, NoteBodyStore.DEFAULT_OFFLOAD_THRESHOLD,
+                S3Client.create(), args[0], "notes-benchmark/")
+                : new NoteBodyStore(NoteBodyStore.DEFAULT_COMPRESS_THRESHOLD);
+        Random random = new Random(42);
+
+        System.out.printf("%10s %12s %12s %8s %8s %10s %10s %8s%n",
+                "Note", "Plain item", "Stored item", "WCU", "WCU", "RCU", "RCU", "Mode");
+        System.out.printf("%10s %12s %12s %8s %8s %10s %10s %8s%n",
+                "bytes", "bytes", "bytes", "plain", "stored", "plain", "stored", "");
+        for (int size : NOTE_SIZES) {
+            NotesItem item = new NotesItem("student1", size, text(random, size));
+            NotesItem stored = store.prepare(item);
+
+            long plainSize = itemSize(NotesItemCodec.toItem(item));
+            long storedSize = itemSize(NotesItemCodec.toItem(stored));
+            String mode = stored.getNotesRef() != null ? "s3" : stored.getCompressedNotes() != null ? "deflate" : "plain";
+            System.out.printf("%10d %12d %12d %8d %8d %10.1f %10.1f %8s%n", size, plainSize, storedSize,
+                    writeUnits(plainSize), writeUnits(storedSize), readUnits(plainSize), readUnits(storedSize), mode);
+
+            NotesItem restored = store.restore(NotesItemCodec.fromItem(NotesItemCodec.toItem(stored)));
+            if (!item.getNotes().equals(restored.getNotes())) {
+                System.err.println("Note " + size + " did not round trip");
+            }
+        }
+        System.out.println(store);
+    }
+
+    private static String text(Random random, int size) {
+        StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(10) == 0 ? ".\n" : " ");
+        }
+        text.setLength(size);
+        return text.toString();
+    }
+
+    private static long itemSize(Map<String, AttributeValue> item) {
+        long size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length;
+            AttributeValue value = attribute.getValue();
+            if (value.s() != null) {
+                size += value.s().getBytes(StandardCharsets.UTF_8).length;
+            } else if (value.n() != null) {
+                // Numbers take roughly one byte per two significant digits plus one
+                size += (value.n().length() + 1) / 2 + 1;
+            } else if (value.b() != null) {
+                size += value.b().asByteArrayUnsafe().length;
+            }
+        }
+        return size;
+    }
+
+    private static long writeUnits(long itemSize) {
+        return (itemSize + 1023) / 1024;
+    }
+
+    private static double readUnits(long itemSize) {
+        return (itemSize + 4095) / 4096;
+    }
+}
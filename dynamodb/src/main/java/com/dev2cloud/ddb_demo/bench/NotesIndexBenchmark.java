@@ -0,0 +1,69 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NotesIndex;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures building a {@link NotesIndex} and searching it. With an endpoint the index is loaded
+ * from a parallel scan of the Notes table; by default synthetic notes are indexed in memory.
+ * Usage: NotesIndexBenchmark [memory|endpoint|aws] [users] [notesPerUser]
+ */
+public class NotesIndexBenchmark {
+    private static final String[] WORDS = {
+            "dynamodb", "partition", "key", "item", "capacity", "the", "a", "of", "to", "and", "note", "student",
+            "read", "write", "table", "index", "query", "scan", "throughput", "latency", "is", "for", "with",
+            "remember", "exam", "lecture", "chapter", "review", "homework", "on", "tuesday", "bring"};
+
+    public static void main(String[] args) {
+        NotesIndex index = new NotesIndex();
+        long start = System.nanoTime();
+        long notes;
+        if (args.length > 0 && !"memory".equals(args[0])) {
+            NotesRepository repository = new NotesRepository(LocalDynamoDb.client(LocalDynamoDb.endpoint(args)));
+            notes = index.load(repository, 8, 8);
+        } else {
+            int users = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+            int notesPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+            Random random = new Random(42);
+            notes = 0;
+            for (int user = 0; user < users; user++) {
+                for (int noteId = 1; noteId <= notesPerUser; noteId++) {
+                    index.index(new NotesItem("student" + user, noteId, text(random, 20 + random.nextInt(60))));
+                    notes++;
+                }
+            }
+            // A word only some notes contain
+            index.index(new NotesItem("student1", notesPerUser + 1, "Remember the DynamoDB Local jar"));
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("Indexed %d notes in %d ms: %s%n", notes, buildMillis, index);
+
+        for (String term : new String[]{"DynamoDB", "tuesday", "jar", "missing"}) {
+            for (int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                int[] forUser = index.search("student1", term);
+                long userMicros = (System.nanoTime() - start) / 1000;
+                start = System.nanoTime();
+                Map<String, int[]> allUsers = index.search(term);
+                long allMicros = (System.nanoTime() - start) / 1000;
+                if (round == 1) {
+                    long matches = allUsers.values().stream().mapToLong(ids -> ids.length).sum();
+                    System.out.printf("%-10s student1: %6d notes in %6d us   all users: %8d notes in %6d us%n",
+                            term, forUser.length, userMicros, matches, allMicros);
+                }
+            }
+        }
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesKey;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares the Query/BatchGetItem paths with their PartiQL equivalents, reporting median and
+ * 99th percentile latency and throughput for each.
+ * Usage: PartiQLBenchmark [endpoint] [notesPerUser] [iterations]
+ */
+public class PartiQLBenchmark {
+    private static final String USER_ID = "partiql-user";
+
+    public static void main(String[] args) {
+        String endpoint = LocalDynamoDb.endpoint(args);
+        int notesPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        try (DynamoDbClient client = LocalDynamoDb.client(endpoint)) {
+            LocalDynamoDb.createNotesTable(client);
+            NotesRepository repository = new NotesRepository(client);
+
+            List<NotesItem> items = new ArrayList<>(notesPerUser);
+            List<NotesKey> keys = new ArrayList<>(notesPerUser);
+            for (int i = 0; i < notesPerUser; i++) {
+                items.add(new NotesItem(USER_ID, i, "PartiQL benchmark note " + i));
+                keys.add(new NotesKey(USER_ID, i));
+            }
+            System.out.println(repository.putItems(items));
+            List<NotesKey> batchKeys = keys.subList(0, Math.min(25, keys.size()));
+
+            System.out.printf("%-24s %10s %10s %12s%n", "Operation", "p50 ms", "p99 ms", "ops/sec");
+            run("Query", iterations, () -> repository.getNotesByUserid(USER_ID));
+            run("PartiQL SELECT", iterations, () -> repository.getNotesByUseridPartiQL(USER_ID));
+            run("BatchGetItem (25)", iterations, () -> repository.getItems(batchKeys));
+            run("PartiQL batch (25)", iterations, () -> repository.partiQL().getItems(batchKeys));
+        }
+    }
+
+    private static void run(String name, int iterations, Supplier<?> operation) {
+        // Warm up connections and the JIT before measuring
+        for (int i = 0; i < Math.max(10, iterations / 10); i++) {
+            operation.get();
+        }
+        long[] latencies = new long[iterations];
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long callStart = System.nanoTime();
+            operation.get();
+            latencies[i] = System.nanoTime() - callStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("%-24s %10.2f %10.2f %12.0f%n", name,
+                latencies[iterations / 2] / 1e6,
+                latencies[Math.min(iterations - 1, (int) (iterations * 0.99))] / 1e6,
+                iterations * 1e9 / elapsed);
+    }
+}
@@ -0,0 +1,54 @@
+package com.dev2cloud.ddb_demo.bench;
+
+import com.dev2cloud.ddb_demo.BatchWriteReport;
+import com.dev2cloud.ddb_demo.NoteShardLayout;
+import com.dev2cloud.ddb_demo.NotesItem;
+import com.dev2cloud.ddb_demo.NotesRepository;
+import com.dev2cloud.ddb_demo.ShardedNotesRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the sustained write rate for a single user with and without a sharded key layout, and
+ * the time to read the user's notes back. DynamoDB Local does not model partitions, so the write
+ * rate difference only shows up when run against a real table ("aws" as the endpoint).
+ * Usage: ShardedWriteBenchmark [endpoint] [notes] [shards]
+ */
+public class ShardedWriteBenchmark {
+    public static void main(String[] args) {
+        String endpoint = LocalDynamoDb.endpoint(args);
+        int notes = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        try (DynamoDbClient client = LocalDynamoDb.client(endpoint)) {
+            if (!LocalDynamoDb.AWS.equals(endpoint)) {
+                LocalDynamoDb.createNotesTable(client);
+            }
+            NotesRepository repository = new NotesRepository(client);
+            ShardedNotesRepository sharded = new ShardedNotesRepository(repository, new NoteShardLayout(shards));
+
+            List<NotesItem> plainItems = new ArrayList<>(notes);
+            List<NotesItem> shardedItems = new ArrayList<>(notes);
+            for (int i = 0; i < notes; i++) {
+                plainItems.add(new NotesItem("hot-user", i, "Hot partition note " + i));
+                shardedItems.add(new NotesItem("hot-user-sharded", i, "Hot partition note " + i));
+            }
+
+            BatchWriteReport plain = repository.putItems(plainItems);
+            System.out.println("Single partition: " + plain);
+            BatchWriteReport spread = sharded.putItems(shardedItems);
+            System.out.println(shards + " shards:        " + spread);
+
+            long start = System.nanoTime();
+            int plainCount = repository.getNotesByUserid("hot-user").size();
+            long plainMillis = (System.nanoTime() - start) / 1_000_000;
+            start = System.nanoTime();
+            int shardedCount = sharded.getNotesByUserid("hot-user-sharded").size();
+            long shardedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("Read back: single partition %d notes in %d ms, scatter-gather %d notes in %d ms%n",
+                    plainCount, plainMillis, shardedCount, shardedMillis);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsumedCapacityInterceptorTest {
+    private final ConsumedCapacityInterceptor interceptor = new ConsumedCapacityInterceptor(new NotesMetrics());
+
+    @Test
+    public void requestsTheConsumedCapacity() {
+        GetItemRequest request = GetItemRequest.builder().tableName("Notes").build();
+        Context.ModifyRequest context = () -> request;
+
+        GetItemRequest modified = (GetItemRequest) interceptor.modifyRequest(context, new ExecutionAttributes());
+
+        assertEquals(ReturnConsumedCapacity.TOTAL, modified.returnConsumedCapacity());
+    }
+
+    @Test
+    public void keepsTheCallersChoice() {
+        GetItemRequest request = GetItemRequest.builder()
+                .tableName("Notes")
+                .returnConsumedCapacity(ReturnConsumedCapacity.NONE)
+                .build();
+        Context.ModifyRequest context = () -> request;
+
+        assertEquals(request, interceptor.modifyRequest(context, new ExecutionAttributes()));
+    }
+}
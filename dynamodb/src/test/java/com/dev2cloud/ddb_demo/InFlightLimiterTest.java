@@ -0,0 +1,74 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InFlightLimiterTest {
+
+    @Test
+    public void runsSynchronouslyCompletedRequestsWithoutRecursion() {
+        InFlightLimiter limiter = new InFlightLimiter(1, 200_000);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> firstResult = limiter.submit(() -> first);
+        // Queue far more already-completed requests than the stack could hold frames for
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int value = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+        assertEquals(100_000, limiter.queued());
+
+        first.complete(-1);
+
+        assertEquals(99_999, results.get(99_999).join().intValue());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+        assertTrue(firstResult.isDone());
+    }
+
+    @Test
+    public void capsRequestsInFlight() {
+        InFlightLimiter limiter = new InFlightLimiter(2, 10);
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            limiter.submit(() -> {
+                CompletableFuture<Void> request = new CompletableFuture<>();
+                started.add(request);
+                return request;
+            });
+        }
+        assertEquals(2, started.size());
+        assertEquals(3, limiter.queued());
+
+        started.get(0).complete(null);
+
+        assertEquals(3, started.size());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    public void rejectsRequestsBeyondTheQueue() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(1, 1);
+        limiter.submit(CompletableFuture::new);
+        limiter.submit(CompletableFuture::new);
+
+        CompletableFuture<Object> rejected = limiter.submit(CompletableFuture::new);
+
+        try {
+            rejected.get();
+            fail("Expected the request to be rejected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, limiter.queued());
+    }
+}
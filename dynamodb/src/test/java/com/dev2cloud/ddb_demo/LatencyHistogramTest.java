@@ -0,0 +1,54 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void countsSmallValuesExactly() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf((int) value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinThreePercent() {
+        int previous = LatencyHistogram.bucketOf(63);
+        for (int bucket = 64; bucket < 64 + 30 * 32; bucket++) {
+            long lower = LatencyHistogram.upperBoundOf(bucket - 1) + 1;
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(previous + 1, bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertTrue((upper - lower) / (double) lower <= 1.0 / 32);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void largestValueFitsInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileMicros(1.0));
+    }
+
+    @Test
+    public void reportsPercentilesWithinTheBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertEquals(5_000.5, histogram.getMeanMicros(), 0.001);
+        long p50 = histogram.getPercentileMicros(0.5);
+        long p99 = histogram.getPercentileMicros(0.99);
+        assertTrue(p50 >= 5_000 && p50 <= 5_000 * 33 / 32);
+        assertTrue(p99 >= 9_900 && p99 <= 10_000);
+    }
+}
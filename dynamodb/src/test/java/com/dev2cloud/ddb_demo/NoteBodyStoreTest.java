@@ -0,0 +1,60 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteBodyStoreTest {
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append("the quick brown fox ");
+        }
+        return text.substring(0, length);
+    }
+
+    @Test
+    public void compressesLargeBodiesAndRestoresThemAsynchronously() throws Exception {
+        NoteBodyStore store = new NoteBodyStore(100);
+        String body = text(5000);
+
+        NotesItem stored = store.prepareAsync(new NotesItem("alice", 1, body)).get();
+        assertNull(stored.getNotes());
+        assertNotNull(stored.getCompressedNotes());
+        assertEquals(5000, store.getBodyBytes());
+
+        List<NotesItem> restored = store.restoreAsync(Collections.singletonList(stored)).get();
+        assertEquals(body, restored.get(0).getNotes());
+        assertNull(restored.get(0).getCompressedNotes());
+    }
+
+    @Test
+    public void leavesShortBodiesAsTheyAre() {
+        NoteBodyStore store = new NoteBodyStore(100);
+        NotesItem item = new NotesItem("alice", 1, "short");
+
+        assertEquals("short", store.prepare(item).getNotes());
+        assertEquals(store.getBodyBytes(), store.getStoredBytes());
+    }
+
+    @Test
+    public void replacingTheBodyRemovesTheAttributesItDoesNotUse() {
+        NotesItem stored = new NoteBodyStore(100).prepare(new NotesItem("alice", 1, text(5000)));
+
+        UpdateItemRequest request = NotesUpdate.of("alice", 1).replaceBody(stored).toRequest("Notes");
+
+        assertEquals(new HashSet<>(Arrays.asList(NotesItemCodec.COMPRESSED_NOTES, NotesItemCodec.NOTES_REF,
+                        NotesItemCodec.NOTES, NotesItemCodec.APPENDED_NOTES)),
+                new HashSet<>(request.expressionAttributeNames().values()));
+        assertTrue(request.updateExpression().contains("REMOVE"));
+    }
+}
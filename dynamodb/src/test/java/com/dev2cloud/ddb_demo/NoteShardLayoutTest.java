@@ -0,0 +1,62 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class NoteShardLayoutTest {
+    private final NoteShardLayout layout = new NoteShardLayout(4);
+
+    @Test
+    public void roundTripsShardKeys() {
+        String shardKey = layout.shardKey("alice", 6);
+        assertEquals("alice#2", shardKey);
+        assertEquals("alice", NoteShardLayout.logicalUserId(shardKey));
+        assertEquals(Arrays.asList("alice#0", "alice#1", "alice#2", "alice#3"), layout.shardKeys("alice"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUserIdsContainingTheSeparator() {
+        layout.shardKey("team#a", 1);
+    }
+
+    @Test
+    public void mergesShardsInNoteIdOrder() {
+        List<NotesItem> notes = layout.scatterGather("alice", shardKey -> {
+            List<NotesItem> shard = new ArrayList<>();
+            for (int noteId = 0; noteId < 12; noteId++) {
+                if (layout.shardKey("alice", noteId).equals(shardKey)) {
+                    shard.add(new NotesItem(shardKey, noteId, "note"));
+                }
+            }
+            return shard;
+        });
+
+        assertEquals(12, notes.size());
+        for (int noteId = 0; noteId < 12; noteId++) {
+            assertEquals(Integer.valueOf(noteId), notes.get(noteId).getNoteId());
+        }
+    }
+
+    @Test
+    public void propagatesShardFailures() {
+        IllegalStateException failure = new IllegalStateException("shard unavailable");
+        try {
+            layout.scatterGather("alice", shardKey -> {
+                if (shardKey.equals("alice#2")) {
+                    throw failure;
+                }
+                return new ArrayList<>();
+            });
+            fail("Expected the shard failure");
+        } catch (IllegalStateException ex) {
+            assertSame(failure, ex);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NotesCacheTest {
+    private final NotesCache cache = new NotesCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    private final NotesKey key = new NotesKey("alice", 1);
+
+    @Test
+    public void loadsOnceAndServesFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("note", cache.get(key, k -> {
+                loads.incrementAndGet();
+                return new NotesItem("alice", 1, "note");
+            }).getNotes());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void remembersMisses() {
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get(key, k -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(key, k -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getNegativeHits());
+    }
+
+    @Test
+    public void writeDuringLoadWinsOverLoadedValue() {
+        // The loader reads the old value, then a write lands before the load completes
+        NotesItem loaded = cache.get(key, k -> {
+            cache.put(new NotesItem("alice", 1, "new"));
+            return new NotesItem("alice", 1, "old");
+        });
+        assertEquals("old", loaded.getNotes());
+
+        assertEquals("new", cache.get(key, k -> {
+            throw new AssertionError("should be cached");
+        }).getNotes());
+    }
+
+    @Test
+    public void invalidationDuringLoadIsNotUndone() {
+        cache.get(key, k -> {
+            cache.invalidate(key);
+            return new NotesItem("alice", 1, "old");
+        });
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(key, k -> {
+            loads.incrementAndGet();
+            return new NotesItem("alice", 1, "fresh");
+        });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void callersGetTheirOwnCopy() {
+        cache.put(new NotesItem("alice", 1, "note"));
+
+        cache.get(key, k -> null).setNotes("changed by a caller");
+
+        assertEquals("note", cache.get(key, k -> null).getNotes());
+    }
+}
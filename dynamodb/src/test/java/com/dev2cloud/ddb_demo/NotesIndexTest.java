@@ -0,0 +1,55 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NotesIndexTest {
+    @Test
+    public void reindexingReplacesTheWordsOfANote() {
+        NotesIndex index = new NotesIndex();
+        index.index(new NotesItem("alice", 1, "DynamoDB is fast"));
+        index.index(new NotesItem("alice", 2, "S3 is cheap"));
+
+        index.index(new NotesItem("alice", 1, "DynamoDB is durable"));
+
+        assertArrayEquals(new int[]{1}, index.search("alice", "dynamodb"));
+        assertArrayEquals(new int[0], index.search("alice", "fast"));
+        assertArrayEquals(new int[]{1}, index.search("alice", "durable"));
+        assertArrayEquals(new int[]{1, 2}, index.search("alice", "is"));
+    }
+
+    @Test
+    public void removingTheLastNoteOfAWordDropsTheWord() {
+        NotesIndex index = new NotesIndex();
+        index.index(new NotesItem("alice", 1, "unique words"));
+        index.append(new NotesKey("alice", 1), "appended");
+
+        index.remove(new NotesKey("alice", 1));
+
+        assertEquals(0, index.getNoteCount());
+        assertEquals(0, index.getTermCount());
+    }
+
+    @Test
+    public void postingsMatchASortedSetThroughAddsAndRemoves() {
+        Random random = new Random(42);
+        NotesIndex.Postings postings = new NotesIndex.Postings();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            // Mostly small ids with the occasional large gap, so varints of several lengths occur
+            int noteId = random.nextInt(10) == 0 ? random.nextInt(1_000_000) : random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(noteId), postings.remove(noteId));
+            } else {
+                expected.add(noteId);
+                postings.add(noteId);
+            }
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), postings.toArray());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class NotesItemCodecTest {
+
+    @Test
+    public void roundTripsEveryAttribute() {
+        NotesItem item = new NotesItem("alice", 42, "hello");
+        item.setCompressedNotes(SdkBytes.fromUtf8String("compressed"));
+        item.setNotesRef("s3://bucket/alice/42");
+        item.setAppendedNotes(Arrays.asList(" more", " and more"));
+
+        NotesItem decoded = NotesItemCodec.fromItem(NotesItemCodec.toItem(item));
+
+        assertItemsEqual(item, decoded);
+    }
+
+    @Test
+    public void leavesOutMissingAttributes() {
+        Map<String, AttributeValue> encoded = NotesItemCodec.toItem(new NotesItem("alice", 1, null));
+
+        assertEquals(2, encoded.size());
+        assertFalse(encoded.containsKey(NotesItemCodec.NOTES));
+        assertNull(NotesItemCodec.fromItem(encoded).getNotes());
+    }
+
+    @Test
+    public void toleratesProjectedItems() {
+        Map<String, AttributeValue> projected = NotesItemCodec.toKey("alice", 3);
+
+        NotesItem decoded = NotesItemCodec.fromItem(projected);
+
+        assertEquals("alice", decoded.getUserId());
+        assertEquals(3, decoded.getNoteId().intValue());
+        assertNull(decoded.getAppendedNotes());
+    }
+
+    @Test
+    public void matchesTheEnhancedClientSchema() {
+        NotesItem item = new NotesItem("alice", 42, "hello");
+        item.setNotesRef("s3://bucket/alice/42");
+        item.setAppendedNotes(Arrays.asList(" more"));
+
+        Map<String, AttributeValue> encoded = NotesItemCodec.toItem(item);
+
+        assertEquals(encoded, NotesItemCodec.TABLE_SCHEMA.itemToMap(item, true));
+        assertItemsEqual(item, NotesItemCodec.TABLE_SCHEMA.mapToItem(encoded));
+    }
+
+    @Test
+    public void keyRoundTrips() {
+        NotesKey key = new NotesKey("alice", 9);
+        assertEquals(key, NotesItemCodec.keyOf(NotesItemCodec.toKey(key)));
+    }
+
+    private static void assertItemsEqual(NotesItem expected, NotesItem actual) {
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getNoteId(), actual.getNoteId());
+        assertEquals(expected.getNotes(), actual.getNotes());
+        assertEquals(expected.getCompressedNotes(), actual.getCompressedNotes());
+        assertEquals(expected.getNotesRef(), actual.getNotesRef());
+        assertEquals(expected.getAppendedNotes(), actual.getAppendedNotes());
+    }
+}
@@ -0,0 +1,79 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementError;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementErrorCodeEnum;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NotesPartiQLExecutorTest {
+    private final List<BatchStatementRequest> sent = new ArrayList<>();
+
+    /**
+     * Answers the first statement of every batch with a note, and fails the second one
+     */
+    private final DynamoDbClient client = new DynamoDbClient() {
+        @Override
+        public BatchExecuteStatementResponse batchExecuteStatement(BatchExecuteStatementRequest request) {
+            sent.addAll(request.statements());
+            List<BatchStatementResponse> responses = new ArrayList<>();
+            for (int i = 0; i < request.statements().size(); i++) {
+                BatchStatementResponse.Builder response = BatchStatementResponse.builder();
+                if (i == 0) {
+                    response.item(NotesItemCodec.toItem(new NotesItem("alice", 1, "note")));
+                } else if (i == 1) {
+                    response.error(BatchStatementError.builder()
+                            .code(BatchStatementErrorCodeEnum.PROVISIONED_THROUGHPUT_EXCEEDED)
+                            .message("slow down")
+                            .build());
+                }
+                responses.add(response.build());
+            }
+            return BatchExecuteStatementResponse.builder().responses(responses).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    public void reportsFailedStatementsApartFromMisses() {
+        NotesKey found = new NotesKey("alice", 1);
+        NotesKey failed = new NotesKey("alice", 2);
+        NotesKey missing = new NotesKey("alice", 3);
+
+        BatchGetReport report = new NotesPartiQLExecutor(client).getItems(Arrays.asList(found, failed, missing));
+
+        assertEquals("note", report.getItems().get(0).getNotes());
+        assertNull(report.getItems().get(1));
+        assertNull(report.getItems().get(2));
+        assertEquals(Collections.singleton(failed), report.getUnresolvedKeys());
+        assertTrue(report.getErrors().get(failed).contains("slow down"));
+    }
+
+    @Test
+    public void insertsOnlyTheAttributesANoteHas() {
+        new NotesPartiQLExecutor(client).insertItems(Collections.singletonList(new NotesItem("alice", 1, null)));
+
+        assertEquals("INSERT INTO \"Notes\" VALUE {'NoteId' : ?, 'UserId' : ?}", sent.get(0).statement());
+        assertEquals(2, sent.get(0).parameters().size());
+    }
+}
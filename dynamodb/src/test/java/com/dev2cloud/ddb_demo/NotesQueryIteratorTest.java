@@ -0,0 +1,73 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NotesQueryIteratorTest {
+    private static final int NOTES = 100;
+
+    /**
+     * A user with NOTES notes, served in pages of at most Limit items
+     */
+    private final List<Integer> limits = new CopyOnWriteArrayList<>();
+    private final Function<QueryRequest, QueryResponse> query = request -> {
+        int from = request.hasExclusiveStartKey()
+                ? Integer.parseInt(request.exclusiveStartKey().get(NotesItemCodec.NOTE_ID).n()) + 1
+                : 0;
+        int limit = request.limit() == null ? NOTES : request.limit();
+        limits.add(limit);
+        int to = Math.min(NOTES, from + limit);
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int noteId = from; noteId < to; noteId++) {
+            items.add(NotesItemCodec.toItem(new NotesItem("alice", noteId, "note " + noteId)));
+        }
+        QueryResponse.Builder response = QueryResponse.builder().items(items).count(items.size());
+        if (to < NOTES) {
+            response.lastEvaluatedKey(NotesItemCodec.toKey(new NotesKey("alice", to - 1)));
+        }
+        return response.build();
+    };
+
+    @Test
+    public void walksEveryPage() {
+        List<Integer> noteIds = new ArrayList<>();
+        new NotesQueryIterator(query, request(30), Long.MAX_VALUE).forEachRemaining(item -> noteIds.add(item.getNoteId()));
+
+        assertEquals(NOTES, noteIds.size());
+        assertEquals(99, noteIds.get(NOTES - 1).intValue());
+        assertEquals(4, limits.size());
+    }
+
+    @Test
+    public void stopsFetchingOnceTheLimitIsCovered() {
+        List<Integer> noteIds = new ArrayList<>();
+        new NotesQueryIterator(query, request(30), 45).forEachRemaining(item -> noteIds.add(item.getNoteId()));
+
+        assertEquals(45, noteIds.size());
+        // The second page only asks for what the limit still lets through, and no third is prefetched
+        assertEquals(Arrays.asList(30, 15), limits);
+    }
+
+    @Test
+    public void fetchesNothingForAZeroLimit() {
+        assertFalse(new NotesQueryIterator(query, request(30), 0).hasNext());
+        assertEquals(Collections.emptyList(), limits);
+    }
+
+    private static QueryRequest request(int pageSize) {
+        return QueryRequest.builder().tableName("Notes").keyConditionExpression("UserId = :v_UserId").limit(pageSize).build();
+    }
+}
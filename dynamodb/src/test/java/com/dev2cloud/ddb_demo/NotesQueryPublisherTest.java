@@ -0,0 +1,87 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotesQueryPublisherTest {
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGES = 3;
+
+    private int requests;
+
+    private CompletableFuture<QueryResponse> page(QueryRequest request) {
+        requests++;
+        int page = request.hasExclusiveStartKey()
+                ? Integer.parseInt(request.exclusiveStartKey().get(NotesItemCodec.NOTE_ID).n()) / PAGE_SIZE + 1
+                : 0;
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            items.add(NotesItemCodec.toItem(new NotesItem("alice", page * PAGE_SIZE + i, "note")));
+        }
+        QueryResponse.Builder response = QueryResponse.builder().items(items);
+        if (page < PAGES - 1) {
+            response.lastEvaluatedKey(NotesItemCodec.toKey("alice", page * PAGE_SIZE + PAGE_SIZE - 1));
+        }
+        return CompletableFuture.completedFuture(response.build());
+    }
+
+    @Test
+    public void requestsPagesOnlyAsDemandArrives() {
+        NotesQueryPublisher publisher = new NotesQueryPublisher(this::page, QueryRequest.builder().build(),
+                items -> CompletableFuture.completedFuture(NotesQueryIterator.decode(items)));
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertEquals(0, requests);
+
+        recorder.subscription.request(5);
+        assertEquals(1, requests);
+        assertEquals(5, recorder.items.size());
+
+        recorder.subscription.request(6);
+        assertEquals(2, requests);
+        assertEquals(11, recorder.items.size());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(PAGES, requests);
+        assertEquals(PAGE_SIZE * PAGES, recorder.items.size());
+        assertTrue(recorder.completed);
+    }
+
+    private static final class Recorder implements Subscriber<NotesItem> {
+        final List<NotesItem> items = new ArrayList<>();
+        Subscription subscription;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(NotesItem item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            throw new AssertionError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NotesRepositoryTest {
+    private static final RuntimeException FAILURE = new IllegalStateException("segment failed");
+
+    /**
+     * Every segment of the table is endless; one page of a single note is returned per call
+     */
+    private static class EndlessTable implements DynamoDbClient {
+        final AtomicInteger pages = new AtomicInteger();
+        volatile int failingSegment = -1;
+
+        @Override
+        public ScanResponse scan(ScanRequest request) {
+            if (request.segment() == failingSegment) {
+                throw FAILURE;
+            }
+            int page = pages.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            Map<String, AttributeValue> item = NotesItemCodec.toItem(new NotesItem("user" + request.segment(), page, "n"));
+            return ScanResponse.builder()
+                    .items(Collections.singletonList(item))
+                    .count(1)
+                    .lastEvaluatedKey(key(item))
+                    .build();
+        }
+
+        private static Map<String, AttributeValue> key(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> key = new HashMap<>();
+            key.put(NotesItemCodec.USER_ID, item.get(NotesItemCodec.USER_ID));
+            key.put(NotesItemCodec.NOTE_ID, item.get(NotesItemCodec.NOTE_ID));
+            return key;
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Answers every Query with the same single page and keeps the last request
+     */
+    private static class SinglePageTable implements DynamoDbClient {
+        final List<Map<String, AttributeValue>> items;
+        volatile QueryRequest sent;
+
+        @SafeVarargs
+        SinglePageTable(Map<String, AttributeValue>... items) {
+            this.items = Arrays.asList(items);
+        }
+
+        @Override
+        public QueryResponse query(QueryRequest request) {
+            sent = request;
+            return QueryResponse.builder().items(items).count(items.size()).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void stopsTheOtherSegmentsWhenOneFails() throws Exception {
+        EndlessTable table = new EndlessTable();
+        table.failingSegment = 0;
+        NotesRepository repository = new NotesRepository(table);
+
+        try {
+            repository.scanAll(4, 4, item -> {
+            }, null);
+            throw new AssertionError("The scan should have failed");
+        } catch (IllegalStateException ex) {
+            assertSame(FAILURE, ex);
+        }
+        int pages = table.pages.get();
+        Thread.sleep(50);
+        assertEquals("No segment scans on after the failure", pages, table.pages.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void throwsWhenInterruptedAndSavesTheCheckpoint() throws Exception {
+        EndlessTable table = new EndlessTable();
+        NotesRepository repository = new NotesRepository(table);
+        Path checkpointFile = Files.createTempFile("scan", ".checkpoint");
+        Files.delete(checkpointFile);
+        AtomicReference<RuntimeException> thrown = new AtomicReference<>();
+        AtomicReference<Boolean> stillInterrupted = new AtomicReference<>();
+
+        Thread scan = new Thread(() -> {
+            try {
+                repository.scanAll(2, 2, item -> {
+                }, checkpointFile);
+            } catch (RuntimeException ex) {
+                thrown.set(ex);
+            }
+            stillInterrupted.set(Thread.currentThread().isInterrupted());
+        });
+        scan.start();
+        while (table.pages.get() < 10) {
+            Thread.sleep(1);
+        }
+        scan.interrupt();
+        scan.join();
+
+        assertTrue(thrown.get() instanceof AbortedException);
+        assertTrue(stillInterrupted.get());
+        ScanCheckpoint checkpoint = ScanCheckpoint.loadOrCreate(checkpointFile, 2);
+        assertFalse(checkpoint.isComplete());
+        assertTrue(checkpoint.lastKey(0) != null || checkpoint.lastKey(1) != null);
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    @Test
+    public void projectingNotesAlsoReadsItsAppendedAndAlternativeAttributes() {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(NotesItemCodec.NOTE_ID, AttributeValue.fromN("1"));
+        item.put(NotesItemCodec.NOTES, AttributeValue.fromS("Bring"));
+        item.put(NotesItemCodec.APPENDED_NOTES, AttributeValue.fromL(Collections.singletonList(AttributeValue.fromS(" a pen"))));
+        SinglePageTable table = new SinglePageTable(item);
+        NotesRepository repository = new NotesRepository(table);
+
+        List<NotesItem> notes;
+        try (Stream<NotesItem> stream = repository.queryNotes(NotesQuery.forUser("student1")
+                .project(NotesItemCodec.NOTE_ID, NotesItemCodec.NOTES, NotesItemCodec.NOTES_REF))) {
+            notes = stream.collect(Collectors.toList());
+        }
+
+        QueryRequest request = table.sent;
+        Set<String> projected = new HashSet<>();
+        for (String placeholder : request.projectionExpression().split(", ")) {
+            assertTrue(projected.add(request.expressionAttributeNames().get(placeholder)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(NotesItemCodec.NOTE_ID, NotesItemCodec.NOTES, NotesItemCodec.NOTES_REF,
+                NotesItemCodec.APPENDED_NOTES, NotesItemCodec.COMPRESSED_NOTES)), projected);
+        assertEquals(1, notes.size());
+        assertEquals("Bring a pen", notes.get(0).getNotes());
+    }
+
+    @Test
+    public void projectionWithoutNotesIsLeftAlone() {
+        SinglePageTable table = new SinglePageTable();
+        NotesRepository repository = new NotesRepository(table);
+
+        try (Stream<NotesItem> stream = repository.queryNotes(NotesQuery.forUser("student1").project(NotesItemCodec.NOTE_ID))) {
+            assertEquals(0, stream.count());
+        }
+
+        assertEquals("#p0", table.sent.projectionExpression());
+        assertEquals(NotesItemCodec.NOTE_ID, table.sent.expressionAttributeNames().get("#p0"));
+    }
+}
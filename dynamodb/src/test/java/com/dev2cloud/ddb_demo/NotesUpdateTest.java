@@ -0,0 +1,140 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotesUpdateTest {
+    private static final Pattern PLACEHOLDER = Pattern.compile("[#:][a-z]\\d+");
+
+    @Test
+    public void appendsToTheExistingList() {
+        UpdateItemRequest request = NotesUpdate.of("alice", 1).appendToNotes(" a").appendToNotes(" b").toRequest("Notes");
+
+        assertEquals("SET NotesAppended = list_append(if_not_exists(NotesAppended, []), [\" a\", \" b\"])", resolved(request));
+        assertEquals(Collections.singletonMap("#a0", NotesItemCodec.APPENDED_NOTES), request.expressionAttributeNames());
+    }
+
+    @Test
+    public void textAppendedAfterSetNotesReplacesTheList() {
+        NotesUpdate update = NotesUpdate.of("alice", 1).setNotes("Bring").appendToNotes(" a pen");
+
+        UpdateItemRequest request = update.toRequest("Notes");
+
+        assertEquals("SET Notes = \"Bring\", NotesAppended = [\" a pen\"] REMOVE NotesZ, NotesRef", resolved(request));
+        assertTrue(update.isIdempotent());
+    }
+
+    @Test
+    public void setNotesDropsTextAppendedBefore() {
+        NotesUpdate update = NotesUpdate.of("alice", 1).appendToNotes(" lost").setNotes("Bring");
+
+        UpdateItemRequest request = update.toRequest("Notes");
+
+        assertEquals("SET Notes = \"Bring\" REMOVE NotesZ, NotesRef, NotesAppended", resolved(request));
+        assertEquals(1, request.expressionAttributeValues().size());
+        assertTrue(update.isIdempotent());
+    }
+
+    @Test
+    public void textAppendedAfterReplaceBodyReplacesTheList() {
+        NotesItem stored = new NotesItem("alice", 1, null);
+        stored.setNotesRef("s3://notes/alice/1");
+
+        UpdateItemRequest request = NotesUpdate.of("alice", 1).replaceBody(stored).appendToNotes(" more").toRequest("Notes");
+
+        assertEquals("SET NotesRef = \"s3://notes/alice/1\", NotesAppended = [\" more\"] REMOVE NotesZ, Notes", resolved(request));
+    }
+
+    @Test
+    public void usesEveryNameAndValueItDeclares() {
+        UpdateItemRequest request = NotesUpdate.of("alice", 1).appendToNotes(" a").countEdit().touch()
+                .onlyIfEquals(NotesUpdate.EDIT_COUNT, AttributeValue.fromN("3")).toRequest("Notes");
+
+        Set<String> used = placeholders(request.updateExpression() + " " + request.conditionExpression());
+        Set<String> declared = new HashSet<>(request.expressionAttributeNames().keySet());
+        declared.addAll(request.expressionAttributeValues().keySet());
+        assertEquals(declared, used);
+    }
+
+    @Test
+    public void appendsAndIncrementsAreNotIdempotent() {
+        assertFalse(NotesUpdate.of("alice", 1).appendToNotes(" a").isIdempotent());
+        assertFalse(NotesUpdate.of("alice", 1).countEdit().isIdempotent());
+        assertTrue(NotesUpdate.of("alice", 1).set("Title", "x").touch().isIdempotent());
+    }
+
+    @Test
+    public void buildsTheSameRequestTwice() {
+        NotesUpdate update = NotesUpdate.of("alice", 1).setNotes("a").appendToNotes("b");
+
+        assertEquals(update.toRequest("Notes"), update.toRequest("Notes"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsAnEmptyUpdate() {
+        NotesUpdate.of("alice", 1).returnValues(ReturnValue.ALL_NEW).toRequest("Notes");
+    }
+
+    /**
+     * The update expression with its placeholders replaced by names and values, strings quoted
+     * and lists in brackets
+     */
+    private static String resolved(UpdateItemRequest request) {
+        Map<String, String> names = request.expressionAttributeNames();
+        Map<String, AttributeValue> values = request.hasExpressionAttributeValues()
+                ? request.expressionAttributeValues() : Collections.emptyMap();
+        assertEquals("Declared names and values must all be used", placeholders(request.updateExpression()),
+                union(names.keySet(), values.keySet()));
+        Matcher matcher = PLACEHOLDER.matcher(request.updateExpression());
+        StringBuffer resolved = new StringBuffer();
+        while (matcher.find()) {
+            String placeholder = matcher.group();
+            String replacement = placeholder.startsWith("#") ? names.get(placeholder) : render(values.get(placeholder));
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    private static String render(AttributeValue value) {
+        if (value.s() != null) {
+            return "\"" + value.s() + "\"";
+        }
+        if (value.n() != null) {
+            return value.n();
+        }
+        StringBuilder list = new StringBuilder("[");
+        for (AttributeValue element : value.l()) {
+            list.append(list.length() == 1 ? "" : ", ").append(render(element));
+        }
+        return list.append(']').toString();
+    }
+
+    private static Set<String> placeholders(String expression) {
+        Set<String> placeholders = new HashSet<>();
+        Matcher matcher = PLACEHOLDER.matcher(expression);
+        while (matcher.find()) {
+            placeholders.add(matcher.group());
+        }
+        return placeholders;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+}
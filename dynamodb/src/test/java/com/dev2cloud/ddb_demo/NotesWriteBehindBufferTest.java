@@ -0,0 +1,38 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotesWriteBehindBufferTest {
+    private final List<List<NotesItem>> flushed = new ArrayList<>();
+
+    private synchronized BatchWriteReport write(Collection<NotesItem> items) {
+        flushed.add(new ArrayList<>(items));
+        return new BatchWriteReport();
+    }
+
+    @Test
+    public void coalescesWritesToTheSameNote() {
+        CompletableFuture<Void> first;
+        CompletableFuture<Void> second;
+        try (NotesWriteBehindBuffer buffer = new NotesWriteBehindBuffer(this::write, Duration.ofMinutes(1), 100)) {
+            first = buffer.put(new NotesItem("alice", 1, "v1"));
+            second = buffer.put(new NotesItem("alice", 1, "v2"));
+            buffer.put(new NotesItem("alice", 2, "other"));
+            assertEquals(1, buffer.getWritesCoalesced());
+        }
+
+        assertEquals(1, flushed.size());
+        assertEquals(2, flushed.get(0).size());
+        assertEquals("v2", flushed.get(0).get(0).getNotes());
+        assertTrue(first.isDone() && second.isDone());
+    }
+}
@@ -0,0 +1,51 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelBatchReaderTest {
+    private static final ThrottleRetryPolicy NO_BACKOFF = new ThrottleRetryPolicy(8, 0, 0, 100);
+
+    @Test
+    public void reportsUnprocessedKeysApartFromMisses() {
+        NotesKey found = new NotesKey("alice", 1);
+        NotesKey missing = new NotesKey("alice", 2);
+        NotesKey throttled = new NotesKey("alice", 3);
+
+        BatchGetReport report = ParallelBatchReader.read(Arrays.asList(found, missing, throttled, found), 1, NO_BACKOFF,
+                (batch, results) -> {
+                    if (batch.contains(found)) {
+                        results.put(found, new NotesItem("alice", 1, "note"));
+                    }
+                    return batch.contains(throttled) ? Collections.singletonList(throttled) : Collections.emptyList();
+                });
+
+        List<NotesItem> items = report.getItems();
+        assertEquals(4, items.size());
+        assertEquals("note", items.get(0).getNotes());
+        assertNull(items.get(1));
+        assertNull(items.get(2));
+        assertEquals("note", items.get(3).getNotes());
+        assertEquals(Collections.singleton(throttled), report.getUnresolvedKeys());
+    }
+
+    @Test
+    public void sendsEachKeyOnce() {
+        NotesKey key = new NotesKey("alice", 1);
+
+        BatchGetReport report = ParallelBatchReader.read(Arrays.asList(key, key, key), 1, NO_BACKOFF, (batch, results) -> {
+            assertEquals(1, batch.size());
+            return Collections.emptyList();
+        });
+
+        assertTrue(report.isComplete());
+        assertEquals(3, report.getItems().size());
+    }
+}
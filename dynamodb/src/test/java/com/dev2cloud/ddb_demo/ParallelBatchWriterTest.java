@@ -0,0 +1,196 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelBatchWriterTest {
+    private static final ThrottleRetryPolicy NO_BACKOFF = new ThrottleRetryPolicy(8, 0, 0, 100);
+
+    @Test
+    public void coalescesDuplicateKeysKeepingTheLastWrite() {
+        List<NotesItem> items = Arrays.asList(
+                new NotesItem("alice", 1, "first"),
+                new NotesItem("bob", 1, "other"),
+                new NotesItem("alice", 1, "second"));
+
+        List<NotesItem> batch = onlyBatch(items);
+
+        assertEquals(2, batch.size());
+        assertEquals("second", batch.get(0).getNotes());
+        assertEquals("bob", batch.get(1).getUserId());
+    }
+
+    @Test
+    public void fillsBatchWithDistinctKeys() {
+        List<NotesItem> items = new ArrayList<>();
+        for (int i = 0; i < ParallelBatchWriter.MAX_BATCH_SIZE; i++) {
+            items.add(new NotesItem("alice", i, "a"));
+            items.add(new NotesItem("alice", i, "b"));
+        }
+        items.add(new NotesItem("alice", 999, "next"));
+        List<List<NotesItem>> batches = new ArrayList<>();
+
+        ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF, batch -> {
+            batches.add(batch);
+            return Collections.emptyList();
+        });
+
+        assertEquals(2, batches.size());
+        List<NotesItem> batch = batches.get(0);
+        assertEquals(ParallelBatchWriter.MAX_BATCH_SIZE, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i, batch.get(i).getNoteId().intValue());
+        }
+        assertEquals("b", batch.get(0).getNotes());
+    }
+
+    @Test
+    public void keepsTheLastWriteOfAKeyAcrossBatches() {
+        List<NotesItem> items = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            items.add(new NotesItem("alice", i % 40, "v" + i));
+        }
+        Map<NotesKey, String> table = new ConcurrentHashMap<>();
+        Random random = new Random(7);
+
+        BatchWriteReport report = ParallelBatchWriter.write(items.iterator(), 8, NO_BACKOFF, batch -> {
+            try {
+                // Let the writers overtake each other
+                Thread.sleep(random.nextInt(3));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            for (NotesItem item : batch) {
+                table.put(NotesKey.of(item), item.getNotes());
+            }
+            return Collections.emptyList();
+        });
+
+        assertEquals(0, report.getFailedItems().size());
+        for (int i = 2000 - 40; i < 2000; i++) {
+            assertEquals("v" + i, table.get(new NotesKey("alice", i % 40)));
+        }
+    }
+
+    @Test
+    public void sendsNoBatchWithDuplicateKeys() {
+        List<NotesItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new NotesItem("alice", i % 30, "v" + i));
+        }
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+
+        BatchWriteReport report = ParallelBatchWriter.write(items.iterator(), 2, NO_BACKOFF, batch -> {
+            assertEquals(batch.size(), batch.stream().map(NotesKey::of).distinct().count());
+            sizes.add(batch.size());
+            return Collections.emptyList();
+        });
+
+        assertEquals(report.getItemsWritten(), sizes.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, report.getFailedItems().size());
+    }
+
+    @Test
+    public void recordsItemsOfFailedBatches() {
+        RuntimeException failure = new IllegalStateException("boom");
+        List<NotesItem> items = Arrays.asList(new NotesItem("alice", 1, "a"), new NotesItem("alice", 2, "b"));
+
+        BatchWriteReport report = ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF, batch -> {
+            throw failure;
+        });
+
+        assertEquals(0, report.getItemsWritten());
+        assertEquals(2, report.getFailedItems().size());
+        assertEquals(1, report.getErrors().size());
+        assertSame(failure, report.getErrors().get(0));
+        assertFalse(report.isInterrupted());
+    }
+
+    @Test
+    public void retriesUnprocessedItemsAndReportsTheRest() {
+        NotesItem stuck = new NotesItem("alice", 2, "b");
+        List<NotesItem> items = Arrays.asList(new NotesItem("alice", 1, "a"), stuck);
+
+        BatchWriteReport report = ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF,
+                batch -> Collections.singletonList(stuck));
+
+        assertEquals(1, report.getItemsWritten());
+        assertEquals(ParallelBatchWriter.MAX_ATTEMPTS - 1, report.getRetries());
+        assertEquals(Collections.singletonList(stuck), report.getFailedItems());
+    }
+
+    @Test
+    public void retriesThrottledBatchesInTheSameLoop() {
+        List<NotesItem> items = Arrays.asList(new NotesItem("alice", 1, "a"), new NotesItem("alice", 2, "b"));
+        AtomicInteger calls = new AtomicInteger();
+
+        BatchWriteReport report = ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF, batch -> {
+            calls.incrementAndGet();
+            throw ProvisionedThroughputExceededException.builder().message("throttled").build();
+        });
+
+        // One call per attempt, not a retrying call inside every attempt
+        assertEquals(ParallelBatchWriter.MAX_ATTEMPTS, calls.get());
+        assertEquals(2, report.getFailedItems().size());
+        assertEquals(1, report.getErrors().size());
+    }
+
+    @Test
+    public void reportsQueuedBatchesAsFailedWhenInterrupted() throws Exception {
+        List<NotesItem> items = new ArrayList<>();
+        for (int i = 0; i < ParallelBatchWriter.MAX_BATCH_SIZE * 4; i++) {
+            items.add(new NotesItem("alice", i, "a"));
+        }
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<BatchWriteReport> result = new AtomicReference<>();
+        Thread writer = new Thread(() -> result.set(ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF, batch -> {
+            started.countDown();
+            try {
+                // Held until shutdownNow interrupts the pool
+                new CountDownLatch(1).await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        })));
+        writer.start();
+        started.await();
+        // The first batch is running, the second queued and the third waiting for a permit
+        while (writer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        writer.interrupt();
+        writer.join();
+
+        BatchWriteReport report = result.get();
+        assertTrue(report.isInterrupted());
+        assertEquals(ParallelBatchWriter.MAX_BATCH_SIZE, report.getItemsWritten());
+        assertEquals(ParallelBatchWriter.MAX_BATCH_SIZE * 2, report.getFailedItems().size());
+    }
+
+    private static List<NotesItem> onlyBatch(List<NotesItem> items) {
+        List<List<NotesItem>> batches = new ArrayList<>();
+        ParallelBatchWriter.write(items.iterator(), 1, NO_BACKOFF, batch -> {
+            batches.add(batch);
+            return Collections.emptyList();
+        });
+        assertEquals(1, batches.size());
+        return batches.get(0);
+    }
+}
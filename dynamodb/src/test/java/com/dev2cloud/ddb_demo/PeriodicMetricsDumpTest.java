@@ -0,0 +1,28 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeriodicMetricsDumpTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIntervalsBelowAMillisecond() {
+        new PeriodicMetricsDump(new NotesMetrics(), Duration.ofNanos(500), PeriodicMetricsDump.Format.TEXT, line -> {
+        });
+    }
+
+    @Test
+    public void dumpsOnceMoreWhenClosed() {
+        List<String> lines = new ArrayList<>();
+        PeriodicMetricsDump dump = new PeriodicMetricsDump(new NotesMetrics(), Duration.ofHours(1),
+                PeriodicMetricsDump.Format.JSON, lines::add);
+
+        dump.close();
+
+        assertEquals(1, lines.size());
+    }
+}
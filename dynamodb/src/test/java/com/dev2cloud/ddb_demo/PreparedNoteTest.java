@@ -0,0 +1,55 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PreparedNoteTest {
+    private static final ThrottleRetryPolicy NO_BACKOFF = new ThrottleRetryPolicy(8, 0, 0, 100);
+
+    @Test
+    public void preparesEachNoteOnceAcrossRetries() {
+        NotesItem stuck = new NotesItem("alice", 2, "b");
+        List<NotesItem> items = Arrays.asList(new NotesItem("alice", 1, "a"), stuck);
+        AtomicInteger prepared = new AtomicInteger();
+        AtomicInteger attempts = new AtomicInteger();
+
+        BatchWriteReport report = ParallelBatchWriter.write(PreparedNote.wrap(items.iterator()), 1, NO_BACKOFF,
+                PreparedNote::key, PreparedNote::original, batch -> {
+                    for (PreparedNote note : batch) {
+                        note.stored(item -> {
+                            prepared.incrementAndGet();
+                            return new NotesItem(item.getUserId(), item.getNoteId(), null);
+                        });
+                    }
+                    // The second note stays unprocessed for a few attempts
+                    return attempts.incrementAndGet() < 3
+                            ? PreparedNote.unprocessed(batch, Collections.singletonList(
+                            new NotesItem("alice", 2, null)))
+                            : Collections.emptyList();
+                });
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, prepared.get());
+        assertEquals(2, report.getItemsWritten());
+    }
+
+    @Test
+    public void mapsUnprocessedItemsBackToTheOriginals() {
+        NotesItem original = new NotesItem("alice", 1, "plain text");
+        List<PreparedNote> batch = Collections.singletonList(PreparedNote.wrap(
+                Collections.singletonList(original).iterator()).next());
+        NotesItem stored = new NotesItem("alice", 1, null);
+        stored.setNotesRef("notes/alice/1");
+
+        List<PreparedNote> unprocessed = PreparedNote.unprocessed(batch, Collections.singletonList(stored));
+
+        assertSame(original, unprocessed.get(0).original());
+    }
+}
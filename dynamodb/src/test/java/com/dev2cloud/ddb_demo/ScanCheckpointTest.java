@@ -0,0 +1,56 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesFromTheSavedKeys() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scan.checkpoint");
+        ScanCheckpoint checkpoint = new ScanCheckpoint(3);
+        checkpoint.advance(0, NotesItemCodec.toKey("alice", 7));
+        checkpoint.advance(1, null);
+        checkpoint.save(file);
+
+        ScanCheckpoint resumed = ScanCheckpoint.loadOrCreate(file, 3);
+
+        assertEquals(NotesItemCodec.toKey("alice", 7), resumed.lastKey(0));
+        assertTrue(resumed.isDone(1));
+        assertFalse(resumed.isDone(2));
+        assertNull(resumed.lastKey(2));
+    }
+
+    @Test
+    public void savesPagesOnAnIntervalButFinishedSegmentsAtOnce() {
+        Path file = folder.getRoot().toPath().resolve("scan.checkpoint");
+        ScanCheckpoint checkpoint = new ScanCheckpoint(2);
+
+        checkpoint.advance(0, NotesItemCodec.toKey("alice", 1));
+        checkpoint.saveIfDue(file);
+        assertFalse(Files.exists(file));
+
+        checkpoint.advance(1, null);
+        checkpoint.saveIfDue(file);
+        assertTrue(Files.exists(file));
+        assertTrue(ScanCheckpoint.loadOrCreate(file, 2).isDone(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsADifferentNumberOfSegments() {
+        Path file = folder.getRoot().toPath().resolve("scan.checkpoint");
+        new ScanCheckpoint(2).save(file);
+        ScanCheckpoint.loadOrCreate(file, 4);
+    }
+}
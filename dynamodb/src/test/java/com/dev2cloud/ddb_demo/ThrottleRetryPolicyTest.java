@@ -0,0 +1,134 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ThrottleRetryPolicyTest {
+    private final ThrottleRetryPolicy policy = new ThrottleRetryPolicy(4, 0, 0, 100);
+
+    @Test
+    public void retriesServerErrorsOfIdempotentRequests() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.execute(null, CapacityRateLimiter.Capacity.WRITE, 1,
+                failingTimes(2, serverError(), calls), response -> Double.NaN, true);
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void doesNotResendNonIdempotentRequestsAfterServerErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.execute(null, CapacityRateLimiter.Capacity.WRITE, 1,
+                    failingTimes(1, serverError(), calls), response -> Double.NaN, false);
+            fail("Expected the server error");
+        } catch (DynamoDbException ex) {
+            assertEquals(500, ex.statusCode());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void retriesThrottledNonIdempotentRequests() {
+        AtomicInteger calls = new AtomicInteger();
+        DynamoDbException throttle = ProvisionedThroughputExceededException.builder().message("throttled").build();
+
+        policy.execute(null, CapacityRateLimiter.Capacity.WRITE, 1,
+                failingTimes(2, throttle, calls), response -> Double.NaN, false);
+
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void executeOnceNeverRetries() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.executeOnce(null, CapacityRateLimiter.Capacity.WRITE, 1,
+                    failingTimes(1, serverError(), calls), response -> Double.NaN);
+            fail("Expected the server error");
+        } catch (DynamoDbException ex) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void retriesTransportFailuresOfIdempotentRequests() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.execute(null, CapacityRateLimiter.Capacity.READ, 1,
+                failingTimes(2, connectionReset(), calls), response -> Double.NaN, true);
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void retriesAttemptTimeouts() {
+        AtomicInteger calls = new AtomicInteger();
+
+        policy.execute(null, CapacityRateLimiter.Capacity.READ, 1,
+                failingTimes(1, ApiCallAttemptTimeoutException.create(100), calls), response -> Double.NaN, true);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void doesNotResendNonIdempotentRequestsAfterTransportFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.execute(null, CapacityRateLimiter.Capacity.WRITE, 1,
+                    failingTimes(1, connectionReset(), calls), response -> Double.NaN, false);
+            fail("Expected the transport failure");
+        } catch (SdkClientException ex) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void neverRetriesAbortedCalls() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.execute(null, CapacityRateLimiter.Capacity.READ, 1,
+                    failingTimes(1, AbortedException.create("interrupted"), calls), response -> Double.NaN, true);
+            fail("Expected the aborted call");
+        } catch (AbortedException ex) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void doesNotRetryClientErrorsWithoutATransportCause() {
+        assertFalse(ThrottleRetryPolicy.isRetryable(SdkClientException.create("Unable to marshall request")));
+    }
+
+    private static SdkClientException connectionReset() {
+        return SdkClientException.create("Unable to execute HTTP request", new SocketException("Connection reset"));
+    }
+
+    private static DynamoDbException serverError() {
+        return (DynamoDbException) DynamoDbException.builder().statusCode(500).message("internal error").build();
+    }
+
+    private static Supplier<String> failingTimes(int failures, RuntimeException error, AtomicInteger calls) {
+        return () -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw error;
+            }
+            return "ok";
+        };
+    }
+}
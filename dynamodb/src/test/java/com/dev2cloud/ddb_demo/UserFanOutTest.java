@@ -0,0 +1,51 @@
+package com.dev2cloud.ddb_demo;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserFanOutTest {
+    @Test
+    public void retiredPoolFinishesTheFanOutsUsingIt() throws Exception {
+        UserFanOut fanOut = new UserFanOut(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicReference<MultiUserNotes> result = new AtomicReference<>();
+
+        assertTrue(fanOut.tryAcquire());
+        Thread caller = new Thread(() -> {
+            try {
+                result.set(fanOut.run(Arrays.asList("alice", "bob", "carol"), userId -> {
+                    started.countDown();
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Collections.singletonList(new NotesItem(userId, 1, "note"));
+                }, Duration.ofSeconds(10)));
+            } finally {
+                fanOut.release();
+            }
+        });
+        caller.start();
+        started.await();
+
+        // Replaced while the fan-out is still submitting and running queries
+        fanOut.retire();
+        assertFalse(fanOut.tryAcquire());
+        proceed.countDown();
+        caller.join();
+
+        assertEquals(3, result.get().getNotes().size());
+        assertTrue(result.get().getFailures().isEmpty());
+    }
+}
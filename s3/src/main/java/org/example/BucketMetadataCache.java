@@ -0,0 +1,501 @@
+package org.example;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Remembers for a while what is known about each bucket: whether it exists, its region and
+ * whether it is versioned. It also keeps a client and a presigner per region, so requests for a
+ * bucket go straight to its region.
+ * <p>
+ * Checking that a bucket exists before each upload costs a HeadBucket round trip every time.
+ * A client with 'crossRegionAccessEnabled' reaches buckets in other regions too, but it learns
+ * the region from a redirect and sends the request again, and a presigner has no such fallback at
+ * all: a URL signed for the wrong region is rejected. Looking each of these up once and keeping
+ * the answer avoids all of that.
+ * <pre>
+ *     BucketMetadataCache cache = new BucketMetadataCache(s3Client);
+ *     if (cache.exists(bucket)) {
+ *         cache.client(bucket).putObject(request, path);
+ *     }
+ *     System.out.println(cache);  // calls made and saved
+ * </pre>
+ * That a bucket does not exist is kept too, for a shorter time since someone may create it.
+ * Creating or deleting a bucket through this program should be reported with
+ * {@link #bucketCreated} and {@link #bucketDeleted}, and calls which fail with
+ * {@link #requestFailed}, so a bucket deleted elsewhere is forgotten. The locations of many
+ * buckets are resolved in parallel by {@link #regions(Collection)}.
+ * <p>
+ * The cache is safe to use from several threads. When several threads ask for the same bucket at
+ * once, only one of them makes the call and the others wait for its answer.
+ */
+public class BucketMetadataCache implements AutoCloseable {
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(30);
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * The calls whose answers are kept
+     */
+    public enum Call {
+        HEAD_BUCKET("HeadBucket"),
+        GET_BUCKET_LOCATION("GetBucketLocation"),
+        GET_BUCKET_VERSIONING("GetBucketVersioning");
+
+        private final String operation;
+
+        Call(String operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public String toString() {
+            return operation;
+        }
+    }
+
+    private final S3Client client;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int concurrency;
+    private final Function<Region, S3Client> clientFactory;
+    private final Entries<Boolean> existence = new Entries<>();
+    private final Entries<Region> regions = new Entries<>();
+    private final Entries<Boolean> versioning = new Entries<>();
+    private final Map<Region, S3Client> clients = new ConcurrentHashMap<>();
+    private final Map<Region, S3Presigner> presigners = new ConcurrentHashMap<>();
+
+    /**
+     * @param client Client used to look up buckets, and for buckets whose location cannot be read
+     */
+    public BucketMetadataCache(S3Client client) {
+        this(client, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_CONCURRENCY,
+                region -> S3Client.builder().region(region).build());
+    }
+
+    /**
+     * @param ttl           How long what is known about a bucket is kept before it is looked up again
+     * @param negativeTtl   How long it is kept that a bucket does not exist
+     * @param concurrency   Number of locations looked up at the same time by {@link #regions(Collection)}
+     * @param clientFactory Creates the client of a region the first time one is needed
+     */
+    public BucketMetadataCache(S3Client client, Duration ttl, Duration negativeTtl, int concurrency,
+                               Function<Region, S3Client> clientFactory) {
+        if (ttl.isNegative() || negativeTtl.isNegative() || concurrency < 1) {
+            throw new IllegalArgumentException("ttl and negativeTtl must not be negative and concurrency must be positive");
+        }
+        this.client = client;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.concurrency = concurrency;
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * Whether the bucket exists, from the cache or with a HeadBucket call. The region of the
+     * bucket comes with the response and is kept as well.
+     *
+     * @throws AwsServiceException if S3 answers other than that the bucket exists or does not,
+     *                             for instance when access to it is denied
+     */
+    public boolean exists(String bucket) {
+        return existence.get(bucket, this::headBucket, exists -> exists ? ttlNanos : negativeTtlNanos);
+    }
+
+    /**
+     * The region of the bucket, from the cache or looked up
+     *
+     * @throws AwsServiceException if the location of the bucket cannot be read, for instance
+     *                             because the bucket does not exist
+     */
+    public Region region(String bucket) {
+        if (existence.isKnownMissing(bucket)) {
+            regions.saved.increment();
+            throw noSuchBucket(bucket);
+        }
+        return regions.get(bucket, this::lookupRegion, region -> ttlNanos);
+    }
+
+    /**
+     * Whether versioning is, or was ever, enabled on the bucket: once enabled it can only be
+     * suspended, and the old versions remain
+     *
+     * @throws AwsServiceException if the versioning state cannot be read
+     */
+    public boolean isVersioned(String bucket) {
+        if (existence.isKnownMissing(bucket)) {
+            versioning.saved.increment();
+            throw noSuchBucket(bucket);
+        }
+        return versioning.get(bucket, this::lookupVersioning, versioned -> ttlNanos);
+    }
+
+    /**
+     * Whether versioning is, or was ever, enabled on the bucket, always read from S3 and kept for
+     * later calls. Versioning may have been enabled elsewhere since it was cached, so this is the
+     * one to use before deleting the contents of a bucket.
+     *
+     * @throws AwsServiceException if the versioning state cannot be read
+     */
+    public boolean refreshVersioning(String bucket) {
+        versioning.remove(bucket);
+        return versioning.get(bucket, this::lookupVersioning, versioned -> ttlNanos);
+    }
+
+    /**
+     * The regions of several buckets, looked up in parallel where they are not cached. Buckets
+     * whose location cannot be read map to null.
+     *
+     * @return The regions in the order of the buckets
+     */
+    public Map<String, Region> regions(Collection<String> buckets) {
+        Map<String, Region> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String bucket : buckets) {
+            Region region = regions.cached(bucket);
+            result.put(bucket, region);
+            if (region == null) {
+                missing.add(bucket);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, missing.size()));
+        try {
+            List<Future<Region>> lookups = new ArrayList<>(missing.size());
+            for (String bucket : missing) {
+                lookups.add(executor.submit(() -> region(bucket)));
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                try {
+                    result.put(missing.get(i), lookups.get(i).get());
+                } catch (ExecutionException ex) {
+                    if (!(ex.getCause() instanceof AwsServiceException)) {
+                        throw new IllegalStateException("Location of " + missing.get(i) + " could not be read", ex.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up bucket locations", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * A client of the region of the bucket, or the client given to the cache when the location
+     * of the bucket cannot be read
+     */
+    public S3Client client(String bucket) {
+        try {
+            return clients.computeIfAbsent(region(bucket), clientFactory);
+        } catch (AwsServiceException ex) {
+            return client;
+        }
+    }
+
+    /**
+     * A presigner of the region of the bucket
+     *
+     * @throws AwsServiceException if the location of the bucket cannot be read
+     */
+    public S3Presigner presigner(String bucket) {
+        return presigners.computeIfAbsent(region(bucket), region -> S3Presigner.builder().region(region).build());
+    }
+
+    /**
+     * The client given to the cache, for requests not tied to the region of a bucket
+     */
+    public S3Client getClient() {
+        return client;
+    }
+
+    /**
+     * Records that the bucket was just created, and in which region if known
+     *
+     * @param region Region of the bucket, or null to look it up when needed
+     */
+    public void bucketCreated(String bucket, Region region) {
+        invalidate(bucket);
+        existence.put(bucket, true, ttlNanos);
+        if (region != null) {
+            regions.put(bucket, region, ttlNanos);
+        }
+    }
+
+    /**
+     * Records that the bucket was just deleted
+     */
+    public void bucketDeleted(String bucket) {
+        invalidate(bucket);
+        existence.put(bucket, false, negativeTtlNanos);
+    }
+
+    /**
+     * Records that a call on the bucket failed. When S3 answered that the bucket does not exist,
+     * it was deleted elsewhere and everything known about it is forgotten.
+     */
+    public void requestFailed(String bucket, Throwable error) {
+        if (isNoSuchBucket(error)) {
+            invalidate(bucket);
+        }
+    }
+
+    /**
+     * Forgets everything about a bucket, for when it was changed outside of this program
+     */
+    public void invalidate(String bucket) {
+        existence.remove(bucket);
+        regions.remove(bucket);
+        versioning.remove(bucket);
+    }
+
+    /**
+     * Calls made to S3 because the answer was not cached
+     */
+    public long getCallsMade(Call call) {
+        return entries(call).made.sum();
+    }
+
+    /**
+     * Calls answered from the cache instead of S3
+     */
+    public long getCallsSaved(Call call) {
+        return entries(call).saved.sum();
+    }
+
+    public long getCallsMade() {
+        return existence.made.sum() + regions.made.sum() + versioning.made.sum();
+    }
+
+    public long getCallsSaved() {
+        return existence.saved.sum() + regions.saved.sum() + versioning.saved.sum();
+    }
+
+    /**
+     * Closes the clients and presigners created by the cache, but not the client given to it
+     */
+    @Override
+    public void close() {
+        clients.values().forEach(S3Client::close);
+        clients.clear();
+        presigners.values().forEach(S3Presigner::close);
+        presigners.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("BucketMetadataCache [");
+        for (Call call : Call.values()) {
+            s.append(call.ordinal() == 0 ? "" : ", ")
+                    .append(call).append(": ").append(getCallsMade(call)).append(" made, ")
+                    .append(getCallsSaved(call)).append(" saved");
+        }
+        return s.append("]").toString();
+    }
+
+    private Entries<?> entries(Call call) {
+        switch (call) {
+            case HEAD_BUCKET:
+                return existence;
+            case GET_BUCKET_LOCATION:
+                return regions;
+            default:
+                return versioning;
+        }
+    }
+
+    private boolean headBucket(String bucket) {
+        HeadBucketResponse response;
+        try {
+            response = client.headBucket(b -> b.bucket(bucket));
+        } catch (NoSuchBucketException ex) {
+            return false;
+        }
+        if (response.bucketRegion() != null) {
+            regions.putIfAbsent(bucket, Region.of(response.bucketRegion()), ttlNanos);
+        }
+        return true;
+    }
+
+    private Region lookupRegion(String bucket) {
+        String location;
+        try {
+            location = client.getBucketLocation(b -> b.bucket(bucket)).locationConstraintAsString();
+        } catch (AwsServiceException ex) {
+            if (ex.statusCode() != 403) {
+                forgetIfMissing(bucket, ex);
+                throw ex;
+            }
+            // Without s3:GetBucketLocation the region still comes with the response of HeadBucket
+            location = client.headBucket(b -> b.bucket(bucket)).bucketRegion();
+            if (location == null) {
+                throw ex;
+            }
+        }
+        existence.putIfAbsent(bucket, true, ttlNanos);
+        // Buckets in us-east-1 have no location constraint, and the oldest ones in eu-west-1 have 'EU'
+        if (location == null || location.isEmpty()) {
+            return Region.US_EAST_1;
+        }
+        return "EU".equals(location) ? Region.EU_WEST_1 : Region.of(location);
+    }
+
+    private boolean lookupVersioning(String bucket) {
+        BucketVersioningStatus status;
+        try {
+            status = client.getBucketVersioning(b -> b.bucket(bucket)).status();
+        } catch (AwsServiceException ex) {
+            forgetIfMissing(bucket, ex);
+            throw ex;
+        }
+        // The status is absent for a bucket which never had versioning enabled
+        return status == BucketVersioningStatus.ENABLED || status == BucketVersioningStatus.SUSPENDED;
+    }
+
+    /**
+     * Drops a cached answer that the bucket exists once S3 says it does not. The entry being
+     * looked up is left alone; it is removed by the lookup failing.
+     */
+    private void forgetIfMissing(String bucket, AwsServiceException ex) {
+        if (isNoSuchBucket(ex)) {
+            existence.remove(bucket);
+        }
+    }
+
+    private static boolean isNoSuchBucket(Throwable error) {
+        if (error instanceof NoSuchBucketException) {
+            return true;
+        }
+        return error instanceof AwsServiceException && ((AwsServiceException) error).awsErrorDetails() != null
+                && "NoSuchBucket".equals(((AwsServiceException) error).awsErrorDetails().errorCode());
+    }
+
+    private static NoSuchBucketException noSuchBucket(String bucket) {
+        return NoSuchBucketException.builder()
+                .statusCode(404)
+                .message("The bucket " + bucket + " does not exist (cached)")
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .errorCode("NoSuchBucket")
+                        .errorMessage("The specified bucket does not exist")
+                        .serviceName("S3")
+                        .build())
+                .build();
+    }
+
+    /**
+     * The answers of one kind of call, by bucket. An entry whose answer is still being looked up
+     * makes other threads asking for it wait rather than make the same call.
+     */
+    private static final class Entries<T> {
+        final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+        final LongAdder made = new LongAdder();
+        final LongAdder saved = new LongAdder();
+
+        T get(String bucket, Function<String, T> lookup, Function<T, Long> ttl) {
+            Entry<T> loading = new Entry<>();
+            Entry<T> entry = entries.compute(bucket, (key, current) -> current != null && current.isLive() ? current : loading);
+            if (entry != loading) {
+                saved.increment();
+                try {
+                    return entry.value.join();
+                } catch (CompletionException ex) {
+                    // The lookup this thread waited for failed; failures are not kept
+                    throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+                }
+            }
+            made.increment();
+            try {
+                T value = lookup.apply(bucket);
+                loading.expires = System.nanoTime() + ttl.apply(value);
+                loading.value.complete(value);
+                return value;
+            } catch (RuntimeException ex) {
+                entries.remove(bucket, loading);
+                loading.value.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+
+        /**
+         * The answer if it is cached and current, otherwise null
+         */
+        T cached(String bucket) {
+            Entry<T> entry = entries.get(bucket);
+            if (entry == null || !entry.value.isDone() || !entry.isLive()) {
+                return null;
+            }
+            saved.increment();
+            return entry.value.join();
+        }
+
+        /**
+         * Whether the cached answer is false, meaning for the existence of a bucket that it is
+         * known not to exist
+         */
+        boolean isKnownMissing(String bucket) {
+            Entry<T> entry = entries.get(bucket);
+            return entry != null && entry.value.isDone() && entry.isLive() && Boolean.FALSE.equals(entry.value.join());
+        }
+
+        void put(String bucket, T value, long ttlNanos) {
+            entries.put(bucket, new Entry<>(value, System.nanoTime() + ttlNanos));
+        }
+
+        void putIfAbsent(String bucket, T value, long ttlNanos) {
+            Entry<T> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+            entries.compute(bucket, (key, current) -> current != null && current.isLive() ? current : entry);
+        }
+
+        void remove(String bucket) {
+            entries.remove(bucket);
+        }
+    }
+
+    private static final class Entry<T> {
+        final CompletableFuture<T> value;
+        // Set once the value is known
+        volatile long expires;
+
+        Entry() {
+            this.value = new CompletableFuture<>();
+        }
+
+        Entry(T value, long expires) {
+            this.value = CompletableFuture.completedFuture(value);
+            this.expires = expires;
+        }
+
+        boolean isLive() {
+            if (!value.isDone()) {
+                return true;
+            }
+            return !value.isCompletedExceptionally() && expires - System.nanoTime() > 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link BulkDeleter} run: how many objects were deleted and which could not be
+ */
+public class BulkDeleteResult {
+    private final String bucket;
+    private final long deleted;
+    private final long failed;
+    private final List<S3Error> errors;
+    private final long elapsedNanos;
+
+    BulkDeleteResult(String bucket, long deleted, long failed, List<S3Error> errors, long elapsedNanos) {
+        this.bucket = bucket;
+        this.deleted = deleted;
+        this.failed = failed;
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Objects, or object versions and delete markers in a versioned bucket, that were deleted
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Why keys could not be deleted, with their version id in a versioned bucket. Only the first
+     * 1,000 errors are kept; {@link #getFailed()} counts them all.
+     */
+    public List<S3Error> getErrors() {
+        return errors;
+    }
+
+    public boolean isComplete() {
+        return failed == 0;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getDeletesPerSecond() {
+        return elapsedNanos == 0 ? 0 : deleted / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Deleted %d objects from %s in %.2f s (%.0f/s), %d failed",
+                deleted, bucket, elapsedNanos / 1e9, getDeletesPerSecond(), failed);
+    }
+}
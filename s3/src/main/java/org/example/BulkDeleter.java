@@ -0,0 +1,216 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteMarkerEntry;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes every object of a bucket, or every object under a prefix, with DeleteObjects calls of
+ * up to 1,000 keys each.
+ * <p>
+ * The listing is paged with continuation tokens and each page is turned into a delete batch which
+ * runs on a pool of threads while the next page is listed. Only a few batches are allowed to wait
+ * for a thread, which holds back the listing when deletes fall behind, so memory stays bounded
+ * however large the bucket is. In a bucket which has, or had, versioning enabled every version
+ * and delete marker is deleted, which is what it takes before the bucket itself can be deleted.
+ * <p>
+ * Keys S3 refuses to delete, for instance because of an object lock, are reported in the
+ * {@link BulkDeleteResult} rather than stopping the run.
+ */
+public class BulkDeleter {
+    public static final int DEFAULT_CONCURRENCY = 8;
+    // The most keys a DeleteObjects call accepts
+    static final int MAX_BATCH_SIZE = 1000;
+    // Errors beyond this are counted but not kept
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final S3Client client;
+    private final int concurrency;
+    private final BucketMetadataCache metadata;
+
+    public BulkDeleter(S3Client client) {
+        this(client, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param concurrency Number of DeleteObjects calls in flight at the same time
+     */
+    public BulkDeleter(S3Client client, int concurrency) {
+        this(client, concurrency, null);
+    }
+
+    /**
+     * @param concurrency Number of DeleteObjects calls in flight at the same time
+     * @param metadata    Cache to keep the versioning state of the bucket in, or null
+     */
+    public BulkDeleter(S3Client client, int concurrency, BucketMetadataCache metadata) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.client = client;
+        this.concurrency = concurrency;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Deletes every object of the bucket, including all versions when the bucket is versioned
+     */
+    public BulkDeleteResult deleteAll(String bucket) {
+        return deleteAll(bucket, null);
+    }
+
+    /**
+     * Deletes every object whose key starts with the prefix, including all versions when the
+     * bucket is versioned
+     *
+     * @param prefix Key prefix, or null for the whole bucket
+     */
+    public BulkDeleteResult deleteAll(String bucket, String prefix) {
+        long start = System.nanoTime();
+        Run run = new Run(bucket);
+        try {
+            if (isVersioned(bucket)) {
+                ListObjectVersionsRequest request = ListObjectVersionsRequest.builder()
+                        .bucket(bucket)
+                        .prefix(prefix)
+                        .build();
+                for (ListObjectVersionsResponse page : client.listObjectVersionsPaginator(request)) {
+                    List<ObjectIdentifier> ids = new ArrayList<>(page.versions().size() + page.deleteMarkers().size());
+                    for (ObjectVersion version : page.versions()) {
+                        ids.add(ObjectIdentifier.builder().key(version.key()).versionId(version.versionId()).build());
+                    }
+                    for (DeleteMarkerEntry marker : page.deleteMarkers()) {
+                        ids.add(ObjectIdentifier.builder().key(marker.key()).versionId(marker.versionId()).build());
+                    }
+                    run.submit(ids);
+                }
+            } else {
+                ListObjectsV2Request request = ListObjectsV2Request.builder()
+                        .bucket(bucket)
+                        .prefix(prefix)
+                        .maxKeys(MAX_BATCH_SIZE)
+                        .build();
+                // The paginator passes each continuation token on to the next request
+                for (ListObjectsV2Response page : client.listObjectsV2Paginator(request)) {
+                    List<ObjectIdentifier> ids = new ArrayList<>(page.contents().size());
+                    for (S3Object object : page.contents()) {
+                        ids.add(ObjectIdentifier.builder().key(object.key()).build());
+                    }
+                    run.submit(ids);
+                }
+            }
+        } finally {
+            run.awaitBatches();
+        }
+        run.checkFailure();
+        return new BulkDeleteResult(bucket, run.deleted.sum(), run.failed.sum(), run.errors,
+                System.nanoTime() - start);
+    }
+
+    private boolean isVersioned(String bucket) {
+        // Always read from S3: with a cached answer which missed versioning being enabled, only
+        // delete markers would be added and the bucket would still not be empty
+        if (metadata != null) {
+            return metadata.refreshVersioning(bucket);
+        }
+        // The status is absent for a bucket which never had versioning enabled; once enabled it can
+        // only be suspended, and the old versions remain
+        BucketVersioningStatus status = client.getBucketVersioning(b -> b.bucket(bucket)).status();
+        return status == BucketVersioningStatus.ENABLED || status == BucketVersioningStatus.SUSPENDED;
+    }
+
+    /**
+     * The delete batches of one call, run on their own pool
+     */
+    private final class Run {
+        final String bucket;
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        // Batches running or waiting for a thread
+        final Semaphore inFlight = new Semaphore(concurrency * 2);
+        final LongAdder deleted = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final List<S3Error> errors = Collections.synchronizedList(new ArrayList<>());
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Run(String bucket) {
+            this.bucket = bucket;
+        }
+
+        void submit(List<ObjectIdentifier> ids) {
+            for (int from = 0; from < ids.size(); from += MAX_BATCH_SIZE) {
+                List<ObjectIdentifier> batch = ids.subList(from, Math.min(ids.size(), from + MAX_BATCH_SIZE));
+                RuntimeException previous = failure.get();
+                if (previous != null) {
+                    // A whole batch failed, the bucket is probably not accessible; stop listing
+                    throw previous;
+                }
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        delete(batch);
+                    } catch (RuntimeException ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        private void delete(List<ObjectIdentifier> batch) {
+            // In quiet mode only the keys which could not be deleted are returned
+            DeleteObjectsResponse response = client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucket)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build());
+            List<S3Error> batchErrors = response.errors();
+            deleted.add(batch.size() - batchErrors.size());
+            failed.add(batchErrors.size());
+            synchronized (errors) {
+                for (S3Error error : batchErrors) {
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add(error);
+                    }
+                }
+            }
+        }
+
+        void awaitBatches() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void checkFailure() {
+            RuntimeException ex = failure.get();
+            if (ex != null) {
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.model.FileHeaderInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A query run by {@link CsvQueryEngine} over a CSV object, the client side equivalent of
+ * <pre>
+ *     select s.UserId, s.Notes from s3object s where s.Notes like '%DynamoDB%'
+ * </pre>
+ * written as
+ * <pre>
+ *     CsvQuery.of(bucket, "notes.csv")
+ *             .select("UserId", "Notes")
+ *             .whereLike("Notes", "%DynamoDB%");
+ * </pre>
+ * Columns are named as in S3 Select: by the names of the header line with
+ * {@link FileHeaderInfo#USE}, ignoring case, or by position as _1, _2, ... in any mode. All
+ * conditions must hold for a row to be returned.
+ */
+public class CsvQuery {
+    private final String bucket;
+    private final String key;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private FileHeaderInfo header = FileHeaderInfo.USE;
+    private char delimiter = ',';
+
+    private CsvQuery(String bucket, String key) {
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    public static CsvQuery of(String bucket, String key) {
+        return new CsvQuery(bucket, key);
+    }
+
+    /**
+     * The columns to return, in this order; all columns when not called
+     */
+    public CsvQuery select(String... columns) {
+        this.columns.addAll(Arrays.asList(columns));
+        return this;
+    }
+
+    public CsvQuery whereEquals(String column, String value) {
+        conditions.add(new Condition(column, Matcher.equalTo(value)));
+        return this;
+    }
+
+    /**
+     * SQL LIKE: % matches any sequence of characters and _ matches a single character
+     */
+    public CsvQuery whereLike(String column, String pattern) {
+        conditions.add(new Condition(column, Matcher.like(pattern)));
+        return this;
+    }
+
+    /**
+     * How the first line of the object is treated, {@link FileHeaderInfo#USE} by default:
+     * USE takes the column names from it, IGNORE skips it and NONE reads it as a row
+     */
+    public CsvQuery header(FileHeaderInfo header) {
+        this.header = header;
+        return this;
+    }
+
+    public CsvQuery delimiter(char delimiter) {
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Unsupported field delimiter " + delimiter);
+        }
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    FileHeaderInfo getHeader() {
+        return header;
+    }
+
+    char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Index of a column from its name, or -1 if there is no such column
+     *
+     * @param names The names of the header line, or null when the header is not used
+     */
+    static int columnIndex(String column, String[] names) {
+        if (column.length() > 1 && column.charAt(0) == '_' && column.substring(1).chars().allMatch(Character::isDigit)) {
+            return Integer.parseInt(column.substring(1)) - 1;
+        }
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(column)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CsvQuery [Key=%s/%s, Columns=%s, Conditions=%s, Header=%s]",
+                bucket, key, columns.isEmpty() ? "*" : columns, conditions, header);
+    }
+
+    static final class Condition {
+        final String column;
+        final Matcher matcher;
+
+        Condition(String column, Matcher matcher) {
+            this.column = column;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + matcher;
+        }
+    }
+
+    /**
+     * Tests the UTF-8 bytes of a field where they lie in the read buffer, without decoding them
+     */
+    abstract static class Matcher {
+        abstract boolean matches(byte[] bytes, int from, int to);
+
+        static Matcher equalTo(String value) {
+            byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+            return new Matcher() {
+                @Override
+                boolean matches(byte[] bytes, int from, int to) {
+                    return Arrays.equals(bytes, from, to, expected, 0, expected.length);
+                }
+
+                @Override
+                public String toString() {
+                    return "= '" + value + "'";
+                }
+            };
+        }
+
+        static Matcher like(String pattern) {
+            byte[] compiled = pattern.getBytes(StandardCharsets.UTF_8);
+            int percent = pattern.indexOf('%');
+            if (pattern.indexOf('_') < 0 && pattern.length() > 1 && percent == 0
+                    && pattern.indexOf('%', 1) == pattern.length() - 1) {
+                // The common '%text%' is a plain substring search
+                byte[] text = Arrays.copyOfRange(compiled, 1, compiled.length - 1);
+                return new Matcher() {
+                    @Override
+                    boolean matches(byte[] bytes, int from, int to) {
+                        return indexOf(bytes, from, to, text) >= 0;
+                    }
+
+                    @Override
+                    public String toString() {
+                        return "like '" + pattern + "'";
+                    }
+                };
+            }
+            return new Matcher() {
+                @Override
+                boolean matches(byte[] bytes, int from, int to) {
+                    return like(bytes, from, to, compiled);
+                }
+
+                @Override
+                public String toString() {
+                    return "like '" + pattern + "'";
+                }
+            };
+        }
+
+        static int indexOf(byte[] bytes, int from, int to, byte[] text) {
+            if (text.length == 0) {
+                return from;
+            }
+            byte first = text[0];
+            for (int i = from; i <= to - text.length; i++) {
+                if (bytes[i] == first && Arrays.equals(bytes, i + 1, i + text.length, text, 1, text.length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Wildcard match which backtracks to the last % on a mismatch; _ consumes one UTF-8
+         * encoded character
+         */
+        static boolean like(byte[] bytes, int from, int to, byte[] pattern) {
+            int b = from;
+            int p = 0;
+            int starPattern = -1;
+            int starBytes = -1;
+            while (b < to) {
+                if (p < pattern.length && pattern[p] == '_') {
+                    b = nextCharacter(bytes, b, to);
+                    p++;
+                } else if (p < pattern.length && pattern[p] == '%') {
+                    starPattern = ++p;
+                    starBytes = b;
+                } else if (p < pattern.length && pattern[p] == bytes[b]) {
+                    b++;
+                    p++;
+                } else if (starPattern >= 0) {
+                    p = starPattern;
+                    b = nextCharacter(bytes, starBytes, to);
+                    starBytes = b;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length && pattern[p] == '%') {
+                p++;
+            }
+            return p == pattern.length;
+        }
+
+        private static int nextCharacter(byte[] bytes, int position, int to) {
+            int next = position + 1;
+            // Skip the continuation bytes of a multi-byte character
+            while (next < to && (bytes[next] & 0xC0) == 0x80) {
+                next++;
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.example;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.FileHeaderInfo;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link CsvQuery} on the client, for when S3 Select is not available or too slow for a
+ * large object.
+ * <p>
+ * The object is split into byte ranges which are fetched with ranged GETs and scanned at the
+ * same time, each by its own {@link CsvScanner}. The ranges need not fall on record boundaries:
+ * a record is read by the range it starts in, even when it runs into the next one. The
+ * conditions are tested while the records are split, on the raw bytes, and only the rows that
+ * match are turned into Strings.
+ * <pre>
+ *     CsvQueryResult result = new CsvQueryEngine(s3Client).run(
+ *             CsvQuery.of(bucket, "notes.csv").whereLike("Notes", "%DynamoDB%"),
+ *             row -> System.out.println(String.join(",", row)));
+ * </pre>
+ * Rows of different ranges are handed to the consumer from several threads and in no particular
+ * order.
+ */
+public class CsvQueryEngine {
+    public static final long DEFAULT_RANGE_SIZE = 8L * 1024 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 8;
+    // How much more is fetched at a time when a record runs past the end of its range
+    private static final long OVERRUN_SIZE = 64 * 1024;
+
+    private final S3Client client;
+    private final long rangeSize;
+    private final int concurrency;
+
+    public CsvQueryEngine(S3Client client) {
+        this(client, DEFAULT_RANGE_SIZE, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param rangeSize   Bytes of the object scanned by each task
+     * @param concurrency Number of ranges fetched and scanned at the same time
+     */
+    public CsvQueryEngine(S3Client client, long rangeSize, int concurrency) {
+        if (rangeSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("rangeSize and concurrency must be positive");
+        }
+        this.client = client;
+        this.rangeSize = rangeSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Runs the query, passing every matching row to the consumer as the values of the selected
+     * columns.
+     *
+     * @throws IllegalArgumentException if the query names a column the object does not have
+     */
+    public CsvQueryResult run(CsvQuery query, Consumer<String[]> rows) throws IOException {
+        long start = System.nanoTime();
+        String bucket = query.getBucket();
+        String key = query.getKey();
+        long size = client.headObject(b -> b.bucket(bucket).key(key)).contentLength();
+
+        String[] names = null;
+        long dataStart = 0;
+        if (query.getHeader() == FileHeaderInfo.USE || query.getHeader() == FileHeaderInfo.IGNORE) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            try (InputStream in = new RangeInputStream(bucket, key, 0, Math.min(size, OVERRUN_SIZE), size)) {
+                int b;
+                while ((b = in.read()) >= 0 && b != '\n') {
+                    line.write(b);
+                }
+            }
+            dataStart = Math.min(size, line.size() + 1L);
+            if (query.getHeader() == FileHeaderInfo.USE) {
+                names = new CsvScanner(query.getDelimiter(), new int[0], new CsvQuery.Matcher[0], null)
+                        .header(line.toByteArray(), line.size());
+            }
+        }
+        String[] header = names;
+        long firstRecord = dataStart;
+
+        LongAdder bytesRead = new LongAdder();
+        LongAdder recordsScanned = new LongAdder();
+        LongAdder rowsMatched = new LongAdder();
+        List<Future<?>> ranges = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (long from = dataStart; from < size; from += rangeSize) {
+                long rangeStart = from;
+                long rangeEnd = Math.min(size, from + rangeSize);
+                ranges.add(executor.submit(() -> {
+                    CsvScanner scanner = scanner(query, header);
+                    // Except at the start of the data, begin a byte early to see whether a record starts at rangeStart
+                    long streamStart = rangeStart == firstRecord ? rangeStart : rangeStart - 1;
+                    try (InputStream in = new RangeInputStream(bucket, key, streamStart, rangeEnd, size)) {
+                        scanner.scan(in, streamStart, rangeStart, rangeEnd, rows);
+                    } finally {
+                        bytesRead.add(scanner.getBytesRead());
+                        recordsScanned.add(scanner.getRecordsScanned());
+                        rowsMatched.add(scanner.getRowsMatched());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> range : ranges) {
+                range.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Query of " + key + " interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new CsvQueryResult(size, bytesRead.sum(), ranges.size(), recordsScanned.sum(), rowsMatched.sum(),
+                System.nanoTime() - start);
+    }
+
+    private static CsvScanner scanner(CsvQuery query, String[] header) {
+        List<CsvQuery.Condition> conditions = query.getConditions();
+        int[] conditionColumns = new int[conditions.size()];
+        CsvQuery.Matcher[] matchers = new CsvQuery.Matcher[conditions.size()];
+        for (int i = 0; i < conditions.size(); i++) {
+            conditionColumns[i] = column(conditions.get(i).column, header);
+            matchers[i] = conditions.get(i).matcher;
+        }
+        int[] projection = null;
+        if (!query.getColumns().isEmpty()) {
+            projection = new int[query.getColumns().size()];
+            for (int i = 0; i < projection.length; i++) {
+                projection[i] = column(query.getColumns().get(i), header);
+            }
+        }
+        return new CsvScanner(query.getDelimiter(), conditionColumns, matchers, projection);
+    }
+
+    private static int column(String name, String[] header) {
+        int index = CsvQuery.columnIndex(name, header);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown column " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the object from a position with ranged GETs: first up to the end of the range, then
+     * in small steps for as long as the reader needs to finish its last record
+     */
+    private final class RangeInputStream extends InputStream {
+        private final String bucket;
+        private final String key;
+        private final long size;
+        private long position;
+        private long requestEnd;
+        private ResponseInputStream<GetObjectResponse> current;
+
+        RangeInputStream(String bucket, String key, long from, long to, long size) {
+            this.bucket = bucket;
+            this.key = key;
+            this.size = size;
+            this.position = from;
+            this.requestEnd = from;
+            open(to);
+        }
+
+        private void open(long to) {
+            if (position >= to) {
+                current = null;
+                return;
+            }
+            current = client.getObject(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .range("bytes=" + position + "-" + (to - 1))
+                    .build());
+            requestEnd = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            while (true) {
+                if (current == null) {
+                    return -1;
+                }
+                int read = current.read(bytes, offset, length);
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+                if (read == 0) {
+                    return 0;
+                }
+                current.close();
+                current = null;
+                if (position < requestEnd) {
+                    throw new IOException("Range of " + key + " ended early at " + position);
+                }
+                open(Math.min(size, position + OVERRUN_SIZE));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                // Rather than read the rest, drop the connection when much of the response is left
+                if (requestEnd - position > OVERRUN_SIZE) {
+                    current.abort();
+                }
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Figures of a {@link CsvQueryEngine} run, comparable to the Stats of an S3 Select
+ */
+public class CsvQueryResult {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final long objectSize;
+    private final long bytesRead;
+    private final int ranges;
+    private final long recordsScanned;
+    private final long rowsMatched;
+    private final long elapsedNanos;
+
+    CsvQueryResult(long objectSize, long bytesRead, int ranges, long recordsScanned, long rowsMatched, long elapsedNanos) {
+        this.objectSize = objectSize;
+        this.bytesRead = bytesRead;
+        this.ranges = ranges;
+        this.recordsScanned = recordsScanned;
+        this.rowsMatched = rowsMatched;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getObjectSize() {
+        return objectSize;
+    }
+
+    /**
+     * Bytes fetched from S3, slightly more than the object as records at the end of a range are
+     * read to their end
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getRanges() {
+        return ranges;
+    }
+
+    public long getRecordsScanned() {
+        return recordsScanned;
+    }
+
+    public long getRowsMatched() {
+        return rowsMatched;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : objectSize / MEGABYTE / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Scanned %d records in %d ranges, %d matched, %.1f MB in %.2f s, %.1f MB/s",
+                recordsScanned, ranges, rowsMatched, objectSize / MEGABYTE, elapsedNanos / 1e9, getMegabytesPerSecond());
+    }
+}
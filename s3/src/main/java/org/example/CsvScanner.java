@@ -0,0 +1,295 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads the CSV records of one range of an object and hands the matching rows on.
+ * <p>
+ * A record belongs to the range in which its first byte lies, as with the ScanRange of S3 Select:
+ * a range which does not start the object skips the end of the record it starts in, and the last
+ * record of a range is read to its end even past the range. Records are split on newlines, so a
+ * quoted field may contain the delimiter but not a newline.
+ * <p>
+ * Fields are located in the read buffer and the conditions are tested on their bytes; Strings are
+ * only created for the columns of the rows that match. Only as many fields are split as the
+ * conditions need before a row is known to match. One scanner is used by a single thread.
+ */
+class CsvScanner {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte delimiter;
+    private final int[] conditionColumns;
+    private final CsvQuery.Matcher[] matchers;
+    // Columns to return, or null for all of them
+    private final int[] projection;
+    // Fields that need splitting before the conditions can be tested, and to return a row
+    private final int conditionFields;
+    private final int projectionFields;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private boolean[] fieldEscaped = new boolean[16];
+    private int fieldCount;
+    // Position after the last split field, where splitting continues
+    private int splitPosition;
+    private byte[] unescaped = new byte[256];
+
+    private long recordsScanned;
+    private long rowsMatched;
+    private long bytesRead;
+
+    CsvScanner(char delimiter, int[] conditionColumns, CsvQuery.Matcher[] matchers, int[] projection) {
+        this.delimiter = (byte) delimiter;
+        this.conditionColumns = conditionColumns;
+        this.matchers = matchers;
+        this.projection = projection;
+        int needed = 0;
+        for (int column : conditionColumns) {
+            needed = Math.max(needed, column + 1);
+        }
+        this.conditionFields = needed;
+        needed = 0;
+        for (int column : projection == null ? new int[0] : projection) {
+            needed = Math.max(needed, column + 1);
+        }
+        this.projectionFields = needed;
+    }
+
+    long getRecordsScanned() {
+        return recordsScanned;
+    }
+
+    long getRowsMatched() {
+        return rowsMatched;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Scans the records starting in [start, end) of the object.
+     *
+     * @param in          Stream of the object from streamStart on
+     * @param streamStart start, or the byte before it to find out whether a record begins at start
+     */
+    void scan(InputStream in, long streamStart, long start, long end, Consumer<String[]> rows) throws IOException {
+        // Object offset of buffer[0]
+        long bufferOffset = streamStart;
+        int filled = 0;
+        int position = 0;
+        boolean eof = false;
+
+        if (streamStart < start) {
+            // Skip to the first record beginning at or after start
+            while (true) {
+                int newline = indexOf(buffer, position, filled, (byte) '\n');
+                if (newline >= 0) {
+                    position = newline + 1;
+                    break;
+                }
+                if (eof) {
+                    return;
+                }
+                bufferOffset += filled;
+                position = 0;
+                filled = 0;
+                int read = read(in, 0);
+                eof = read < 0;
+                filled = Math.max(read, 0);
+            }
+        }
+
+        while (true) {
+            if (bufferOffset + position >= end) {
+                return;
+            }
+            int newline = indexOf(buffer, position, filled, (byte) '\n');
+            if (newline < 0 && !eof) {
+                // The record continues beyond the buffer: keep its start and read more
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, filled - position);
+                    bufferOffset += position;
+                    filled -= position;
+                    position = 0;
+                } else if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = read(in, filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+                continue;
+            }
+            int recordEnd = newline < 0 ? filled : newline;
+            if (recordEnd == position && newline < 0) {
+                return;
+            }
+            int contentEnd = recordEnd > position && buffer[recordEnd - 1] == '\r' ? recordEnd - 1 : recordEnd;
+            if (contentEnd > position) {
+                record(position, contentEnd, rows);
+            }
+            position = newline < 0 ? filled : newline + 1;
+        }
+    }
+
+    /**
+     * The fields of the header line
+     */
+    String[] header(byte[] line, int length) {
+        byte[] saved = buffer;
+        buffer = line;
+        try {
+            int contentEnd = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+            startRecord(0, contentEnd);
+            splitFields(Integer.MAX_VALUE, contentEnd);
+            String[] names = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                names[i] = value(i);
+            }
+            return names;
+        } finally {
+            buffer = saved;
+        }
+    }
+
+    private int read(InputStream in, int offset) throws IOException {
+        int read = in.read(buffer, offset, buffer.length - offset);
+        if (read > 0) {
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    private void record(int from, int to, Consumer<String[]> rows) {
+        recordsScanned++;
+        startRecord(from, to);
+        splitFields(conditionFields, to);
+        for (int i = 0; i < matchers.length; i++) {
+            int column = conditionColumns[i];
+            if (column >= fieldCount || !test(matchers[i], column)) {
+                return;
+            }
+        }
+        rowsMatched++;
+        String[] row;
+        if (projection == null) {
+            splitFields(Integer.MAX_VALUE, to);
+            row = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                row[i] = value(i);
+            }
+        } else {
+            splitFields(projectionFields, to);
+            row = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                // A column missing from a short record is returned empty
+                row[i] = projection[i] < fieldCount ? value(projection[i]) : "";
+            }
+        }
+        rows.accept(row);
+    }
+
+    private void startRecord(int from, int to) {
+        fieldCount = 0;
+        splitPosition = from;
+        // An empty record still has one empty field
+        if (from == to) {
+            addField(from, to, false);
+            splitPosition = to + 1;
+        }
+    }
+
+    /**
+     * Splits fields until there are at least count of them or the record ends at to
+     */
+    private void splitFields(int count, int to) {
+        int p = splitPosition;
+        while (fieldCount < count && p <= to) {
+            if (p < to && buffer[p] == '"') {
+                // Quoted field, "" stands for a quote
+                int q = p + 1;
+                boolean escaped = false;
+                while (q < to) {
+                    if (buffer[q] == '"') {
+                        if (q + 1 < to && buffer[q + 1] == '"') {
+                            escaped = true;
+                            q += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    q++;
+                }
+                addField(p + 1, Math.min(q, to), escaped);
+                int next = indexOf(buffer, Math.min(q + 1, to), to, delimiter);
+                p = (next < 0 ? to : next) + 1;
+            } else {
+                int next = indexOf(buffer, p, to, delimiter);
+                int fieldEnd = next < 0 ? to : next;
+                addField(p, fieldEnd, false);
+                p = fieldEnd + 1;
+            }
+        }
+        splitPosition = p;
+    }
+
+    private void addField(int from, int to, boolean escaped) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = from;
+        fieldEnd[fieldCount] = to;
+        fieldEscaped[fieldCount] = escaped;
+        fieldCount++;
+    }
+
+    private boolean test(CsvQuery.Matcher matcher, int field) {
+        if (!fieldEscaped[field]) {
+            return matcher.matches(buffer, fieldStart[field], fieldEnd[field]);
+        }
+        int length = unescape(field);
+        return matcher.matches(unescaped, 0, length);
+    }
+
+    private String value(int field) {
+        if (!fieldEscaped[field]) {
+            return new String(buffer, fieldStart[field], fieldEnd[field] - fieldStart[field], StandardCharsets.UTF_8);
+        }
+        return new String(unescaped, 0, unescape(field), StandardCharsets.UTF_8);
+    }
+
+    private int unescape(int field) {
+        int from = fieldStart[field];
+        int to = fieldEnd[field];
+        if (unescaped.length < to - from) {
+            unescaped = new byte[Math.max(unescaped.length * 2, to - from)];
+        }
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            unescaped[length++] = buffer[i];
+            if (buffer[i] == '"' && i + 1 < to && buffer[i + 1] == '"') {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
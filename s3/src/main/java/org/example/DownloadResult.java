@@ -0,0 +1,86 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link RangedDownloader} download, including the throughput achieved
+ */
+public class DownloadResult {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final int ranges;
+    private final int retries;
+    private final String verifiedWith;
+    private final long transferNanos;
+    private final long elapsedNanos;
+
+    DownloadResult(String bucket, String key, long size, int ranges, int retries, String verifiedWith,
+                   long transferNanos, long elapsedNanos) {
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.ranges = ranges;
+        this.retries = retries;
+        this.verifiedWith = verifiedWith;
+        this.transferNanos = transferNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Range requests which had to be repeated
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * The checksum the file was checked against, or null when S3 had none for the object
+     */
+    public String getVerifiedWith() {
+        return verifiedWith;
+    }
+
+    public boolean isVerified() {
+        return verifiedWith != null;
+    }
+
+    /**
+     * Time taken including the checksum verification
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Throughput of the transfer itself, leaving out the verification
+     */
+    public double getMegabytesPerSecond() {
+        return transferNanos == 0 ? 0 : size / MEGABYTE / (transferNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Downloaded %s from %s: %d ranges (%d retried), %.1f MB in %.2f s, %.1f MB/s, %s",
+                key, bucket, ranges, retries, size / MEGABYTE, transferNanos / 1e9, getMegabytesPerSecond(),
+                isVerified() ? "verified with " + verifiedWith : "not verified");
+    }
+}
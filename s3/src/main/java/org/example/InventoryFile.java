@@ -0,0 +1,156 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local inventory of a bucket: one line per object with its key, size, last modified time,
+ * ETag and storage class, separated by tabs and compressed with gzip. Keys of one listing share
+ * long prefixes, so a line takes a small fraction of its length on disk. Tabs, newlines and
+ * backslashes in keys are escaped with a backslash.
+ * <pre>
+ *     try (InventoryFile.Writer inventory = InventoryFile.create(Paths.get("inventory.tsv.gz"))) {
+ *         new ParallelLister(s3Client).list(bucket, inventory);
+ *     }
+ *     InventoryFile.read(Paths.get("inventory.tsv.gz"), object -> ...);
+ * </pre>
+ */
+public final class InventoryFile {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private InventoryFile() {
+    }
+
+    /**
+     * Creates or replaces an inventory file
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(path), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    /**
+     * Reads the objects of an inventory file in the order they were written
+     *
+     * @return Number of objects read
+     */
+    public static long read(Path path, Consumer<S3Object> objects) throws IOException {
+        long count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    throw new IOException("Malformed line " + (count + 1) + " in " + path);
+                }
+                objects.accept(S3Object.builder()
+                        .key(unescape(fields[0]))
+                        .size(Long.parseLong(fields[1]))
+                        .lastModified(fields[2].isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(fields[2])))
+                        .eTag(fields[3].isEmpty() ? null : fields[3])
+                        .storageClass(fields[4].isEmpty() ? null : fields[4])
+                        .build());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void escape(String key, java.io.Writer out) throws IOException {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder key = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                key.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Appends objects to an inventory file. It can be given straight to a {@link ParallelLister}
+     * and be called from several threads.
+     */
+    public static final class Writer implements Consumer<S3Object>, Closeable {
+        private final java.io.Writer out;
+        private long count;
+
+        private Writer(java.io.Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * @throws UncheckedIOException if the file cannot be written, which stops a listing
+         */
+        @Override
+        public synchronized void accept(S3Object object) {
+            try {
+                escape(object.key(), out);
+                out.write('\t');
+                out.write(Long.toString(object.size() == null ? 0 : object.size()));
+                out.write('\t');
+                out.write(object.lastModified() == null ? "" : Long.toString(object.lastModified().toEpochMilli()));
+                out.write('\t');
+                out.write(object.eTag() == null ? "" : object.eTag());
+                out.write('\t');
+                out.write(object.storageClassAsString() == null ? "" : object.storageClassAsString());
+                out.write('\n');
+                count++;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
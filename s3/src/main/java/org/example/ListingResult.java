@@ -0,0 +1,73 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link ParallelLister} run: how many objects were listed and what it took
+ */
+public class ListingResult {
+    private final String bucket;
+    private final String prefix;
+    private final long objects;
+    private final long bytes;
+    private final long requests;
+    private final long shards;
+    private final long elapsedNanos;
+
+    ListingResult(String bucket, String prefix, long objects, long bytes, long requests, long shards, long elapsedNanos) {
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.objects = objects;
+        this.bytes = bytes;
+        this.requests = requests;
+        this.shards = shards;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    /**
+     * Total size of the objects listed
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * ListObjectsV2 calls made, including those of shards which turned out to be empty
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Key ranges the listing was split into
+     */
+    public long getShards() {
+        return shards;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getObjectsPerSecond() {
+        return elapsedNanos == 0 ? 0 : objects / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Listed %d objects (%d bytes) in %s/%s in %.2f s (%.0f/s), %d requests over %d shards",
+                objects, bytes, bucket, prefix, elapsedNanos / 1e9, getObjectsPerSecond(), requests, shards);
+    }
+}
@@ -10,17 +10,19 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
-import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 import software.amazon.awssdk.services.s3.waiters.S3Waiter;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 /**
  * Main method where the core workflow of tasks is performed. This demonstrates
@@ -31,11 +33,17 @@ import java.util.concurrent.ExecutionException;
  *     <li>Creating an S3 bucket</li>
  *     <li>Paginate operations for such things as listing buckets or listing bucket contents</li>
  *     <li>Putting an object in a bucket</li>
+ *     <li>Downloading an object in parallel byte ranges</li>
  *     <li>Generating a presigned URL</li>
  *     <li>Deleting a bucket</li>
  * </ul>
  */
 public class Main {
+    /**
+     * Files at least this large are uploaded in parts
+     */
+    static final long MULTIPART_THRESHOLD = 64L * 1024 * 1024;
+
     public static void main(String[] args) {
         Logger logger = LogManager.getLogger(Main.class);
         /*
@@ -79,53 +87,57 @@ public class Main {
                 .build();
 
         /* */
+        // What is known about each bucket, and a client for each region, for requests to go straight to the right region
+        BucketMetadataCache cache = new BucketMetadataCache(s3Client);
 
         logger.log(Level.DEBUG, "Listing bucket objects...");
 
         // List the buckets
-        listBuckets(s3Client);
+        listBuckets(s3Client, cache);
 
         // Test out creation of a new bucket and then delete it
         var newBucket = "mark-test-9702144567";
-        createBucket(s3Client, newBucket);
-        System.out.println("Bucket exists: " + bucketExists(s3Client, newBucket));
+        createBucket(cache, newBucket);
+        System.out.println("Bucket exists: " + bucketExists(cache, newBucket));
 
         // Put an object in the bucket
         String file = "notes.csv";
 //        String file = "README.adoc";
-        putObject(s3Client, newBucket, file);
+        putObject(cache, newBucket, file);
 
         //listBucketObjects(s3Client, newBucket);
-        pagingListBucketObjects(s3Client, newBucket);
+        pagingListBucketObjects(cache, newBucket);
 
         queryS3Object(s3AsyncClient, newBucket, file);
+        queryObjectLocally(s3Client, newBucket, file);
 
-        String presignedUrl = getSignedUrl(s3Client, newBucket, file, 3600);
+        getObject(s3AsyncClient, newBucket, file, "downloaded-" + file);
+
+        String presignedUrl = getSignedUrl(cache, newBucket, file, 3600);
         System.out.println("\nPresigned URL: \n" + presignedUrl);
 
-        deleteBucketWithObjects(s3Client, newBucket);
+        deleteBucketWithObjects(cache, newBucket);
+        System.out.println(cache);
+        cache.close();
         s3Client.close();
         ;
     }
 
     /**
-     * List the buckets and associated regions given the provided S3Client reference.
+     * List the buckets and associated regions given the provided S3Client reference. The
+     * locations of the buckets are looked up in parallel and kept in the cache for later requests.
      *
      * @param client
+     * @param cache  Cache of bucket metadata
      */
-    static void listBuckets(S3Client client) {
+    static void listBuckets(S3Client client, BucketMetadataCache cache) {
 
         try {
             ListBucketsResponse buckets = client.listBuckets();
             System.out.println("Your S3 buckets are:");
-            buckets.buckets().forEach(item -> {
-                // For each bucket, get the bucket location (region) - note that if bucket location is in the
-                // default region, an empty string is returned
-                GetBucketLocationRequest.Builder bucketLocationRequest = GetBucketLocationRequest.builder().bucket(item.name());
-                GetBucketLocationResponse bucketLocation = client.getBucketLocation(bucketLocationRequest.build());
-                var region = bucketLocation.locationConstraintAsString() != "" ? bucketLocation.locationConstraintAsString() : "us-east-1";
-                System.out.println("* " + item.name() + " - " + region);
-            });
+            List<String> names = buckets.buckets().stream().map(Bucket::name).collect(Collectors.toList());
+            cache.regions(names).forEach((name, region) ->
+                    System.out.println("* " + name + " - " + (region == null ? "unknown" : region.id())));
         } catch (AwsServiceException ex) {
             switch (ex.statusCode()) {
                 case 404:
@@ -144,20 +156,18 @@ public class Main {
     /**
      * List the bucket contents using paging
      * <p>
-     * With the new capability enabled by the 'crossRegionAccessEnabled', this will be able to
-     * list bucket contents in other regions than the configured region
+     * The pages are listed by a {@link ParallelLister}, which splits the keys of the bucket into
+     * ranges and lists several of them at a time, 1,000 keys per request. The requests are sent to
+     * a client of the bucket's region, taken from the cache.
      *
-     * @param client
+     * @param cache      Cache of bucket metadata
      * @param bucketName
      */
-    static void pagingListBucketObjects(S3Client client, String bucketName) {
-        ListObjectsV2Request listReq = ListObjectsV2Request.builder()
-                .bucket(bucketName).maxKeys(1).build();
-        ListObjectsV2Iterable listRes = client.listObjectsV2Paginator(listReq);
-        // Process response pages
-        listRes.stream()
-                .flatMap(r -> r.contents().stream())
-                .forEach(content -> System.out.println(" Key: " + content.key()));
+    static void pagingListBucketObjects(BucketMetadataCache cache, String bucketName) {
+        S3Client client = cache.client(bucketName);
+        ListingResult result = new ParallelLister(client).list(bucketName,
+                content -> System.out.println(" Key: " + content.key()));
+        System.out.println(result);
     }
 
     /**
@@ -206,12 +216,14 @@ public class Main {
      * default region if not specified.
      * This method will also check to see if the bucket already exists
      *
-     * @param client     S3 Client initialized - potentially with the target region to create bucket in
+     * @param cache      Cache of bucket metadata, told about the new bucket. Its client is the one
+     *                   initialized - potentially with the target region to create bucket in
      * @param bucketName Name of the bucket to create
      */
-    static void createBucket(S3Client client, String bucketName) {
+    static void createBucket(BucketMetadataCache cache, String bucketName) {
+        S3Client client = cache.getClient();
         try {
-            if (!bucketExists(client, bucketName)) {
+            if (!bucketExists(cache, bucketName)) {
                 S3Waiter waiter = client.waiter();
                 CreateBucketRequest bucketRequest = CreateBucketRequest.builder().bucket(bucketName).build();
                 client.createBucket(bucketRequest);
@@ -220,6 +232,9 @@ public class Main {
                 // Wait for creation to finish
                 WaiterResponse<HeadBucketResponse> waiterResponse = waiter.waitUntilBucketExists(bucketRequestWait);
                 waiterResponse.matched().response().ifPresent(System.out::println);
+                // The response of the waiter's HeadBucket tells the region as well
+                String region = waiterResponse.matched().response().map(HeadBucketResponse::bucketRegion).orElse(null);
+                cache.bucketCreated(bucketName, region == null ? null : Region.of(region));
                 System.out.println("[" + bucketName + "] is ready");
             } else {
                 System.out.println("Bucket already exists");
@@ -231,28 +246,40 @@ public class Main {
     }
 
     /**
-     * Puts a file from the local filesystem into the specified S3 bucket
+     * Puts a file from the local filesystem into the specified S3 bucket. Files of
+     * {@link #MULTIPART_THRESHOLD} bytes or more are uploaded with a {@link MultipartUploader}.
+     * The upload goes to a client of the bucket's region, taken from the cache.
      *
-     * @param client     S3 Client already initialized
+     * @param cache      Cache of bucket metadata, which also saves checking that the bucket exists every time
      * @param bucketName Bucket to put object into
      * @param filename   Source filename, which will also be the 'key' of the object
      */
-    public static void putObject(S3Client client, String bucketName, String filename) {
+    public static void putObject(BucketMetadataCache cache, String bucketName, String filename) {
 
-        if (bucketExists(client, bucketName)) {
+        if (bucketExists(cache, bucketName)) {
+            S3Client client = cache.client(bucketName);
             Path path = Paths.get(filename);
 
             if (Files.exists(path)) {
                 try {
-                    PutObjectRequest objectRequest = PutObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(filename)
-                            .build();
+                    if (Files.size(path) >= MULTIPART_THRESHOLD) {
+                        // Large files are sent in parts, several at a time, and can be resumed
+                        UploadResult result = new MultipartUploader(client).upload(bucketName, filename, path);
+                        System.out.println(result);
+                    } else {
+                        PutObjectRequest objectRequest = PutObjectRequest.builder()
+                                .bucket(bucketName)
+                                .key(filename)
+                                .build();
 
-                    client.putObject(objectRequest, Paths.get(filename));
+                        client.putObject(objectRequest, Paths.get(filename));
+                    }
                 } catch (AwsServiceException ex) {
+                    cache.requestFailed(bucketName, ex);
                     System.err.println(ex.awsErrorDetails().errorCode());
                     System.exit(1);
+                } catch (IOException ex) {
+                    System.err.println("Upload of " + filename + " failed, run again to resume: " + ex.getMessage());
                 }
             } else {
                 System.err.println("File doesn't exist: " + filename);
@@ -261,59 +288,74 @@ public class Main {
         }
     }
 
+    /**
+     * Downloads an object to a local file with a {@link RangedDownloader}, which fetches byte ranges
+     * of the object in parallel and verifies the checksum of the result
+     *
+     * @param client     S3 Async Client already initialized
+     * @param bucketName Bucket containing the object
+     * @param key        Key of the object to download
+     * @param filename   Local file to write, replaced if it exists
+     */
+    static void getObject(S3AsyncClient client, String bucketName, String key, String filename) {
+        try {
+            DownloadResult result = new RangedDownloader(client).download(bucketName, key, Paths.get(filename));
+            System.out.println(result);
+        } catch (AwsServiceException ex) {
+            System.err.println(ex.awsErrorDetails().errorCode());
+        } catch (IOException ex) {
+            System.err.println("Download of " + key + " failed: " + ex.getMessage());
+        }
+    }
+
     /**
      * To delete a bucket having objects in it, you must first delete the objects, then you
-     * can delete the bucket. This code demonstrates that using the V2 SDK.
+     * can delete the bucket. This code demonstrates that using the V2 SDK, deleting the objects
+     * with a {@link BulkDeleter}. The bucket is kept if some objects could not be deleted.
      *
-     * @param client     S3 Client reference initialized
+     * @param cache      Cache of bucket metadata, told that the bucket is gone
      * @param bucketName Bucket to delete
      */
-    static void deleteBucketWithObjects(S3Client client, String bucketName) {
+    static void deleteBucketWithObjects(BucketMetadataCache cache, String bucketName) {
         try {
-            if (bucketExists(client, bucketName)) {
-                // To delete a bucket, all the objects in the bucket must be deleted first.
-                ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
-                        .bucket(bucketName)
-                        .build();
-                ListObjectsV2Response listObjectsV2Response;
-
-                do {
-                    listObjectsV2Response = client.listObjectsV2(listObjectsV2Request);
-                    for (S3Object s3Object : listObjectsV2Response.contents()) {
-                        DeleteObjectRequest request = DeleteObjectRequest.builder()
-                                .bucket(bucketName)
-                                .key(s3Object.key())
-                                .build();
-                        client.deleteObject(request);
+            if (bucketExists(cache, bucketName)) {
+                S3Client client = cache.client(bucketName);
+                // To delete a bucket, all the objects in the bucket must be deleted first. They are
+                // deleted 1000 at a time, including every version if the bucket is versioned.
+                BulkDeleteResult result = new BulkDeleter(client, BulkDeleter.DEFAULT_CONCURRENCY, cache).deleteAll(bucketName);
+                System.out.println(result);
+                if (!result.isComplete()) {
+                    for (S3Error error : result.getErrors()) {
+                        System.err.println("Could not delete " + error.key() + ": " + error.code() + " " + error.message());
                     }
-                } while (listObjectsV2Response.isTruncated());
+                    return;
+                }
                 DeleteBucketRequest deleteBucketRequest = DeleteBucketRequest.builder().bucket(bucketName).build();
                 client.deleteBucket(deleteBucketRequest);
+                cache.bucketDeleted(bucketName);
             } else {
                 System.out.println("Bucket doesn't exist");
             }
 
         } catch (S3Exception e) {
+            cache.requestFailed(bucketName, e);
             System.err.println(e.awsErrorDetails().errorMessage());
             System.exit(1);
         }
     }
 
     /**
-     * Uses the HeadBucket S3 call to obtain the status of the bucket.
+     * Uses the HeadBucket S3 call to obtain the status of the bucket. The answer is kept in the
+     * cache, so only the first call for a bucket, or the first after the answer expired, goes to S3.
      *
-     * @param client
+     * @param cache
      * @param bucket
      * @return
      */
-    static boolean bucketExists(S3Client client, String bucket) {
-        HeadBucketRequest bucketRequest = HeadBucketRequest.builder().bucket(bucket).build();
+    static boolean bucketExists(BucketMetadataCache cache, String bucket) {
         boolean result = false;
         try {
-            client.headBucket(bucketRequest);
-            result = true;
-        } catch (NoSuchBucketException noSuchBucketException) {
-            // Do nothing as the result is false
+            result = cache.exists(bucket);
         } catch (AwsServiceException exception) {
             System.err.println(exception.awsErrorDetails().errorMessage());
         }
@@ -354,27 +396,49 @@ public class Main {
                 .expressionType(ExpressionType.SQL)
                 .inputSerialization(inputSerialization)
                 .outputSerialization(outputSerialization)
+                // Ask for ProgressEvents while the object is scanned
+                .requestProgress(RequestProgress.builder().enabled(true).build())
                 .build();
-        // Uses a 'handler' to receive the results as they are returned via the CompletableFuture
-        var handler = new S3SelectHandler();
+        // Uses a 'handler' which prints each record as soon as it is received, so large results
+        // are never held in memory
+        var handler = new StreamingSelectHandler(System.out::println);
 
         try {
             // The 'get()' call causes the execution to wait until the request is complete.
             // This call is on the CompletableFuture returned by the selectObjectContent() call.
             s3AsyncClient.selectObjectContent(request, handler).get();
 
-            // The 'getReceivedEvents()' call returns a list of the events that were received
-            // by the handler, which can then be extracted and ultimately printed out.
-            RecordsEvent response = (RecordsEvent) handler.getReceivedEvents().stream()
-                    .filter(e -> e.sdkEventType() == SelectObjectContentEventStream.EventType.RECORDS)
-                    .findFirst()
-                    .orElse(null);
-            System.out.println(response.payload().asUtf8String());
+            System.out.printf("%d records, %d bytes scanned, %d processed, %d returned%n", handler.getRecordCount(),
+                    handler.getBytesScanned(), handler.getBytesProcessed(), handler.getBytesReturned());
+            if (!handler.isEndReceived()) {
+                System.err.println("The select ended before all records were returned");
+            }
         } catch (InterruptedException | ExecutionException e) {
             System.out.println("Error caught: " + e.getMessage());
         }
     }
 
+    /**
+     * Runs the query of {@link #queryS3Object} on the client with a {@link CsvQueryEngine}, which
+     * reads ranges of the file in parallel. This works where S3 Select is not available.
+     *
+     * @param client S3 Client already initialized
+     * @param bucket Bucket containing the file to query
+     * @param file   File to query on, a CSV file with a header line
+     */
+    static void queryObjectLocally(S3Client client, String bucket, String file) {
+        System.out.printf("Querying file locally: %s in bucket %s\n", file, bucket);
+        CsvQuery query = CsvQuery.of(bucket, file).whereLike("Notes", "%DynamoDB%");
+        try {
+            CsvQueryResult result = new CsvQueryEngine(client).run(query, row -> System.out.println(String.join(",", row)));
+            System.out.println(result);
+        } catch (AwsServiceException ex) {
+            System.err.println(ex.awsErrorDetails().errorCode());
+        } catch (IOException ex) {
+            System.err.println("Query of " + file + " failed: " + ex.getMessage());
+        }
+    }
+
     /**
      * Generate a pre-signed URL for a given object in a specified bucket for a specified period of time.
      * <br>
@@ -391,24 +455,26 @@ public class Main {
      *     PresignedPutObjectRequest presignedRequest = presigner.presignPutObject(presignRequest);
      * </pre>
      *
-     * @param client
+     * The URL is signed for the region of the bucket, taken from the cache.
+     *
+     * @param cache      Cache of bucket metadata
      * @param bucketName
      * @param objectKey
      * @param duration   Duration for the credentials to be active (in seconds)
      * @return String representing the pre-signed URL
      */
-    static public String getSignedUrl(S3Client client, String bucketName, String objectKey, long duration) {
-        try (S3Presigner presigner = S3Presigner.create()) {
-            GetObjectRequest objectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(objectKey)
-                    .build();
-            GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                    .signatureDuration(Duration.ofSeconds(duration))
-                    .getObjectRequest(objectRequest)
-                    .build();
-            PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
-            return presignedRequest.url().toExternalForm();
-        }
+    static public String getSignedUrl(BucketMetadataCache cache, String bucketName, String objectKey, long duration) {
+        // The presigner belongs to the cache, which closes it
+        S3Presigner presigner = cache.presigner(bucketName);
+        GetObjectRequest objectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .build();
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(duration))
+                .getObjectRequest(objectRequest)
+                .build();
+        PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
+        return presignedRequest.url().toExternalForm();
     }
 }
\ No newline at end of file
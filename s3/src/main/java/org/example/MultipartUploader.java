@@ -0,0 +1,298 @@
+package org.example;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Uploads a large file as an S3 multipart upload, sending several parts at the same time.
+ * <p>
+ * Each part is a read-only memory-mapped slice of the file, so the parts are never copied onto the
+ * heap, and carries its CRC32C checksum which S3 verifies on arrival. After every part the upload
+ * id and the finished parts are saved to a manifest next to the file (see {@link UploadManifest});
+ * when an upload fails or the process is stopped, uploading the same file again only sends the
+ * missing parts.
+ * <pre>
+ *     UploadResult result = new MultipartUploader(s3Client, 16 * 1024 * 1024, 8)
+ *             .upload("my-bucket", "backup.tar", Paths.get("backup.tar"));
+ *     System.out.println(result);  // ... 1536.0 MB in 12.31 s, 124.8 MB/s
+ * </pre>
+ */
+public class MultipartUploader {
+    /**
+     * S3 rejects smaller parts, except for the last one
+     */
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    public static final long DEFAULT_PART_SIZE = 16L * 1024 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 8;
+    static final String MANIFEST_SUFFIX = ".s3upload";
+    private static final int MAX_PARTS = 10_000;
+    // A mapped slice is indexed by an int
+    private static final long MAX_PART_SIZE = Integer.MAX_VALUE;
+
+    private final S3Client client;
+    private final long partSize;
+    private final int concurrency;
+
+    public MultipartUploader(S3Client client) {
+        this(client, DEFAULT_PART_SIZE, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param partSize    Size of each part in bytes, at least {@link #MIN_PART_SIZE}. It is raised
+     *                    for files which would otherwise need more than 10,000 parts.
+     * @param concurrency Number of parts sent at the same time
+     */
+    public MultipartUploader(S3Client client, long partSize, int concurrency) {
+        if (partSize < MIN_PART_SIZE || partSize > MAX_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be between " + MIN_PART_SIZE + " and " + MAX_PART_SIZE);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.client = client;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Uploads the file, resuming an earlier attempt when its manifest is found.
+     *
+     * @throws IOException when the file cannot be read or the upload was interrupted; the manifest
+     *                     is kept so calling this again resumes the upload
+     */
+    public UploadResult upload(String bucket, String key, Path file) throws IOException {
+        long start = System.nanoTime();
+        long size = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        long effectivePartSize = partSizeFor(size);
+        Path manifestPath = manifestFor(file);
+
+        UploadManifest manifest = UploadManifest.load(manifestPath);
+        if (manifest != null && !manifest.matches(bucket, key, size, lastModified, effectivePartSize)) {
+            // The file or the destination changed, the parts already sent are of no use; abort the
+            // old upload so S3 does not keep billing for them
+            System.err.println("Discarding stale upload manifest " + manifestPath);
+            abort(manifest);
+            manifest = null;
+        }
+        if (manifest == null) {
+            manifest = create(manifestPath, bucket, key, size, lastModified, effectivePartSize);
+        }
+
+        int resumedParts = manifest.getPartCount();
+        long uploadedBytes;
+        try {
+            uploadedBytes = uploadParts(manifest, bucket, key, file, size, effectivePartSize);
+        } catch (NoSuchUploadException ex) {
+            // The upload was aborted or expired since the manifest was saved
+            System.err.println("Upload " + manifest.getUploadId() + " no longer exists, starting again");
+            manifest = create(manifestPath, bucket, key, size, lastModified, effectivePartSize);
+            resumedParts = 0;
+            uploadedBytes = uploadParts(manifest, bucket, key, file, size, effectivePartSize);
+        }
+
+        List<CompletedPart> parts = manifest.getParts();
+        CompleteMultipartUploadResponse response = client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(manifest.getUploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                .build());
+        manifest.delete();
+        return new UploadResult(bucket, key, response.eTag(), size, parts.size(), resumedParts, uploadedBytes,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Where the progress of uploading the given file is kept
+     */
+    public static Path manifestFor(Path file) {
+        return file.toAbsolutePath().resolveSibling(file.getFileName() + MANIFEST_SUFFIX);
+    }
+
+    long partSizeFor(long size) {
+        long minimum = (size + MAX_PARTS - 1) / MAX_PARTS;
+        if (minimum <= partSize) {
+            return partSize;
+        }
+        // Round up to a whole megabyte to keep the parts aligned
+        long megabyte = 1024 * 1024;
+        long raised = (minimum + megabyte - 1) / megabyte * megabyte;
+        if (raised > MAX_PART_SIZE) {
+            throw new IllegalArgumentException("File of " + size + " bytes is too large for a multipart upload");
+        }
+        return raised;
+    }
+
+    private void abort(UploadManifest manifest) {
+        try {
+            client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(manifest.getBucket())
+                    .key(manifest.getKey())
+                    .uploadId(manifest.getUploadId())
+                    .build());
+        } catch (NoSuchUploadException ex) {
+            // Already aborted or expired
+        } catch (SdkException ex) {
+            System.err.println("Could not abort upload " + manifest.getUploadId() + ": " + ex.getMessage());
+        }
+    }
+
+    private UploadManifest create(Path manifestPath, String bucket, String key, long size, long lastModified,
+                                  long partSize) throws IOException {
+        String uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                .build()).uploadId();
+        UploadManifest manifest = new UploadManifest(manifestPath, bucket, key, uploadId, size, lastModified, partSize);
+        manifest.save();
+        return manifest;
+    }
+
+    /**
+     * Sends the parts the manifest does not have yet
+     *
+     * @return the number of bytes sent
+     */
+    private long uploadParts(UploadManifest manifest, String bucket, String key, Path file, long size,
+                             long partSize) throws IOException {
+        int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, partCount));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CompletionService<CompletedPart> completion = new ExecutorCompletionService<>(executor);
+            List<Future<CompletedPart>> pending = new ArrayList<>();
+            long bytes = 0;
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (manifest.hasPart(partNumber)) {
+                    continue;
+                }
+                long offset = (partNumber - 1) * partSize;
+                long length = Math.min(partSize, size - offset);
+                int number = partNumber;
+                pending.add(completion.submit(() ->
+                        uploadPart(channel, bucket, key, manifest.getUploadId(), number, offset, length)));
+                bytes += length;
+            }
+            // Wait for every part, even after one fails, so the parts that did finish are recorded
+            // and a later attempt does not send them again
+            Throwable failure = null;
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    manifest.addPart(completion.take().get());
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    } else {
+                        failure.addSuppressed(ex.getCause());
+                    }
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            return bytes;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload of " + file + " interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletedPart uploadPart(FileChannel channel, String bucket, String key, String uploadId,
+                                     int partNumber, long offset, long length) throws IOException {
+        ByteBuffer slice = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        String checksum = crc32c(slice.duplicate());
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(length)
+                .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                .checksumCRC32C(checksum)
+                .build();
+        // A retried request opens a new stream over the same slice
+        UploadPartResponse response = client.uploadPart(request, RequestBody.fromContentProvider(
+                () -> new ByteBufferInputStream(slice.duplicate()), length, "application/octet-stream"));
+        return CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(response.eTag())
+                .checksumCRC32C(checksum)
+                .build();
+    }
+
+    /**
+     * Base64 encoded big-endian CRC32C of the remaining bytes, as S3 expects it
+     */
+    static String crc32c(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer);
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lists the objects of a bucket, or under a prefix, over several connections at once.
+ * <p>
+ * A ListObjectsV2 paginator is strictly sequential: each page needs the continuation token of the
+ * one before. Here the key space is cut into shards, each a range of keys listed on its own with
+ * StartAfter and stopped once it passes the end of its range. The first shards come from a
+ * listing with the '/' delimiter, one per common prefix. A shard which is still being listed when
+ * a connection is free is split in two at a key halfway between its last key and its end, so even
+ * a bucket without any '/' is soon listed on every connection.
+ * <pre>
+ *     ListingResult result = new ParallelLister(s3Client).list(bucket, "logs/", object -> ...);
+ * </pre>
+ * Objects are handed to the consumer as each page arrives, from several threads and in no
+ * particular order. Only one page per connection is held in memory, however large the bucket.
+ */
+public class ParallelLister {
+    public static final int DEFAULT_CONCURRENCY = 16;
+    // The most keys a ListObjectsV2 call returns
+    private static final int PAGE_SIZE = 1000;
+    // Shards are only split at printable ASCII characters; DEL bounds the keys above them
+    private static final char FIRST_CHARACTER = ' ';
+    private static final char LAST_CHARACTER = '~';
+
+    private final S3Client client;
+    private final int concurrency;
+
+    public ParallelLister(S3Client client) {
+        this(client, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param concurrency Number of ListObjectsV2 calls in flight at the same time
+     */
+    public ParallelLister(S3Client client, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.client = client;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Lists every object of the bucket
+     */
+    public ListingResult list(String bucket, Consumer<S3Object> objects) {
+        return list(bucket, null, objects);
+    }
+
+    /**
+     * Lists every object whose key starts with the prefix
+     *
+     * @param prefix  Key prefix, or null for the whole bucket
+     * @param objects Called with each object, from several threads at once
+     */
+    public ListingResult list(String bucket, String prefix, Consumer<S3Object> objects) {
+        long start = System.nanoTime();
+        String keyPrefix = prefix == null ? "" : prefix;
+        Run run = new Run(bucket, keyPrefix, objects);
+        try {
+            // The common prefixes of one delimiter listing are the first shard boundaries
+            ListObjectsV2Response top = run.request(ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(keyPrefix)
+                    .delimiter("/")
+                    .maxKeys(PAGE_SIZE));
+            List<String> boundaries = new ArrayList<>();
+            for (CommonPrefix common : top.commonPrefixes()) {
+                boundaries.add(common.prefix());
+            }
+            // Held until every first shard is submitted, so the run cannot look finished before
+            run.pending.incrementAndGet();
+            String after = null;
+            for (String boundary : boundaries) {
+                run.submit(after, boundary);
+                after = boundary;
+            }
+            run.submit(after, null);
+            run.finished();
+            run.await();
+        } finally {
+            run.executor.shutdownNow();
+        }
+        return new ListingResult(bucket, keyPrefix, run.objects.sum(), run.bytes.sum(), run.requests.sum(),
+                run.shards.sum(), System.nanoTime() - start);
+    }
+
+    /**
+     * A key between after and upTo, or null if there is none worth splitting at. Only keys made
+     * of printable ASCII characters are split, which keeps the result valid UTF-8 and ordered the
+     * same way as S3 orders keys, by their UTF-8 bytes.
+     */
+    static String midpoint(String after, String upTo) {
+        int common = 0;
+        while (common < after.length() && common < upTo.length() && after.charAt(common) == upTo.charAt(common)) {
+            common++;
+        }
+        if (common == upTo.length()) {
+            return null;
+        }
+        int low = common < after.length() ? after.charAt(common) : FIRST_CHARACTER - 1;
+        int high = upTo.charAt(common);
+        if (low < FIRST_CHARACTER - 1 || low > LAST_CHARACTER || high > LAST_CHARACTER + 1) {
+            return null;
+        }
+        if (high - low >= 2) {
+            return upTo.substring(0, common) + (char) ((low + high) >>> 1);
+        }
+        if (common < after.length()) {
+            // Adjacent characters: look for room after the one of 'after'
+            return midpoint(after, after.substring(0, common + 1) + (char) (LAST_CHARACTER + 1));
+        }
+        return null;
+    }
+
+    /**
+     * Compares keys the way S3 sorts them, by their UTF-8 bytes, which is the order of their code
+     * points rather than the UTF-16 order of String.compareTo
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * The shards of one call and the pool listing them
+     */
+    private final class Run {
+        final String bucket;
+        final String prefix;
+        final Consumer<S3Object> consumer;
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        // Shards waiting or being listed; the run is over when none are left
+        final AtomicInteger pending = new AtomicInteger();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final LongAdder objects = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder requests = new LongAdder();
+        final LongAdder shards = new LongAdder();
+
+        Run(String bucket, String prefix, Consumer<S3Object> consumer) {
+            this.bucket = bucket;
+            this.prefix = prefix;
+            this.consumer = consumer;
+        }
+
+        ListObjectsV2Response request(ListObjectsV2Request.Builder request) {
+            requests.increment();
+            return client.listObjectsV2(request.build());
+        }
+
+        /**
+         * Lists the keys after 'after' up to and including 'upTo', where null leaves that end open
+         */
+        void submit(String after, String upTo) {
+            pending.incrementAndGet();
+            shards.increment();
+            executor.execute(() -> {
+                try {
+                    if (failure.get() == null) {
+                        listShard(after, upTo);
+                    }
+                } catch (RuntimeException ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    finished();
+                }
+            });
+        }
+
+        void finished() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+
+        private void listShard(String after, String upTo) {
+            String startAfter = after;
+            String end = upTo;
+            while (failure.get() == null) {
+                ListObjectsV2Response page = request(ListObjectsV2Request.builder()
+                        .bucket(bucket)
+                        .prefix(prefix)
+                        .startAfter(startAfter)
+                        .maxKeys(PAGE_SIZE));
+                for (S3Object object : page.contents()) {
+                    if (end != null && compareKeys(object.key(), end) > 0) {
+                        // The rest belongs to the next shard
+                        return;
+                    }
+                    objects.increment();
+                    bytes.add(object.size() == null ? 0 : object.size());
+                    consumer.accept(object);
+                }
+                if (!page.isTruncated() || page.contents().isEmpty()) {
+                    return;
+                }
+                startAfter = page.contents().get(page.contents().size() - 1).key();
+                if (pending.get() < concurrency) {
+                    // A connection is free: hand the upper half of what is left to it
+                    String split = midpoint(startAfter, end != null ? end : prefix + (char) (LAST_CHARACTER + 1));
+                    if (split != null) {
+                        submit(split, end);
+                        end = split;
+                    }
+                }
+            }
+        }
+
+        void await() {
+            try {
+                done.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while listing " + bucket, ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+            RuntimeException ex = failure.get();
+            if (ex != null) {
+                throw ex;
+            }
+        }
+    }
+}
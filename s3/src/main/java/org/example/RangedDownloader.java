@@ -0,0 +1,472 @@
+package org.example;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+/**
+ * Downloads an object to a file as several byte ranges fetched at the same time.
+ * <p>
+ * The file is created at its final size up front and every range is written straight to its
+ * place in it with positional {@link FileChannel} writes, as the bytes arrive, so the object is
+ * never held in memory. The writes run on a small pool of disk writers rather than on the SDK's
+ * I/O threads, and a range only asks for its next buffer once the previous one is on disk.
+ * <p>
+ * Every range request is pinned to the ETag of the object, so a download cannot mix two versions.
+ * A range which fails part way is requested again from the first byte that was not written, up to
+ * a number of attempts; once a range fails for good, the requests of the other ranges still in
+ * flight are cancelled.
+ * <p>
+ * Once all ranges are in, the file is checked against the CRC32C checksum of the object, either
+ * the whole object checksum or the checksum of its parts when it was a multipart upload, or
+ * against the MD5 ETag for objects uploaded in one piece without a checksum. The download is
+ * written to a temporary file which only replaces the target when the check passes.
+ * <pre>
+ *     DownloadResult result = new RangedDownloader(s3AsyncClient, 8 * 1024 * 1024, 16)
+ *             .download("my-bucket", "backup.tar", Paths.get("backup.tar"));
+ *     System.out.println(result);
+ * </pre>
+ */
+public class RangedDownloader {
+    public static final long DEFAULT_RANGE_SIZE = 8L * 1024 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 16;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MILLIS = 200;
+    // Positional writes to one file scale poorly past a few threads
+    private static final int MAX_DISK_WRITERS = 4;
+    // Files are checked in slices of this size
+    private static final long CHECK_SLICE = 64L * 1024 * 1024;
+
+    private final S3AsyncClient client;
+    private final long rangeSize;
+    private final int concurrency;
+    private final int maxAttempts;
+
+    public RangedDownloader(S3AsyncClient client) {
+        this(client, DEFAULT_RANGE_SIZE, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param rangeSize   Size of each range request in bytes
+     * @param concurrency Number of ranges fetched at the same time
+     */
+    public RangedDownloader(S3AsyncClient client, long rangeSize, int concurrency) {
+        this(client, rangeSize, concurrency, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public RangedDownloader(S3AsyncClient client, long rangeSize, int concurrency, int maxAttempts) {
+        if (rangeSize < 1 || concurrency < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("rangeSize, concurrency and maxAttempts must be positive");
+        }
+        this.client = client;
+        this.rangeSize = rangeSize;
+        this.concurrency = concurrency;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Downloads the object to the target file, replacing it.
+     *
+     * @throws IOException when the file cannot be written, a range still fails after the last
+     *                     attempt, or the downloaded file does not match the checksum of the object
+     */
+    public DownloadResult download(String bucket, String key, Path target) throws IOException {
+        long start = System.nanoTime();
+        HeadObjectResponse head = join(client.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .checksumMode(ChecksumMode.ENABLED)
+                .build()));
+        long size = head.contentLength();
+        Path temporary = target.toAbsolutePath().resolveSibling(target.getFileName() + ".download");
+
+        Download download;
+        ExecutorService diskWriter = Executors.newFixedThreadPool(Math.min(concurrency, MAX_DISK_WRITERS));
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (size > 0) {
+                // Reserve the whole file so the ranges can be written in any order
+                channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            }
+            download = new Download(bucket, key, head.eTag(), channel, diskWriter, size);
+            join(download.start());
+            channel.force(false);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        } finally {
+            diskWriter.shutdownNow();
+        }
+        long transferNanos = System.nanoTime() - start;
+
+        String verifiedWith;
+        try {
+            verifiedWith = verify(bucket, key, head, temporary);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new DownloadResult(bucket, key, size, download.rangeCount, download.retries.get(), verifiedWith,
+                transferNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * Checks the downloaded file against what S3 knows of the object
+     *
+     * @return how the file was checked, or null when S3 has no checksum to compare with
+     * @throws IOException if the file does not match
+     */
+    private String verify(String bucket, String key, HeadObjectResponse head, Path file) throws IOException {
+        String expected = head.checksumCRC32C();
+        if (expected != null) {
+            int dash = expected.indexOf('-');
+            if (dash < 0) {
+                check(expected, base64(crc32c(file, 0, head.contentLength())), key);
+                return "CRC32C";
+            }
+            // A multipart upload: the checksum is the CRC32C of the CRC32C of each part
+            int parts = Integer.parseInt(expected.substring(dash + 1));
+            long partSize = join(client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .ifMatch(head.eTag())
+                    .partNumber(1)
+                    .build())).contentLength();
+            long size = head.contentLength();
+            if ((parts - 1) * partSize < size && size <= parts * partSize) {
+                CRC32C ofParts = new CRC32C();
+                for (int part = 0; part < parts; part++) {
+                    long offset = part * partSize;
+                    ofParts.update(ByteBuffer.allocate(4)
+                            .putInt((int) crc32c(file, offset, Math.min(partSize, size - offset))).flip());
+                }
+                check(expected, base64(ofParts.getValue()) + "-" + parts, key);
+                return "CRC32C of " + parts + " parts";
+            }
+            // Parts of different sizes, which cannot be told from the object alone
+        }
+        String eTag = head.eTag() == null ? "" : head.eTag().replace("\"", "");
+        boolean kms = head.serverSideEncryption() == ServerSideEncryption.AWS_KMS
+                || head.serverSideEncryption() == ServerSideEncryption.AWS_KMS_DSSE;
+        if (eTag.matches("[0-9a-f]{32}") && !kms) {
+            // Objects uploaded in one piece without KMS have the MD5 of their content as ETag
+            check(eTag, md5(file, head.contentLength()), key);
+            return "MD5";
+        }
+        return null;
+    }
+
+    private static void check(String expected, String actual, String key) throws IOException {
+        if (!expected.equals(actual)) {
+            throw new IOException("Download of " + key + " is corrupt: expected checksum " + expected + " but got " + actual);
+        }
+    }
+
+    private static long crc32c(Path file, long offset, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = offset; position < offset + length; position += CHECK_SLICE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECK_SLICE, offset + length - position)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static String md5(Path file, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < length; position += CHECK_SLICE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECK_SLICE, length - position)));
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String base64(long crc) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc).array());
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * The ranges of one download, started {@code concurrency} at a time; each one that finishes
+     * starts the next
+     */
+    private final class Download {
+        final String bucket;
+        final String key;
+        final String eTag;
+        final FileChannel channel;
+        final Executor diskWriter;
+        final long size;
+        final int rangeCount;
+        final AtomicInteger nextRange = new AtomicInteger();
+        final AtomicInteger remaining;
+        final AtomicInteger retries = new AtomicInteger();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        // The range requests in flight, cancelled once the download fails
+        final Set<CompletableFuture<Long>> requests = ConcurrentHashMap.newKeySet();
+
+        Download(String bucket, String key, String eTag, FileChannel channel, Executor diskWriter, long size) {
+            this.bucket = bucket;
+            this.key = key;
+            this.eTag = eTag;
+            this.channel = channel;
+            this.diskWriter = diskWriter;
+            this.size = size;
+            this.rangeCount = size == 0 ? 0 : (int) ((size - 1) / rangeSize + 1);
+            this.remaining = new AtomicInteger(rangeCount);
+            done.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    requests.forEach(request -> request.cancel(true));
+                }
+            });
+        }
+
+        CompletableFuture<Void> start() {
+            if (rangeCount == 0) {
+                done.complete(null);
+            }
+            for (int i = 0; i < Math.min(concurrency, rangeCount); i++) {
+                startNext();
+            }
+            return done;
+        }
+
+        private void startNext() {
+            int range = nextRange.getAndIncrement();
+            if (range >= rangeCount || done.isDone()) {
+                return;
+            }
+            long first = range * rangeSize;
+            long last = first + Math.min(rangeSize, size - first) - 1;
+            fetch(first, last, 1).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    done.completeExceptionally(error);
+                } else if (remaining.decrementAndGet() == 0) {
+                    done.complete(null);
+                } else {
+                    startNext();
+                }
+            });
+        }
+
+        /**
+         * Fetches bytes first to last, both included, asking again for what is missing after a failure
+         */
+        private CompletableFuture<Void> fetch(long first, long last, int attempt) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            if (done.isDone()) {
+                // Another range failed while this one waited to be retried
+                result.cancel(false);
+                return result;
+            }
+            RangeWriter writer = new RangeWriter(channel, diskWriter, first);
+            GetObjectRequest request = GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .range("bytes=" + first + "-" + last)
+                    .ifMatch(eTag)
+                    .build();
+            CompletableFuture<Long> response = client.getObject(request, writer);
+            requests.add(response);
+            if (done.isDone()) {
+                // Failed between the check above and the request being tracked
+                response.cancel(true);
+            }
+            response.whenComplete((written, error) -> {
+                requests.remove(response);
+                if (error == null && written == last - first + 1) {
+                    result.complete(null);
+                    return;
+                }
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause == null) {
+                    cause = new IOException("Range " + first + "-" + last + " of " + key + " ended after " + written + " bytes");
+                }
+                if (attempt >= maxAttempts || !retryable(cause)) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                retries.incrementAndGet();
+                long resumeAt = first + writer.getWritten();
+                CompletableFuture.runAsync(() -> fetch(resumeAt, last, attempt + 1).whenComplete((ignored, retryError) -> {
+                            if (retryError != null) {
+                                result.completeExceptionally(retryError);
+                            } else {
+                                result.complete(null);
+                            }
+                        }),
+                        CompletableFuture.delayedExecutor(RETRY_DELAY_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS));
+            });
+            return result;
+        }
+    }
+
+    private static boolean retryable(Throwable error) {
+        if (error instanceof S3Exception) {
+            int status = ((S3Exception) error).statusCode();
+            // 412 means the object changed since the download started
+            return status >= 500 || status == 429;
+        }
+        return error instanceof SdkException || error instanceof IOException;
+    }
+
+    /**
+     * Writes the body of a range response at its place in the file as it arrives, one buffer at a
+     * time on the disk writers, and completes with the number of bytes written
+     */
+    private static final class RangeWriter implements AsyncResponseTransformer<GetObjectResponse, Long> {
+        private final FileChannel channel;
+        private final Executor diskWriter;
+        private final long offset;
+        private volatile long written;
+        private volatile CompletableFuture<Long> result;
+        // The write of the last buffer. The next buffer is only requested once it is done, and the
+        // response only completes or fails after it, so the written count is final by then
+        private volatile CompletableFuture<Void> lastWrite;
+
+        RangeWriter(FileChannel channel, Executor diskWriter, long offset) {
+            this.channel = channel;
+            this.diskWriter = diskWriter;
+            this.offset = offset;
+        }
+
+        long getWritten() {
+            return written;
+        }
+
+        @Override
+        public CompletableFuture<Long> prepare() {
+            // Called again when the SDK retries the request, which starts over from the same offset
+            written = 0;
+            result = new CompletableFuture<>();
+            lastWrite = CompletableFuture.completedFuture(null);
+            return result;
+        }
+
+        @Override
+        public void onResponse(GetObjectResponse response) {
+        }
+
+        @Override
+        public void onStream(SdkPublisher<ByteBuffer> publisher) {
+            CompletableFuture<Long> result = this.result;
+            publisher.subscribe(new Subscriber<ByteBuffer>() {
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription = s;
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(ByteBuffer buffer) {
+                    lastWrite = CompletableFuture.runAsync(() -> write(buffer), diskWriter).whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            subscription.cancel();
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            result.completeExceptionally(cause instanceof UncheckedIOException ? cause.getCause() : cause);
+                        } else {
+                            subscription.request(1);
+                        }
+                    });
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    fail(result, t);
+                }
+
+                @Override
+                public void onComplete() {
+                    lastWrite.thenRun(() -> result.complete(written));
+                }
+            });
+        }
+
+        private void write(ByteBuffer buffer) {
+            try {
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, offset + written);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable error) {
+            fail(result, error);
+        }
+
+        /**
+         * Fails the response once the buffer being written is on disk, so a retry resumes after it
+         */
+        private void fail(CompletableFuture<Long> result, Throwable error) {
+            lastWrite.whenComplete((ignored, writeError) -> result.completeExceptionally(error));
+        }
+    }
+}
@@ -11,6 +11,8 @@ import java.util.List;
 /**
  * An implementation of the SelectObjectContentResponseHandler interface, which essentially
  * collects the received results in a list that can later be fetched when the request completes.
+ * As the whole result is kept in memory, {@link StreamingSelectHandler} is better suited to
+ * large results.
  */
 public class S3SelectHandler  implements SelectObjectContentResponseHandler {
     private List<SelectObjectContentEventStream> receivedEvents = new ArrayList<>();
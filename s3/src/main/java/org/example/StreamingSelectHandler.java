@@ -0,0 +1,345 @@
+package org.example;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Progress;
+import software.amazon.awssdk.services.s3.model.RecordsEvent;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentEventStream;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentRequest;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentResponse;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentResponseHandler;
+import software.amazon.awssdk.services.s3.model.Stats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A SelectObjectContentResponseHandler which hands each record of the result to a consumer as
+ * soon as it arrives, instead of keeping the events until the request completes like
+ * {@link S3SelectHandler}.
+ * <p>
+ * S3 sends the result in RecordsEvent payloads which do not follow record boundaries. Records are
+ * cut from each payload in place; only the unfinished record at the end of a payload is copied and
+ * joined with the start of the next one. The next event is only requested once the current one
+ * has been handled, so a slow consumer holds back the response instead of letting events pile up
+ * in memory.
+ * <pre>
+ *     StreamingSelectHandler handler = new StreamingSelectHandler(System.out::println);
+ *     s3AsyncClient.selectObjectContent(request, handler).get();
+ *     System.out.println(handler.getRecordCount() + " records, " + handler.getBytesScanned() + " bytes scanned");
+ * </pre>
+ * With {@link #stream(S3AsyncClient, SelectObjectContentRequest)} the records are read from a
+ * {@link Stream} on the calling thread instead.
+ */
+public class StreamingSelectHandler implements SelectObjectContentResponseHandler {
+    // Records waiting in the queue of stream() before the next event is held back, and resumed at
+    private static final int QUEUE_HIGH_WATER = 10_000;
+    private static final int QUEUE_LOW_WATER = 1_000;
+
+    private final Consumer<String> records;
+    private final byte delimiter;
+    private final SelectObjectContentResponseHandler.Visitor visitor;
+    private final RecordQueue queue;
+    private volatile Consumer<Progress> progressListener;
+    private volatile Subscription subscription;
+
+    // Start of a record cut off at the end of the previous payload
+    private byte[] partial = new byte[256];
+    private int partialLength;
+
+    private volatile long recordCount;
+    private volatile long bytesScanned;
+    private volatile long bytesProcessed;
+    private volatile long bytesReturned;
+    private volatile boolean endReceived;
+
+    /**
+     * @param records Called with every record of the result, without its delimiter, on an SDK thread
+     */
+    public StreamingSelectHandler(Consumer<String> records) {
+        this(records, '\n');
+    }
+
+    /**
+     * @param records   Called with every record of the result, without its delimiter, on an SDK thread
+     * @param delimiter The record delimiter of the output serialization, a newline by default
+     */
+    public StreamingSelectHandler(Consumer<String> records, char delimiter) {
+        this(records, delimiter, null);
+    }
+
+    private StreamingSelectHandler(Consumer<String> records, char delimiter, RecordQueue queue) {
+        if (delimiter > 0x7F) {
+            throw new IllegalArgumentException("Only single byte record delimiters are supported");
+        }
+        this.records = records;
+        this.delimiter = (byte) delimiter;
+        this.queue = queue;
+        this.visitor = SelectObjectContentResponseHandler.Visitor.builder()
+                .onRecords(this::onRecords)
+                .onStats(event -> onStats(event.details()))
+                .onProgress(event -> onProgress(event.details()))
+                .onEnd(event -> endReceived = true)
+                .build();
+    }
+
+    /**
+     * Runs the select and returns its records as a stream read on the calling thread. At most a
+     * few thousand records are buffered; reading stops when the stream falls behind and resumes as
+     * it catches up. Closing the stream cancels the request.
+     *
+     * @throws IllegalStateException from the stream when the select fails or ends early
+     */
+    public static Stream<String> stream(S3AsyncClient client, SelectObjectContentRequest request) {
+        RecordQueue queue = new RecordQueue();
+        StreamingSelectHandler handler = new StreamingSelectHandler(queue::add, '\n', queue);
+        CompletableFuture<Void> response = client.selectObjectContent(request, handler);
+        response.whenComplete((ignored, error) -> {
+            if (error != null) {
+                queue.fail(error);
+            } else if (!handler.isEndReceived()) {
+                queue.fail(new IllegalStateException("The select ended before all records were returned"));
+            } else {
+                queue.end();
+            }
+        });
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queue, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    Subscription current = handler.subscription;
+                    if (current != null) {
+                        current.cancel();
+                    }
+                    response.cancel(true);
+                });
+    }
+
+    /**
+     * Called with the ProgressEvent details S3 sends while it scans the object, if progress was
+     * requested in the SelectObjectContentRequest
+     */
+    public void setProgressListener(Consumer<Progress> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Bytes of the object S3 scanned, from the final StatsEvent or the latest ProgressEvent
+     */
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    /**
+     * Bytes processed after decompression
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * Bytes of records returned
+     */
+    public long getBytesReturned() {
+        return bytesReturned;
+    }
+
+    /**
+     * Whether S3 sent the EndEvent; without it the result is incomplete
+     */
+    public boolean isEndReceived() {
+        return endReceived;
+    }
+
+    @Override
+    public void responseReceived(SelectObjectContentResponse response) {
+    }
+
+    @Override
+    public void onEventStream(SdkPublisher<SelectObjectContentEventStream> publisher) {
+        publisher.subscribe(new Subscriber<SelectObjectContentEventStream>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(SelectObjectContentEventStream event) {
+                event.accept(visitor);
+                if (queue == null) {
+                    subscription.request(1);
+                } else {
+                    queue.requestWhenReady(subscription);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // Reported through exceptionOccurred
+            }
+
+            @Override
+            public void onComplete() {
+                if (partialLength > 0) {
+                    // The last record need not end with a delimiter
+                    emit(partial, 0, partialLength);
+                    partialLength = 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void exceptionOccurred(Throwable throwable) {
+        if (queue != null) {
+            queue.fail(throwable);
+        }
+    }
+
+    @Override
+    public void complete() {
+    }
+
+    private void onRecords(RecordsEvent event) {
+        // The payload is not copied again, records are decoded straight from it
+        byte[] payload = event.payload().asByteArrayUnsafe();
+        int start = 0;
+        for (int i = 0; i < payload.length; i++) {
+            if (payload[i] != delimiter) {
+                continue;
+            }
+            if (partialLength > 0) {
+                appendPartial(payload, start, i);
+                emit(partial, 0, partialLength);
+                partialLength = 0;
+            } else {
+                emit(payload, start, i);
+            }
+            start = i + 1;
+        }
+        appendPartial(payload, start, payload.length);
+    }
+
+    private void appendPartial(byte[] payload, int from, int to) {
+        int length = to - from;
+        if (partialLength + length > partial.length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        System.arraycopy(payload, from, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    private void emit(byte[] bytes, int from, int to) {
+        if (to > from) {
+            recordCount++;
+            records.accept(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void onStats(Stats stats) {
+        update(stats.bytesScanned(), stats.bytesProcessed(), stats.bytesReturned());
+    }
+
+    private void onProgress(Progress progress) {
+        update(progress.bytesScanned(), progress.bytesProcessed(), progress.bytesReturned());
+        Consumer<Progress> listener = progressListener;
+        if (listener != null) {
+            listener.accept(progress);
+        }
+    }
+
+    private void update(Long scanned, Long processed, Long returned) {
+        bytesScanned = scanned == null ? bytesScanned : scanned;
+        bytesProcessed = processed == null ? bytesProcessed : processed;
+        bytesReturned = returned == null ? bytesReturned : returned;
+    }
+
+    /**
+     * Records handed from the SDK thread to the thread reading the stream. When too many are
+     * waiting, the next event is not requested until the reader has caught up.
+     */
+    private static final class RecordQueue implements Iterator<String> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> items = new LinkedBlockingQueue<>();
+        private Subscription paused;
+        private Object next;
+
+        void add(String record) {
+            items.add(record);
+        }
+
+        void end() {
+            items.add(END);
+        }
+
+        void fail(Throwable error) {
+            items.add(error);
+        }
+
+        void requestWhenReady(Subscription subscription) {
+            synchronized (this) {
+                if (items.size() >= QUEUE_HIGH_WATER) {
+                    paused = subscription;
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = items.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for select records", ex);
+                }
+                resumeIfDrained();
+            }
+            if (next instanceof Throwable) {
+                throw new IllegalStateException("Select failed: " + ((Throwable) next).getMessage(), (Throwable) next);
+            }
+            return next != END;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String record = (String) next;
+            next = null;
+            return record;
+        }
+
+        private void resumeIfDrained() {
+            Subscription resume = null;
+            synchronized (this) {
+                if (paused != null && items.size() <= QUEUE_LOW_WATER) {
+                    resume = paused;
+                    paused = null;
+                }
+            }
+            if (resume != null) {
+                resume.request(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The state of a multipart upload, saved next to the file being uploaded after every part so an
+ * interrupted upload can carry on where it stopped. It is only reused for the same bucket, key,
+ * part size and an unchanged file.
+ * <p>
+ * The upload is written once when it starts, then every finished part appends a line, so saving a
+ * part costs the same for the first and the ten-thousandth part.
+ */
+class UploadManifest {
+    private final Path path;
+    private final String bucket;
+    private final String key;
+    private final String uploadId;
+    private final long fileSize;
+    private final long lastModified;
+    private final long partSize;
+    private final Map<Integer, CompletedPart> parts = new TreeMap<>();
+
+    UploadManifest(Path path, String bucket, String key, String uploadId, long fileSize, long lastModified, long partSize) {
+        this.path = path;
+        this.bucket = bucket;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.partSize = partSize;
+    }
+
+    /**
+     * @return the saved manifest, or null if there is none or it cannot be read
+     */
+    static UploadManifest load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            UploadManifest manifest = new UploadManifest(path, properties.getProperty("bucket"),
+                    properties.getProperty("key"), properties.getProperty("uploadId"),
+                    Long.parseLong(properties.getProperty("fileSize")),
+                    Long.parseLong(properties.getProperty("lastModified")),
+                    Long.parseLong(properties.getProperty("partSize")));
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith("part.")) {
+                    CompletedPart part = parsePart(name, properties.getProperty(name));
+                    if (part != null) {
+                        manifest.parts.put(part.partNumber(), part);
+                    }
+                }
+            }
+            return manifest;
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Ignoring unreadable upload manifest " + path + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    boolean matches(String bucket, String key, long fileSize, long lastModified, long partSize) {
+        return this.bucket.equals(bucket) && this.key.equals(key) && this.fileSize == fileSize
+                && this.lastModified == lastModified && this.partSize == partSize;
+    }
+
+    String getBucket() {
+        return bucket;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getUploadId() {
+        return uploadId;
+    }
+
+    synchronized boolean hasPart(int partNumber) {
+        return parts.containsKey(partNumber);
+    }
+
+    synchronized int getPartCount() {
+        return parts.size();
+    }
+
+    synchronized List<CompletedPart> getParts() {
+        return new ArrayList<>(parts.values());
+    }
+
+    /**
+     * @return the part, or null for a line cut short by a crash while it was appended; that part
+     * is sent again
+     */
+    private static CompletedPart parsePart(String name, String value) {
+        String[] fields = value.split(" ");
+        if (fields.length != 2 || !isChecksum(fields[1])) {
+            return null;
+        }
+        int partNumber = Integer.parseInt(name.substring("part.".length()));
+        return CompletedPart.builder().partNumber(partNumber).eTag(fields[0]).checksumCRC32C(fields[1]).build();
+    }
+
+    // Four bytes, padded to eight characters; the decoder would also accept them unpadded
+    private static boolean isChecksum(String checksum) {
+        try {
+            return checksum.length() == 8 && Base64.getDecoder().decode(checksum).length == 4;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Records a finished part and appends it to the saved manifest
+     */
+    synchronized void addPart(CompletedPart part) throws IOException {
+        parts.put(part.partNumber(), part);
+        // Starting on a new line keeps the part apart from a line left unfinished by a crash
+        String line = System.lineSeparator() + partName(part) + "=" + partValue(part);
+        Files.write(path, line.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+    }
+
+    synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("bucket", bucket);
+        properties.setProperty("key", key);
+        properties.setProperty("uploadId", uploadId);
+        properties.setProperty("fileSize", Long.toString(fileSize));
+        properties.setProperty("lastModified", Long.toString(lastModified));
+        properties.setProperty("partSize", Long.toString(partSize));
+        for (CompletedPart part : parts.values()) {
+            properties.setProperty(partName(part), partValue(part));
+        }
+        // Write a new file and swap it in, so a crash never leaves a half written manifest
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "S3 multipart upload of " + key);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String partName(CompletedPart part) {
+        return "part." + part.partNumber();
+    }
+
+    // ETags and Base64 checksums need no escaping in a properties file
+    private static String partValue(CompletedPart part) {
+        return part.eTag() + " " + part.checksumCRC32C();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
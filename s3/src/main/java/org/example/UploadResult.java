@@ -0,0 +1,79 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link MultipartUploader} upload, including the throughput achieved
+ */
+public class UploadResult {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final String bucket;
+    private final String key;
+    private final String eTag;
+    private final long size;
+    private final int parts;
+    private final int resumedParts;
+    private final long uploadedBytes;
+    private final long elapsedNanos;
+
+    UploadResult(String bucket, String key, String eTag, long size, int parts, int resumedParts,
+                 long uploadedBytes, long elapsedNanos) {
+        this.bucket = bucket;
+        this.key = key;
+        this.eTag = eTag;
+        this.size = size;
+        this.parts = parts;
+        this.resumedParts = resumedParts;
+        this.uploadedBytes = uploadedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getParts() {
+        return parts;
+    }
+
+    /**
+     * Parts which had already been uploaded by an earlier, interrupted attempt
+     */
+    public int getResumedParts() {
+        return resumedParts;
+    }
+
+    /**
+     * Bytes sent by this attempt, which is less than the size when the upload was resumed
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : uploadedBytes / MEGABYTE / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Uploaded %s to %s: %d parts (%d resumed), %.1f MB in %.2f s, %.1f MB/s",
+                key, bucket, parts, resumedParts, uploadedBytes / MEGABYTE, elapsedNanos / 1e9, getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.bench;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.net.URI;
+
+/**
+ * Clients for the benchmarks. They talk to S3 in us-east-1 like {@link org.example.Main}, or to
+ * an S3 compatible endpoint such as MinIO when the s3.endpoint system property is set:
+ * <pre>
+ *     java -Ds3.endpoint=http://localhost:9000 -cp ... org.example.bench.DownloadBenchmark ...
+ * </pre>
+ */
+final class BenchmarkClients {
+    private static final String ENDPOINT_PROPERTY = "s3.endpoint";
+
+    private BenchmarkClients() {
+    }
+
+    static S3Client s3Client() {
+        String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+        if (endpoint == null) {
+            return S3Client.builder().region(Region.US_EAST_1).crossRegionAccessEnabled(true).build();
+        }
+        return S3Client.builder()
+                .endpointOverride(URI.create(endpoint))
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+    }
+
+    static S3AsyncClient s3AsyncClient() {
+        String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+        if (endpoint == null) {
+            return S3AsyncClient.builder().region(Region.US_EAST_1).crossRegionAccessEnabled(true).build();
+        }
+        return S3AsyncClient.builder()
+                .endpointOverride(URI.create(endpoint))
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.bench;
+
+import org.example.CsvQuery;
+import org.example.CsvQueryEngine;
+import org.example.CsvQueryResult;
+import org.example.MultipartUploader;
+import org.example.StreamingSelectHandler;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CSVInput;
+import software.amazon.awssdk.services.s3.model.ExpressionType;
+import software.amazon.awssdk.services.s3.model.FileHeaderInfo;
+import software.amazon.awssdk.services.s3.model.InputSerialization;
+import software.amazon.awssdk.services.s3.model.JSONOutput;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.OutputSerialization;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the notes query of {@link org.example.Main#queryS3Object} over a generated CSV object,
+ * with S3 Select and with the {@link CsvQueryEngine} at several concurrencies. The object is
+ * uploaded on the first run. With -Ds3.endpoint it runs against a local S3 stand-in such as MinIO,
+ * which also supports S3 Select.
+ * Usage: CsvQueryBenchmark bucket [rows] [ways...]
+ */
+public class CsvQueryBenchmark {
+    private static final String[] WORDS = {
+            "DynamoDB", "partition", "key", "item", "capacity", "the", "a", "of", "to", "and", "note", "student",
+            "read", "write", "table", "index", "query", "scan", "throughput", "latency", "is", "for", "with",
+            "remember", "exam", "lecture", "chapter", "review", "homework", "on", "tuesday", "bring"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CsvQueryBenchmark bucket [rows] [ways...]");
+            System.exit(1);
+        }
+        String bucket = args[0];
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int[] ways = {1, 4, 16};
+        if (args.length > 2) {
+            ways = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                ways[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        String key = "bench/notes-" + rows + ".csv";
+
+        try (S3Client client = BenchmarkClients.s3Client(); S3AsyncClient asyncClient = BenchmarkClients.s3AsyncClient()) {
+            upload(client, bucket, key, rows);
+
+            long start = System.nanoTime();
+            try {
+                StreamingSelectHandler handler = new StreamingSelectHandler(record -> {
+                });
+                asyncClient.selectObjectContent(select(bucket, key), handler).join();
+                System.out.printf("%-16s %8d rows in %6d ms%n", "S3 Select", handler.getRecordCount(),
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException ex) {
+                System.out.println("S3 Select not available: " + ex.getMessage());
+            }
+
+            CsvQuery query = CsvQuery.of(bucket, key).whereLike("Notes", "%DynamoDB%");
+            for (int concurrency : ways) {
+                AtomicLong matched = new AtomicLong();
+                CsvQueryResult result = new CsvQueryEngine(client, CsvQueryEngine.DEFAULT_RANGE_SIZE, concurrency)
+                        .run(query, row -> matched.incrementAndGet());
+                System.out.printf("%-16s %8d rows in %6d ms, %.1f MB/s%n", concurrency + "-way local",
+                        matched.get(), result.getElapsedMillis(), result.getMegabytesPerSecond());
+            }
+        }
+    }
+
+    private static SelectObjectContentRequest select(String bucket, String key) {
+        return SelectObjectContentRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .expression("select * from s3object s where s.Notes like '%DynamoDB%'")
+                .expressionType(ExpressionType.SQL)
+                .inputSerialization(InputSerialization.builder()
+                        .csv(CSVInput.builder().fileHeaderInfo(FileHeaderInfo.USE).build())
+                        .build())
+                .outputSerialization(OutputSerialization.builder().json(JSONOutput.builder().build()).build())
+                .build();
+    }
+
+    private static void upload(S3Client client, String bucket, String key, int rows) throws IOException {
+        try {
+            client.headObject(b -> b.bucket(bucket).key(key));
+            return;
+        } catch (NoSuchKeyException ex) {
+            // Not uploaded yet
+        }
+        Path file = Files.createTempFile("notes", ".csv");
+        try {
+            Random random = new Random(42);
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("UserId,NoteId,Notes\n");
+                for (int row = 0; row < rows; row++) {
+                    writer.write("student" + random.nextInt(10_000) + "," + row + ",");
+                    for (int word = 0, words = 5 + random.nextInt(20); word < words; word++) {
+                        writer.write((word == 0 ? "" : " ") + WORDS[random.nextInt(WORDS.length)]);
+                    }
+                    writer.write('\n');
+                }
+            }
+            System.out.println(new MultipartUploader(client).upload(bucket, key, file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
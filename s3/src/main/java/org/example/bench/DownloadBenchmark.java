@@ -0,0 +1,58 @@
+package org.example.bench;
+
+import org.example.DownloadResult;
+import org.example.RangedDownloader;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares downloading an object in a single stream with downloading it as N ranges at a time.
+ * Each setting is run a few times and the best throughput is kept.
+ * Usage: DownloadBenchmark bucket key [rangeSizeMB] [ways...]
+ */
+public class DownloadBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DownloadBenchmark bucket key [rangeSizeMB] [ways...]");
+            System.exit(1);
+        }
+        String bucket = args[0];
+        String key = args[1];
+        long rangeSize = (args.length > 2 ? Long.parseLong(args[2]) : 8) * 1024 * 1024;
+        int[] ways = {4, 16, 64};
+        if (args.length > 3) {
+            ways = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                ways[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Path target = Files.createTempFile("download-benchmark", ".bin");
+        try (S3AsyncClient client = BenchmarkClients.s3AsyncClient()) {
+            // One range covering the whole object is a plain single stream GET
+            run("single stream", new RangedDownloader(client, Long.MAX_VALUE, 1), bucket, key, target);
+            for (int concurrency : ways) {
+                run(concurrency + "-way ranged", new RangedDownloader(client, rangeSize, concurrency), bucket, key, target);
+            }
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static void run(String name, RangedDownloader downloader, String bucket, String key, Path target)
+            throws IOException {
+        DownloadResult best = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            DownloadResult result = downloader.download(bucket, key, target);
+            if (best == null || result.getMegabytesPerSecond() > best.getMegabytesPerSecond()) {
+                best = result;
+            }
+        }
+        System.out.printf("%-16s %8.1f MB/s  (%s)%n", name, best.getMegabytesPerSecond(), best);
+    }
+}
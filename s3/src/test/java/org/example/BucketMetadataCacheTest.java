@@ -0,0 +1,218 @@
+package org.example;
+
+import org.junit.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BucketMetadataCacheTest {
+    private static final Duration LONG = Duration.ofHours(1);
+    private static final Duration SHORT = Duration.ofMillis(100);
+
+    /**
+     * Answers HeadBucket and GetBucketVersioning for one bucket in eu-west-1, counting the calls
+     */
+    private static class StubS3 implements S3Client {
+        final AtomicInteger headBucketCalls = new AtomicInteger();
+        final AtomicInteger versioningCalls = new AtomicInteger();
+        volatile boolean exists = true;
+        volatile boolean denied;
+        volatile BucketVersioningStatus versioning;
+        // When set, HeadBucket counts down entered and waits for release
+        volatile CountDownLatch entered;
+        volatile CountDownLatch release;
+
+        @Override
+        public HeadBucketResponse headBucket(HeadBucketRequest request) {
+            headBucketCalls.incrementAndGet();
+            if (release != null) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (denied) {
+                throw S3Exception.builder().statusCode(403).message("Forbidden").build();
+            }
+            if (!exists) {
+                throw noSuchBucket();
+            }
+            return HeadBucketResponse.builder().bucketRegion("eu-west-1").build();
+        }
+
+        @Override
+        public GetBucketVersioningResponse getBucketVersioning(GetBucketVersioningRequest request) {
+            versioningCalls.incrementAndGet();
+            if (!exists) {
+                throw noSuchBucket();
+            }
+            return GetBucketVersioningResponse.builder().status(versioning).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void makesOneCallForThreadsAskingAtOnce() throws Exception {
+        StubS3 s3 = new StubS3();
+        s3.entered = new CountDownLatch(1);
+        s3.release = new CountDownLatch(1);
+        BucketMetadataCache cache = cache(s3, LONG, LONG);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> answers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                answers.add(executor.submit(() -> cache.exists("bucket")));
+            }
+            assertTrue(s3.entered.await(5, TimeUnit.SECONDS));
+            // The other threads wait for the call in flight
+            while (cache.getCallsSaved(BucketMetadataCache.Call.HEAD_BUCKET) < 7) {
+                Thread.sleep(1);
+            }
+            s3.release.countDown();
+
+            for (Future<Boolean> answer : answers) {
+                assertTrue(answer.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, s3.headBucketCalls.get());
+        assertEquals(1, cache.getCallsMade(BucketMetadataCache.Call.HEAD_BUCKET));
+    }
+
+    @Test
+    public void looksTheBucketUpAgainOnceTheTtlExpires() throws Exception {
+        StubS3 s3 = new StubS3();
+        BucketMetadataCache cache = cache(s3, SHORT, LONG);
+
+        assertTrue(cache.exists("bucket"));
+        assertTrue(cache.exists("bucket"));
+        assertEquals(1, s3.headBucketCalls.get());
+
+        Thread.sleep(SHORT.toMillis() * 2);
+
+        assertTrue(cache.exists("bucket"));
+        assertEquals(2, s3.headBucketCalls.get());
+    }
+
+    @Test
+    public void keepsTheRegionFromHeadBucket() {
+        BucketMetadataCache cache = cache(new StubS3(), LONG, LONG);
+
+        cache.exists("bucket");
+
+        assertEquals(Region.EU_WEST_1, cache.region("bucket"));
+        assertEquals(0, cache.getCallsMade(BucketMetadataCache.Call.GET_BUCKET_LOCATION));
+    }
+
+    @Test
+    public void keepsAMissingBucketForTheNegativeTtl() throws Exception {
+        StubS3 s3 = new StubS3();
+        s3.exists = false;
+        BucketMetadataCache cache = cache(s3, LONG, SHORT);
+
+        assertFalse(cache.exists("bucket"));
+        assertFalse(cache.exists("bucket"));
+        try {
+            cache.isVersioned("bucket");
+            throw new AssertionError("The bucket is known not to exist");
+        } catch (NoSuchBucketException ex) {
+            assertEquals(0, s3.versioningCalls.get());
+        }
+        assertEquals(1, s3.headBucketCalls.get());
+
+        s3.exists = true;
+        Thread.sleep(SHORT.toMillis() * 2);
+
+        assertTrue(cache.exists("bucket"));
+        assertEquals(2, s3.headBucketCalls.get());
+    }
+
+    @Test
+    public void doesNotKeepFailedLookups() {
+        StubS3 s3 = new StubS3();
+        s3.denied = true;
+        BucketMetadataCache cache = cache(s3, LONG, LONG);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.exists("bucket");
+                throw new AssertionError("Access to the bucket is denied");
+            } catch (S3Exception ex) {
+                assertEquals(403, ex.statusCode());
+            }
+        }
+        assertEquals(2, s3.headBucketCalls.get());
+    }
+
+    @Test
+    public void refreshesTheCachedVersioningState() {
+        StubS3 s3 = new StubS3();
+        BucketMetadataCache cache = cache(s3, LONG, LONG);
+        assertFalse(cache.isVersioned("bucket"));
+
+        s3.versioning = BucketVersioningStatus.SUSPENDED;
+
+        assertFalse("Still cached", cache.isVersioned("bucket"));
+        assertTrue(cache.refreshVersioning("bucket"));
+        assertTrue(cache.isVersioned("bucket"));
+        assertEquals(2, s3.versioningCalls.get());
+    }
+
+    @Test
+    public void forgetsABucketDeletedElsewhere() {
+        StubS3 s3 = new StubS3();
+        BucketMetadataCache cache = cache(s3, LONG, LONG);
+        assertTrue(cache.exists("bucket"));
+
+        s3.exists = false;
+        cache.requestFailed("bucket", noSuchBucket());
+
+        assertFalse(cache.exists("bucket"));
+        assertEquals(2, s3.headBucketCalls.get());
+    }
+
+    private static BucketMetadataCache cache(S3Client s3, Duration ttl, Duration negativeTtl) {
+        return new BucketMetadataCache(s3, ttl, negativeTtl, 4, region -> {
+            throw new AssertionError("No client of " + region + " is needed");
+        });
+    }
+
+    private static NoSuchBucketException noSuchBucket() {
+        return NoSuchBucketException.builder()
+                .statusCode(404)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("NoSuchBucket").build())
+                .build();
+    }
+}
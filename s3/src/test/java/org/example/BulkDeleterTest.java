@@ -0,0 +1,211 @@
+package org.example;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.DeleteMarkerEntry;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkDeleterTest {
+
+    /**
+     * A bucket listed in pages of at most maxKeys which records every DeleteObjects call. Keys
+     * under locked/ cannot be deleted.
+     */
+    private static class Bucket implements S3Client {
+        final List<String> keys = new ArrayList<>();
+        final List<ObjectVersion> versions = new ArrayList<>();
+        final List<DeleteMarkerEntry> deleteMarkers = new ArrayList<>();
+        final List<DeleteObjectsRequest> deletes = new CopyOnWriteArrayList<>();
+        volatile BucketVersioningStatus versioning;
+        volatile boolean denied;
+
+        @Override
+        public GetBucketVersioningResponse getBucketVersioning(GetBucketVersioningRequest request) {
+            return GetBucketVersioningResponse.builder().status(versioning).build();
+        }
+
+        @Override
+        public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+            int from = request.continuationToken() == null ? 0 : Integer.parseInt(request.continuationToken());
+            int to = Math.min(keys.size(), from + request.maxKeys());
+            List<S3Object> contents = new ArrayList<>();
+            for (String key : keys.subList(from, to)) {
+                contents.add(S3Object.builder().key(key).build());
+            }
+            return ListObjectsV2Response.builder()
+                    .contents(contents)
+                    .keyCount(contents.size())
+                    .isTruncated(to < keys.size())
+                    .nextContinuationToken(to < keys.size() ? Integer.toString(to) : null)
+                    .build();
+        }
+
+        @Override
+        public ListObjectVersionsResponse listObjectVersions(ListObjectVersionsRequest request) {
+            // All in one page, so a page holds more than one DeleteObjects call can take
+            return ListObjectVersionsResponse.builder()
+                    .versions(versions)
+                    .deleteMarkers(deleteMarkers)
+                    .isTruncated(false)
+                    .build();
+        }
+
+        @Override
+        public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+            if (denied) {
+                throw S3Exception.builder().statusCode(403).message("Access Denied").build();
+            }
+            deletes.add(request);
+            List<S3Error> errors = new ArrayList<>();
+            for (ObjectIdentifier id : request.delete().objects()) {
+                if (id.key().startsWith("locked/")) {
+                    errors.add(S3Error.builder().key(id.key()).versionId(id.versionId()).code("AccessDenied").build());
+                }
+            }
+            return DeleteObjectsResponse.builder().errors(errors).build();
+        }
+
+        List<Integer> batchSizes() {
+            List<Integer> sizes = new ArrayList<>();
+            for (DeleteObjectsRequest request : deletes) {
+                sizes.add(request.delete().objects().size());
+            }
+            Collections.sort(sizes, Collections.reverseOrder());
+            return sizes;
+        }
+
+        Set<String> deletedIds() {
+            Set<String> ids = new HashSet<>();
+            for (DeleteObjectsRequest request : deletes) {
+                for (ObjectIdentifier id : request.delete().objects()) {
+                    assertTrue("Deleted twice: " + id, ids.add(id.key() + (id.versionId() == null ? "" : "@" + id.versionId())));
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void deletesInBatchesOfAThousandKeys() {
+        Bucket bucket = new Bucket();
+        for (int i = 0; i < 2500; i++) {
+            bucket.keys.add("key" + i);
+        }
+
+        BulkDeleteResult result = new BulkDeleter(bucket, 3).deleteAll("bucket");
+
+        assertEquals(Arrays.asList(1000, 1000, 500), bucket.batchSizes());
+        assertEquals(new HashSet<>(bucket.keys), bucket.deletedIds());
+        assertEquals(2500, result.getDeleted());
+        assertEquals(0, result.getFailed());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void reportsTheKeysAQuietDeleteRefused() {
+        Bucket bucket = new Bucket();
+        for (int i = 0; i < 1500; i++) {
+            bucket.keys.add(i % 100 == 0 ? "locked/key" + i : "key" + i);
+        }
+
+        BulkDeleteResult result = new BulkDeleter(bucket, 2).deleteAll("bucket");
+
+        for (DeleteObjectsRequest request : bucket.deletes) {
+            assertTrue(request.delete().quiet());
+        }
+        assertEquals(1485, result.getDeleted());
+        assertEquals(15, result.getFailed());
+        assertFalse(result.isComplete());
+        Set<String> refused = new HashSet<>();
+        for (S3Error error : result.getErrors()) {
+            assertEquals("AccessDenied", error.code());
+            refused.add(error.key());
+        }
+        assertEquals(15, refused.size());
+        assertTrue(refused.contains("locked/key1400"));
+    }
+
+    @Test
+    public void deletesEveryVersionAndDeleteMarkerOfAVersionedBucket() {
+        Bucket bucket = new Bucket();
+        bucket.versioning = BucketVersioningStatus.ENABLED;
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 700; i++) {
+            bucket.versions.add(ObjectVersion.builder().key("key" + i % 400).versionId("v" + i).build());
+            expected.add("key" + i % 400 + "@v" + i);
+        }
+        for (int i = 0; i < 600; i++) {
+            bucket.deleteMarkers.add(DeleteMarkerEntry.builder().key("key" + i % 400).versionId("m" + i).build());
+            expected.add("key" + i % 400 + "@m" + i);
+        }
+
+        BulkDeleteResult result = new BulkDeleter(bucket, 2).deleteAll("bucket");
+
+        assertEquals(Arrays.asList(1000, 300), bucket.batchSizes());
+        assertEquals(expected, bucket.deletedIds());
+        assertEquals(1300, result.getDeleted());
+    }
+
+    @Test
+    public void deletesTheVersionsLeftInASuspendedBucket() {
+        Bucket bucket = new Bucket();
+        bucket.versioning = BucketVersioningStatus.SUSPENDED;
+        bucket.keys.add("current");
+        bucket.versions.add(ObjectVersion.builder().key("current").versionId("null").build());
+        bucket.versions.add(ObjectVersion.builder().key("current").versionId("v1").build());
+
+        new BulkDeleter(bucket, 1, new BucketMetadataCache(bucket)).deleteAll("bucket");
+
+        assertEquals(new HashSet<>(Arrays.asList("current@null", "current@v1")), bucket.deletedIds());
+    }
+
+    @Test
+    public void stopsWhenAWholeBatchFails() {
+        Bucket bucket = new Bucket();
+        for (int i = 0; i < 5000; i++) {
+            bucket.keys.add("key" + i);
+        }
+        bucket.denied = true;
+
+        try {
+            new BulkDeleter(bucket, 1).deleteAll("bucket");
+            throw new AssertionError("The delete should have failed");
+        } catch (S3Exception ex) {
+            assertEquals(403, ex.statusCode());
+        }
+    }
+}
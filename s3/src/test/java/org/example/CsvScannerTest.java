@@ -0,0 +1,108 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CsvScannerTest {
+    private static final String CSV = "alice,1,\"Paris, France\"\r\n"
+            + "bob,2,Berlin\n"
+            + "\n"
+            + "carol,3,\"say \"\"hi\"\"\"\n"
+            + "dave,4,Oslo";
+
+    @Test
+    public void readsEveryRecordOnceWhateverTheRangeSize() throws IOException {
+        byte[] bytes = CSV.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = rows(scan(bytes, bytes.length));
+        assertEquals(Arrays.asList("alice|1|Paris, France", "bob|2|Berlin", "carol|3|say \"hi\"", "dave|4|Oslo"), expected);
+
+        for (int rangeSize = 1; rangeSize <= bytes.length; rangeSize++) {
+            assertEquals("range size " + rangeSize, expected, rows(scan(bytes, rangeSize)));
+        }
+    }
+
+    @Test
+    public void givesARecordStartingOnTheBoundaryToTheNextRange() throws IOException {
+        byte[] bytes = "a,1\nb,2\n".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Arrays.asList("a|1"), rows(scanRange(bytes, 0, 4)));
+        assertEquals(Arrays.asList("b|2"), rows(scanRange(bytes, 4, 8)));
+    }
+
+    @Test
+    public void readsTheLastRecordOfARangePastItsEnd() throws IOException {
+        byte[] bytes = "a,1\nb,2\n".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Arrays.asList("a|1", "b|2"), rows(scanRange(bytes, 0, 5)));
+        assertEquals(Arrays.asList(), rows(scanRange(bytes, 5, 8)));
+    }
+
+    @Test
+    public void readsRecordsLongerThanTheBuffer() throws IOException {
+        StringBuilder csv = new StringBuilder("x,");
+        for (int i = 0; i < 100_000; i++) {
+            csv.append('y');
+        }
+        csv.append("\nz,1\n");
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String[]> rows = scan(bytes, 1000);
+
+        assertEquals(2, rows.size());
+        assertEquals(100_000, rows.get(0)[1].length());
+        assertArrayEquals(new String[]{"z", "1"}, rows.get(1));
+    }
+
+    @Test
+    public void testsConditionsAndProjectsColumns() throws IOException {
+        byte[] bytes = CSV.getBytes(StandardCharsets.UTF_8);
+        CsvScanner scanner = new CsvScanner(',', new int[]{2}, new CsvQuery.Matcher[]{CsvQuery.Matcher.like("%,%")},
+                new int[]{1, 0});
+        List<String[]> rows = new ArrayList<>();
+
+        scanner.scan(new ByteArrayInputStream(bytes), 0, 0, bytes.length, rows::add);
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{"1", "alice"}, rows.get(0));
+        assertEquals(4, scanner.getRecordsScanned());
+        assertEquals(1, scanner.getRowsMatched());
+    }
+
+    /**
+     * Scans the object in ranges of the given size the way CsvQueryEngine does
+     */
+    private static List<String[]> scan(byte[] bytes, int rangeSize) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += rangeSize) {
+            rows.addAll(scanRange(bytes, from, Math.min(bytes.length, from + rangeSize)));
+        }
+        return rows;
+    }
+
+    private static List<String[]> scanRange(byte[] bytes, int start, int end) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        CsvScanner scanner = new CsvScanner(',', new int[0], new CsvQuery.Matcher[0], null);
+        // Except at the start of the object, begin a byte early to see whether a record starts at start
+        int streamStart = start == 0 ? 0 : start - 1;
+        scanner.scan(new ByteArrayInputStream(bytes, streamStart, bytes.length - streamStart), streamStart, start, end,
+                rows::add);
+        return rows;
+    }
+
+    private static List<String> rows(List<String[]> rows) {
+        List<String> joined = new ArrayList<>();
+        for (String[] row : rows) {
+            joined.add(String.join("|", row));
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,209 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MultipartUploaderTest {
+    private static final long PART_SIZE = MultipartUploader.MIN_PART_SIZE;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /**
+     * Accepts every part whose content matches its checksum and records what was sent
+     */
+    private static class RecordingS3 implements S3Client {
+        final AtomicInteger created = new AtomicInteger();
+        final List<Integer> sentParts = new CopyOnWriteArrayList<>();
+        final List<String> aborted = new CopyOnWriteArrayList<>();
+        volatile CompleteMultipartUploadRequest completed;
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            return CreateMultipartUploadResponse.builder().uploadId("upload-" + created.incrementAndGet()).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            byte[] content;
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                content = in.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            assertEquals(request.contentLength().longValue(), content.length);
+            assertEquals(MultipartUploader.crc32c(ByteBuffer.wrap(content)), request.checksumCRC32C());
+            sentParts.add(request.partNumber());
+            return UploadPartResponse.builder().eTag(etag(request.uploadId(), request.partNumber())).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed = request;
+            return CompleteMultipartUploadResponse.builder().eTag("\"complete\"").build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted.add(request.uploadId());
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private Path file;
+    private byte[] content;
+
+    @Before
+    public void createFile() throws IOException {
+        // Two full parts and a short last one
+        content = new byte[(int) (2 * PART_SIZE + 1000)];
+        new Random(7).nextBytes(content);
+        file = Files.createTempFile("upload", ".bin");
+        Files.write(file, content);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(MultipartUploader.manifestFor(file));
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void uploadsEveryPartAndDeletesTheManifest() throws IOException {
+        RecordingS3 s3 = new RecordingS3();
+
+        UploadResult result = new MultipartUploader(s3, PART_SIZE, 2).upload("bucket", "key", file);
+
+        assertEquals(Arrays.asList(1, 2, 3), sorted(s3.sentParts));
+        assertEquals("upload-1", s3.completed.uploadId());
+        assertEquals(Arrays.asList(1, 2, 3), partNumbers(s3.completed.multipartUpload().parts()));
+        assertEquals(3, result.getParts());
+        assertEquals(0, result.getResumedParts());
+        assertEquals(content.length, result.getUploadedBytes());
+        assertFalse(Files.exists(MultipartUploader.manifestFor(file)));
+    }
+
+    @Test
+    public void resumesFromTheManifest() throws IOException {
+        UploadManifest manifest = new UploadManifest(MultipartUploader.manifestFor(file), "bucket", "key", "upload-0",
+                content.length, Files.getLastModifiedTime(file).toMillis(), PART_SIZE);
+        manifest.save();
+        manifest.addPart(CompletedPart.builder()
+                .partNumber(2)
+                .eTag(etag("upload-0", 2))
+                .checksumCRC32C(MultipartUploader.crc32c(ByteBuffer.wrap(content, (int) PART_SIZE, (int) PART_SIZE)))
+                .build());
+        RecordingS3 s3 = new RecordingS3();
+
+        UploadResult result = new MultipartUploader(s3, PART_SIZE, 2).upload("bucket", "key", file);
+
+        assertEquals(Arrays.asList(1, 3), sorted(s3.sentParts));
+        assertEquals(0, s3.created.get());
+        assertEquals("upload-0", s3.completed.uploadId());
+        List<CompletedPart> parts = s3.completed.multipartUpload().parts();
+        assertEquals(Arrays.asList(1, 2, 3), partNumbers(parts));
+        assertEquals(etag("upload-0", 2), parts.get(1).eTag());
+        assertEquals(1, result.getResumedParts());
+        assertEquals(content.length - PART_SIZE, result.getUploadedBytes());
+    }
+
+    @Test
+    public void abortsTheUploadOfAStaleManifest() throws IOException {
+        UploadManifest manifest = new UploadManifest(MultipartUploader.manifestFor(file), "bucket", "other-key",
+                "upload-0", content.length, Files.getLastModifiedTime(file).toMillis(), PART_SIZE);
+        manifest.save();
+        RecordingS3 s3 = new RecordingS3();
+
+        new MultipartUploader(s3, PART_SIZE, 2).upload("bucket", "key", file);
+
+        assertEquals(Collections.singletonList("upload-0"), s3.aborted);
+        assertEquals(Arrays.asList(1, 2, 3), sorted(s3.sentParts));
+        assertEquals("upload-1", s3.completed.uploadId());
+    }
+
+    @Test
+    public void keepsThePartSizeWhileTheFileFitsInTenThousandParts() {
+        MultipartUploader uploader = new MultipartUploader(new RecordingS3(), PART_SIZE, 1);
+
+        assertEquals(PART_SIZE, uploader.partSizeFor(0));
+        assertEquals(PART_SIZE, uploader.partSizeFor(10_000 * PART_SIZE));
+    }
+
+    @Test
+    public void raisesThePartSizeToAWholeMegabyte() {
+        MultipartUploader uploader = new MultipartUploader(new RecordingS3(), PART_SIZE, 1);
+
+        assertEquals(6 * MEGABYTE, uploader.partSizeFor(10_000 * PART_SIZE + 1));
+        assertEquals(11 * MEGABYTE, uploader.partSizeFor(100L * 1024 * MEGABYTE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFilesTooLargeForTenThousandParts() {
+        new MultipartUploader(new RecordingS3(), PART_SIZE, 1).partSizeFor(10_000L * Integer.MAX_VALUE + 1);
+    }
+
+    @Test
+    public void encodesTheBigEndianCrc32cOfTheRemainingBytes() {
+        // The standard check value of CRC32C is 0xE3069283
+        assertEquals("4waSgw==", MultipartUploader.crc32c(StandardCharsets.US_ASCII.encode("123456789")));
+
+        ByteBuffer buffer = StandardCharsets.US_ASCII.encode("xyz123456789");
+        buffer.position(3);
+        assertEquals("4waSgw==", MultipartUploader.crc32c(buffer));
+    }
+
+    private static String etag(String uploadId, int partNumber) {
+        return "\"" + uploadId + "-" + partNumber + "\"";
+    }
+
+    private static List<Integer> sorted(List<Integer> partNumbers) {
+        List<Integer> sorted = new ArrayList<>(partNumbers);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static List<Integer> partNumbers(List<CompletedPart> parts) {
+        List<Integer> numbers = new ArrayList<>();
+        for (CompletedPart part : parts) {
+            numbers.add(part.partNumber());
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelListerTest {
+
+    @Test
+    public void splitsBetweenTheFirstDifferingCharacters() {
+        assertEquals("m", ParallelLister.midpoint("logs/a", "logs/z").substring("logs/".length()));
+        assertEquals("@", ParallelLister.midpoint("", "b"));
+    }
+
+    @Test
+    public void splitsAfterAdjacentCharacters() {
+        String split = ParallelLister.midpoint("a", "b");
+
+        assertNotNull(split);
+        assertTrue(ParallelLister.compareKeys("a", split) < 0);
+        assertTrue(ParallelLister.compareKeys(split, "b") < 0);
+    }
+
+    @Test
+    public void doesNotSplitWithoutRoom() {
+        assertNull(ParallelLister.midpoint("a", "a"));
+        assertNull(ParallelLister.midpoint("ab", "a"));
+        assertNull(ParallelLister.midpoint("a", "a "));
+    }
+
+    @Test
+    public void doesNotSplitNonAsciiKeys() {
+        assertNull(ParallelLister.midpoint("café", "cafÿ"));
+        assertNull(ParallelLister.midpoint("a", "é"));
+    }
+
+    @Test
+    public void midpointLiesStrictlyBetweenItsBounds() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String a = randomKey(random);
+            String b = randomKey(random);
+            String after = ParallelLister.compareKeys(a, b) <= 0 ? a : b;
+            String upTo = after == a ? b : a;
+
+            String split = ParallelLister.midpoint(after, upTo);
+
+            if (split != null) {
+                assertTrue(after + " < " + split, ParallelLister.compareKeys(after, split) < 0);
+                assertTrue(split + " < " + upTo, ParallelLister.compareKeys(split, upTo) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void comparesKeysByTheirUtf8Bytes() {
+        String[] keys = {"", "a", "a/b", "ab", "é", "￿", "😀"};
+        for (String a : keys) {
+            for (String b : keys) {
+                assertEquals(a + " vs " + b, Integer.signum(compareUtf8(a, b)),
+                        Integer.signum(ParallelLister.compareKeys(a, b)));
+            }
+        }
+        // String.compareTo puts the surrogate pair first
+        assertTrue("😀".compareTo("￿") < 0);
+        assertTrue(ParallelLister.compareKeys("😀", "￿") > 0);
+    }
+
+    private static String randomKey(Random random) {
+        char[] key = new char[random.nextInt(6)];
+        for (int i = 0; i < key.length; i++) {
+            // Mostly a small alphabet so keys share prefixes and adjacent characters
+            key[i] = random.nextInt(4) == 0 ? (char) (' ' + random.nextInt('~' - ' ' + 1)) : (char) ('a' + random.nextInt(3));
+        }
+        return new String(key);
+    }
+
+    private static int compareUtf8(String a, String b) {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+            if (x[i] != y[i]) {
+                return Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            }
+        }
+        return Integer.compare(x.length, y.length);
+    }
+}
@@ -0,0 +1,228 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangedDownloaderTest {
+    private static final String ETAG = "\"etag-1\"";
+
+    /**
+     * Serves the ranges of one object in small buffers, as S3 streams a response body
+     */
+    private static class RangeServer implements S3AsyncClient {
+        final byte[] content;
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        // A request for this range fails after sending failAfter bytes, failures times
+        volatile String failingRange;
+        volatile int failAfter;
+        volatile int failures;
+
+        RangeServer(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest request) {
+            return CompletableFuture.completedFuture(HeadObjectResponse.builder()
+                    .contentLength((long) content.length)
+                    .eTag(ETAG)
+                    .checksumCRC32C(MultipartUploader.crc32c(ByteBuffer.wrap(content)))
+                    .build());
+        }
+
+        @Override
+        public <T> CompletableFuture<T> getObject(GetObjectRequest request,
+                                                  AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+            assertEquals(ETAG, request.ifMatch());
+            ranges.add(request.range());
+            String[] bounds = request.range().substring("bytes=".length()).split("-");
+            int first = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]) + 1;
+            int failAt = -1;
+            synchronized (this) {
+                if (request.range().equals(failingRange) && failures > 0) {
+                    failures--;
+                    failAt = first + failAfter;
+                }
+            }
+            CompletableFuture<T> result = transformer.prepare();
+            transformer.onResponse(GetObjectResponse.builder().contentLength((long) (end - first)).build());
+            transformer.onStream(body(first, end, failAt));
+            return result;
+        }
+
+        /**
+         * Sends bytes first to end in buffers of 100 bytes as they are requested, failing at failAt
+         * unless it is -1
+         */
+        private SdkPublisher<ByteBuffer> body(int first, int end, int failAt) {
+            return subscriber -> subscriber.onSubscribe(new Subscription() {
+                private int next = first;
+                private long demand;
+                private boolean delivering;
+
+                @Override
+                public synchronized void request(long n) {
+                    demand += n;
+                    if (delivering) {
+                        return;
+                    }
+                    delivering = true;
+                    while (demand > 0 && next < end && next != failAt) {
+                        demand--;
+                        int length = Math.min(100, Math.min(end, failAt < 0 ? end : failAt) - next);
+                        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOfRange(content, next, next + length));
+                        next += length;
+                        subscriber.onNext(buffer);
+                    }
+                    if (next == failAt) {
+                        next = end + 1;
+                        subscriber.onError(new IOException("Connection reset"));
+                    } else if (next == end) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                    delivering = false;
+                }
+
+                @Override
+                public synchronized void cancel() {
+                    next = end + 1;
+                }
+            });
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private Path target;
+
+    @Before
+    public void createTarget() throws IOException {
+        target = Files.createTempFile("download", ".bin");
+        Files.delete(target);
+    }
+
+    @After
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Test
+    public void splitsTheObjectIntoRangesWithAShortLastOne() throws IOException {
+        RangeServer s3 = new RangeServer(content(10_000));
+
+        DownloadResult result = new RangedDownloader(s3, 3000, 2).download("bucket", "key", target);
+
+        assertEquals(Arrays.asList("bytes=0-2999", "bytes=3000-5999", "bytes=6000-8999", "bytes=9000-9999"),
+                sorted(s3.ranges));
+        assertEquals(4, result.getRanges());
+        assertEquals("CRC32C", result.getVerifiedWith());
+        assertArrayEquals(s3.content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void splitsAnObjectOfWholeRanges() throws IOException {
+        RangeServer s3 = new RangeServer(content(9000));
+
+        DownloadResult result = new RangedDownloader(s3, 3000, 8).download("bucket", "key", target);
+
+        assertEquals(Arrays.asList("bytes=0-2999", "bytes=3000-5999", "bytes=6000-8999"), sorted(s3.ranges));
+        assertEquals(3, result.getRanges());
+        assertArrayEquals(s3.content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void downloadsAnEmptyObjectWithoutRanges() throws IOException {
+        RangeServer s3 = new RangeServer(new byte[0]);
+
+        DownloadResult result = new RangedDownloader(s3, 3000, 2).download("bucket", "key", target);
+
+        assertTrue(s3.ranges.isEmpty());
+        assertEquals(0, result.getRanges());
+        assertEquals(0, Files.size(target));
+    }
+
+    @Test
+    public void resumesARangeFromTheFirstUnwrittenByte() throws IOException {
+        RangeServer s3 = new RangeServer(content(10_000));
+        s3.failingRange = "bytes=3000-5999";
+        s3.failAfter = 1250;
+        s3.failures = 1;
+
+        DownloadResult result = new RangedDownloader(s3, 3000, 2).download("bucket", "key", target);
+
+        assertTrue(s3.ranges.contains("bytes=3000-5999"));
+        assertTrue(s3.ranges.contains("bytes=4250-5999"));
+        assertEquals(1, result.getRetries());
+        assertArrayEquals(s3.content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void failsAfterTheLastAttemptAndLeavesNoFile() {
+        RangeServer s3 = new RangeServer(content(10_000));
+        s3.failingRange = "bytes=0-2999";
+        s3.failAfter = 0;
+        s3.failures = Integer.MAX_VALUE;
+
+        try {
+            new RangedDownloader(s3, 3000, 2, 2).download("bucket", "key", target);
+            throw new AssertionError("The download should have failed");
+        } catch (IOException ex) {
+            assertEquals("Connection reset", ex.getMessage());
+        }
+        assertEquals(2, Collections.frequency(s3.ranges, "bytes=0-2999"));
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(target.resolveSibling(target.getFileName() + ".download")));
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(11).nextBytes(content);
+        return content;
+    }
+
+    private static List<String> sorted(List<String> ranges) {
+        List<String> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(first(a), first(b)));
+        return sorted;
+    }
+
+    private static long first(String range) {
+        return Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+    }
+}
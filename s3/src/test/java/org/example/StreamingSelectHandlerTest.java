@@ -0,0 +1,138 @@
+package org.example;
+
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentEventStream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingSelectHandlerTest {
+
+    @Test
+    public void joinsRecordsSplitAcrossPayloads() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add);
+
+        send(handler, "alice,1\nbo", "b,2\ncar", "ol,3", "\n", "dave,4\n");
+
+        assertEquals(Arrays.asList("alice,1", "bob,2", "carol,3", "dave,4"), records);
+        assertEquals(4, handler.getRecordCount());
+        assertTrue(handler.isEndReceived());
+    }
+
+    @Test
+    public void emitsTheLastRecordWithoutDelimiter() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add);
+
+        send(handler, "a\nb", "c");
+
+        assertEquals(Arrays.asList("a", "bc"), records);
+    }
+
+    @Test
+    public void skipsEmptyRecords() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add);
+
+        send(handler, "\na\n\n", "\nb\n");
+
+        assertEquals(Arrays.asList("a", "b"), records);
+        assertEquals(2, handler.getRecordCount());
+    }
+
+    @Test
+    public void decodesCharactersSplitAcrossPayloads() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add);
+        byte[] bytes = "café\nnaïve\n".getBytes(StandardCharsets.UTF_8);
+        // Split inside the two bytes of 'é'
+        int split = "caf".length() + 1;
+
+        send(handler, Arrays.copyOfRange(bytes, 0, split), Arrays.copyOfRange(bytes, split, bytes.length));
+
+        assertEquals(Arrays.asList("café", "naïve"), records);
+    }
+
+    @Test
+    public void growsTheBufferForLongRecords() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add);
+        StringBuilder longRecord = new StringBuilder();
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String chunk = "chunk" + i + ",";
+            longRecord.append(chunk);
+            payloads.add(chunk);
+        }
+        payloads.add("\nshort");
+
+        send(handler, payloads.toArray(new String[0]));
+
+        assertEquals(Arrays.asList(longRecord.toString(), "short"), records);
+    }
+
+    @Test
+    public void usesTheGivenDelimiter() {
+        List<String> records = new ArrayList<>();
+        StreamingSelectHandler handler = new StreamingSelectHandler(records::add, ';');
+
+        send(handler, "a\n1;b", "\n2;");
+
+        assertEquals(Arrays.asList("a\n1", "b\n2"), records);
+    }
+
+    private static void send(StreamingSelectHandler handler, String... payloads) {
+        byte[][] bytes = new byte[payloads.length][];
+        for (int i = 0; i < payloads.length; i++) {
+            bytes[i] = payloads[i].getBytes(StandardCharsets.UTF_8);
+        }
+        send(handler, bytes);
+    }
+
+    /**
+     * Delivers one RecordsEvent per payload and an EndEvent, one at a time as they are requested
+     */
+    private static void send(StreamingSelectHandler handler, byte[]... payloads) {
+        List<SelectObjectContentEventStream> events = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            events.add(SelectObjectContentEventStream.recordsBuilder().payload(SdkBytes.fromByteArray(payload)).build());
+        }
+        events.add(SelectObjectContentEventStream.endBuilder().build());
+        handler.onEventStream(subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int next;
+            private boolean delivering;
+            private long demand;
+
+            @Override
+            public void request(long n) {
+                demand += n;
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+                while (demand > 0 && next < events.size()) {
+                    demand--;
+                    subscriber.onNext(events.get(next++));
+                }
+                if (next == events.size()) {
+                    next++;
+                    subscriber.onComplete();
+                }
+                delivering = false;
+            }
+
+            @Override
+            public void cancel() {
+                next = events.size() + 1;
+            }
+        }));
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UploadManifestTest {
+    private static final long PART_SIZE = MultipartUploader.MIN_PART_SIZE;
+
+    private Path path;
+
+    @Before
+    public void createPath() throws IOException {
+        path = Files.createTempFile("upload", MultipartUploader.MANIFEST_SUFFIX);
+        Files.delete(path);
+    }
+
+    @After
+    public void deletePath() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void loadsTheSavedUploadAndItsParts() throws IOException {
+        UploadManifest manifest = newManifest();
+        manifest.save();
+        manifest.addPart(part(2));
+        manifest.addPart(part(1));
+
+        UploadManifest loaded = UploadManifest.load(path);
+
+        assertEquals("upload-1", loaded.getUploadId());
+        assertTrue(loaded.matches("bucket", "key", 3 * PART_SIZE, 1000, PART_SIZE));
+        assertFalse(loaded.matches("bucket", "other", 3 * PART_SIZE, 1000, PART_SIZE));
+        assertEquals(Arrays.asList(part(1), part(2)), loaded.getParts());
+    }
+
+    @Test
+    public void appendsPartsWithoutRewritingTheManifest() throws IOException {
+        UploadManifest manifest = newManifest();
+        manifest.save();
+        manifest.addPart(part(1));
+        byte[] before = Files.readAllBytes(path);
+
+        manifest.addPart(part(2));
+
+        byte[] after = Files.readAllBytes(path);
+        assertArrayEquals(before, Arrays.copyOf(after, before.length));
+        assertTrue(new String(after, before.length, after.length - before.length, StandardCharsets.ISO_8859_1)
+                .trim().startsWith("part.2="));
+    }
+
+    @Test
+    public void ignoresAPartCutShortByACrash() throws IOException {
+        UploadManifest manifest = newManifest();
+        manifest.save();
+        manifest.addPart(part(1));
+        String line = "\npart.2=\"etag2\" " + MultipartUploader.crc32c(StandardCharsets.UTF_8.encode("part 2"));
+        Files.write(path, line.substring(0, line.length() - 2).getBytes(StandardCharsets.ISO_8859_1),
+                StandardOpenOption.APPEND);
+
+        UploadManifest loaded = UploadManifest.load(path);
+        assertEquals(Arrays.asList(part(1)), loaded.getParts());
+
+        // The part is sent again and recorded on a line of its own
+        loaded.addPart(part(2));
+        assertEquals(Arrays.asList(part(1), part(2)), UploadManifest.load(path).getParts());
+    }
+
+    @Test
+    public void ignoresAnUnreadableManifest() throws IOException {
+        assertNull(UploadManifest.load(path));
+
+        Files.write(path, "bucket=bucket\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertNull(UploadManifest.load(path));
+    }
+
+    private UploadManifest newManifest() {
+        return new UploadManifest(path, "bucket", "key", "upload-1", 3 * PART_SIZE, 1000, PART_SIZE);
+    }
+
+    private static CompletedPart part(int partNumber) {
+        return CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag("\"etag" + partNumber + "\"")
+                .checksumCRC32C(MultipartUploader.crc32c(StandardCharsets.UTF_8.encode("part " + partNumber)))
+                .build();
+    }
+}